@@ -0,0 +1,62 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The time of {@link OrderBook#uncross(long, ExecutionListener)} for an auction of 300 000 orders where the buy and
+ * sell prices overlap around 10 000. The uncross empties the crossed part of the book, so the auction is collected
+ * again before each invocation, which takes far longer than the uncross itself and is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AuctionBenchmark {
+
+    private static final int ORDER_COUNT = 300_000;
+
+    private List<Order> orders;
+    private ExecutionListener listener;
+    private OrderBook orderBook;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final Random random = new Random(2);
+        orders = new ArrayList<>(ORDER_COUNT);
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            final long price = 10_000 + (Side.BUY.equals(side) ? -1 : 1) * (random.nextInt(1_000) - 50);
+            orders.add(Order.builder().side(side).qty(1 + random.nextInt(100)).price(price).build());
+        }
+        listener = execution -> blackhole.consume(execution.getQty());
+    }
+
+    @Setup(Level.Invocation)
+    public void collectAuction() {
+        orderBook = new OrderBook(TickArrayBookSide::new);
+        orderBook.startAuction();
+        orderBook.placeOrders(orders, listener);
+    }
+
+    @Benchmark
+    public long uncross() {
+        return orderBook.uncross(10_000, listener);
+    }
+}
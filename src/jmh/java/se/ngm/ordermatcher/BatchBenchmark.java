@@ -0,0 +1,84 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The throughput of placing generated order flow one order at a time compared to placing it in batches with
+ * {@link OrderBook#placeOrders(Order[], int, int, long[], ExecutionListener)}, with a market data listener so that
+ * the coalescing of the level updates is included. The scores are per order.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchBenchmark {
+
+    private static final int ORDER_COUNT = 1 << 20;
+    private static final int BATCH_SIZE = 64;
+
+    @Param({BookSides.TREE_MAP, BookSides.TICK_ARRAY})
+    public String bookSide;
+
+    private OrderBook orderBook;
+    private Order[] orders;
+    private final long[] orderIds = new long[BATCH_SIZE];
+    private int index;
+    private ExecutionListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orderBook = new OrderBook(BookSides.factory(bookSide));
+        orderBook.setMarketDataListener(new MarketDataListener() {
+            @Override
+            public void onLevelUpdate(final long sequence, final Action action, final Side side, final long price,
+                                      final long qty, final int orderCount) {
+                blackhole.consume(qty);
+            }
+
+            @Override
+            public void onUpdateEnd(final long sequence) {
+                blackhole.consume(sequence);
+            }
+        });
+        orders = OrderFlow.orders(ORDER_COUNT, 50, 1);
+        listener = execution -> blackhole.consume(execution.getQty());
+        // fill the book before measuring
+        for (final Order order : orders) {
+            orderBook.placeOrder(order, listener);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long sequential() {
+        long orderId = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            orderId = orderBook.placeOrder(orders[index + i], listener);
+        }
+        index = (index + BATCH_SIZE) & (ORDER_COUNT - 1);
+        return orderId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long batched() {
+        orderBook.placeOrders(orders, index, BATCH_SIZE, orderIds, listener);
+        index = (index + BATCH_SIZE) & (ORDER_COUNT - 1);
+        return orderIds[BATCH_SIZE - 1];
+    }
+}
@@ -0,0 +1,87 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+
+/**
+ * The throughput of {@link BinaryOrderProcessor#process(ByteBuffer)} on generated order flow that has been encoded
+ * up front, i.e. the decoding and the matching without the channel reads. The execution reports are encoded and
+ * written to a channel that discards them. The scores are per message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryProcessorBenchmark {
+
+    private static final int ORDER_COUNT = 1 << 20;
+    private static final int BATCH_SIZE = 64;
+    private static final int MESSAGE_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + NewOrderEncoder.BLOCK_LENGTH;
+
+    private ByteBuffer messages;
+    private BinaryOrderProcessor processor;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        messages = ByteBuffer.allocateDirect(ORDER_COUNT * MESSAGE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+        final NewOrderEncoder encoder = new NewOrderEncoder();
+        final Order[] orders = OrderFlow.orders(ORDER_COUNT, 50, 1);
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            encoder.wrapAndApplyHeader(messages, i * MESSAGE_LENGTH, headerEncoder)
+                .price(orders[i].getPrice())
+                .qty(orders[i].getQty())
+                .side(orders[i].getSide());
+        }
+        processor = new BinaryOrderProcessor(new OrderBook(TickArrayBookSide::new), new DiscardingChannel());
+        // fill the book before measuring
+        messages.clear();
+        processor.process(messages);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int process() throws IOException {
+        final int offset = index * MESSAGE_LENGTH;
+        messages.limit(offset + BATCH_SIZE * MESSAGE_LENGTH).position(offset);
+        index = (index + BATCH_SIZE) & (ORDER_COUNT - 1);
+        return processor.process(messages);
+    }
+
+    private static final class DiscardingChannel implements WritableByteChannel {
+        @Override
+        public int write(final ByteBuffer src) {
+            final int remaining = src.remaining();
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.ngm.ordermatcher;
+
+/**
+ * The book side implementations, by the name used in the benchmark parameters.
+ */
+final class BookSides {
+
+    static final String TREE_MAP = "TreeMap";
+    static final String TICK_ARRAY = "TickArray";
+    static final String B_TREE = "BTree";
+
+    private BookSides() {
+    }
+
+    static BookSide.Factory factory(final String name) {
+        switch (name) {
+            case TREE_MAP:
+                return TreeMapBookSide::new;
+            case TICK_ARRAY:
+                return TickArrayBookSide::new;
+            case B_TREE:
+                return BTreeBookSide::new;
+            default:
+                throw new IllegalArgumentException("unknown book side: " + name);
+        }
+    }
+}
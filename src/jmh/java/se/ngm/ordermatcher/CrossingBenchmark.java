@@ -0,0 +1,62 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Crossing versus non-crossing orders on a book with resting orders on both sides:
+ * <ul>
+ *   <li>crossing: a sell order that is filled by one resting buy order, which is never filled itself</li>
+ *   <li>nonCrossing: a buy order that rests below the best bid and is then cancelled, so the book does not grow</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrossingBenchmark {
+
+    @Param({BookSides.TREE_MAP, BookSides.TICK_ARRAY})
+    public String bookSide;
+
+    private OrderBook orderBook;
+    private Order crossingOrder;
+    private Order nonCrossingOrder;
+    private ExecutionListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orderBook = new OrderBook(BookSides.factory(bookSide));
+        orderBook.placeOrder(Order.buyOrder().qty(Long.MAX_VALUE).price(OrderFlow.MID_PRICE).build());
+        for (int i = 1; i <= 100; i++) {
+            orderBook.placeOrder(Order.buyOrder().qty(10).price(OrderFlow.MID_PRICE - i).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(OrderFlow.MID_PRICE + i).build());
+        }
+        crossingOrder = Order.sellOrder().qty(10).price(OrderFlow.MID_PRICE).build();
+        nonCrossingOrder = Order.buyOrder().qty(10).price(OrderFlow.MID_PRICE - 10).build();
+        listener = execution -> blackhole.consume(execution.getQty());
+    }
+
+    @Benchmark
+    public long crossing() {
+        return orderBook.placeOrder(crossingOrder, listener);
+    }
+
+    @Benchmark
+    public boolean nonCrossing() {
+        return orderBook.cancelOrder(orderBook.placeOrder(nonCrossingOrder, listener));
+    }
+}
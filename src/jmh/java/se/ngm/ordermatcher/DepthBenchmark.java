@@ -0,0 +1,64 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * How the time per order scales with the depth of the book: the generated order flow trades near the top of a book
+ * that has a number of price levels with one resting order each on both sides behind the top.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DepthBenchmark {
+
+    private static final int ORDER_COUNT = 1 << 20;
+    private static final int SPREAD = 50;
+
+    @Param({BookSides.TREE_MAP, BookSides.TICK_ARRAY, BookSides.B_TREE})
+    public String bookSide;
+
+    @Param({"1000", "100000", "1000000"})
+    public int depth;
+
+    private OrderBook orderBook;
+    private Order[] orders;
+    private int index;
+    private ExecutionListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orderBook = new OrderBook(BookSides.factory(bookSide));
+        // the deep levels are behind the prices of the flow, they are never traded
+        final long bidBehindFlow = OrderFlow.MID_PRICE - 10 * SPREAD;
+        final long askBehindFlow = OrderFlow.MID_PRICE + 10 * SPREAD;
+        for (int i = 0; i < depth; i++) {
+            orderBook.placeOrder(Order.buyOrder().qty(10).price(Math.max(1, bidBehindFlow - i)).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(askBehindFlow + i).build());
+        }
+        orders = OrderFlow.orders(ORDER_COUNT, SPREAD, 1);
+        listener = execution -> blackhole.consume(execution.getQty());
+        for (final Order order : orders) {
+            orderBook.placeOrder(order, listener);
+        }
+    }
+
+    @Benchmark
+    public long placeOrder() {
+        return orderBook.placeOrder(orders[index++ & (ORDER_COUNT - 1)], listener);
+    }
+}
@@ -0,0 +1,51 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The latency of rejecting a fill or kill order that is one lot larger than all the levels it could trade with, for
+ * books of different depth. The quantity is checked without visiting the levels, so the latency should not grow with
+ * the number of levels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FokBenchmark {
+
+    @Param({"100", "100000"})
+    public int levels;
+
+    private OrderBook orderBook;
+    private Order fok;
+    private final ExecutionListener listener = execution -> {
+        throw new AssertionError("an unfillable fok order must not trade");
+    };
+
+    @Setup
+    public void setUp() {
+        orderBook = new OrderBook();
+        for (int i = 0; i < levels; i++) {
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(1_000 + i).build());
+        }
+        fok = Order.buyOrder().qty(10L * levels + 1).price(1_000 + levels).type(OrderType.FOK).build();
+    }
+
+    @Benchmark
+    public long unfillableFok() {
+        return orderBook.placeOrder(fok, listener);
+    }
+}
@@ -0,0 +1,105 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+import se.ngm.ordermatcher.codec.OrderAckDecoder;
+
+/**
+ * The round trip of one order through an {@link OrderGateway} on the loopback interface, from writing the NewOrder
+ * message to reading its OrderAck, for a session with one order in flight. The orders alternate between a sell order
+ * that rests and a buy order that trades with it, so every other round trip includes an execution report. The
+ * sample mode gives the percentiles of the round trips.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GatewayBenchmark {
+
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final NewOrderEncoder newOrderEncoder = new NewOrderEncoder();
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+
+    private OrderGateway gateway;
+    private SocketChannel channel;
+    private long count;
+
+    @Setup
+    public void setUp() throws IOException {
+        gateway = new OrderGateway(new OrderBook(TickArrayBookSide::new),
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), OrderGateway.DEFAULT_CAPACITY);
+        channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), gateway.getPort()));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+        gateway.close();
+    }
+
+    @Benchmark
+    public long roundTrip() throws IOException {
+        newOrderEncoder.wrapAndApplyHeader(out, 0, headerEncoder)
+            .side(count++ % 2 == 0 ? Side.SELL : Side.BUY)
+            .qty(10)
+            .price(100);
+        out.limit(MessageHeaderEncoder.ENCODED_LENGTH + NewOrderEncoder.BLOCK_LENGTH).position(0);
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+        return readUntilAck();
+    }
+
+    /**
+     * @return the number of messages read, the execution reports and the ack
+     */
+    private long readUntilAck() throws IOException {
+        long messages = 0;
+        while (true) {
+            in.flip();
+            while (in.remaining() >= MessageHeaderDecoder.ENCODED_LENGTH) {
+                headerDecoder.wrap(in, in.position());
+                final int length = MessageHeaderDecoder.ENCODED_LENGTH + headerDecoder.blockLength();
+                if (in.remaining() < length) {
+                    break;
+                }
+                in.position(in.position() + length);
+                messages++;
+                if (headerDecoder.templateId() == OrderAckDecoder.TEMPLATE_ID) {
+                    in.compact();
+                    return messages;
+                }
+            }
+            in.compact();
+            if (channel.read(in) < 0) {
+                throw new IOException("closed by the gateway");
+            }
+        }
+    }
+}
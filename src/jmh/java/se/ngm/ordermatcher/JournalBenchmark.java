@@ -0,0 +1,83 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The throughput of placing generated order flow in a {@link JournaledOrderBook}, i.e. the cost of the journal on top
+ * of {@link PlaceOrderBenchmark} with the tick array book side, for a journal that is never forced to the storage
+ * device and for group commits of 100 and 10 000 records. Each iteration starts with a new journal in a temporary
+ * directory, which is deleted after the iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+
+    private static final int ORDER_COUNT = 1 << 20;
+
+    @Param({"0", "100", "10000"})
+    public int syncEvery;
+
+    private Order[] orders;
+    private int index;
+    private ExecutionListener listener;
+    private Path directory;
+    private Journal journal;
+    private OrderBook orderBook;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orders = OrderFlow.orders(ORDER_COUNT, 50, 1);
+        listener = execution -> blackhole.consume(execution.getQty());
+    }
+
+    @Setup(Level.Iteration)
+    public void openJournal() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new Journal(directory, Journal.DEFAULT_SEGMENT_SIZE, syncEvery);
+        orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal);
+        // fill the book before measuring
+        for (final Order order : orders) {
+            orderBook.placeOrder(order, listener);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteJournal() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long placeOrder() {
+        final Order order = orders[index++ & (ORDER_COUNT - 1)];
+        // the order ids of the flow are assigned by the book, the same order can be placed again
+        return orderBook.placeOrder(order, listener);
+    }
+}
@@ -0,0 +1,89 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The throughput of generated order flow on a very deep book, {@link OrderBook} (with {@link TickArrayBookSide})
+ * versus {@link OffHeapOrderBook}. The book holds a million resting orders far from the mid price that the flow never
+ * reaches, which the garbage collector has to trace for the on-heap book. Run with -prof gc for the GC counts and
+ * time; the heap used by the book is printed by the setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class OffHeapBenchmark {
+
+    static final String ON_HEAP = "OnHeap";
+    static final String OFF_HEAP = "OffHeap";
+
+    private static final int ORDER_COUNT = 1 << 20;
+    private static final int DEEP_LEVELS = 1_000;
+
+    @Param({ON_HEAP, OFF_HEAP})
+    public String book;
+
+    @Param({"1000000"})
+    public int restingOrders;
+
+    private OrderBook orderBook;
+    private OffHeapOrderBook offHeapOrderBook;
+    private Order[] orders;
+    private int index;
+    private ExecutionListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orders = OrderFlow.orders(ORDER_COUNT, 50, 1);
+        final long before = usedHeap();
+        if (ON_HEAP.equals(book)) {
+            orderBook = new OrderBook(TickArrayBookSide::new);
+        } else if (OFF_HEAP.equals(book)) {
+            offHeapOrderBook = new OffHeapOrderBook(restingOrders);
+        } else {
+            throw new IllegalArgumentException("unknown book: " + book);
+        }
+        listener = execution -> blackhole.consume(execution.getQty());
+        for (int i = 0; i < restingOrders / 2; i++) {
+            final long offset = 1_000 + i % DEEP_LEVELS;
+            place(Order.buyOrder().qty(10).price(OrderFlow.MID_PRICE - offset).build());
+            place(Order.sellOrder().qty(10).price(OrderFlow.MID_PRICE + offset).build());
+        }
+        for (final Order order : orders) {
+            place(order);
+        }
+        System.out.printf("%n%s book with %,d resting orders: %,d bytes of heap%n", book, restingOrders,
+            usedHeap() - before);
+    }
+
+    @Benchmark
+    public long placeOrder() {
+        return place(orders[index++ & (ORDER_COUNT - 1)]);
+    }
+
+    private long place(final Order order) {
+        return orderBook != null ? orderBook.placeOrder(order, listener) : offHeapOrderBook.placeOrder(order, listener);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
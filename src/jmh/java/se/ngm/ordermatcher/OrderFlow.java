@@ -0,0 +1,48 @@
+package se.ngm.ordermatcher;
+
+import java.util.Random;
+
+/**
+ * Generated order flow for the benchmarks: the prices of the orders are spread around a mid price that follows a
+ * random walk, so that some orders cross the spread and trade and the others rest in the book near the top, and the
+ * quantities are mostly small with an occasional large order.
+ */
+final class OrderFlow {
+
+    static final long MID_PRICE = 10_000;
+
+    private OrderFlow() {
+    }
+
+    /**
+     * @param spread the number of ticks on each side of the mid price that orders are placed at
+     */
+    static Order[] orders(final int count, final int spread, final long seed) {
+        final Random random = new Random(seed);
+        final Order[] orders = new Order[count];
+        long mid = MID_PRICE;
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(100) == 0) {
+                mid = Math.max(spread + 1, mid + random.nextInt(3) - 1);
+            }
+            final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            // most orders are placed on their own side of the mid price, some cross it
+            final long offset = Math.round(Math.abs(random.nextGaussian()) * spread / 3) - spread / 10;
+            final long price = Side.BUY.equals(side) ? mid - offset : mid + offset;
+            final long qty = random.nextInt(20) == 0 ? 100 + random.nextInt(900) : 1 + random.nextInt(100);
+            orders[i] = Order.builder().side(side).price(Math.max(1, price)).qty(qty).build();
+        }
+        return orders;
+    }
+
+    /**
+     * @return the orders in the text format of the console
+     */
+    static String[] lines(final Order[] orders) {
+        final String[] lines = new String[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            lines[i] = orders[i].getSide() + " " + orders[i].getQty() + "@" + orders[i].getPrice();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,51 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The throughput of the command mix that {@link OrderFlowSoak} runs, i.e. new orders of every type, cancels and amends
+ * from an {@link OrderFlowGenerator} with its default settings applied to an {@link OrderMatcher}. An operation is
+ * one command including its generation. Each iteration starts with a new generator and an empty book, the soak test
+ * itself shows how the run drifts over a longer time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderFlowBenchmark {
+
+    private TradeListener listener;
+    private OrderFlowGenerator generator;
+    private OrderMatcher matcher;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        listener = (price, qty) -> blackhole.consume(qty);
+    }
+
+    @Setup(Level.Iteration)
+    public void newRun() {
+        generator = OrderFlowGenerator.builder().build();
+        matcher = new OrderMatcher(new OrderBook(TickArrayBookSide::new));
+    }
+
+    @Benchmark
+    public boolean command() {
+        generator.next();
+        return generator.apply(matcher, listener);
+    }
+}
@@ -0,0 +1,54 @@
+package se.ngm.ordermatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of parsing one order line, {@link OrderParserUtil#parseOrder(String)} versus
+ * {@link OrderLineParser#parseOrder(byte[], int, int)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    private static final int LINE_COUNT = 1 << 16;
+
+    private String[] lines;
+    private byte[][] lineBytes;
+    private final OrderLineParser parser = new OrderLineParser();
+    private int index;
+
+    @Setup
+    public void setUp() {
+        lines = OrderFlow.lines(OrderFlow.orders(LINE_COUNT, 50, 1));
+        lineBytes = new byte[LINE_COUNT][];
+        for (int i = 0; i < LINE_COUNT; i++) {
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public Order orderParserUtil() {
+        return OrderParserUtil.parseOrder(lines[index++ & (LINE_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public Order orderLineParser() {
+        final byte[] line = lineBytes[index++ & (LINE_COUNT - 1)];
+        return parser.parseOrder(line, 0, line.length);
+    }
+}
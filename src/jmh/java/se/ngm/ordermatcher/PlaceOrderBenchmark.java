@@ -0,0 +1,56 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The throughput of {@link OrderBook#placeOrder(Order, ExecutionListener)} for generated order flow, where some of the
+ * orders trade and the others rest in the book. The flow is balanced so the book stays at about the same depth.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaceOrderBenchmark {
+
+    private static final int ORDER_COUNT = 1 << 20;
+
+    @Param({BookSides.TREE_MAP, BookSides.TICK_ARRAY})
+    public String bookSide;
+
+    private OrderBook orderBook;
+    private Order[] orders;
+    private int index;
+    private ExecutionListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orderBook = new OrderBook(BookSides.factory(bookSide));
+        orders = OrderFlow.orders(ORDER_COUNT, 50, 1);
+        listener = execution -> blackhole.consume(execution.getQty());
+        // fill the book before measuring
+        for (final Order order : orders) {
+            orderBook.placeOrder(order, listener);
+        }
+    }
+
+    @Benchmark
+    public long placeOrder() {
+        final Order order = orders[index++ & (ORDER_COUNT - 1)];
+        // the order ids of the flow are assigned by the book, the same order can be placed again
+        return orderBook.placeOrder(order, listener);
+    }
+}
@@ -0,0 +1,108 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * How the throughput of {@link ShardedOrderMatcher} scales with the number of shards: independent instruments and
+ * one submitting thread per shard that only submits orders for the instruments in its shard. An operation is one
+ * order, an invocation splits the same number of orders over the shards and waits until they have been matched.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShardBenchmark {
+
+    private static final int ORDER_COUNT = 1 << 17;
+    private static final int SYMBOLS_PER_SHARD = 64;
+
+    @Param({"1", "2", "4"})
+    public int shardCount;
+
+    private ShardedOrderMatcher matcher;
+    private ExecutorService executor;
+    private List<Producer> producers;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        matcher = new ShardedOrderMatcher(shardCount);
+        executor = Executors.newFixedThreadPool(shardCount);
+        final List<List<String>> symbolsByShard = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            symbolsByShard.add(new ArrayList<>());
+        }
+        for (int i = 0; symbolsByShard.stream().anyMatch(symbols -> symbols.size() < SYMBOLS_PER_SHARD); i++) {
+            final String symbol = "SYM" + i;
+            final List<String> symbols = symbolsByShard.get(matcher.shardOf(symbol));
+            if (symbols.size() < SYMBOLS_PER_SHARD) {
+                symbols.add(symbol);
+            }
+        }
+        final InstrumentExecutionListener listener = (symbol, execution) -> blackhole.consume(execution.getQty());
+        producers = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            final Order[] orders = OrderFlow.orders(ORDER_COUNT / shardCount, 50, i);
+            producers.add(new Producer(symbolsByShard.get(i), orders, listener));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        matcher.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDER_COUNT)
+    public void placeOrders() throws Exception {
+        final List<Future<?>> submitted = new ArrayList<>(shardCount);
+        for (final Producer producer : producers) {
+            submitted.add(executor.submit(producer));
+        }
+        for (final Future<?> future : submitted) {
+            future.get();
+        }
+        matcher.flush().get();
+    }
+
+    private final class Producer implements Runnable {
+        private final String[] symbols;
+        private final Order[] orders;
+        private final InstrumentExecutionListener listener;
+
+        private Producer(final List<String> symbols, final Order[] orders, final InstrumentExecutionListener listener) {
+            this.symbols = symbols.toArray(new String[0]);
+            this.orders = orders;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < orders.length; i++) {
+                // the order ids are assigned by the book, the same orders can be placed again
+                matcher.placeOrder(symbols[i % symbols.length], orders[i], listener);
+            }
+        }
+    }
+}
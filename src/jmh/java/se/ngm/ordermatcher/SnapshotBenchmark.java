@@ -0,0 +1,89 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The time to rebuild an order book when a {@link JournaledOrderBook} starts, by replaying the whole journal versus
+ * restoring an {@link OrderBookSnapshot}. The journal is a deep book of 100 000 resting orders followed by 400 000
+ * orders that trade as they arrive, the snapshot only holds the resting orders.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    private static final int RESTING_COUNT = 100_000;
+    private static final int TRADING_COUNT = 400_000;
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private Path directory;
+    private Path journalDirectory;
+    private Path snapshotFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        journalDirectory = directory.resolve("journal");
+        snapshotFile = directory.resolve("book.bin");
+        try (Journal journal = new Journal(journalDirectory, SEGMENT_SIZE, 0)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TreeMapBookSide::new, journal);
+            for (int i = 0; i < RESTING_COUNT; i++) {
+                orderBook.placeOrder(Order.builder()
+                    .side(i % 2 == 0 ? Side.BUY : Side.SELL)
+                    .qty(1 + i % 100)
+                    .price(i % 2 == 0 ? 1 + i % 50_000 : 100_000 + i % 50_000)
+                    .build());
+            }
+            for (int i = 0; i < TRADING_COUNT; i++) {
+                orderBook.placeOrder(Order.builder()
+                    .side(i % 2 == 0 ? Side.BUY : Side.SELL)
+                    .qty(10)
+                    .price(75_000)
+                    .build());
+            }
+            orderBook.snapshot(journal.getLastSequence()).writeTo(snapshotFile);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        try (Journal journal = new Journal(journalDirectory, SEGMENT_SIZE, 0)) {
+            return new JournaledOrderBook(TreeMapBookSide::new, journal).getOrderCount();
+        }
+    }
+
+    @Benchmark
+    public int restore() throws IOException {
+        final OrderBook orderBook = new OrderBook(TreeMapBookSide::new);
+        orderBook.restore(OrderBookSnapshot.readFrom(snapshotFile));
+        return orderBook.getOrderCount();
+    }
+}
@@ -0,0 +1,94 @@
+package se.ngm.ordermatcher;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The book side operations on a sparse buy side, where the prices of the levels span twelve orders of magnitude and do
+ * not fit in a tick array: looking up a level, the matching of the best level (the best price, its level, the next
+ * price, and the best level removed and added back), and adding and removing a level deep in the book.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SparseBookSideBenchmark {
+
+    private static final int PRICE_COUNT = 1 << 16;
+
+    @Param({BookSides.TREE_MAP, BookSides.B_TREE})
+    public String bookSide;
+
+    @Param({"1000", "100000", "1000000"})
+    public int levels;
+
+    private BookSide side;
+    private long[] prices;
+    private long[] absentPrices;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(1);
+        side = BookSides.factory(bookSide).create(Side.BUY);
+        final long[] levelPrices = new long[levels];
+        for (int i = 0; i < levels; i++) {
+            long price;
+            do {
+                price = sparsePrice(random);
+            } while (side.get(price) != null);
+            side.getOrCreate(price);
+            levelPrices[i] = price;
+        }
+        prices = new long[PRICE_COUNT];
+        absentPrices = new long[PRICE_COUNT];
+        for (int i = 0; i < PRICE_COUNT; i++) {
+            prices[i] = levelPrices[random.nextInt(levels)];
+            long price;
+            do {
+                price = sparsePrice(random);
+            } while (side.get(price) != null);
+            absentPrices[i] = price;
+        }
+    }
+
+    @Benchmark
+    public QueuedOrdersAtPrice get() {
+        return side.get(prices[index++ & (PRICE_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public long matchBestLevel() {
+        final long best = side.first();
+        side.get(best);
+        final long next = side.next(best);
+        side.remove(best);
+        side.getOrCreate(best);
+        return next;
+    }
+
+    @Benchmark
+    public QueuedOrdersAtPrice addAndRemoveLevel() {
+        final long price = absentPrices[index++ & (PRICE_COUNT - 1)];
+        final QueuedOrdersAtPrice ordersAtPrice = side.getOrCreate(price);
+        side.remove(price);
+        return ordersAtPrice;
+    }
+
+    private static long sparsePrice(final Random random) {
+        return 1 + (long) Math.pow(10, random.nextDouble() * 12);
+    }
+}
@@ -0,0 +1,65 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A large order that sweeps a number of price levels with a number of orders each. Every operation first refills the
+ * levels with resting sell orders and then sweeps them all with one buy order, i.e. the time is per sweep including
+ * the refill.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SweepBenchmark {
+
+    @Param({BookSides.TREE_MAP, BookSides.TICK_ARRAY})
+    public String bookSide;
+
+    @Param({"1", "10", "100"})
+    public int levels;
+
+    @Param({"1", "10"})
+    public int ordersPerLevel;
+
+    private OrderBook orderBook;
+    private Order[] restingOrders;
+    private Order sweepingOrder;
+    private ExecutionListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orderBook = new OrderBook(BookSides.factory(bookSide));
+        restingOrders = new Order[levels * ordersPerLevel];
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                restingOrders[level * ordersPerLevel + i] =
+                    Order.sellOrder().qty(10).price(OrderFlow.MID_PRICE + level).build();
+            }
+        }
+        sweepingOrder = Order.buyOrder().qty(10L * restingOrders.length).price(OrderFlow.MID_PRICE + levels).build();
+        listener = execution -> blackhole.consume(execution.getQty());
+    }
+
+    @Benchmark
+    public long sweep() {
+        for (final Order order : restingOrders) {
+            orderBook.placeOrder(order, listener);
+        }
+        return orderBook.placeOrder(sweepingOrder, listener);
+    }
+}
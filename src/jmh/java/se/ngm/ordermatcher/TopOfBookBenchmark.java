@@ -0,0 +1,65 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading the top of the book: the best bid and ask and the top 10 levels read from the aggregates of the price
+ * levels, compared with flattening every order with {@link OrderBook#getOrders(Side)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TopOfBookBenchmark {
+
+    private static final int LEVELS = 10;
+
+    @Param({BookSides.TREE_MAP, BookSides.TICK_ARRAY})
+    public String bookSide;
+
+    @Param({"1000", "100000"})
+    public int orders;
+
+    private OrderBook orderBook;
+    private DepthListener listener;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        orderBook = new OrderBook(BookSides.factory(bookSide));
+        // 10 orders per level
+        for (int i = 0; i < orders / 2; i++) {
+            orderBook.placeOrder(Order.buyOrder().qty(10).price(OrderFlow.MID_PRICE - 1 - i / 10).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(OrderFlow.MID_PRICE + 1 + i / 10).build());
+        }
+        listener = (level, price, qty, orderCount) -> blackhole.consume(qty);
+    }
+
+    @Benchmark
+    public long bestBidAndAsk() {
+        return orderBook.getBestAsk() - orderBook.getBestBid();
+    }
+
+    @Benchmark
+    public int depth() {
+        return orderBook.getDepth(Side.BUY, LEVELS, listener) + orderBook.getDepth(Side.SELL, LEVELS, listener);
+    }
+
+    @Benchmark
+    public int getOrders() {
+        return orderBook.getOrders(Side.BUY).size() + orderBook.getOrders(Side.SELL).size();
+    }
+}
@@ -0,0 +1,414 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A {@link BookSide} where the price levels are kept in a B+tree with primitive {@code long} keys, for instruments
+ * where the prices are too sparse or span too wide a range for a {@link TickArrayBookSide}.
+ *
+ * The keys are stored in priority order as plain ascending longs: the key of a sell price is the price and the key of
+ * a buy price is the negated price, so the tree compares primitive longs and needs neither a comparator nor boxing.
+ * The leaves hold up to {@value #MAX_KEYS} keys and their price levels in sorted arrays and are linked in key order,
+ * the first leaf always holds the best price.
+ *
+ * The leaf and the index of the last price looked up are kept as a cursor, so the access pattern of matching, i.e.
+ * {@link #first()} followed by {@link #get(long)}, {@link #next(long)} and {@link #remove(long)} of the same price,
+ * is O(1) without a descent from the root. Other lookups are O(log n) with a binary search in each node. Removed
+ * price levels are kept (up to {@value #MAX_SPARE_LEVELS}) and reused for new price levels.
+ *
+ *   BUY SIDE (key = -price)
+ *
+ *                    +-----+
+ *                    | -97 |
+ *                    +-----+
+ *                   /       \
+ *   +------+------+-----+   +-----+-----+
+ *   | -100 |  -99 | -98 |-->| -97 | -95 |
+ *   +------+------+-----+   +-----+-----+
+ *     ^best                          ^worst
+ */
+public class BTreeBookSide implements BookSide {
+
+    static final int MAX_KEYS = 64;
+
+    private static final int MIN_KEYS = MAX_KEYS / 2;
+    private static final int MAX_SPARE_LEVELS = 1024;
+
+    private final boolean buySide;
+    private final Leaf head = new Leaf();
+    private Node root = head;
+    private int levelCount;
+    private Leaf cursorLeaf;
+    private int cursorIndex;
+    private final ArrayDeque<QueuedOrdersAtPrice> spareLevels = new ArrayDeque<>();
+
+    // the separator key and the new right node of a split, passed up to the parent node
+    private long splitKey;
+    private Node splitNode;
+    // an inner node and the separator and child it overflows with while it is split
+    private final long[] overflowKeys = new long[MAX_KEYS + 1];
+    private final Node[] overflowChildren = new Node[MAX_KEYS + 2];
+
+    public BTreeBookSide(final Side side) {
+        this.buySide = Side.BUY.equals(Require.notNull(side, "side"));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return levelCount == 0;
+    }
+
+    @Override
+    public int size() {
+        return levelCount;
+    }
+
+    @Override
+    public long first() {
+        if (levelCount == 0) {
+            return NO_PRICE;
+        }
+        cursorLeaf = head;
+        cursorIndex = 0;
+        return priceOf(head.keys[0]);
+    }
+
+    @Override
+    public long next(final long price) {
+        final long key = keyOf(price);
+        Leaf leaf;
+        int index;
+        if (isAtCursor(key)) {
+            leaf = cursorLeaf;
+            index = cursorIndex + 1;
+        } else {
+            leaf = findLeaf(key);
+            index = upperBound(leaf.keys, leaf.size, key);
+        }
+        if (index == leaf.size) {
+            // only the root leaf can be empty, and it has no next leaf
+            leaf = leaf.next;
+            index = 0;
+            if (leaf == null) {
+                return NO_PRICE;
+            }
+        }
+        cursorLeaf = leaf;
+        cursorIndex = index;
+        return priceOf(leaf.keys[index]);
+    }
+
+    @Override
+    public QueuedOrdersAtPrice get(final long price) {
+        final long key = keyOf(price);
+        if (isAtCursor(key)) {
+            return cursorLeaf.values[cursorIndex];
+        }
+        final Leaf leaf = findLeaf(key);
+        final int index = Arrays.binarySearch(leaf.keys, 0, leaf.size, key);
+        if (index < 0) {
+            return null;
+        }
+        cursorLeaf = leaf;
+        cursorIndex = index;
+        return leaf.values[index];
+    }
+
+    @Override
+    public QueuedOrdersAtPrice getOrCreate(final long price) {
+        final long key = keyOf(price);
+        if (isAtCursor(key)) {
+            return cursorLeaf.values[cursorIndex];
+        }
+        final QueuedOrdersAtPrice ordersAtPrice = insert(root, key);
+        if (splitNode != null) {
+            final Inner newRoot = new Inner();
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitNode;
+            newRoot.size = 1;
+            root = newRoot;
+            splitNode = null;
+        }
+        return ordersAtPrice;
+    }
+
+    @Override
+    public void remove(final long price) {
+        final long key = keyOf(price);
+        if (isAtCursor(key) && (cursorLeaf.size > MIN_KEYS || cursorLeaf == root)) {
+            // no rebalancing needed, a separator equal to the removed key still separates the nodes correctly
+            removeAt(cursorLeaf, cursorIndex);
+            levelCount--;
+            return;
+        }
+        if (!remove(root, key)) {
+            return;
+        }
+        levelCount--;
+        // the nodes may have been merged, the cursor may be a leaf that is no longer in the tree
+        cursorLeaf = null;
+        if (root instanceof Inner && root.size == 0) {
+            root = ((Inner) root).children[0];
+        }
+    }
+
+    private long keyOf(final long price) {
+        return buySide ? -price : price;
+    }
+
+    private long priceOf(final long key) {
+        return buySide ? -key : key;
+    }
+
+    private boolean isAtCursor(final long key) {
+        return cursorLeaf != null && cursorIndex < cursorLeaf.size && cursorLeaf.keys[cursorIndex] == key;
+    }
+
+    private Leaf findLeaf(final long key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            final Inner inner = (Inner) node;
+            node = inner.children[upperBound(inner.keys, inner.size, key)];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * @return the number of keys that are less than or equal to the key, i.e. the index of the child of an inner node
+     * that the key belongs to
+     */
+    private static int upperBound(final long[] keys, final int size, final long key) {
+        final int index = Arrays.binarySearch(keys, 0, size, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Inserts the key in the subtree of the node. If the node is split the separator key and the new right node are
+     * left in {@link #splitKey} and {@link #splitNode} for the parent.
+     */
+    private QueuedOrdersAtPrice insert(final Node node, final long key) {
+        if (node instanceof Leaf) {
+            return insert((Leaf) node, key);
+        }
+        final Inner inner = (Inner) node;
+        final int childIndex = upperBound(inner.keys, inner.size, key);
+        final QueuedOrdersAtPrice ordersAtPrice = insert(inner.children[childIndex], key);
+        if (splitNode != null) {
+            insert(inner, childIndex, splitKey, splitNode);
+        }
+        return ordersAtPrice;
+    }
+
+    private QueuedOrdersAtPrice insert(final Leaf leaf, final long key) {
+        final int found = Arrays.binarySearch(leaf.keys, 0, leaf.size, key);
+        if (found >= 0) {
+            cursorLeaf = leaf;
+            cursorIndex = found;
+            return leaf.values[found];
+        }
+        final QueuedOrdersAtPrice ordersAtPrice = spareLevels.isEmpty() ? new QueuedOrdersAtPrice() : spareLevels.pop();
+        levelCount++;
+        final int index = -found - 1;
+        if (leaf.size < MAX_KEYS) {
+            insertAt(leaf, index, key, ordersAtPrice);
+            return ordersAtPrice;
+        }
+
+        final Leaf right = new Leaf();
+        final int half = MAX_KEYS / 2;
+        System.arraycopy(leaf.keys, half, right.keys, 0, MAX_KEYS - half);
+        System.arraycopy(leaf.values, half, right.values, 0, MAX_KEYS - half);
+        Arrays.fill(leaf.values, half, MAX_KEYS, null);
+        right.size = MAX_KEYS - half;
+        leaf.size = half;
+        right.next = leaf.next;
+        leaf.next = right;
+        if (index <= half) {
+            insertAt(leaf, index, key, ordersAtPrice);
+        } else {
+            insertAt(right, index - half, key, ordersAtPrice);
+        }
+        splitKey = right.keys[0];
+        splitNode = right;
+        return ordersAtPrice;
+    }
+
+    private void insertAt(final Leaf leaf, final int index, final long key, final QueuedOrdersAtPrice ordersAtPrice) {
+        System.arraycopy(leaf.keys, index, leaf.keys, index + 1, leaf.size - index);
+        System.arraycopy(leaf.values, index, leaf.values, index + 1, leaf.size - index);
+        leaf.keys[index] = key;
+        leaf.values[index] = ordersAtPrice;
+        leaf.size++;
+        cursorLeaf = leaf;
+        cursorIndex = index;
+    }
+
+    /**
+     * Inserts the separator key and the new right node of the split child at the index.
+     */
+    private void insert(final Inner inner, final int childIndex, final long key, final Node right) {
+        if (inner.size < MAX_KEYS) {
+            System.arraycopy(inner.keys, childIndex, inner.keys, childIndex + 1, inner.size - childIndex);
+            System.arraycopy(inner.children, childIndex + 1, inner.children, childIndex + 2,
+                inner.size - childIndex);
+            inner.keys[childIndex] = key;
+            inner.children[childIndex + 1] = right;
+            inner.size++;
+            splitNode = null;
+            return;
+        }
+
+        // MAX_KEYS + 1 keys, the middle key moves up to the parent
+        System.arraycopy(inner.keys, 0, overflowKeys, 0, childIndex);
+        overflowKeys[childIndex] = key;
+        System.arraycopy(inner.keys, childIndex, overflowKeys, childIndex + 1, MAX_KEYS - childIndex);
+        System.arraycopy(inner.children, 0, overflowChildren, 0, childIndex + 1);
+        overflowChildren[childIndex + 1] = right;
+        System.arraycopy(inner.children, childIndex + 1, overflowChildren, childIndex + 2, MAX_KEYS - childIndex);
+
+        final int middle = (MAX_KEYS + 1) / 2;
+        final Inner newRight = new Inner();
+        System.arraycopy(overflowKeys, 0, inner.keys, 0, middle);
+        System.arraycopy(overflowChildren, 0, inner.children, 0, middle + 1);
+        Arrays.fill(inner.children, middle + 1, MAX_KEYS + 1, null);
+        inner.size = middle;
+        System.arraycopy(overflowKeys, middle + 1, newRight.keys, 0, MAX_KEYS - middle);
+        System.arraycopy(overflowChildren, middle + 1, newRight.children, 0, MAX_KEYS - middle + 1);
+        newRight.size = MAX_KEYS - middle;
+        Arrays.fill(overflowChildren, null);
+        splitKey = overflowKeys[middle];
+        splitNode = newRight;
+    }
+
+    /**
+     * Removes the key from the subtree of the node, a child that has too few keys after the removal is rebalanced
+     * with a sibling.
+     *
+     * @return false if the key was not found
+     */
+    private boolean remove(final Node node, final long key) {
+        if (node instanceof Leaf) {
+            final Leaf leaf = (Leaf) node;
+            final int index = Arrays.binarySearch(leaf.keys, 0, leaf.size, key);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(leaf, index);
+            return true;
+        }
+        final Inner inner = (Inner) node;
+        final int childIndex = upperBound(inner.keys, inner.size, key);
+        if (!remove(inner.children[childIndex], key)) {
+            return false;
+        }
+        if (inner.children[childIndex].size < MIN_KEYS) {
+            rebalance(inner, childIndex);
+        }
+        return true;
+    }
+
+    private void removeAt(final Leaf leaf, final int index) {
+        final QueuedOrdersAtPrice ordersAtPrice = leaf.values[index];
+        if (spareLevels.size() < MAX_SPARE_LEVELS && ordersAtPrice.isEmpty()) {
+            spareLevels.push(ordersAtPrice);
+        }
+        System.arraycopy(leaf.keys, index + 1, leaf.keys, index, leaf.size - index - 1);
+        System.arraycopy(leaf.values, index + 1, leaf.values, index, leaf.size - index - 1);
+        leaf.size--;
+        leaf.values[leaf.size] = null;
+    }
+
+    /**
+     * Merges the child with a sibling if their keys fit in one node and otherwise moves one key from the sibling to
+     * the child. A right node is always merged into the left node, so the first leaf stays the first leaf.
+     */
+    private void rebalance(final Inner parent, final int childIndex) {
+        final int leftIndex = childIndex > 0 ? childIndex - 1 : 0;
+        final Node left = parent.children[leftIndex];
+        final Node right = parent.children[leftIndex + 1];
+        if (left instanceof Leaf) {
+            final Leaf leftLeaf = (Leaf) left;
+            final Leaf rightLeaf = (Leaf) right;
+            if (leftLeaf.size + rightLeaf.size <= MAX_KEYS) {
+                System.arraycopy(rightLeaf.keys, 0, leftLeaf.keys, leftLeaf.size, rightLeaf.size);
+                System.arraycopy(rightLeaf.values, 0, leftLeaf.values, leftLeaf.size, rightLeaf.size);
+                leftLeaf.size += rightLeaf.size;
+                leftLeaf.next = rightLeaf.next;
+                removeChild(parent, leftIndex);
+            } else if (leftLeaf.size > rightLeaf.size) {
+                System.arraycopy(rightLeaf.keys, 0, rightLeaf.keys, 1, rightLeaf.size);
+                System.arraycopy(rightLeaf.values, 0, rightLeaf.values, 1, rightLeaf.size);
+                rightLeaf.keys[0] = leftLeaf.keys[leftLeaf.size - 1];
+                rightLeaf.values[0] = leftLeaf.values[leftLeaf.size - 1];
+                rightLeaf.size++;
+                leftLeaf.size--;
+                leftLeaf.values[leftLeaf.size] = null;
+                parent.keys[leftIndex] = rightLeaf.keys[0];
+            } else {
+                leftLeaf.keys[leftLeaf.size] = rightLeaf.keys[0];
+                leftLeaf.values[leftLeaf.size] = rightLeaf.values[0];
+                leftLeaf.size++;
+                System.arraycopy(rightLeaf.keys, 1, rightLeaf.keys, 0, rightLeaf.size - 1);
+                System.arraycopy(rightLeaf.values, 1, rightLeaf.values, 0, rightLeaf.size - 1);
+                rightLeaf.size--;
+                rightLeaf.values[rightLeaf.size] = null;
+                parent.keys[leftIndex] = rightLeaf.keys[0];
+            }
+            return;
+        }
+
+        final Inner leftInner = (Inner) left;
+        final Inner rightInner = (Inner) right;
+        if (leftInner.size + rightInner.size + 1 <= MAX_KEYS) {
+            leftInner.keys[leftInner.size] = parent.keys[leftIndex];
+            System.arraycopy(rightInner.keys, 0, leftInner.keys, leftInner.size + 1, rightInner.size);
+            System.arraycopy(rightInner.children, 0, leftInner.children, leftInner.size + 1, rightInner.size + 1);
+            leftInner.size += rightInner.size + 1;
+            removeChild(parent, leftIndex);
+        } else if (leftInner.size > rightInner.size) {
+            System.arraycopy(rightInner.keys, 0, rightInner.keys, 1, rightInner.size);
+            System.arraycopy(rightInner.children, 0, rightInner.children, 1, rightInner.size + 1);
+            rightInner.keys[0] = parent.keys[leftIndex];
+            rightInner.children[0] = leftInner.children[leftInner.size];
+            rightInner.size++;
+            parent.keys[leftIndex] = leftInner.keys[leftInner.size - 1];
+            leftInner.children[leftInner.size] = null;
+            leftInner.size--;
+        } else {
+            leftInner.keys[leftInner.size] = parent.keys[leftIndex];
+            leftInner.children[leftInner.size + 1] = rightInner.children[0];
+            leftInner.size++;
+            parent.keys[leftIndex] = rightInner.keys[0];
+            System.arraycopy(rightInner.keys, 1, rightInner.keys, 0, rightInner.size - 1);
+            System.arraycopy(rightInner.children, 1, rightInner.children, 0, rightInner.size);
+            rightInner.children[rightInner.size] = null;
+            rightInner.size--;
+        }
+    }
+
+    /**
+     * Removes the separator key at the index and the child to the right of it.
+     */
+    private static void removeChild(final Inner parent, final int keyIndex) {
+        System.arraycopy(parent.keys, keyIndex + 1, parent.keys, keyIndex, parent.size - keyIndex - 1);
+        System.arraycopy(parent.children, keyIndex + 2, parent.children, keyIndex + 1, parent.size - keyIndex - 1);
+        parent.children[parent.size] = null;
+        parent.size--;
+    }
+
+    private abstract static class Node {
+        final long[] keys = new long[MAX_KEYS];
+        int size;
+    }
+
+    private static final class Leaf extends Node {
+        final QueuedOrdersAtPrice[] values = new QueuedOrdersAtPrice[MAX_KEYS];
+        Leaf next;
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children = new Node[MAX_KEYS + 1];
+    }
+}
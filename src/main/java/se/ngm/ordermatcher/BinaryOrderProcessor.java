@@ -0,0 +1,222 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import se.ngm.ordermatcher.codec.AmendOrderDecoder;
+import se.ngm.ordermatcher.codec.CancelOrderDecoder;
+import se.ngm.ordermatcher.codec.ExecutionReportEncoder;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderDecoder;
+
+/**
+ * Feeds binary encoded messages, see {@link se.ngm.ordermatcher.codec}, into an order book and writes the fills as
+ * binary encoded execution reports.
+ *
+ * The messages are decoded in place by flyweights and the new orders are placed through one reused order, i.e. no
+ * objects are created per message. The input can be any channel, e.g. a file or a socket.
+ *
+ * The execution reports have the taker and maker ids and the quantities they have left, and are numbered by the order
+ * book. In the aggregated print mode the fills of an order at each price level are merged into one execution report,
+ * see {@link ExecutionAggregator}, which cuts the number of reports of an order that sweeps many small orders.
+ *
+ * Messages that the order book rejects (e.g. a duplicate order id, or a cancel or amend of an unknown order) are
+ * counted, see {@link #getRejectedCount()}, messages with an unknown template id are skipped. A message that is
+ * larger than the buffer is a framing error, the input cannot be resynchronized.
+ */
+public class BinaryOrderProcessor implements ExecutionListener {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OrderBook orderBook;
+    private final WritableByteChannel reports;
+    private final ExecutionListener executionListener;
+
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+    private final NewOrderDecoder newOrderDecoder = new NewOrderDecoder();
+    private final CancelOrderDecoder cancelOrderDecoder = new CancelOrderDecoder();
+    private final AmendOrderDecoder amendOrderDecoder = new AmendOrderDecoder();
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final ExecutionReportEncoder executionReportEncoder = new ExecutionReportEncoder();
+
+    private final Order order = new Order();
+    private final ByteBuffer reportBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long messageCount;
+    private long rejectedCount;
+    private long executionCount;
+
+    /**
+     * @param reports the channel the execution reports are written to or null if they are not written
+     */
+    public BinaryOrderProcessor(final OrderBook orderBook, final WritableByteChannel reports) {
+        this(orderBook, reports, false);
+    }
+
+    /**
+     * @param reports         the channel the execution reports are written to or null if they are not written
+     * @param aggregatePrints true if the fills of an order at a price level are merged into one execution report
+     */
+    public BinaryOrderProcessor(final OrderBook orderBook, final WritableByteChannel reports,
+                                final boolean aggregatePrints) {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+        this.reports = reports;
+        this.executionListener = aggregatePrints ? new ExecutionAggregator(this) : this;
+    }
+
+    /**
+     * Processes the complete messages between the position and the limit of the buffer. The position is moved past
+     * the processed messages, an incomplete message at the end of the buffer is left for the next call.
+     *
+     * @return the number of processed messages
+     * @throws IOException if the execution reports cannot be written or on a framing error, i.e. a message that is
+     *                     larger than the buffer
+     */
+    public int process(final ByteBuffer buffer) throws IOException {
+        int offset = buffer.position();
+        final int limit = buffer.limit();
+        int count = 0;
+        while (limit - offset >= MessageHeaderDecoder.ENCODED_LENGTH) {
+            headerDecoder.wrap(buffer, offset);
+            final int blockLength = headerDecoder.blockLength();
+            final int messageLength = MessageHeaderDecoder.ENCODED_LENGTH + blockLength;
+            if (messageLength > buffer.capacity()) {
+                // the rest of the message would never fit, waiting for it would spin forever
+                buffer.position(offset);
+                messageCount += count;
+                throw new IOException("framing error: block length " + blockLength + " of template "
+                    + headerDecoder.templateId() + " at message " + (messageCount + 1));
+            }
+            if (limit - offset < messageLength) {
+                break;
+            }
+            onMessage(buffer, offset + MessageHeaderDecoder.ENCODED_LENGTH, headerDecoder.templateId(), blockLength);
+            offset += messageLength;
+            count++;
+        }
+        buffer.position(offset);
+        messageCount += count;
+        return count;
+    }
+
+    /**
+     * Processes all messages of the channel until end of stream and flushes the execution reports.
+     *
+     * @return the number of processed messages
+     * @throws IOException if the channel cannot be read, ends with an incomplete message, on a framing error or if
+     *                     the execution reports cannot be written
+     */
+    public long processAll(final ReadableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long count = 0;
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            count += process(buffer);
+            buffer.compact();
+        }
+        flush();
+        if (buffer.position() > 0) {
+            throw new IOException("incomplete message at end of stream: " + buffer.position() + " bytes");
+        }
+        return count;
+    }
+
+    /**
+     * Writes the buffered execution reports to the channel.
+     */
+    public void flush() throws IOException {
+        if (reports == null) {
+            return;
+        }
+        reportBuffer.flip();
+        while (reportBuffer.hasRemaining()) {
+            reports.write(reportBuffer);
+        }
+        reportBuffer.clear();
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getExecutionCount() {
+        return executionCount;
+    }
+
+    @Override
+    public void onExecution(final Execution execution) {
+        executionCount++;
+        if (reports == null) {
+            return;
+        }
+        final int length = MessageHeaderEncoder.ENCODED_LENGTH + ExecutionReportEncoder.BLOCK_LENGTH;
+        if (reportBuffer.remaining() < length) {
+            try {
+                flush();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final int offset = reportBuffer.position();
+        executionReportEncoder.wrapAndApplyHeader(reportBuffer, offset, headerEncoder)
+            .takerOrderId(execution.getTakerOrderId())
+            .makerOrderId(execution.getMakerOrderId())
+            .price(execution.getPrice())
+            .qty(execution.getQty())
+            .takerSide(execution.getTakerSide())
+            .sequence(execution.getSequence())
+            .takerLeavesQty(execution.getTakerLeavesQty())
+            .makerLeavesQty(execution.getMakerLeavesQty())
+            .makerCount(execution.getMakerCount());
+        reportBuffer.position(offset + length);
+    }
+
+    private void onMessage(final ByteBuffer buffer, final int offset, final int templateId, final int blockLength)
+        throws IOException {
+        try {
+            switch (templateId) {
+                case NewOrderDecoder.TEMPLATE_ID:
+                    newOrderDecoder.wrap(buffer, offset, blockLength);
+                    placeOrder(newOrderDecoder);
+                    break;
+                case CancelOrderDecoder.TEMPLATE_ID:
+                    cancelOrderDecoder.wrap(buffer, offset, blockLength);
+                    if (!orderBook.cancelOrder(cancelOrderDecoder.orderId())) {
+                        rejectedCount++;
+                    }
+                    break;
+                case AmendOrderDecoder.TEMPLATE_ID:
+                    amendOrderDecoder.wrap(buffer, offset, blockLength);
+                    if (!orderBook.amendOrder(amendOrderDecoder.orderId(), amendOrderDecoder.qty())) {
+                        rejectedCount++;
+                    }
+                    break;
+                default:
+                    // unknown message, skipped by its block length
+                    break;
+            }
+        } catch (final IllegalArgumentException e) {
+            rejectedCount++;
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void placeOrder(final NewOrderDecoder decoder) {
+        final long price = decoder.price();
+        final long qty = decoder.qty();
+        final long orderId = decoder.orderId();
+        final OrderType type = decoder.orderType();
+        // the decoded values are validated here since the reused order does not go through the builder
+        Order.validate(orderId, price, qty, type);
+        orderBook.placeOrder(order.set(orderId, decoder.side(), price, qty, type), executionListener);
+    }
+}
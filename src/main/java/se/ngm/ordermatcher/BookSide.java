@@ -0,0 +1,61 @@
+package se.ngm.ordermatcher;
+
+/**
+ * One side (buy or sell) of an {@link OrderBook}. A book side holds the orders queued at each price level and
+ * navigates the price levels in priority order, i.e. the best price first. On the buy side the best price is the
+ * highest price and on the sell side the best price is the lowest price.
+ *
+ * Navigation is done with primitive prices:
+ *
+ * <pre>
+ *   for (long price = side.first(); price != BookSide.NO_PRICE; price = side.next(price)) {
+ *       final QueuedOrdersAtPrice ordersAtPrice = side.get(price);
+ *       ...
+ *   }
+ * </pre>
+ */
+public interface BookSide {
+
+    /**
+     * Returned by {@link #first()} and {@link #next(long)} when there is no (further) price level. Orders always have
+     * a price > 0 so this value is never a valid price.
+     */
+    long NO_PRICE = Long.MIN_VALUE;
+
+    boolean isEmpty();
+
+    /**
+     * @return the number of price levels
+     */
+    int size();
+
+    /**
+     * @return the best price of this side or {@link #NO_PRICE} if the side is empty
+     */
+    long first();
+
+    /**
+     * @return the price level following the specified price in priority order or {@link #NO_PRICE} if there is none
+     */
+    long next(long price);
+
+    /**
+     * @return the orders queued at the specified price or null if there is no such price level
+     */
+    QueuedOrdersAtPrice get(long price);
+
+    /**
+     * @return the orders queued at the specified price, the price level is created if it does not exist
+     */
+    QueuedOrdersAtPrice getOrCreate(long price);
+
+    void remove(long price);
+
+    /**
+     * Creates the book side of an order book, e.g. {@code TreeMapBookSide::new}.
+     */
+    @FunctionalInterface
+    interface Factory {
+        BookSide create(Side side);
+    }
+}
@@ -0,0 +1,17 @@
+package se.ngm.ordermatcher;
+
+/**
+ * Receives the price levels of one side of an {@link OrderBook}, best price first, see
+ * {@link OrderBook#getDepth(Side, int, DepthListener)}. The levels are delivered with primitive arguments so that
+ * reading the depth does not need to allocate any objects.
+ */
+@FunctionalInterface
+public interface DepthListener {
+
+    /**
+     * @param level      the index of the level, 0 for the best price
+     * @param qty        the total quantity of the orders at the price
+     * @param orderCount the number of orders at the price
+     */
+    void onLevel(int level, long price, long qty, int orderCount);
+}
@@ -0,0 +1,188 @@
+package se.ngm.ordermatcher;
+
+import java.util.Locale;
+
+/**
+ * Latency histograms and counters of the hot path of the order matcher:
+ * <ul>
+ *   <li>latencies in nanoseconds of parsing a command, {@link OrderBook#placeOrder(Order, ExecutionListener)},
+ *   each {@code Matcher.matchAtPrice} call and writing the output, see {@link Probe}</li>
+ *   <li>the number of orders, trades and price levels swept, and the levels swept per order</li>
+ *   <li>the depth of the book, i.e. the number of price levels per side and the number of resting orders</li>
+ * </ul>
+ *
+ * Recording is switched on and off at runtime with {@link #setEnabled(boolean)}, it is off by default. When it is
+ * off the instrumented code only reads one volatile flag per command, when it is on every probe reads the clock twice
+ * and records into a preallocated {@link Histogram}, i.e. recording does not allocate. The stats are recorded and read
+ * by the thread that owns the order book.
+ */
+public class EngineStats {
+
+    public enum Probe {
+        PARSE, PLACE_ORDER, MATCH_AT_PRICE, OUTPUT;
+
+        /**
+         * @return the name used in the formatted stats, e.g. placeOrder
+         */
+        public String label() {
+            final String[] words = name().toLowerCase(Locale.ROOT).split("_");
+            final StringBuilder label = new StringBuilder(words[0]);
+            for (int i = 1; i < words.length; i++) {
+                label.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+            }
+            return label.toString();
+        }
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Histogram[] latencies = new Histogram[Probe.values().length];
+    private final Histogram levelsSweptPerOrder = new Histogram();
+    private volatile boolean enabled;
+
+    private long orderCount;
+    private long tradeCount;
+    private long levelsSwept;
+    private int buyLevels;
+    private int sellLevels;
+    private int restingOrders;
+
+    public EngineStats() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records a latency, the caller checks {@link #isEnabled()} before reading the clock.
+     */
+    public void record(final Probe probe, final long nanos) {
+        latencies[probe.ordinal()].record(nanos);
+    }
+
+    void onOrder(final int levelsSwept, final long trades) {
+        orderCount++;
+        tradeCount += trades;
+        this.levelsSwept += levelsSwept;
+        levelsSweptPerOrder.record(levelsSwept);
+    }
+
+    void onDepth(final int buyLevels, final int sellLevels, final int restingOrders) {
+        this.buyLevels = buyLevels;
+        this.sellLevels = sellLevels;
+        this.restingOrders = restingOrders;
+    }
+
+    public Histogram getLatencies(final Probe probe) {
+        return latencies[probe.ordinal()];
+    }
+
+    public Histogram getLevelsSweptPerOrder() {
+        return levelsSweptPerOrder;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    public long getLevelsSwept() {
+        return levelsSwept;
+    }
+
+    public int getBuyLevels() {
+        return buyLevels;
+    }
+
+    public int getSellLevels() {
+        return sellLevels;
+    }
+
+    public int getRestingOrders() {
+        return restingOrders;
+    }
+
+    /**
+     * Clears the histograms and the counters, the depth of the book is kept.
+     */
+    public void reset() {
+        for (final Histogram histogram : latencies) {
+            histogram.reset();
+        }
+        levelsSweptPerOrder.reset();
+        orderCount = 0;
+        tradeCount = 0;
+        levelsSwept = 0;
+    }
+
+    /**
+     * @return the stats as a table for the console
+     */
+    public String format() {
+        final StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "recording=%s orders=%d trades=%d levelsSwept=%d%n",
+            enabled ? "on" : "off", orderCount, tradeCount, levelsSwept));
+        text.append(String.format(Locale.ROOT, "depth: buyLevels=%d sellLevels=%d restingOrders=%d%n",
+            buyLevels, sellLevels, restingOrders));
+        text.append(String.format(Locale.ROOT, "%-20s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+            "", "count", "min", "p50", "p90", "p99", "p99.9", "max", "mean"));
+        for (final Probe probe : Probe.values()) {
+            format(text, probe.label() + " (ns)", latencies[probe.ordinal()]);
+        }
+        format(text, "levelsSwept/order", levelsSweptPerOrder);
+        return text.toString();
+    }
+
+    /**
+     * @return the stats as a JSON object
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT,
+            "{\"enabled\":%b,\"orders\":%d,\"trades\":%d,\"levelsSwept\":%d,"
+                + "\"depth\":{\"buyLevels\":%d,\"sellLevels\":%d,\"restingOrders\":%d},\"latencies\":{",
+            enabled, orderCount, tradeCount, levelsSwept, buyLevels, sellLevels, restingOrders));
+        for (final Probe probe : Probe.values()) {
+            if (probe.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(probe.label()).append("\":");
+            toJson(json, latencies[probe.ordinal()]);
+        }
+        json.append("},\"levelsSweptPerOrder\":");
+        toJson(json, levelsSweptPerOrder);
+        return json.append('}').toString();
+    }
+
+    private static void format(final StringBuilder text, final String label, final Histogram histogram) {
+        text.append(String.format(Locale.ROOT, "%-20s %10d %10d", label, histogram.getTotalCount(),
+            histogram.getMin()));
+        for (final double percentile : PERCENTILES) {
+            text.append(String.format(Locale.ROOT, " %10d", histogram.getValueAtPercentile(percentile)));
+        }
+        text.append(String.format(Locale.ROOT, " %10d %10.1f%n", histogram.getMax(), histogram.getMean()));
+    }
+
+    private static void toJson(final StringBuilder json, final Histogram histogram) {
+        json.append(String.format(Locale.ROOT, "{\"count\":%d,\"min\":%d,\"mean\":%.1f,\"max\":%d",
+            histogram.getTotalCount(), histogram.getMin(), histogram.getMean(), histogram.getMax()));
+        for (final double percentile : PERCENTILES) {
+            json.append(String.format(Locale.ROOT, ",\"p%s\":%d",
+                percentile == (long) percentile ? String.valueOf((long) percentile)
+                    : String.valueOf(percentile).replace(".", ""),
+                histogram.getValueAtPercentile(percentile)));
+        }
+        json.append('}');
+    }
+}
@@ -0,0 +1,147 @@
+package se.ngm.ordermatcher;
+
+/**
+ * A fill between the active (taker) order and a passive (maker) order in an {@link OrderBook}. An order book reuses
+ * one execution for all its fills, i.e. an execution is only valid during the call to
+ * {@link ExecutionListener#onExecution(Execution)}.
+ *
+ * An execution can also be an aggregated print of the consecutive fills of a taker order at one price level, see
+ * {@link ExecutionAggregator}, in which case {@link #getMakerCount()} is the number of fills that it merges.
+ */
+public class Execution {
+    private long sequence;
+    private long takerOrderId;
+    private Side takerSide;
+    private long takerLeavesQty;
+    private long makerOrderId;
+    private long makerLeavesQty;
+    private int makerCount;
+    private long price;
+    private long qty;
+    // the number of fills of the current taker order
+    private int fillCount;
+
+    /**
+     * @return the sequence number of the execution, the executions of an order book (or the prints of an
+     * {@link ExecutionAggregator}) are numbered from 1 without gaps
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTakerOrderId() {
+        return takerOrderId;
+    }
+
+    public Side getTakerSide() {
+        return takerSide;
+    }
+
+    /**
+     * @return the quantity of the taker order that is left after this execution
+     */
+    public long getTakerLeavesQty() {
+        return takerLeavesQty;
+    }
+
+    /**
+     * @return the id of the maker order or 0 if this is an aggregated print of more than one fill
+     */
+    public long getMakerOrderId() {
+        return makerOrderId;
+    }
+
+    /**
+     * @return the quantity of the (last) maker order that is left in the order book after this execution, the maker
+     * orders before the last one of an aggregated print are always filled completely
+     */
+    public long getMakerLeavesQty() {
+        return makerLeavesQty;
+    }
+
+    /**
+     * @return the number of maker orders filled by this execution, 1 unless this is an aggregated print
+     */
+    public int getMakerCount() {
+        return makerCount;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public long getQty() {
+        return qty;
+    }
+
+    /**
+     * Continues the numbering after the sequence, e.g. the last execution of the order book a snapshot was captured
+     * from.
+     */
+    void continueAfter(final long sequence) {
+        this.sequence = sequence;
+    }
+
+    void taker(final long takerOrderId, final Side takerSide) {
+        this.takerOrderId = takerOrderId;
+        this.takerSide = takerSide;
+        this.fillCount = 0;
+    }
+
+    void fill(final long makerOrderId, final long price, final long qty, final long makerLeavesQty,
+              final long takerLeavesQty) {
+        this.sequence++;
+        this.makerOrderId = makerOrderId;
+        this.makerLeavesQty = makerLeavesQty;
+        this.makerCount = 1;
+        this.takerLeavesQty = takerLeavesQty;
+        this.price = price;
+        this.qty = qty;
+        this.fillCount++;
+    }
+
+    /**
+     * Sets this execution to the values of the first fill of an aggregated print.
+     */
+    void print(final long sequence, final Execution fill) {
+        this.sequence = sequence;
+        this.takerOrderId = fill.takerOrderId;
+        this.takerSide = fill.takerSide;
+        this.takerLeavesQty = fill.takerLeavesQty;
+        this.makerOrderId = fill.makerOrderId;
+        this.makerLeavesQty = fill.makerLeavesQty;
+        this.makerCount = 1;
+        this.price = fill.price;
+        this.qty = fill.qty;
+    }
+
+    /**
+     * Merges the next fill of the same taker order at the same price into this aggregated print.
+     */
+    void merge(final Execution fill) {
+        this.takerLeavesQty = fill.takerLeavesQty;
+        this.makerOrderId = 0;
+        this.makerLeavesQty = fill.makerLeavesQty;
+        this.makerCount++;
+        this.qty += fill.qty;
+    }
+
+    int getFillCount() {
+        return fillCount;
+    }
+
+    /**
+     * @return an immutable copy of the price and quantity of this execution
+     */
+    public Trade toTrade() {
+        return Trade.builder()
+            .price(price)
+            .qty(qty)
+            .build();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TRADE %d@%d", qty, price);
+    }
+}
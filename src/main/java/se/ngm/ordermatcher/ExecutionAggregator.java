@@ -0,0 +1,57 @@
+package se.ngm.ordermatcher;
+
+/**
+ * Merges the fills of a taker order at each price level into one print, i.e. an order that sweeps 500 small orders
+ * at 3 prices is reported as 3 executions instead of 500. A print has the price, the total quantity and the number of
+ * maker orders of its fills and the quantities left after the last fill, see {@link Execution}.
+ *
+ * A print is passed to the delegate listener when the taker order moves to the next price level and after its last
+ * fill, see {@link ExecutionListener#onExecutionsEnd(long)}. The prints are numbered from 1 without gaps, the
+ * sequence numbers of the fills are not used.
+ *
+ * The aggregator reuses one execution for its prints, like an order book, i.e. it does not allocate.
+ */
+public class ExecutionAggregator implements ExecutionListener {
+
+    private final ExecutionListener delegate;
+    private final Execution print = new Execution();
+    private long sequence;
+    private boolean pending;
+
+    public ExecutionAggregator(final ExecutionListener delegate) {
+        this.delegate = Require.notNull(delegate, "delegate");
+    }
+
+    @Override
+    public void onExecution(final Execution execution) {
+        if (pending && print.getTakerOrderId() == execution.getTakerOrderId()
+            && print.getPrice() == execution.getPrice()) {
+            print.merge(execution);
+            return;
+        }
+        flush();
+        print.print(++sequence, execution);
+        pending = true;
+    }
+
+    @Override
+    public void onExecutionsEnd(final long takerOrderId) {
+        flush();
+        delegate.onExecutionsEnd(takerOrderId);
+    }
+
+    /**
+     * @return the sequence number of the last print, which is passed to the delegate at the next price level or at
+     * the end of the executions of the order
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    private void flush() {
+        if (pending) {
+            pending = false;
+            delegate.onExecution(print);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package se.ngm.ordermatcher;
+
+/**
+ * Receives an {@link Execution} for each fill when an active order is matched against the passive orders in an
+ * {@link OrderBook}. The execution is reused by the order book for the next fill, a listener that needs to keep the
+ * values must copy them, e.g. with {@link Execution#toTrade()}.
+ */
+@FunctionalInterface
+public interface ExecutionListener {
+
+    void onExecution(Execution execution);
+
+    /**
+     * Called after the last execution of an order that traded, before the order book returns from placing it.
+     *
+     * @param takerOrderId the id of the order
+     */
+    default void onExecutionsEnd(final long takerOrderId) {
+    }
+}
@@ -0,0 +1,111 @@
+package se.ngm.ordermatcher;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values (e.g. latencies in nanoseconds) in the style of HdrHistogram: the values are
+ * counted in log-linear buckets, every power of two is split in 64 buckets so a value is recorded with a relative
+ * error below 1/64 (about 1.6%), and values below 128 are recorded exactly.
+ *
+ * The counts are kept in one preallocated array, recording a value is a few shifts and an increment and does not
+ * allocate. A histogram is not thread safe, it is written and read by the thread that owns it.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    // the shift of the values with the highest bit 62 (the highest bit of a positive long)
+    private static final int MAX_SHIFT = 62 - (SUB_BUCKET_BITS - 1);
+
+    private final long[] counts = new long[SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF_COUNT];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    /**
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(final long value) {
+        final long recorded = Math.max(0, value);
+        counts[index(recorded)]++;
+        totalCount++;
+        sum += recorded;
+        if (recorded < min) {
+            min = recorded;
+        }
+        if (recorded > max) {
+            max = recorded;
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest recorded value or 0 if no value is recorded
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * @param percentile the percentile, e.g. 99.9
+     * @return the value that the percentile of the recorded values are less than or equal to (within the precision
+     * of the histogram) or 0 if no value is recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * totalCount));
+        long count = 0;
+        for (int index = 0; index < counts.length; index++) {
+            count += counts[index];
+            if (count >= countAtPercentile) {
+                return Math.min(max, highestValue(index));
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // the shift that brings the value into [64, 128)
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT
+            + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    /**
+     * @return the highest value that is counted in the bucket
+     */
+    static long highestValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
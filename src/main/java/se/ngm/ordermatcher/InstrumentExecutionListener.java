@@ -0,0 +1,11 @@
+package se.ngm.ordermatcher;
+
+/**
+ * Receives the executions of an instrument in a {@link ShardedOrderMatcher}. Called on the matching thread of the
+ * instrument, the execution is reused by the order book and is only valid during the call.
+ */
+@FunctionalInterface
+public interface InstrumentExecutionListener {
+
+    void onExecution(String symbol, Execution execution);
+}
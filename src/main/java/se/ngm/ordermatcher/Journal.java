@@ -0,0 +1,406 @@
+package se.ngm.ordermatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import se.ngm.ordermatcher.codec.AmendOrderDecoder;
+import se.ngm.ordermatcher.codec.AmendOrderEncoder;
+import se.ngm.ordermatcher.codec.CancelOrderDecoder;
+import se.ngm.ordermatcher.codec.CancelOrderEncoder;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderDecoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+import se.ngm.ordermatcher.codec.StartAuctionDecoder;
+import se.ngm.ordermatcher.codec.StartAuctionEncoder;
+import se.ngm.ordermatcher.codec.UncrossDecoder;
+import se.ngm.ordermatcher.codec.UncrossEncoder;
+
+/**
+ * An append-only journal of the commands of an order book, written to memory-mapped segment files in a directory.
+ *
+ * Every record has a sequence number, starting at 1, and holds one binary encoded message, see
+ * {@link se.ngm.ordermatcher.codec}:
+ *
+ * <pre>
+ *   length:i32 checksum:i32 sequence:i64 message (padded to 8 bytes)
+ * </pre>
+ *
+ * The length is written last, a length of 0 marks the end of the records of a segment. The checksum is the CRC-32C of
+ * the sequence and the message. A segment is named by the sequence of its first record, when a record does not fit in
+ * the current segment a new segment is started.
+ *
+ * The mapped segment is forced to the storage device every {@code syncEvery} records (group commit), 1 forces every
+ * record and 0 leaves it to the operating system, a record is written to the page cache and thereby survives a crash
+ * of the process either way. When a journal is opened the records of the last segment are scanned up to the first
+ * torn record (bad checksum or sequence), which is cut off, and the journal continues after the last complete record.
+ *
+ * A journal is not thread safe.
+ */
+public class Journal implements Closeable {
+
+    /**
+     * Receives the records of a journal, see {@link #replay(Handler)}.
+     */
+    public interface Handler {
+        void onNewOrder(long sequence, long orderId, Side side, long price, long qty, OrderType type);
+
+        void onCancel(long sequence, long orderId);
+
+        void onAmend(long sequence, long orderId, long qty);
+
+        void onStartAuction(long sequence);
+
+        void onUncross(long sequence, long referencePrice);
+    }
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_SYNC_EVERY = 0;
+
+    static final int RECORD_HEADER_LENGTH = 16;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int syncEvery;
+
+    private final CRC32C checksum = new CRC32C();
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final NewOrderEncoder newOrderEncoder = new NewOrderEncoder();
+    private final CancelOrderEncoder cancelOrderEncoder = new CancelOrderEncoder();
+    private final AmendOrderEncoder amendOrderEncoder = new AmendOrderEncoder();
+    private final StartAuctionEncoder startAuctionEncoder = new StartAuctionEncoder();
+    private final UncrossEncoder uncrossEncoder = new UncrossEncoder();
+
+    private MappedByteBuffer segment;
+    private int position;
+    private long lastSequence;
+    private int unsyncedCount;
+    private long syncCount;
+
+    public Journal(final Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_EVERY);
+    }
+
+    /**
+     * Opens the journal in the directory, the directory is created if it does not exist.
+     *
+     * @param segmentSize the size of a segment file in bytes
+     * @param syncEvery   the number of records between forcing the segment to the storage device, 0 to never force
+     *                    it explicitly
+     */
+    public Journal(final Path directory, final int segmentSize, final int syncEvery) throws IOException {
+        this.directory = Require.notNull(directory, "directory");
+        Require.that(segmentSize >= maxRecordLength(), "segmentSize must be >= " + maxRecordLength());
+        Require.that(syncEvery >= 0, "syncEvery must be >= 0");
+        this.segmentSize = segmentSize;
+        this.syncEvery = syncEvery;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * @return the sequence of the last record or 0 if the journal is empty
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the number of times a segment has been forced to the storage device
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public List<Path> getSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Appends a limit order.
+     *
+     * @return the sequence of the record
+     */
+    public long appendNewOrder(final long orderId, final Side side, final long price, final long qty)
+        throws IOException {
+        return appendNewOrder(orderId, side, price, qty, OrderType.LIMIT);
+    }
+
+    /**
+     * @return the sequence of the record
+     */
+    public long appendNewOrder(final long orderId, final Side side, final long price, final long qty,
+                               final OrderType type) throws IOException {
+        final int messageOffset = claim(NewOrderEncoder.BLOCK_LENGTH);
+        newOrderEncoder.wrapAndApplyHeader(segment, messageOffset, headerEncoder)
+            .orderId(orderId)
+            .side(side)
+            .orderType(type)
+            .price(price)
+            .qty(qty);
+        return commit(NewOrderEncoder.BLOCK_LENGTH);
+    }
+
+    /**
+     * @return the sequence of the record
+     */
+    public long appendCancel(final long orderId) throws IOException {
+        final int messageOffset = claim(CancelOrderEncoder.BLOCK_LENGTH);
+        cancelOrderEncoder.wrapAndApplyHeader(segment, messageOffset, headerEncoder)
+            .orderId(orderId);
+        return commit(CancelOrderEncoder.BLOCK_LENGTH);
+    }
+
+    /**
+     * @return the sequence of the record
+     */
+    public long appendAmend(final long orderId, final long qty) throws IOException {
+        final int messageOffset = claim(AmendOrderEncoder.BLOCK_LENGTH);
+        amendOrderEncoder.wrapAndApplyHeader(segment, messageOffset, headerEncoder)
+            .orderId(orderId)
+            .qty(qty);
+        return commit(AmendOrderEncoder.BLOCK_LENGTH);
+    }
+
+    /**
+     * @return the sequence of the record
+     */
+    public long appendStartAuction() throws IOException {
+        final int messageOffset = claim(StartAuctionEncoder.BLOCK_LENGTH);
+        startAuctionEncoder.wrapAndApplyHeader(segment, messageOffset, headerEncoder);
+        return commit(StartAuctionEncoder.BLOCK_LENGTH);
+    }
+
+    /**
+     * @return the sequence of the record
+     */
+    public long appendUncross(final long referencePrice) throws IOException {
+        final int messageOffset = claim(UncrossEncoder.BLOCK_LENGTH);
+        uncrossEncoder.wrapAndApplyHeader(segment, messageOffset, headerEncoder)
+            .referencePrice(referencePrice);
+        return commit(UncrossEncoder.BLOCK_LENGTH);
+    }
+
+    /**
+     * Forces the records of the current segment to the storage device.
+     */
+    public void sync() {
+        if (unsyncedCount > 0) {
+            segment.force();
+            syncCount++;
+            unsyncedCount = 0;
+        }
+    }
+
+    /**
+     * Delivers all records of the journal to the handler, in sequence order.
+     *
+     * @return the number of records
+     */
+    public long replay(final Handler handler) throws IOException {
+        return replay(1, handler);
+    }
+
+    /**
+     * Delivers the records from a sequence number to the handler, in sequence order. Segments that only hold earlier
+     * records are not read, e.g. the records before a snapshot.
+     *
+     * @return the number of delivered records
+     */
+    public long replay(final long fromSequence, final Handler handler) throws IOException {
+        final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+        final NewOrderDecoder newOrderDecoder = new NewOrderDecoder();
+        final CancelOrderDecoder cancelOrderDecoder = new CancelOrderDecoder();
+        final AmendOrderDecoder amendOrderDecoder = new AmendOrderDecoder();
+        final UncrossDecoder uncrossDecoder = new UncrossDecoder();
+        long count = 0;
+        final List<Path> segments = getSegments();
+        for (int segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+            final Path file = segments.get(segmentIndex);
+            if (segmentIndex + 1 < segments.size() && firstSequence(segments.get(segmentIndex + 1)) <= fromSequence) {
+                continue;
+            }
+            final MappedByteBuffer records = map(file, FileChannel.MapMode.READ_ONLY);
+            int offset = 0;
+            int length;
+            while ((length = recordLength(records, offset)) > 0) {
+                final long sequence = records.getLong(offset + 8);
+                if (sequence > lastSequence) {
+                    // a torn record that was cut off when the journal was opened, or records after it
+                    return count;
+                }
+                if (sequence < fromSequence) {
+                    offset += length;
+                    continue;
+                }
+                final int messageOffset = offset + RECORD_HEADER_LENGTH;
+                headerDecoder.wrap(records, messageOffset);
+                switch (headerDecoder.templateId()) {
+                    case NewOrderDecoder.TEMPLATE_ID:
+                        newOrderDecoder.wrapAndApplyHeader(records, messageOffset, headerDecoder);
+                        handler.onNewOrder(sequence, newOrderDecoder.orderId(), newOrderDecoder.side(),
+                            newOrderDecoder.price(), newOrderDecoder.qty(), newOrderDecoder.orderType());
+                        break;
+                    case CancelOrderDecoder.TEMPLATE_ID:
+                        cancelOrderDecoder.wrapAndApplyHeader(records, messageOffset, headerDecoder);
+                        handler.onCancel(sequence, cancelOrderDecoder.orderId());
+                        break;
+                    case AmendOrderDecoder.TEMPLATE_ID:
+                        amendOrderDecoder.wrapAndApplyHeader(records, messageOffset, headerDecoder);
+                        handler.onAmend(sequence, amendOrderDecoder.orderId(), amendOrderDecoder.qty());
+                        break;
+                    case StartAuctionDecoder.TEMPLATE_ID:
+                        handler.onStartAuction(sequence);
+                        break;
+                    case UncrossDecoder.TEMPLATE_ID:
+                        uncrossDecoder.wrapAndApplyHeader(records, messageOffset, headerDecoder);
+                        handler.onUncross(sequence, uncrossDecoder.referencePrice());
+                        break;
+                    default:
+                        throw new IOException("unknown template id " + headerDecoder.templateId() + " at sequence "
+                            + sequence + " in " + file);
+                }
+                count++;
+                offset += length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forces the records to the storage device.
+     */
+    @Override
+    public void close() {
+        if (segment != null) {
+            sync();
+            segment = null;
+        }
+    }
+
+    /**
+     * Finds the end of the journal in the last segment and cuts off a torn record.
+     */
+    private void recover() throws IOException {
+        final List<Path> segments = getSegments();
+        if (segments.isEmpty()) {
+            return;
+        }
+        final Path last = segments.get(segments.size() - 1);
+        segment = map(last, FileChannel.MapMode.READ_WRITE);
+        lastSequence = firstSequence(last) - 1;
+        int offset = 0;
+        int length;
+        while ((length = recordLength(segment, offset)) > 0
+            && length % 8 == 0 && length >= RECORD_HEADER_LENGTH && offset + length <= segment.capacity()
+            && segment.getLong(offset + 8) == lastSequence + 1
+            && checksum(segment, offset, length) == segment.getInt(offset + 4)) {
+            lastSequence++;
+            offset += length;
+        }
+        position = offset;
+        if (length != 0) {
+            // torn record, the rest of the segment is cleared so that it is not read as records
+            for (int i = offset; i < segment.capacity(); i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.force();
+        }
+    }
+
+    /**
+     * Makes room for a record, starts a new segment if the record does not fit in the current one.
+     *
+     * @return the offset of the message in the segment
+     */
+    private int claim(final int blockLength) throws IOException {
+        final int length = recordLength(blockLength);
+        if (segment == null || position + length > segment.capacity()) {
+            roll();
+        }
+        return position + RECORD_HEADER_LENGTH;
+    }
+
+    private long commit(final int blockLength) {
+        final int length = recordLength(blockLength);
+        final long sequence = ++lastSequence;
+        segment.putLong(position + 8, sequence);
+        segment.putInt(position + 4, checksum(segment, position, length));
+        segment.putInt(position, length);
+        position += length;
+        unsyncedCount++;
+        if (syncEvery > 0 && unsyncedCount >= syncEvery) {
+            sync();
+        }
+        return sequence;
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) {
+            sync();
+        }
+        segment = map(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, lastSequence + 1, SEGMENT_SUFFIX)),
+            FileChannel.MapMode.READ_WRITE);
+        position = 0;
+    }
+
+    private MappedByteBuffer map(final Path file, final FileChannel.MapMode mode) throws IOException {
+        final List<StandardOpenOption> options = new ArrayList<>(List.of(StandardOpenOption.READ));
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            options.add(StandardOpenOption.WRITE);
+            options.add(StandardOpenOption.CREATE);
+        }
+        try (FileChannel channel = FileChannel.open(file, options.toArray(new StandardOpenOption[0]))) {
+            // an existing segment keeps its size if the segment size has been changed
+            final long size = mode == FileChannel.MapMode.READ_WRITE ? Math.max(segmentSize, channel.size())
+                : channel.size();
+            final MappedByteBuffer buffer = channel.map(mode, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    private int checksum(final MappedByteBuffer buffer, final int offset, final int length) {
+        checksum.reset();
+        buffer.limit(offset + length).position(offset + 8);
+        checksum.update(buffer);
+        buffer.limit(buffer.capacity()).position(0);
+        return (int) checksum.getValue();
+    }
+
+    private static int recordLength(final MappedByteBuffer buffer, final int offset) {
+        return offset + RECORD_HEADER_LENGTH <= buffer.capacity() ? buffer.getInt(offset) : 0;
+    }
+
+    private static long firstSequence(final Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int recordLength(final int blockLength) {
+        final int length = RECORD_HEADER_LENGTH + MessageHeaderEncoder.ENCODED_LENGTH + blockLength;
+        return (length + 7) & ~7;
+    }
+
+    private static int maxRecordLength() {
+        return recordLength(NewOrderEncoder.BLOCK_LENGTH);
+    }
+}
@@ -0,0 +1,236 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An order book that writes every order, cancel, amend, auction start and uncross to a {@link Journal} before it is
+ * applied, and that is rebuilt from the journal when it is created. Order books are deterministic, replaying the same
+ * commands gives the same orders with the same ids in the same priority, and an order book that was in an auction is
+ * in the same auction again.
+ *
+ * A command that is rejected by the order book (e.g. a duplicate order id) is journaled anyway and rejected again
+ * when the journal is replayed.
+ *
+ * With a snapshot directory the order book is restored from the latest {@link OrderBookSnapshot} in the directory and
+ * only the journal records after the snapshot are replayed, see {@link #writeSnapshot(Executor)}. A snapshot does not
+ * hold the auction state, so no snapshot can be written during an auction.
+ */
+public class JournaledOrderBook extends OrderBook {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Journal journal;
+    private final Path snapshotDirectory;
+    private final long replayedCount;
+
+    public JournaledOrderBook(final Journal journal) throws IOException {
+        this(TreeMapBookSide::new, journal);
+    }
+
+    /**
+     * Creates the order book and replays the journal into it.
+     */
+    public JournaledOrderBook(final BookSide.Factory bookSideFactory, final Journal journal) throws IOException {
+        this(bookSideFactory, journal, null);
+    }
+
+    /**
+     * Creates the order book, restores the latest snapshot in the snapshot directory (if any) and replays the journal
+     * records after the snapshot.
+     *
+     * @param snapshotDirectory the directory of the snapshots or null to always replay the whole journal
+     */
+    public JournaledOrderBook(final BookSide.Factory bookSideFactory, final Journal journal,
+                              final Path snapshotDirectory) throws IOException {
+        super(bookSideFactory);
+        this.journal = Require.notNull(journal, "journal");
+        this.snapshotDirectory = snapshotDirectory;
+        long fromSequence = 1;
+        if (snapshotDirectory != null) {
+            Files.createDirectories(snapshotDirectory);
+            final List<Path> snapshots = getSnapshots();
+            if (!snapshots.isEmpty()) {
+                final OrderBookSnapshot snapshot = OrderBookSnapshot.readFrom(snapshots.get(snapshots.size() - 1));
+                Require.that(snapshot.getLastSequence() <= journal.getLastSequence(),
+                    "snapshot is ahead of the journal");
+                restore(snapshot);
+                fromSequence = snapshot.getLastSequence() + 1;
+            }
+        }
+        this.replayedCount = journal.replay(fromSequence, new Journal.Handler() {
+            private final Order order = new Order();
+            private final ExecutionListener ignoreExecutions = execution -> { };
+
+            @Override
+            public void onNewOrder(final long sequence, final long orderId, final Side side, final long price,
+                                   final long qty, final OrderType type) {
+                try {
+                    JournaledOrderBook.super.placeOrder(order.set(orderId, side, price, qty, type),
+                        ignoreExecutions);
+                } catch (final IllegalArgumentException e) {
+                    // rejected when it was placed as well
+                }
+            }
+
+            @Override
+            public void onCancel(final long sequence, final long orderId) {
+                JournaledOrderBook.super.cancelOrder(orderId);
+            }
+
+            @Override
+            public void onAmend(final long sequence, final long orderId, final long qty) {
+                JournaledOrderBook.super.amendOrder(orderId, qty);
+            }
+
+            @Override
+            public void onStartAuction(final long sequence) {
+                JournaledOrderBook.super.startAuction();
+            }
+
+            @Override
+            public void onUncross(final long sequence, final long referencePrice) {
+                JournaledOrderBook.super.uncross(referencePrice, ignoreExecutions);
+            }
+        });
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Captures a snapshot of the order book up to the last journal record and writes it to the snapshot directory on
+     * the executor. Must be called on the thread that owns the order book, which only waits for the resting orders to
+     * be copied.
+     *
+     * @return the file of the snapshot, completed when it has been written
+     */
+    public CompletableFuture<Path> writeSnapshot(final Executor executor) {
+        Require.notNull(snapshotDirectory, "snapshotDirectory");
+        Require.that(!isAuction(), "no snapshot can be written during an auction");
+        final OrderBookSnapshot snapshot = snapshot(journal.getLastSequence());
+        final Path file = snapshotDirectory.resolve(
+            String.format("%s%020d%s", SNAPSHOT_PREFIX, snapshot.getLastSequence(), SNAPSHOT_SUFFIX));
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                snapshot.writeTo(file);
+                return file;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * @return the snapshot files in the snapshot directory, oldest first
+     */
+    public List<Path> getSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(snapshotDirectory)) {
+            return files
+                .filter(file -> file.getFileName().toString().startsWith(SNAPSHOT_PREFIX))
+                .filter(file -> file.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the number of journal records that were replayed when the order book was created, not counting the
+     * records before the snapshot it was restored from
+     */
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * @throws UncheckedIOException if the order cannot be journaled, the order is then not placed
+     */
+    @Override
+    public long placeOrder(final Order order, final ExecutionListener listener) {
+        journalNewOrder(order);
+        return super.placeOrder(order, listener);
+    }
+
+    /**
+     * Each order of a batch is journaled just before it is placed, i.e. if an order cannot be journaled the orders
+     * before it in the batch have been journaled and placed.
+     */
+    @Override
+    long placeBatchedOrder(final Order order, final ExecutionListener listener) {
+        journalNewOrder(order);
+        return super.placeBatchedOrder(order, listener);
+    }
+
+    /**
+     * @throws UncheckedIOException if the cancel cannot be journaled, the order is then not cancelled
+     */
+    @Override
+    public boolean cancelOrder(final long orderId) {
+        try {
+            journal.appendCancel(orderId);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return super.cancelOrder(orderId);
+    }
+
+    /**
+     * @throws UncheckedIOException if the amend cannot be journaled, the order is then not amended
+     */
+    @Override
+    public boolean amendOrder(final long orderId, final long qty) {
+        Require.that(qty > 0, "qty must be > 0");
+        try {
+            journal.appendAmend(orderId, qty);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return super.amendOrder(orderId, qty);
+    }
+
+    /**
+     * @throws UncheckedIOException if the auction start cannot be journaled, the auction is then not started
+     */
+    @Override
+    public void startAuction() {
+        try {
+            journal.appendStartAuction();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        super.startAuction();
+    }
+
+    /**
+     * @throws UncheckedIOException if the uncross cannot be journaled, the order book is then not uncrossed
+     */
+    @Override
+    public long uncross(final long referencePrice, final ExecutionListener listener) {
+        Require.that(referencePrice > 0, "referencePrice must be > 0");
+        Require.notNull(listener, "listener");
+        try {
+            journal.appendUncross(referencePrice);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return super.uncross(referencePrice, listener);
+    }
+
+    private void journalNewOrder(final Order order) {
+        try {
+            journal.appendNewOrder(order.getId(), order.getSide(), order.getPrice(), order.getQty(),
+                order.getType());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
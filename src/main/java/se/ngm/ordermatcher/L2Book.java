@@ -0,0 +1,135 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The aggregated price levels (L2 depth) of an {@link OrderBook} rebuilt by a market data consumer from a snapshot
+ * and the incremental updates after it, so that the consumer never reads the order book itself.
+ *
+ * The consumer first applies a snapshot, {@link OrderBook#publishLevels(MarketDataListener)}, and then the updates
+ * published to the {@link MarketDataListener} of the order book. Updates that are already in the snapshot (a sequence
+ * number lower than or equal to the snapshot) are ignored, i.e. a consumer that queues the updates while the snapshot
+ * is taken can apply all of them. A missing update is detected and fails the update, the consumer must then
+ * {@link #clear()} the book and apply a new snapshot.
+ *
+ * An L2 book is not thread safe, it is updated and read by the consumer thread.
+ */
+public class L2Book implements MarketDataListener {
+
+    private final NavigableMap<Long, Level> buyLevels = new TreeMap<>(Collections.reverseOrder());
+    private final NavigableMap<Long, Level> sellLevels = new TreeMap<>();
+    // the sequence number of the last complete update or -1 before the first update (or snapshot)
+    private long sequence = -1;
+
+    /**
+     * The aggregated quantity and number of orders at a price.
+     */
+    public static final class Level {
+        private final long price;
+        private final long qty;
+        private final int orderCount;
+
+        public Level(final long price, final long qty, final int orderCount) {
+            this.price = price;
+            this.qty = qty;
+            this.orderCount = orderCount;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+
+        public long getQty() {
+            return qty;
+        }
+
+        public int getOrderCount() {
+            return orderCount;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Level level = (Level) o;
+            return price == level.price &&
+                qty == level.qty &&
+                orderCount == level.orderCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(price, qty, orderCount);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d@%d (%d)", qty, price, orderCount);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if an update is missing, i.e. the sequence number is higher than the next
+     */
+    @Override
+    public void onLevelUpdate(final long sequence, final Action action, final Side side, final long price,
+                              final long qty, final int orderCount) {
+        if (sequence <= this.sequence) {
+            return;
+        }
+        if (this.sequence >= 0 && sequence != this.sequence + 1) {
+            throw new IllegalStateException("missing market data update, expected sequence " + (this.sequence + 1)
+                + " but got " + sequence);
+        }
+        final NavigableMap<Long, Level> levels = getLevelsBySide(side);
+        if (action == Action.DELETE) {
+            levels.remove(price);
+        } else {
+            levels.put(price, new Level(price, qty, orderCount));
+        }
+    }
+
+    @Override
+    public void onUpdateEnd(final long sequence) {
+        this.sequence = Math.max(this.sequence, sequence);
+    }
+
+    /**
+     * Removes all levels, e.g. before a new snapshot is applied.
+     */
+    public void clear() {
+        buyLevels.clear();
+        sellLevels.clear();
+        sequence = -1;
+    }
+
+    /**
+     * @return the sequence number of the last applied update or -1 if no update or snapshot has been applied
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the levels of the side, best price first
+     */
+    public List<Level> getLevels(final Side side) {
+        return new ArrayList<>(getLevelsBySide(side).values());
+    }
+
+    /**
+     * @return the level at the price or null if there are no orders at the price
+     */
+    public Level getLevel(final Side side, final long price) {
+        return getLevelsBySide(side).get(price);
+    }
+
+    private NavigableMap<Long, Level> getLevelsBySide(final Side side) {
+        return Side.BUY.equals(side) ? buyLevels : sellLevels;
+    }
+}
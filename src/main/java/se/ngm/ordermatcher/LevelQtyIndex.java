@@ -0,0 +1,214 @@
+package se.ngm.ordermatcher;
+
+import java.util.Arrays;
+
+/**
+ * The total quantity of the price levels of one side of an {@link OrderBook} indexed by price, so that the quantity
+ * available at all prices up to a limit (a prefix sum) is found in O(log levels) without visiting the levels, e.g.
+ * to check if a fill-or-kill order can be filled before it is matched.
+ *
+ * The index is a treap, a binary search tree by price that is balanced by random priorities, where every node holds
+ * the quantity at its price and the sum of the quantities in its subtree. The nodes are slots in primitive arrays
+ * that are reused through a free list, i.e. the index does not allocate once it has grown to the number of levels.
+ * A price is removed from the index when its quantity is 0.
+ */
+class LevelQtyIndex {
+
+    private static final int NIL = 0;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private long[] qtys = new long[INITIAL_CAPACITY];
+    private long[] sums = new long[INITIAL_CAPACITY];
+    private int[] priorities = new int[INITIAL_CAPACITY];
+    // the children of a node, a free node links the next free node in lefts
+    private int[] lefts = new int[INITIAL_CAPACITY];
+    private int[] rights = new int[INITIAL_CAPACITY];
+    private int root = NIL;
+    private int freeNode = NIL;
+    // slot 0 is NIL, the empty tree with the sum 0
+    private int nodeCount = 1;
+    private int size;
+    private int random = 0x2545F491;
+
+    LevelQtyIndex() {
+        // lower than the priority of every node, i.e. an empty subtree is never rotated up
+        priorities[NIL] = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Adds a quantity, which may be negative, to the quantity at the price.
+     */
+    void add(final long price, final long qty) {
+        if (qty != 0) {
+            root = add(root, price, qty);
+        }
+    }
+
+    /**
+     * @return the quantity at the price
+     */
+    long getQty(final long price) {
+        int node = root;
+        while (node != NIL) {
+            if (price < prices[node]) {
+                node = lefts[node];
+            } else if (price > prices[node]) {
+                node = rights[node];
+            } else {
+                return qtys[node];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the total quantity at prices lower than or equal to the price
+     */
+    long getQtyAtOrBelow(final long price) {
+        long qty = 0;
+        int node = root;
+        while (node != NIL) {
+            if (prices[node] <= price) {
+                qty += sums[lefts[node]] + qtys[node];
+                node = rights[node];
+            } else {
+                node = lefts[node];
+            }
+        }
+        return qty;
+    }
+
+    /**
+     * @return the total quantity at prices higher than or equal to the price
+     */
+    long getQtyAtOrAbove(final long price) {
+        return price == Long.MIN_VALUE ? getTotalQty() : getTotalQty() - getQtyAtOrBelow(price - 1);
+    }
+
+    long getTotalQty() {
+        return sums[root];
+    }
+
+    /**
+     * @return the number of prices in the index
+     */
+    int size() {
+        return size;
+    }
+
+    private int add(final int node, final long price, final long qty) {
+        if (node == NIL) {
+            return newNode(price, qty);
+        }
+        int top = node;
+        // the child is assigned after the recursive call, which may grow (replace) the arrays
+        if (price < prices[node]) {
+            final int left = add(lefts[node], price, qty);
+            lefts[node] = left;
+            if (priorities[left] > priorities[node]) {
+                top = rotateRight(node);
+            }
+        } else if (price > prices[node]) {
+            final int right = add(rights[node], price, qty);
+            rights[node] = right;
+            if (priorities[right] > priorities[node]) {
+                top = rotateLeft(node);
+            }
+        } else {
+            qtys[node] += qty;
+            if (qtys[node] == 0) {
+                top = merge(lefts[node], rights[node]);
+                releaseNode(node);
+                return top;
+            }
+        }
+        update(node);
+        update(top);
+        return top;
+    }
+
+    /**
+     * Merges two subtrees where all prices of the left subtree are lower than the prices of the right subtree.
+     */
+    private int merge(final int left, final int right) {
+        if (left == NIL) {
+            return right;
+        }
+        if (right == NIL) {
+            return left;
+        }
+        if (priorities[left] > priorities[right]) {
+            rights[left] = merge(rights[left], right);
+            update(left);
+            return left;
+        }
+        lefts[right] = merge(left, lefts[right]);
+        update(right);
+        return right;
+    }
+
+    private int rotateRight(final int node) {
+        final int left = lefts[node];
+        lefts[node] = rights[left];
+        rights[left] = node;
+        return left;
+    }
+
+    private int rotateLeft(final int node) {
+        final int right = rights[node];
+        rights[node] = lefts[right];
+        lefts[right] = node;
+        return right;
+    }
+
+    private void update(final int node) {
+        sums[node] = sums[lefts[node]] + qtys[node] + sums[rights[node]];
+    }
+
+    private int newNode(final long price, final long qty) {
+        final int node;
+        if (freeNode != NIL) {
+            node = freeNode;
+            freeNode = lefts[node];
+        } else {
+            if (nodeCount == prices.length) {
+                grow();
+            }
+            node = nodeCount++;
+        }
+        prices[node] = price;
+        qtys[node] = qty;
+        sums[node] = qty;
+        priorities[node] = nextPriority();
+        lefts[node] = NIL;
+        rights[node] = NIL;
+        size++;
+        return node;
+    }
+
+    private void releaseNode(final int node) {
+        rights[node] = NIL;
+        lefts[node] = freeNode;
+        freeNode = node;
+        size--;
+    }
+
+    private void grow() {
+        final int capacity = prices.length * 2;
+        prices = Arrays.copyOf(prices, capacity);
+        qtys = Arrays.copyOf(qtys, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+    }
+
+    private int nextPriority() {
+        // xorshift
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random >>> 1;
+    }
+}
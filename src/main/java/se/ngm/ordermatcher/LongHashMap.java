@@ -0,0 +1,141 @@
+package se.ngm.ordermatcher;
+
+import java.util.Arrays;
+
+/**
+ * A hash map with primitive long keys, e.g. order id to order, that does not allocate when entries are added or
+ * removed (unless it has to grow).
+ *
+ * Open addressing with linear probing, a slot is free when its value is null. Removal shifts the following entries
+ * of the probe sequence back instead of leaving tombstones, so lookups never get slower as entries come and go.
+ */
+public class LongHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashMap(final int expectedSize) {
+        Require.that(expectedSize > 0 && expectedSize <= 1 << 29, "expectedSize must be > 0 and <= " + (1 << 29));
+        allocate(Integer.highestOneBit(expectedSize * 2 - 1) << 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        for (int index = index(key); values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                return (V) values[index];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(final long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value of the key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long key, final V value) {
+        Require.notNull(value, "value");
+        int index = index(key);
+        for (; values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                final V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value or null if there was no such key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long key) {
+        int index = index(key);
+        for (; values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                final V removed = (V) values[index];
+                values[index] = null;
+                size--;
+                compact(index);
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Moves entries following the freed slot back into it when the freed slot is on their probe sequence, i.e.
+     * between their hash slot and their current slot.
+     */
+    private void compact(int free) {
+        for (int index = (free + 1) & mask; values[index] != null; index = (index + 1) & mask) {
+            final int hashIndex = index(keys[index]);
+            if (((index - hashIndex) & mask) >= ((index - free) & mask)) {
+                keys[free] = keys[index];
+                values[free] = values[index];
+                values[index] = null;
+                free = index;
+            }
+        }
+    }
+
+    private int index(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity / 2;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = index(oldKeys[i]);
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package se.ngm.ordermatcher;
+
+/**
+ * Receives the incremental price level updates (L2 market data) of an {@link OrderBook}, see
+ * {@link OrderBook#setMarketDataListener(MarketDataListener)}.
+ *
+ * The updates are coalesced per command: every order, cancel and amend that changes the book publishes one update
+ * with a new sequence number, i.e. one {@link #onLevelUpdate} per price level that the command changed with the
+ * aggregated quantity and number of orders of the level after the command, followed by {@link #onUpdateEnd(long)}.
+ * An order that sweeps a price level with many fills publishes the level once.
+ *
+ * A full depth is rebuilt by applying a snapshot of the levels, {@link OrderBook#publishLevels(MarketDataListener)},
+ * and then the updates with a higher sequence number, see {@link L2Book}.
+ */
+public interface MarketDataListener {
+
+    enum Action {
+        /** a new price level */
+        ADD,
+        /** the quantity or the number of orders at the price level changed */
+        CHANGE,
+        /** the price level is gone, the quantity and the number of orders are 0 */
+        DELETE
+    }
+
+    /**
+     * @param sequence   the sequence number of the update, the same for all levels of an update
+     * @param qty        the total quantity of the orders at the price
+     * @param orderCount the number of orders at the price
+     */
+    void onLevelUpdate(long sequence, Action action, Side side, long price, long qty, int orderCount);
+
+    /**
+     * Called after the last level of an update.
+     */
+    default void onUpdateEnd(final long sequence) {
+    }
+}
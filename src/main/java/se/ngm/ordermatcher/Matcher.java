@@ -1,50 +1,65 @@
 package se.ngm.ordermatcher;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class Matcher {
 
     public static List<Trade> matchAtPrice(final Map.Entry<Long, QueuedOrdersAtPrice> ordersAtPrice,
                                            long availQty) {
+        return matchAtPrice(ordersAtPrice.getKey(), ordersAtPrice.getValue(), availQty);
+    }
+
+    public static List<Trade> matchAtPrice(final long price, final QueuedOrdersAtPrice ordersAtPrice,
+                                           long availQty) {
         final List<Trade> trades = new ArrayList<>();
+        matchAtPrice(price, ordersAtPrice, availQty, new Execution(),
+            execution -> trades.add(execution.toTrade()), order -> { });
+        return trades;
+    }
 
-        final Long price = ordersAtPrice.getKey();
-        final List<Order> queuedOrders = ordersAtPrice.getValue().getOrders();
+    public static long matchAtPrice(final long price, final QueuedOrdersAtPrice ordersAtPrice,
+                                    long availQty, final TradeListener listener) {
+        return matchAtPrice(price, ordersAtPrice, availQty, new Execution(), listener, order -> { });
+    }
 
-        for (final Iterator<Order> it = queuedOrders.iterator(); it.hasNext(); ) {
-            final Order queuedOrder = it.next();
+    /**
+     * Matches the available quantity against the orders queued at the price, in queue order. Filled orders are
+     * removed from the queue and passed to filledOrders (after the listener has been called), the caller removes the
+     * price level if the queue is empty afterwards.
+     *
+     * The maker order, price, quantity and the quantities left of the maker and the taker of each fill are set on the
+     * execution before it is passed to the listener, the taker is set by the caller.
+     *
+     * @return the quantity that is still available after matching
+     */
+    public static long matchAtPrice(final long price, final QueuedOrdersAtPrice ordersAtPrice, long availQty,
+                                    final Execution execution, final ExecutionListener listener,
+                                    final Consumer<Order> filledOrders) {
+        while (availQty > 0 && !ordersAtPrice.isEmpty()) {
+            final Order queuedOrder = ordersAtPrice.getFirst();
             if (availQty > queuedOrder.getQty()) {
                 availQty -= queuedOrder.getQty();
-                trades.add(Trade.builder()
-                    .price(price)
-                    .qty(queuedOrder.getQty())
-                    .build());
-                it.remove(); // passive order has been filled!, removed from the order queue
+                execution.fill(queuedOrder.getId(), price, queuedOrder.getQty(), 0, availQty);
+                listener.onExecution(execution);
+                ordersAtPrice.removeFirst(); // passive order has been filled!, removed from the order queue
+                filledOrders.accept(queuedOrder);
             } else if (availQty < queuedOrder.getQty()) {
-                final long diff = queuedOrder.getQty() - availQty;
-                queuedOrder.setQty(diff);
-                trades.add(Trade.builder()
-                    .price(price)
-                    .qty(availQty)
-                    .build());
+                ordersAtPrice.fillFirst(availQty);
+                execution.fill(queuedOrder.getId(), price, availQty, queuedOrder.getQty(), 0);
+                listener.onExecution(execution);
                 availQty = 0L;
             } else {
-                trades.add(Trade.builder()
-                    .price(price)
-                    .qty(queuedOrder.getQty())
-                    .build());
+                execution.fill(queuedOrder.getId(), price, queuedOrder.getQty(), 0, 0);
+                listener.onExecution(execution);
                 availQty = 0L;
-                it.remove();
-            }
-
-            if (availQty <= 0) {
-                break;
+                ordersAtPrice.removeFirst();
+                filledOrders.accept(queuedOrder);
             }
         }
 
-        return trades;
+        return availQty;
     }
 }
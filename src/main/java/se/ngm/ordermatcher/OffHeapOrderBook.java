@@ -0,0 +1,392 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An order book with the same matching as {@link OrderBook} where the resting orders are stored outside the Java
+ * heap, for instruments with millions of resting orders: the heap of an {@link OrderBook} holds an {@link Order}
+ * object per resting order, which the garbage collector has to trace on every full collection.
+ *
+ * The orders (id, price, quantity and the links of the queue at their price) are fixed-size records in direct
+ * buffers, see {@link OffHeapOrderStore}, and the price levels of each side are kept in primitive arrays sorted so
+ * that the best price is last, i.e. matching at and removing the best price level does not move any other level. A
+ * new price level is inserted with a binary search and a shift of the levels behind it, which is cheap as long as
+ * most new levels are near the top of the book. The heap holds a fixed number of objects no matter how many orders
+ * there are.
+ *
+ * The order types, the time priority, the amend rules and the ids assigned to orders without id are the ones of
+ * {@link OrderBook}. Market data, stats, snapshots and journaling are only supported by {@link OrderBook}.
+ *
+ * An off-heap order book is not thread safe, it is used by the thread that owns it.
+ */
+public class OffHeapOrderBook {
+
+    public static final int DEFAULT_EXPECTED_ORDERS = 1024;
+
+    private static final int INITIAL_LEVELS = 64;
+
+    private final OffHeapOrderStore store;
+    private final Levels buyLevels = new Levels(true);
+    private final Levels sellLevels = new Levels(false);
+    private final LevelQtyIndex buyQtyIndex = new LevelQtyIndex();
+    private final LevelQtyIndex sellQtyIndex = new LevelQtyIndex();
+    // built on the first fill-or-kill order, see OrderBook
+    private boolean qtyIndexed;
+    private final Execution execution = new Execution();
+    private long nextOrderId = 1;
+
+    /**
+     * The price levels of one side in primitive arrays, indexed by level, sorted by key in ascending order where the
+     * key is the price on the buy side and the negated price on the sell side, i.e. the best price is last.
+     */
+    private static final class Levels {
+        private final boolean buySide;
+        private long[] keys = new long[INITIAL_LEVELS];
+        private int[] firstSlots = new int[INITIAL_LEVELS];
+        private int[] lastSlots = new int[INITIAL_LEVELS];
+        private int[] orderCounts = new int[INITIAL_LEVELS];
+        private long[] totalQtys = new long[INITIAL_LEVELS];
+        private int size;
+
+        private Levels(final boolean buySide) {
+            this.buySide = buySide;
+        }
+
+        private long price(final int level) {
+            return buySide ? keys[level] : -keys[level];
+        }
+
+        /**
+         * @return the level of the price or (-(insertion level) - 1) if there is no such level
+         */
+        private int find(final long price) {
+            return Arrays.binarySearch(keys, 0, size, buySide ? price : -price);
+        }
+
+        private int getOrCreate(final long price) {
+            int level = find(price);
+            if (level >= 0) {
+                return level;
+            }
+            level = -level - 1;
+            if (size == keys.length) {
+                final int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                firstSlots = Arrays.copyOf(firstSlots, capacity);
+                lastSlots = Arrays.copyOf(lastSlots, capacity);
+                orderCounts = Arrays.copyOf(orderCounts, capacity);
+                totalQtys = Arrays.copyOf(totalQtys, capacity);
+            }
+            final int moved = size - level;
+            System.arraycopy(keys, level, keys, level + 1, moved);
+            System.arraycopy(firstSlots, level, firstSlots, level + 1, moved);
+            System.arraycopy(lastSlots, level, lastSlots, level + 1, moved);
+            System.arraycopy(orderCounts, level, orderCounts, level + 1, moved);
+            System.arraycopy(totalQtys, level, totalQtys, level + 1, moved);
+            keys[level] = buySide ? price : -price;
+            firstSlots[level] = OffHeapOrderStore.NO_SLOT;
+            lastSlots[level] = OffHeapOrderStore.NO_SLOT;
+            orderCounts[level] = 0;
+            totalQtys[level] = 0;
+            size++;
+            return level;
+        }
+
+        private void remove(final int level) {
+            final int moved = size - level - 1;
+            System.arraycopy(keys, level + 1, keys, level, moved);
+            System.arraycopy(firstSlots, level + 1, firstSlots, level, moved);
+            System.arraycopy(lastSlots, level + 1, lastSlots, level, moved);
+            System.arraycopy(orderCounts, level + 1, orderCounts, level, moved);
+            System.arraycopy(totalQtys, level + 1, totalQtys, level, moved);
+            size--;
+        }
+    }
+
+    public OffHeapOrderBook() {
+        this(DEFAULT_EXPECTED_ORDERS);
+    }
+
+    /**
+     * @param expectedOrders the number of resting orders that the off-heap buffers are allocated for, they are grown
+     *                       when there are more orders
+     */
+    public OffHeapOrderBook(final int expectedOrders) {
+        this.store = new OffHeapOrderStore(expectedOrders);
+    }
+
+    public List<Trade> placeOrder(final Order order) {
+        final List<Trade> trades = new ArrayList<>();
+        placeOrder(order, execution -> trades.add(execution.toTrade()));
+        return trades;
+    }
+
+    /**
+     * @see OrderBook#placeOrder(Order, TradeListener)
+     */
+    public long placeOrder(final Order order, final TradeListener listener) {
+        return placeOrder(order, (ExecutionListener) listener);
+    }
+
+    /**
+     * @see OrderBook#placeOrder(Order, ExecutionListener)
+     */
+    public long placeOrder(final Order order, final ExecutionListener listener) {
+        final long orderId = order.getId() == 0 ? nextOrderId++ : order.getId();
+        if (store.find(orderId) != OffHeapOrderStore.NO_SLOT) {
+            throw new IllegalArgumentException("duplicate order id: " + orderId);
+        }
+        nextOrderId = Math.max(nextOrderId, orderId + 1);
+
+        long currQty = order.getQty();
+        final Side currSide = order.getSide();
+        final OrderType type = order.getType();
+        execution.taker(orderId, currSide);
+
+        if (!OrderType.FOK.equals(type)
+            || getQtyAtOrBetter(Side.BUY.equals(currSide) ? Side.SELL : Side.BUY, order.getPrice()) >= currQty) {
+            if (Side.BUY.equals(currSide)) {
+                final long price = OrderType.MARKET.equals(type) ? Long.MAX_VALUE : order.getPrice();
+                currQty = match(price, currQty, sellLevels, 1, listener);
+            } else {
+                final long price = OrderType.MARKET.equals(type) ? Long.MIN_VALUE : order.getPrice();
+                currQty = match(price, currQty, buyLevels, -1, listener);
+            }
+        }
+
+        if (currQty > 0 && OrderType.LIMIT.equals(type)) {
+            final int slot = store.add(orderId, currSide, order.getPrice(), currQty);
+            final Levels levels = getLevels(currSide);
+            append(levels, levels.getOrCreate(order.getPrice()), slot);
+            indexQty(currSide, order.getPrice(), currQty);
+        }
+        if (execution.getFillCount() > 0) {
+            listener.onExecutionsEnd(orderId);
+        }
+        return orderId;
+    }
+
+    /**
+     * @see OrderBook#cancelOrder(long)
+     */
+    public boolean cancelOrder(final long orderId) {
+        final int slot = store.find(orderId);
+        if (slot == OffHeapOrderStore.NO_SLOT) {
+            return false;
+        }
+        final Side side = store.getSide(slot);
+        final long price = store.getPrice(slot);
+        final Levels levels = getLevels(side);
+        final int level = levels.find(price);
+        unlink(levels, level, slot);
+        indexQty(side, price, -store.getQty(slot));
+        if (levels.orderCounts[level] == 0) {
+            levels.remove(level);
+        }
+        store.remove(slot);
+        return true;
+    }
+
+    /**
+     * @see OrderBook#amendOrder(long, long)
+     */
+    public boolean amendOrder(final long orderId, final long qty) {
+        Require.that(qty > 0, "qty must be > 0");
+        final int slot = store.find(orderId);
+        if (slot == OffHeapOrderStore.NO_SLOT) {
+            return false;
+        }
+        final Side side = store.getSide(slot);
+        final long price = store.getPrice(slot);
+        final Levels levels = getLevels(side);
+        final int level = levels.find(price);
+        indexQty(side, price, qty - store.getQty(slot));
+        if (qty <= store.getQty(slot)) {
+            levels.totalQtys[level] -= store.getQty(slot) - qty;
+            store.setQty(slot, qty);
+        } else {
+            unlink(levels, level, slot);
+            store.setQty(slot, qty);
+            append(levels, level, slot);
+        }
+        return true;
+    }
+
+    /**
+     * @return copies of the resting orders of the side in priority order
+     */
+    public List<Order> getOrders(final Side side) {
+        final List<Order> orders = new ArrayList<>();
+        final Levels levels = getLevels(side);
+        for (int level = levels.size - 1; level >= 0; level--) {
+            for (int slot = levels.firstSlots[level]; slot != OffHeapOrderStore.NO_SLOT; slot = store.getNext(slot)) {
+                orders.add(toOrder(slot));
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * @return a copy of the order with the id in the order book or null if there is no such order
+     */
+    public Order getOrder(final long orderId) {
+        final int slot = store.find(orderId);
+        return slot == OffHeapOrderStore.NO_SLOT ? null : toOrder(slot);
+    }
+
+    /**
+     * @return the number of resting orders
+     */
+    public int getOrderCount() {
+        return store.size();
+    }
+
+    /**
+     * @return the number of bytes allocated outside the heap for the orders
+     */
+    public long getOffHeapBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    /**
+     * @return the highest buy price or {@link BookSide#NO_PRICE} if there are no buy orders
+     */
+    public long getBestBid() {
+        return buyLevels.size == 0 ? BookSide.NO_PRICE : buyLevels.price(buyLevels.size - 1);
+    }
+
+    /**
+     * @return the lowest sell price or {@link BookSide#NO_PRICE} if there are no sell orders
+     */
+    public long getBestAsk() {
+        return sellLevels.size == 0 ? BookSide.NO_PRICE : sellLevels.price(sellLevels.size - 1);
+    }
+
+    /**
+     * @see OrderBook#getDepth(Side, int, DepthListener)
+     */
+    public int getDepth(final Side side, final int levels, final DepthListener listener) {
+        Require.that(levels >= 0, "levels must be >= 0");
+        final Levels sideLevels = getLevels(Require.notNull(side, "side"));
+        final int count = Math.min(levels, sideLevels.size);
+        for (int i = 0; i < count; i++) {
+            final int level = sideLevels.size - 1 - i;
+            listener.onLevel(i, sideLevels.price(level), sideLevels.totalQtys[level], sideLevels.orderCounts[level]);
+        }
+        return count;
+    }
+
+    /**
+     * @see OrderBook#getQtyAtOrBetter(Side, long)
+     */
+    public long getQtyAtOrBetter(final Side side, final long price) {
+        if (!qtyIndexed) {
+            indexQtys();
+        }
+        return Side.BUY.equals(side) ? buyQtyIndex.getQtyAtOrAbove(price) : sellQtyIndex.getQtyAtOrBelow(price);
+    }
+
+    /**
+     * Matches the quantity against the best price levels up to the active price, in the order of
+     * {@link Matcher#matchAtPrice}.
+     *
+     * @param direction 1 if a passive price lower than or equal to the active price matches (buy order) or -1 if a
+     *                  passive price higher than or equal to the active price matches (sell order)
+     * @return the quantity that is not matched
+     */
+    private long match(final long activeOrderPrice, long currQty, final Levels levels, final int direction,
+                       final ExecutionListener listener) {
+        while (currQty > 0 && levels.size > 0) {
+            final int level = levels.size - 1;
+            final long price = levels.price(level);
+            if (direction * Long.compare(price, activeOrderPrice) > 0) {
+                break;
+            }
+            final long levelQty = levels.totalQtys[level];
+            while (currQty > 0 && levels.orderCounts[level] > 0) {
+                final int slot = levels.firstSlots[level];
+                final long makerQty = store.getQty(slot);
+                final long fillQty = Math.min(currQty, makerQty);
+                currQty -= fillQty;
+                execution.fill(store.getId(slot), price, fillQty, makerQty - fillQty, currQty);
+                listener.onExecution(execution);
+                if (fillQty == makerQty) {
+                    unlink(levels, level, slot);
+                    store.remove(slot);
+                } else {
+                    store.setQty(slot, makerQty - fillQty);
+                    levels.totalQtys[level] -= fillQty;
+                }
+            }
+            indexQty(direction > 0 ? Side.SELL : Side.BUY, price, levels.totalQtys[level] - levelQty);
+            if (levels.orderCounts[level] == 0) {
+                // the best price level is last, the next price (if any) is now the best price
+                levels.size--;
+            }
+        }
+        return currQty;
+    }
+
+    private void append(final Levels levels, final int level, final int slot) {
+        final int last = levels.lastSlots[level];
+        store.setPrev(slot, last);
+        store.setNext(slot, OffHeapOrderStore.NO_SLOT);
+        if (last == OffHeapOrderStore.NO_SLOT) {
+            levels.firstSlots[level] = slot;
+        } else {
+            store.setNext(last, slot);
+        }
+        levels.lastSlots[level] = slot;
+        levels.orderCounts[level]++;
+        levels.totalQtys[level] += store.getQty(slot);
+    }
+
+    private void unlink(final Levels levels, final int level, final int slot) {
+        final int prev = store.getPrev(slot);
+        final int next = store.getNext(slot);
+        if (prev == OffHeapOrderStore.NO_SLOT) {
+            levels.firstSlots[level] = next;
+        } else {
+            store.setNext(prev, next);
+        }
+        if (next == OffHeapOrderStore.NO_SLOT) {
+            levels.lastSlots[level] = prev;
+        } else {
+            store.setPrev(next, prev);
+        }
+        store.setPrev(slot, OffHeapOrderStore.NO_SLOT);
+        store.setNext(slot, OffHeapOrderStore.NO_SLOT);
+        levels.orderCounts[level]--;
+        levels.totalQtys[level] -= store.getQty(slot);
+    }
+
+    private Order toOrder(final int slot) {
+        return new Order().set(store.getId(slot), store.getSide(slot), store.getPrice(slot), store.getQty(slot));
+    }
+
+    private Levels getLevels(final Side side) {
+        return Side.BUY.equals(side) ? buyLevels : sellLevels;
+    }
+
+    private void indexQty(final Side side, final long price, final long qty) {
+        if (qtyIndexed) {
+            getQtyIndex(side).add(price, qty);
+        }
+    }
+
+    private void indexQtys() {
+        for (final Side side : Side.values()) {
+            final Levels levels = getLevels(side);
+            for (int level = 0; level < levels.size; level++) {
+                getQtyIndex(side).add(levels.price(level), levels.totalQtys[level]);
+            }
+        }
+        qtyIndexed = true;
+    }
+
+    private LevelQtyIndex getQtyIndex(final Side side) {
+        return Side.BUY.equals(side) ? buyQtyIndex : sellQtyIndex;
+    }
+}
@@ -0,0 +1,221 @@
+package se.ngm.ordermatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The orders of an {@link OffHeapOrderBook} stored outside the Java heap, in direct buffers, as fixed-size records
+ * (slots) that are addressed by an int slot number:
+ *
+ * <pre>
+ *   id:i64 price:i64 qty:i64 prev:i32 next:i32 side:u8 (7 bytes padding)     40 bytes
+ * </pre>
+ *
+ * prev and next link the slots queued at a price level, {@link #NO_SLOT} ends a queue. Released slots are linked
+ * through next in a free list and reused. The slots are indexed by order id in an open addressing hash table, also in
+ * a direct buffer, that holds slot numbers and reads the ids from the slots, i.e. the index is 4 bytes per bucket.
+ *
+ * The buffers are doubled (and copied) when they are full, which is the only time the store allocates. The garbage
+ * collector does not see the orders at all, only the two buffer objects.
+ */
+class OffHeapOrderStore {
+
+    static final int NO_SLOT = -1;
+    static final int SLOT_SIZE = 40;
+    static final int MAX_SLOTS = Integer.MAX_VALUE / SLOT_SIZE;
+
+    private static final int ID = 0;
+    private static final int PRICE = 8;
+    private static final int QTY = 16;
+    private static final int PREV = 24;
+    private static final int NEXT = 28;
+    private static final int SIDE = 32;
+    // an empty bucket of the index, a bucket holds the slot number + 1
+    private static final int EMPTY = 0;
+
+    private ByteBuffer slots;
+    private int slotCount;
+    private int freeSlot = NO_SLOT;
+    private int size;
+
+    private ByteBuffer index;
+    private int mask;
+    private int resizeThreshold;
+
+    OffHeapOrderStore(final int expectedSize) {
+        Require.that(expectedSize > 0 && expectedSize <= MAX_SLOTS / 2, "expectedSize must be > 0 and <= "
+            + MAX_SLOTS / 2);
+        this.slots = allocate((long) expectedSize * SLOT_SIZE);
+        allocateIndex(Integer.highestOneBit(expectedSize * 2 - 1) << 1);
+    }
+
+    /**
+     * @return the number of orders in the store
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of the direct buffers
+     */
+    long getAllocatedBytes() {
+        return (long) slots.capacity() + index.capacity();
+    }
+
+    /**
+     * Stores an order, the id must not be in the store.
+     *
+     * @return the slot of the order, not linked to any queue
+     */
+    int add(final long id, final Side side, final long price, final long qty) {
+        final int slot;
+        if (freeSlot != NO_SLOT) {
+            slot = freeSlot;
+            freeSlot = getNext(slot);
+        } else {
+            if ((long) (slotCount + 1) * SLOT_SIZE > slots.capacity()) {
+                growSlots();
+            }
+            slot = slotCount++;
+        }
+        final int offset = slot * SLOT_SIZE;
+        slots.putLong(offset + ID, id);
+        slots.putLong(offset + PRICE, price);
+        slots.putLong(offset + QTY, qty);
+        slots.putInt(offset + PREV, NO_SLOT);
+        slots.putInt(offset + NEXT, NO_SLOT);
+        slots.put(offset + SIDE, Side.BUY.equals(side) ? (byte) 0 : (byte) 1);
+        insertIndex(id, slot);
+        if (++size > resizeThreshold) {
+            rehash((mask + 1) << 1);
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the order in the slot, the slot must not be linked to any queue.
+     */
+    void remove(final int slot) {
+        removeIndex(getId(slot), slot);
+        setNext(slot, freeSlot);
+        freeSlot = slot;
+        size--;
+    }
+
+    /**
+     * @return the slot of the order with the id or {@link #NO_SLOT} if there is no such order
+     */
+    int find(final long id) {
+        for (int bucket = bucket(id); ; bucket = (bucket + 1) & mask) {
+            final int entry = index.getInt(bucket << 2);
+            if (entry == EMPTY) {
+                return NO_SLOT;
+            }
+            if (getId(entry - 1) == id) {
+                return entry - 1;
+            }
+        }
+    }
+
+    long getId(final int slot) {
+        return slots.getLong(slot * SLOT_SIZE + ID);
+    }
+
+    long getPrice(final int slot) {
+        return slots.getLong(slot * SLOT_SIZE + PRICE);
+    }
+
+    long getQty(final int slot) {
+        return slots.getLong(slot * SLOT_SIZE + QTY);
+    }
+
+    void setQty(final int slot, final long qty) {
+        slots.putLong(slot * SLOT_SIZE + QTY, qty);
+    }
+
+    Side getSide(final int slot) {
+        return slots.get(slot * SLOT_SIZE + SIDE) == 0 ? Side.BUY : Side.SELL;
+    }
+
+    int getPrev(final int slot) {
+        return slots.getInt(slot * SLOT_SIZE + PREV);
+    }
+
+    void setPrev(final int slot, final int prev) {
+        slots.putInt(slot * SLOT_SIZE + PREV, prev);
+    }
+
+    int getNext(final int slot) {
+        return slots.getInt(slot * SLOT_SIZE + NEXT);
+    }
+
+    void setNext(final int slot, final int next) {
+        slots.putInt(slot * SLOT_SIZE + NEXT, next);
+    }
+
+    private void insertIndex(final long id, final int slot) {
+        int bucket = bucket(id);
+        while (index.getInt(bucket << 2) != EMPTY) {
+            bucket = (bucket + 1) & mask;
+        }
+        index.putInt(bucket << 2, slot + 1);
+    }
+
+    private void removeIndex(final long id, final int slot) {
+        int free = bucket(id);
+        while (index.getInt(free << 2) != slot + 1) {
+            free = (free + 1) & mask;
+        }
+        index.putInt(free << 2, EMPTY);
+        // moves the entries following the freed bucket back into it when it is on their probe sequence, as in
+        // LongHashMap
+        for (int bucket = (free + 1) & mask; ; bucket = (bucket + 1) & mask) {
+            final int entry = index.getInt(bucket << 2);
+            if (entry == EMPTY) {
+                return;
+            }
+            final int hashBucket = bucket(getId(entry - 1));
+            if (((bucket - hashBucket) & mask) >= ((bucket - free) & mask)) {
+                index.putInt(free << 2, entry);
+                index.putInt(bucket << 2, EMPTY);
+                free = bucket;
+            }
+        }
+    }
+
+    private int bucket(final long id) {
+        final long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void growSlots() {
+        Require.that(slotCount < MAX_SLOTS, "off-heap order store is full: " + MAX_SLOTS + " orders");
+        final ByteBuffer grown = allocate(Math.min((long) MAX_SLOTS * SLOT_SIZE, (long) slots.capacity() * 2));
+        slots.clear();
+        grown.put(slots);
+        slots = grown;
+    }
+
+    private void allocateIndex(final int buckets) {
+        index = allocate((long) buckets * 4);
+        mask = buckets - 1;
+        resizeThreshold = buckets / 2;
+    }
+
+    private void rehash(final int buckets) {
+        final ByteBuffer oldIndex = index;
+        allocateIndex(buckets);
+        for (int offset = 0; offset < oldIndex.capacity(); offset += 4) {
+            final int entry = oldIndex.getInt(offset);
+            if (entry != EMPTY) {
+                insertIndex(getId(entry - 1), entry - 1);
+            }
+        }
+    }
+
+    private static ByteBuffer allocate(final long capacity) {
+        Require.that(capacity <= Integer.MAX_VALUE, "off-heap buffer too large: " + capacity);
+        return ByteBuffer.allocateDirect((int) capacity).order(ByteOrder.nativeOrder());
+    }
+}
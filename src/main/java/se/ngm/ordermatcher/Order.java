@@ -3,9 +3,22 @@ package se.ngm.ordermatcher;
 import static java.util.Objects.hash;
 
 public class Order {
-    private final Side side;
+    private Side side;
+    private long id;
     private long price;
     private long qty;
+    private OrderType type = OrderType.LIMIT;
+
+    // links to the previous/next order in the queue at the order's price, see QueuedOrdersAtPrice. A released order
+    // uses next to link the free orders of an OrderPool
+    Order prev;
+    Order next;
+
+    /**
+     * Creates an empty order to be initialized with {@link #set(long, Side, long, long)}, see {@link OrderPool}.
+     */
+    Order() {
+    }
 
     private Order(final BuyOrderBuilder builder) {
         validate(builder);
@@ -20,8 +33,21 @@ public class Order {
     }
 
     private void validate(final AbstractBuilder<?, ?> builder) {
-        Require.that(builder.price > 0, "price must be >0");
-        Require.that(builder.qty > 0, "qty must be > 0");
+        validate(builder.id, builder.price, builder.qty, builder.type);
+    }
+
+    /**
+     * Validates the values of an order, e.g. of a reused order that is initialized without a builder.
+     */
+    static void validate(final long id, final long price, final long qty, final OrderType type) {
+        Require.notNull(type, "type");
+        if (OrderType.MARKET.equals(type)) {
+            Require.that(price == 0, "market order must not have a price");
+        } else {
+            Require.that(price > 0, "price must be >0");
+        }
+        Require.that(qty > 0, "qty must be > 0");
+        Require.that(id >= 0, "id must be >= 0");
     }
 
     private Order(final SellOrderBuilder builder) {
@@ -31,14 +57,53 @@ public class Order {
     }
 
     private void set(final AbstractBuilder<?, ?> builder) {
+        this.id = builder.id;
         this.price = builder.price;
         this.qty = builder.qty;
+        this.type = builder.type;
+    }
+
+    /**
+     * Initializes a pooled order, the values are expected to come from an already validated order.
+     */
+    Order set(final long id, final Side side, final long price, final long qty) {
+        return set(id, side, price, qty, OrderType.LIMIT);
+    }
+
+    /**
+     * Initializes a reused order, the values are expected to come from an already validated order.
+     */
+    Order set(final long id, final Side side, final long price, final long qty, final OrderType type) {
+        this.id = id;
+        this.side = side;
+        this.price = price;
+        this.qty = qty;
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * @return a copy of this order that is not linked to any queue or pool
+     */
+    Order copy() {
+        return new Order().set(id, side, price, qty, type);
+    }
+
+    /**
+     * @return the id of the order or 0 if the order has not been assigned an id, an order that is placed without an
+     * id is assigned one by the order book
+     */
+    public long getId() {
+        return id;
     }
 
     public Side getSide() {
         return side;
     }
 
+    /**
+     * @return the price of the order, 0 for a market order
+     */
     public long getPrice() {
         return price;
     }
@@ -47,19 +112,30 @@ public class Order {
         return qty;
     }
 
+    public OrderType getType() {
+        return type;
+    }
+
     public void setQty(long qty) {
         Require.that(qty >= 0, "qty must be >= 0");
         this.qty = qty;
     }
 
     public abstract static class AbstractBuilder<B extends AbstractBuilder<B, T>, T> {
+        protected long id;
         protected long price;
         protected long qty;
+        protected OrderType type = OrderType.LIMIT;
 
         protected abstract B self();
 
         public abstract T build();
 
+        public B id(final long id) {
+            this.id = id;
+            return self();
+        }
+
         public B price(final long price) {
             this.price = price;
             return self();
@@ -69,6 +145,14 @@ public class Order {
             this.qty = qty;
             return self();
         }
+
+        /**
+         * @param type the type of the order, {@link OrderType#LIMIT} by default. A market order has no price.
+         */
+        public B type(final OrderType type) {
+            this.type = type;
+            return self();
+        }
     }
 
     public static class BuyOrderBuilder extends AbstractBuilder<BuyOrderBuilder, Order> {
@@ -132,7 +216,14 @@ public class Order {
 
     @Override
     public String toString() {
-        return side + " " + qty + "@" + price;
+        switch (type) {
+            case MARKET:
+                return side + " " + qty + " " + type;
+            case LIMIT:
+                return side + " " + qty + "@" + price;
+            default:
+                return side + " " + qty + "@" + price + " " + type;
+        }
     }
 
     @Override
@@ -140,13 +231,15 @@ public class Order {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         final Order order = (Order) o;
-        return price == order.price &&
+        return id == order.id &&
+            price == order.price &&
             qty == order.qty &&
-            side == order.side;
+            side == order.side &&
+            type == order.type;
     }
 
     @Override
     public int hashCode() {
-        return hash(side, price, qty);
+        return hash(id, side, price, qty, type);
     }
 }
@@ -1,22 +1,18 @@
 package se.ngm.ordermatcher;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-
-import static java.util.Comparator.naturalOrder;
-import static java.util.Comparator.reverseOrder;
+import java.util.function.Consumer;
 
 /**
  *
  * @author Daniel Terranova
  *
  * An order book contains two sides a sell and a buy side. The buy and sell side is represented as a
- * SortedMap where the key is the price (long) and value contains orders at the given price in queue order.
+ * {@link BookSide} where the key is the price (long) and value contains orders at the given price in queue order.
+ * How the price levels of a side are stored is pluggable, see {@link TreeMapBookSide} (default) and
+ * {@link TickArrayBookSide}.
  *
  * The buy side is sorted in reverse natural order by its price.
  * for example:
@@ -41,102 +37,845 @@ import static java.util.Comparator.reverseOrder;
  *
  * Orders are placed in the order book at a given price in insertion order.
  *
+ * A limit order rests the quantity that is not matched in the order book, market and immediate-or-cancel orders
+ * cancel it and a fill-or-kill order is only matched if it can be filled completely, see {@link OrderType}. The total
+ * quantity of each side is indexed by price (see {@link LevelQtyIndex}) so that a fill-or-kill order that cannot be
+ * filled is rejected in O(log levels) without matching it. The index is built from the levels on the first fill-or-kill
+ * order and maintained from then on, a book that never sees one does not pay for it.
+ *
  * When active order is added and matched at a given price the first order (passive order in queue) is processed and
  * removed if the active order has higher quantity than the current processed (passive) order. If additional orders at
  * the price exists those orders are processed until all orders is removed from the price and that price is removed from
  * the order book.
  *
+ * Every order in the order book has an id, orders placed without an id are assigned the next id in sequence. The
+ * orders in the order book are indexed by id so that they can be cancelled or have their quantity amended in O(1)
+ * (plus the lookup of the price level in the book side).
+ *
+ * The orders in the order book are taken from an {@link OrderPool} and given back when they are filled or cancelled,
+ * and the fills are reported through one reused {@link Execution}, i.e. an order book in steady state does not
+ * allocate any objects when orders are placed. Orders are never shared with the caller, the order that is placed is
+ * copied into the order book and the orders returned by {@link #getOrders(Side)} and {@link #getOrder(long)} are
+ * copies.
+ *
+ * The latency of placing orders and matching at each price level, the number of trades and levels swept and the depth
+ * of the book can be recorded, see {@link #getStats()}.
+ *
+ * The best bid and ask and the top levels of each side are read from the total quantity and number of orders that
+ * are maintained per price level, see {@link #getDepth(Side, int, DepthListener)}, without copying any orders.
+ *
+ * The changes of the price levels are published as incremental L2 updates, coalesced per order, batch of orders,
+ * cancel and amend, to a {@link MarketDataListener}, see {@link #setMarketDataListener(MarketDataListener)}.
+ *
+ * For an opening or closing auction the order book collects orders without matching them and is then uncrossed at
+ * one equilibrium price, see {@link #startAuction()} and {@link #uncross(long, ExecutionListener)}.
+ *
  * @version 1.0
  */
 public class OrderBook {
 
-    private final SortedMap<Long, QueuedOrdersAtPrice> buyOrdersAtPrice = new TreeMap<>(reverseOrder());
-    private final SortedMap<Long, QueuedOrdersAtPrice> sellOrdersAtPrice = new TreeMap<>(naturalOrder());
-    private final Comparator<Long> cmp = Long::compareTo;
+    private static final ExecutionListener IGNORE_EXECUTIONS = execution -> { };
+
+    private final BookSide buyOrdersAtPrice;
+    private final BookSide sellOrdersAtPrice;
+    private final LevelQtyIndex buyQtyIndex = new LevelQtyIndex();
+    private final LevelQtyIndex sellQtyIndex = new LevelQtyIndex();
+    private boolean qtyIndexed;
+    private final LongHashMap<Order> ordersById = new LongHashMap<>();
+    private final Consumer<Order> filledOrders = this::removeFilled;
+    private final OrderPool orderPool = new OrderPool();
+    private final Execution execution = new Execution();
+    // the fills taken from the buy orders when the book is uncrossed, they are reported by the sell side fills
+    private final Execution auctionFill = new Execution();
+    private final EngineStats stats = new EngineStats();
+    private long nextOrderId = 1;
+    // the sum of the checksums of the price levels, maintained as the levels change
+    private long checksum;
+    // the number of price levels matched by the current order, only counted when the stats are recorded
+    private int levelsSwept;
+    private MarketDataListener marketDataListener;
+    private long marketDataSequence;
+    // the price levels changed by the current command or batch, with the state after the last change of each level
+    private int levelUpdateCount;
+    private boolean[] levelUpdateAdded = new boolean[16];
+    private Side[] levelUpdateSides = new Side[16];
+    private long[] levelUpdatePrices = new long[16];
+    private long[] levelUpdateQtys = new long[16];
+    private int[] levelUpdateOrderCounts = new int[16];
+    // true while a batch of orders is placed, the price levels that become empty are removed at the end of the batch
+    private boolean batching;
+    private int emptyLevelCount;
+    private Side[] emptyLevelSides = new Side[16];
+    private long[] emptyLevelPrices = new long[16];
+    // true while orders are collected for an auction
+    private boolean auction;
+    // the crossed price levels of each side, best price first, collected when the equilibrium price is computed
+    private long[] auctionBuyPrices = new long[16];
+    private long[] auctionBuyQtys = new long[16];
+    private long[] auctionSellPrices = new long[16];
+    private long[] auctionSellQtys = new long[16];
+    private long equilibriumVolume;
+
+    public OrderBook() {
+        this(TreeMapBookSide::new);
+    }
+
+    /**
+     * @param bookSideFactory creates the storage of the buy and sell side, e.g. {@code TreeMapBookSide::new} or
+     *                        {@code TickArrayBookSide::new}
+     */
+    public OrderBook(final BookSide.Factory bookSideFactory) {
+        Require.notNull(bookSideFactory, "bookSideFactory");
+        this.buyOrdersAtPrice = bookSideFactory.create(Side.BUY);
+        this.sellOrdersAtPrice = bookSideFactory.create(Side.SELL);
+    }
 
     public List<Order> getOrders(final Side side) {
         final List<Order> currentOrders = new ArrayList<>();
-        final Map<Long, QueuedOrdersAtPrice> ordersBySide = getOrdersBySide(side);
-        for (final QueuedOrdersAtPrice queuedOrdersAtPrice : ordersBySide.values()) {
-            currentOrders.addAll(queuedOrdersAtPrice.getOrders());
+        final BookSide ordersBySide = getOrdersBySide(side);
+        for (long price = ordersBySide.first(); price != BookSide.NO_PRICE; price = ordersBySide.next(price)) {
+            for (final Order order : ordersBySide.get(price).getOrders()) {
+                currentOrders.add(order.copy());
+            }
         }
         return currentOrders;
     }
 
+    /**
+     * @return a copy of the order with the id in the order book or null if there is no such order
+     */
+    public Order getOrder(final long orderId) {
+        final Order order = ordersById.get(orderId);
+        return order == null ? null : order.copy();
+    }
+
+    /**
+     * @return the highest buy price or {@link BookSide#NO_PRICE} if there are no buy orders
+     */
+    public long getBestBid() {
+        return getBuyOrdersAtPrice().first();
+    }
+
+    /**
+     * @return the lowest sell price or {@link BookSide#NO_PRICE} if there are no sell orders
+     */
+    public long getBestAsk() {
+        return getSellOrdersAtPrice().first();
+    }
+
+    /**
+     * @return the total quantity of the orders of the side at the price or better, i.e. the quantity that an order of
+     * the other side with the price could match. Found in O(log levels) without visiting the levels, once the first
+     * call has built the quantity index.
+     */
+    public long getQtyAtOrBetter(final Side side, final long price) {
+        if (!qtyIndexed) {
+            indexQtys();
+        }
+        return Side.BUY.equals(side) ? buyQtyIndex.getQtyAtOrAbove(price) : sellQtyIndex.getQtyAtOrBelow(price);
+    }
+
+    /**
+     * Delivers the best price levels of a side to the listener, best price first, with the total quantity and the
+     * number of orders that are maintained at each level, i.e. the cost is O(levels) and not O(orders). Does not
+     * allocate with a book side that navigates primitive prices, e.g. {@link TickArrayBookSide}.
+     *
+     * @param levels the maximum number of levels
+     * @return the number of levels delivered, less than the maximum if the side has fewer levels
+     */
+    public int getDepth(final Side side, final int levels, final DepthListener listener) {
+        Require.that(levels >= 0, "levels must be >= 0");
+        final BookSide ordersBySide = getOrdersBySide(Require.notNull(side, "side"));
+        int level = 0;
+        long price = levels > 0 ? ordersBySide.first() : BookSide.NO_PRICE;
+        while (price != BookSide.NO_PRICE) {
+            final QueuedOrdersAtPrice ordersAtPrice = ordersBySide.get(price);
+            listener.onLevel(level++, price, ordersAtPrice.getTotalQuantity(), ordersAtPrice.getOrderCount());
+            price = level < levels ? ordersBySide.next(price) : BookSide.NO_PRICE;
+        }
+        return level;
+    }
+
     public List<Trade> placeOrder(final Order order) {
         // the trades that generates from the specified active order
         final List<Trade> trades = new ArrayList<>();
+        placeOrder(order, execution -> trades.add(execution.toTrade()));
+        return trades;
+    }
+
+    /**
+     * Places the order in the order book, the trades that generates from the order are delivered to the listener
+     * before this method returns.
+     *
+     * @return the id of the order, i.e. the id of the specified order or the id assigned to it if it has no id
+     * @throws IllegalArgumentException if an order with the same id is already in the order book
+     */
+    public long placeOrder(final Order order, final TradeListener listener) {
+        return placeOrder(order, (ExecutionListener) listener);
+    }
+
+    /**
+     * Places the order in the order book, the executions that generates from the order are delivered to the listener
+     * before this method returns. The execution passed to the listener is reused for every fill.
+     *
+     * The quantity that is not matched is placed in the order book for a limit order and cancelled for the other
+     * order types. A fill-or-kill order that cannot be filled completely is cancelled without being matched.
+     *
+     * @return the id of the order, i.e. the id of the specified order or the id assigned to it if it has no id
+     * @throws IllegalArgumentException if an order with the same id is already in the order book
+     */
+    public long placeOrder(final Order order, final ExecutionListener listener) {
+        final long orderId = place(order, listener);
+        publishLevelUpdates();
+        if (stats.isEnabled()) {
+            recordDepth();
+        }
+        return orderId;
+    }
+
+    /**
+     * Places a batch of orders, in order, with the same executions as placing them one by one with
+     * {@link #placeOrder(Order, ExecutionListener)}. The bookkeeping that does not affect the matching is done once
+     * per batch instead of once per order: the price levels that are emptied by the batch are removed at the end of it
+     * (a level that is emptied and filled again within the batch is reused), the price level updates of the whole
+     * batch are coalesced into one market data update and the depth is recorded once.
+     *
+     * @param orderIds the ids of the orders are written here (from index 0), may be null
+     * @throws IllegalArgumentException if an order with the same id as one of the orders is already in the order book,
+     *                                  the orders before it have then been placed and the orders after it have not
+     */
+    public void placeOrders(final Order[] orders, final int offset, final int length, final long[] orderIds,
+                            final ExecutionListener listener) {
+        Require.that(offset >= 0 && length >= 0 && offset + length <= orders.length, "offset and length must be "
+            + "within the orders");
+        Require.that(orderIds == null || orderIds.length >= length, "orderIds must hold length ids");
+        batching = true;
+        try {
+            for (int i = 0; i < length; i++) {
+                final long orderId = placeBatchedOrder(orders[offset + i], listener);
+                if (orderIds != null) {
+                    orderIds[i] = orderId;
+                }
+            }
+        } finally {
+            batching = false;
+            removeEmptyLevels();
+            publishLevelUpdates();
+            if (stats.isEnabled()) {
+                recordDepth();
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the orders
+     * @see #placeOrders(Order[], int, int, long[], ExecutionListener)
+     */
+    public long[] placeOrders(final List<Order> orders, final ExecutionListener listener) {
+        final Order[] batch = orders.toArray(new Order[0]);
+        final long[] orderIds = new long[batch.length];
+        placeOrders(batch, 0, batch.length, orderIds, listener);
+        return orderIds;
+    }
+
+    /**
+     * Places one order of a batch.
+     */
+    long placeBatchedOrder(final Order order, final ExecutionListener listener) {
+        return place(order, listener);
+    }
+
+    private long place(final Order order, final ExecutionListener listener) {
+        if (auction) {
+            Require.that(OrderType.LIMIT.equals(order.getType()), "only limit orders can be placed in an auction");
+        }
+        final boolean recording = stats.isEnabled();
+        final long start = recording ? System.nanoTime() : 0;
+        final long orderId = order.getId() == 0 ? nextOrderId++ : order.getId();
+        if (ordersById.containsKey(orderId)) {
+            throw new IllegalArgumentException("duplicate order id: " + orderId);
+        }
+        nextOrderId = Math.max(nextOrderId, orderId + 1);
 
         long currQty = order.getQty();
         final Side currSide = order.getSide();
+        final OrderType type = order.getType();
+        execution.taker(orderId, currSide);
+        levelsSwept = 0;
 
-        if (Side.BUY.equals(currSide)) {
-            currQty = compare(order.getPrice(), currQty, getSellOrdersAtPrice().entrySet(), cmp, trades);
-        } else if (Side.SELL.equals(currSide)) {
-            currQty = compare(order.getPrice(), currQty, getBuyOrdersAtPrice().entrySet(), cmp.reversed(), trades);
+        // orders are not matched during an auction, the book is crossed until it is uncrossed
+        if (!auction && (!OrderType.FOK.equals(type)
+            || getQtyAtOrBetter(Side.BUY.equals(currSide) ? Side.SELL : Side.BUY, order.getPrice()) >= currQty)) {
+            if (Side.BUY.equals(currSide)) {
+                final long price = OrderType.MARKET.equals(type) ? Long.MAX_VALUE : order.getPrice();
+                currQty = compare(price, currQty, getSellOrdersAtPrice(), 1, listener, recording);
+            } else if (Side.SELL.equals(currSide)) {
+                final long price = OrderType.MARKET.equals(type) ? Long.MIN_VALUE : order.getPrice();
+                currQty = compare(price, currQty, getBuyOrdersAtPrice(), -1, listener, recording);
+            }
         }
 
-        if (currQty > 0) {
-            add(order, currQty);
+        if (currQty > 0 && OrderType.LIMIT.equals(type)) {
+            add(orderId, currSide, order.getPrice(), currQty);
+        }
+        if (execution.getFillCount() > 0) {
+            listener.onExecutionsEnd(orderId);
+        }
+        if (recording) {
+            stats.record(EngineStats.Probe.PLACE_ORDER, System.nanoTime() - start);
+            stats.onOrder(levelsSwept, execution.getFillCount());
         }
+        return orderId;
+    }
 
-        getSellOrdersAtPrice().entrySet()
-            .removeIf(entry -> entry.getValue()
-                .getTotalQuantity() == 0);
+    /**
+     * Removes an order from the order book.
+     *
+     * @return true if the order was cancelled or false if there is no order with the id in the order book, e.g.
+     * because it has been filled
+     */
+    public boolean cancelOrder(final long orderId) {
+        final Order order = ordersById.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        final BookSide ordersBySide = getOrdersBySide(order.getSide());
+        final QueuedOrdersAtPrice ordersAtPrice = ordersBySide.get(order.getPrice());
+        checksum -= ordersAtPrice.getChecksum();
+        ordersAtPrice.removeOrder(order);
+        checksum += ordersAtPrice.getChecksum();
+        indexQty(order.getSide(), order.getPrice(), -order.getQty());
+        if (ordersAtPrice.isEmpty()) {
+            ordersBySide.remove(order.getPrice());
+        }
+        if (marketDataListener != null) {
+            levelChanged(order.getSide(), order.getPrice(), ordersAtPrice, false);
+            publishLevelUpdates();
+        }
+        orderPool.release(order);
+        if (stats.isEnabled()) {
+            recordDepth();
+        }
+        return true;
+    }
 
-        getBuyOrdersAtPrice().entrySet()
-            .removeIf(entry -> entry.getValue()
-                .getTotalQuantity() == 0);
-        return trades;
+    /**
+     * Changes the quantity of an order in the order book. An order that has its quantity reduced keeps its time
+     * priority, an order that has its quantity increased is moved last in the queue at its price.
+     *
+     * @return true if the order was amended or false if there is no order with the id in the order book
+     */
+    public boolean amendOrder(final long orderId, final long qty) {
+        Require.that(qty > 0, "qty must be > 0");
+        final Order order = ordersById.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        final QueuedOrdersAtPrice ordersAtPrice = getOrdersBySide(order.getSide()).get(order.getPrice());
+        indexQty(order.getSide(), order.getPrice(), qty - order.getQty());
+        checksum -= ordersAtPrice.getChecksum();
+        if (qty <= order.getQty()) {
+            ordersAtPrice.reduceQty(order, qty);
+        } else {
+            ordersAtPrice.removeOrder(order);
+            order.setQty(qty);
+            ordersAtPrice.addOrder(order);
+        }
+        checksum += ordersAtPrice.getChecksum();
+        if (marketDataListener != null) {
+            levelChanged(order.getSide(), order.getPrice(), ordersAtPrice, false);
+            publishLevelUpdates();
+        }
+        return true;
+    }
+
+    /**
+     * Starts an auction: the orders placed from now on are not matched but collected in the order book, which may then
+     * be crossed, until it is uncrossed with {@link #uncross(long, ExecutionListener)}. Only limit orders can be placed
+     * during an auction, orders can be cancelled and amended as usual.
+     */
+    public void startAuction() {
+        auction = true;
+    }
+
+    public boolean isAuction() {
+        return auction;
+    }
+
+    /**
+     * @return the price that the order book would be uncrossed at now, or 0 if the book is not crossed
+     * @see #uncross(long, ExecutionListener)
+     */
+    public long getIndicativePrice(final long referencePrice) {
+        return equilibriumPrice(referencePrice);
+    }
+
+    /**
+     * @return the quantity that would be executed if the order book was uncrossed now
+     * @see #uncross(long, ExecutionListener)
+     */
+    public long getIndicativeVolume(final long referencePrice) {
+        equilibriumPrice(referencePrice);
+        return equilibriumVolume;
+    }
+
+    /**
+     * Ends the auction and uncrosses the order book at the equilibrium price, i.e. the price that maximizes the
+     * executable volume. When several prices execute the maximum volume the price with the least surplus (the
+     * quantity left unexecuted on one side at that price) is chosen. If there are still several prices, the highest
+     * one is chosen when all of them have a buy surplus and the lowest when all have a sell surplus. Otherwise the one
+     * closest to the reference price is chosen, e.g. the last traded price, and the higher one if two are equally
+     * close.
+     *
+     * The price is computed in one pass over the crossed price levels, from the total quantity of each level. Every
+     * buy order at or above the price then takes, in price and time priority, from the sell orders at or below it,
+     * like an order placed in continuous trading. The buy orders are reported as the takers and all executions are at
+     * the equilibrium price. The changes of the price levels are published as one market data update.
+     *
+     * @param referencePrice the price that breaks the last tie, must be > 0
+     * @return the equilibrium price or 0 if the book was not crossed and nothing was executed
+     */
+    public long uncross(final long referencePrice, final ExecutionListener listener) {
+        Require.notNull(listener, "listener");
+        final long price = equilibriumPrice(referencePrice);
+        auction = false;
+        if (price != 0) {
+            allocate(price, listener);
+        }
+        publishLevelUpdates();
+        if (stats.isEnabled()) {
+            recordDepth();
+        }
+        return price;
+    }
+
+    /**
+     * @return the equilibrium price or 0 if the book is not crossed, the executable volume is left in
+     * equilibriumVolume
+     */
+    private long equilibriumPrice(final long referencePrice) {
+        Require.that(referencePrice > 0, "referencePrice must be > 0");
+        equilibriumVolume = 0;
+        final long bestBid = buyOrdersAtPrice.first();
+        final long bestAsk = sellOrdersAtPrice.first();
+        if (bestBid == BookSide.NO_PRICE || bestAsk == BookSide.NO_PRICE || bestBid < bestAsk) {
+            return 0;
+        }
+
+        // only the buy levels at or above the best ask and the sell levels at or below the best bid can execute
+        int buyCount = 0;
+        long buyQty = 0;
+        for (long price = bestBid; price != BookSide.NO_PRICE && price >= bestAsk;
+             price = buyOrdersAtPrice.next(price)) {
+            if (buyCount == auctionBuyPrices.length) {
+                auctionBuyPrices = Arrays.copyOf(auctionBuyPrices, buyCount * 2);
+                auctionBuyQtys = Arrays.copyOf(auctionBuyQtys, buyCount * 2);
+            }
+            auctionBuyPrices[buyCount] = price;
+            auctionBuyQtys[buyCount] = buyOrdersAtPrice.get(price).getTotalQuantity();
+            buyQty += auctionBuyQtys[buyCount++];
+        }
+        int sellCount = 0;
+        for (long price = bestAsk; price != BookSide.NO_PRICE && price <= bestBid;
+             price = sellOrdersAtPrice.next(price)) {
+            if (sellCount == auctionSellPrices.length) {
+                auctionSellPrices = Arrays.copyOf(auctionSellPrices, sellCount * 2);
+                auctionSellQtys = Arrays.copyOf(auctionSellQtys, sellCount * 2);
+            }
+            auctionSellPrices[sellCount] = price;
+            auctionSellQtys[sellCount++] = sellOrdersAtPrice.get(price).getTotalQuantity();
+        }
+
+        // the prices of both sides in ascending order, the cumulative buy quantity (at or above the price) goes down
+        // and the cumulative sell quantity (at or below the price) goes up
+        long sellQty = 0;
+        long bestVolume = 0;
+        long bestSurplus = 0;
+        long lowest = 0;
+        long highest = 0;
+        long closest = 0;
+        boolean buySurplus = false;
+        boolean sellSurplus = false;
+        int buyIndex = buyCount - 1;
+        int sellIndex = 0;
+        while (buyIndex >= 0 || sellIndex < sellCount) {
+            final long price = buyIndex < 0 ? auctionSellPrices[sellIndex]
+                : sellIndex == sellCount ? auctionBuyPrices[buyIndex]
+                : Math.min(auctionBuyPrices[buyIndex], auctionSellPrices[sellIndex]);
+            final long buyQtyAtOrAbove = buyQty;
+            if (buyIndex >= 0 && auctionBuyPrices[buyIndex] == price) {
+                buyQty -= auctionBuyQtys[buyIndex--];
+            }
+            if (sellIndex < sellCount && auctionSellPrices[sellIndex] == price) {
+                sellQty += auctionSellQtys[sellIndex++];
+            }
+
+            final long volume = Math.min(buyQtyAtOrAbove, sellQty);
+            final long surplus = Math.abs(buyQtyAtOrAbove - sellQty);
+            if (volume > bestVolume || volume == bestVolume && surplus < bestSurplus) {
+                bestVolume = volume;
+                bestSurplus = surplus;
+                lowest = price;
+                highest = price;
+                closest = price;
+                buySurplus = buyQtyAtOrAbove > sellQty;
+                sellSurplus = buyQtyAtOrAbove < sellQty;
+            } else if (volume == bestVolume && surplus == bestSurplus && volume > 0) {
+                highest = price;
+                buySurplus &= buyQtyAtOrAbove > sellQty;
+                sellSurplus &= buyQtyAtOrAbove < sellQty;
+                if (Math.abs(price - referencePrice) <= Math.abs(closest - referencePrice)) {
+                    closest = price;
+                }
+            }
+        }
+        equilibriumVolume = bestVolume;
+        if (bestVolume == 0) {
+            return 0;
+        }
+        return buySurplus ? highest : sellSurplus ? lowest : closest;
+    }
+
+    /**
+     * Executes the buy orders at or above the price against the sell orders at or below it, in price and time
+     * priority, at the price.
+     */
+    private void allocate(final long price, final ExecutionListener listener) {
+        long buyPrice = buyOrdersAtPrice.first();
+        long sellPrice = sellOrdersAtPrice.first();
+        while (buyPrice != BookSide.NO_PRICE && buyPrice >= price && sellPrice != BookSide.NO_PRICE
+            && sellPrice <= price) {
+            final QueuedOrdersAtPrice buyOrders = buyOrdersAtPrice.get(buyPrice);
+            final Order buyOrder = buyOrders.getFirst();
+            final long orderId = buyOrder.getId();
+            final long qty = buyOrder.getQty();
+            execution.taker(orderId, Side.BUY);
+
+            long leavesQty = qty;
+            while (leavesQty > 0 && sellPrice != BookSide.NO_PRICE && sellPrice <= price) {
+                final QueuedOrdersAtPrice sellOrders = sellOrdersAtPrice.get(sellPrice);
+                final long levelQty = sellOrders.getTotalQuantity();
+                checksum -= sellOrders.getChecksum();
+                leavesQty = Matcher.matchAtPrice(price, sellOrders, leavesQty, execution, listener, filledOrders);
+                checksum += sellOrders.getChecksum();
+                indexQty(Side.SELL, sellPrice, sellOrders.getTotalQuantity() - levelQty);
+                if (marketDataListener != null) {
+                    levelChanged(Side.SELL, sellPrice, sellOrders, false);
+                }
+                if (sellOrders.isEmpty()) {
+                    sellOrdersAtPrice.remove(sellPrice);
+                    sellPrice = sellOrdersAtPrice.first();
+                }
+            }
+
+            // the buy order is first in its queue, the executed quantity is taken from it in the same way
+            checksum -= buyOrders.getChecksum();
+            Matcher.matchAtPrice(price, buyOrders, qty - leavesQty, auctionFill, IGNORE_EXECUTIONS, filledOrders);
+            checksum += buyOrders.getChecksum();
+            indexQty(Side.BUY, buyPrice, leavesQty - qty);
+            if (marketDataListener != null) {
+                levelChanged(Side.BUY, buyPrice, buyOrders, false);
+            }
+            if (buyOrders.isEmpty()) {
+                buyOrdersAtPrice.remove(buyPrice);
+                buyPrice = buyOrdersAtPrice.first();
+            }
+            listener.onExecutionsEnd(orderId);
+        }
     }
 
+    /**
+     * @param direction 1 if a passive price lower than or equal to the active price matches (buy order) or -1 if a
+     *                  passive price higher than or equal to the active price matches (sell order)
+     */
     private long compare(final long activeOrderPrice, long currQty,
-                         final Set<Map.Entry<Long, QueuedOrdersAtPrice>> sideOrders, final Comparator<Long> cmp,
-                         final List<Trade> trades) {
-        for (final Map.Entry<Long, QueuedOrdersAtPrice> queueOrdersAtPrice: sideOrders) {
-            final long passiveOrderPrice = queueOrdersAtPrice.getKey();
-            if ( (cmp.compare(passiveOrderPrice, activeOrderPrice) <= 0) && currQty > 0) {
-                currQty = match(queueOrdersAtPrice, currQty, trades);
-            } else {
+                         final BookSide sideOrders, final int direction,
+                         final ExecutionListener listener, final boolean recording) {
+        final Side passiveSide = direction > 0 ? Side.SELL : Side.BUY;
+        long passiveOrderPrice = sideOrders.first();
+        while (currQty > 0 && passiveOrderPrice != BookSide.NO_PRICE) {
+            if (direction * Long.compare(passiveOrderPrice, activeOrderPrice) > 0) {
                 break;
             }
+            final QueuedOrdersAtPrice ordersAtPrice = sideOrders.get(passiveOrderPrice);
+            if (ordersAtPrice.isEmpty()) {
+                // emptied earlier in the batch, it is removed at the end of the batch
+                passiveOrderPrice = sideOrders.next(passiveOrderPrice);
+                continue;
+            }
+            final long levelQty = ordersAtPrice.getTotalQuantity();
+            checksum -= ordersAtPrice.getChecksum();
+            if (recording) {
+                levelsSwept++;
+                final long start = System.nanoTime();
+                currQty = Matcher.matchAtPrice(passiveOrderPrice, ordersAtPrice, currQty, execution, listener,
+                    filledOrders);
+                stats.record(EngineStats.Probe.MATCH_AT_PRICE, System.nanoTime() - start);
+            } else {
+                currQty = Matcher.matchAtPrice(passiveOrderPrice, ordersAtPrice, currQty, execution, listener,
+                    filledOrders);
+            }
+            checksum += ordersAtPrice.getChecksum();
+            indexQty(passiveSide, passiveOrderPrice, ordersAtPrice.getTotalQuantity() - levelQty);
+            if (marketDataListener != null) {
+                levelChanged(passiveSide, passiveOrderPrice, ordersAtPrice, false);
+            }
+            if (ordersAtPrice.isEmpty()) {
+                // all orders at the price has been filled, the next price (if any) is now the best price
+                if (batching) {
+                    emptyLevel(passiveSide, passiveOrderPrice);
+                    passiveOrderPrice = sideOrders.next(passiveOrderPrice);
+                } else {
+                    sideOrders.remove(passiveOrderPrice);
+                    passiveOrderPrice = sideOrders.first();
+                }
+            }
         }
         return currQty;
     }
 
-    private Long match(final Map.Entry<Long, QueuedOrdersAtPrice> ordersAtPrice,
-                       Long currQty, final List<Trade> trades) {
-        final List<Trade> tradesAtPrice = Matcher.matchAtPrice(ordersAtPrice, currQty);
-        trades.addAll(tradesAtPrice);
-        currQty -= tradesAtPrice.stream()
-            .mapToLong(Trade::getQty)
-            .sum();
-        return currQty;
+    /**
+     * @return a checksum of the resting orders, their ids, sides, prices and quantities in priority order. Two order
+     * books that have the same orders in the same priority have the same checksum, e.g. a primary and its replicas,
+     * see {@link ReplicationPrimary}. The checksum is maintained as the orders are added, filled, cancelled and
+     * amended, see {@link QueuedOrdersAtPrice#getChecksum()}, and is read in O(1).
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Captures the resting orders of the order book, see {@link OrderBookSnapshot}. Must be called on the thread that
+     * owns the order book, the snapshot can then be written on any thread.
+     *
+     * @param lastSequence the sequence number of the last command that was applied to the order book
+     */
+    public OrderBookSnapshot snapshot(final long lastSequence) {
+        return new OrderBookSnapshot(lastSequence, nextOrderId, execution.getSequence(), marketDataSequence,
+            OrderBookSnapshot.Levels.capture(getBuyOrdersAtPrice()),
+            OrderBookSnapshot.Levels.capture(getSellOrdersAtPrice()));
+    }
+
+    /**
+     * Restores the resting orders of a snapshot into this order book, which must be empty. The orders get the same ids
+     * and the same priority as in the order book the snapshot was captured from, and the executions and the market
+     * data updates continue the sequence numbers of that order book. The restored levels are published to the market
+     * data listener as a snapshot with the restored sequence number, see {@link #publishLevels(MarketDataListener)}.
+     */
+    public void restore(final OrderBookSnapshot snapshot) {
+        Require.that(ordersById.isEmpty(), "order book must be empty");
+        for (final Side side : Side.values()) {
+            final BookSide ordersBySide = getOrdersBySide(side);
+            final OrderBookSnapshot.Levels levels = snapshot.getLevels(side);
+            int index = 0;
+            for (int level = 0; level < levels.prices.length; level++) {
+                final long price = levels.prices[level];
+                final QueuedOrdersAtPrice ordersAtPrice = ordersBySide.getOrCreate(price);
+                for (int i = 0; i < levels.orderCounts[level]; i++, index++) {
+                    final Order order = orderPool.acquire().set(levels.orderIds[index], side, price,
+                        levels.orderQtys[index]);
+                    ordersAtPrice.addOrder(order);
+                    ordersById.put(order.getId(), order);
+                }
+                indexQty(side, price, ordersAtPrice.getTotalQuantity());
+                checksum += ordersAtPrice.getChecksum();
+            }
+        }
+        nextOrderId = snapshot.getNextOrderId();
+        execution.continueAfter(snapshot.getExecutionSequence());
+        marketDataSequence = snapshot.getMarketDataSequence();
+        if (marketDataListener != null && !ordersById.isEmpty()) {
+            publishLevels(marketDataListener, marketDataSequence);
+        }
+    }
+
+    /**
+     * Sets the listener that the price level updates of every order, cancel and amend are published to before the
+     * command returns. Publishing does not allocate, the updates of a command are collected in preallocated arrays.
+     *
+     * @param listener the listener or null to stop publishing
+     */
+    public void setMarketDataListener(final MarketDataListener listener) {
+        this.marketDataListener = listener;
     }
 
-    private void add(final Order order, final Long qty) {
-        final Map<Long, QueuedOrdersAtPrice> ordersBySide = getOrdersBySide(order.getSide());
+    /**
+     * @return the sequence number of the last published price level update, 0 if no update has been published
+     */
+    public long getMarketDataSequence() {
+        return marketDataSequence;
+    }
 
-        final Order remainingOrder =
-            Order.builder()
-                .side(order.getSide())
-                .price(order.getPrice())
-                .qty(qty).build();
+    /**
+     * Publishes every price level of the order book to the listener as an {@link MarketDataListener.Action#ADD} with
+     * the sequence number of the last published update, i.e. a snapshot of the levels that the updates with higher
+     * sequence numbers apply to. Must be called on the thread that owns the order book.
+     *
+     * @return the sequence number of the snapshot
+     */
+    public long publishLevels(final MarketDataListener listener) {
+        Require.notNull(listener, "listener");
+        publishLevels(listener, marketDataSequence);
+        return marketDataSequence;
+    }
 
-        ordersBySide.computeIfPresent(order.getPrice(),
-            (key, queuedOrdersAtPrice) -> {
-                queuedOrdersAtPrice.addOrder(remainingOrder);
-                return queuedOrdersAtPrice;
-            });
+    private void publishLevels(final MarketDataListener listener, final long sequence) {
+        for (final Side side : Side.values()) {
+            final BookSide ordersBySide = getOrdersBySide(side);
+            for (long price = ordersBySide.first(); price != BookSide.NO_PRICE; price = ordersBySide.next(price)) {
+                final QueuedOrdersAtPrice ordersAtPrice = ordersBySide.get(price);
+                listener.onLevelUpdate(sequence, MarketDataListener.Action.ADD, side, price,
+                    ordersAtPrice.getTotalQuantity(), ordersAtPrice.getOrderCount());
+            }
+        }
+        listener.onUpdateEnd(sequence);
+    }
 
-        ordersBySide.computeIfAbsent(order.getPrice(), key -> {
-            QueuedOrdersAtPrice queuedOrdersAtPrice = new QueuedOrdersAtPrice();
-            queuedOrdersAtPrice.addOrder(remainingOrder);
-            return queuedOrdersAtPrice;
-        });
+    /**
+     * Collects the state of a price level after it was changed by the current command or batch, a level that is
+     * changed more than once is collected once with its last state.
+     *
+     * @param added true if the level was added by the change
+     */
+    private void levelChanged(final Side side, final long price, final QueuedOrdersAtPrice ordersAtPrice,
+                              final boolean added) {
+        final int collected = ordersAtPrice.levelUpdateIndex;
+        if (ordersAtPrice.levelUpdateSequence == marketDataSequence + 1 && collected < levelUpdateCount
+            && levelUpdatePrices[collected] == price && levelUpdateSides[collected] == side) {
+            levelUpdateQtys[collected] = ordersAtPrice.getTotalQuantity();
+            levelUpdateOrderCounts[collected] = ordersAtPrice.getOrderCount();
+            return;
+        }
+        if (levelUpdateCount == levelUpdatePrices.length) {
+            final int length = levelUpdateCount * 2;
+            levelUpdateAdded = Arrays.copyOf(levelUpdateAdded, length);
+            levelUpdateSides = Arrays.copyOf(levelUpdateSides, length);
+            levelUpdatePrices = Arrays.copyOf(levelUpdatePrices, length);
+            levelUpdateQtys = Arrays.copyOf(levelUpdateQtys, length);
+            levelUpdateOrderCounts = Arrays.copyOf(levelUpdateOrderCounts, length);
+        }
+        final int index = levelUpdateCount++;
+        levelUpdateAdded[index] = added;
+        levelUpdateSides[index] = side;
+        levelUpdatePrices[index] = price;
+        levelUpdateQtys[index] = ordersAtPrice.getTotalQuantity();
+        levelUpdateOrderCounts[index] = ordersAtPrice.getOrderCount();
+        ordersAtPrice.levelUpdateSequence = marketDataSequence + 1;
+        ordersAtPrice.levelUpdateIndex = index;
     }
 
-    private SortedMap<Long, QueuedOrdersAtPrice> getOrdersBySide(final Side side) {
+    /**
+     * Publishes the price levels collected for the current command or batch as one update. A level that was added
+     * and emptied again within a batch is left out.
+     */
+    private void publishLevelUpdates() {
+        int published = 0;
+        for (int i = 0; i < levelUpdateCount; i++) {
+            if (levelUpdateOrderCounts[i] > 0 || !levelUpdateAdded[i]) {
+                published++;
+            }
+        }
+        if (published == 0) {
+            levelUpdateCount = 0;
+            return;
+        }
+        final long sequence = ++marketDataSequence;
+        for (int i = 0; i < levelUpdateCount; i++) {
+            final MarketDataListener.Action action;
+            if (levelUpdateOrderCounts[i] == 0) {
+                if (levelUpdateAdded[i]) {
+                    continue;
+                }
+                action = MarketDataListener.Action.DELETE;
+            } else {
+                action = levelUpdateAdded[i] ? MarketDataListener.Action.ADD : MarketDataListener.Action.CHANGE;
+            }
+            marketDataListener.onLevelUpdate(sequence, action, levelUpdateSides[i], levelUpdatePrices[i],
+                levelUpdateQtys[i], levelUpdateOrderCounts[i]);
+        }
+        levelUpdateCount = 0;
+        marketDataListener.onUpdateEnd(sequence);
+    }
+
+    /**
+     * Collects a price level that was emptied by a batch, see {@link #removeEmptyLevels()}.
+     */
+    private void emptyLevel(final Side side, final long price) {
+        if (emptyLevelCount == emptyLevelPrices.length) {
+            emptyLevelSides = Arrays.copyOf(emptyLevelSides, emptyLevelCount * 2);
+            emptyLevelPrices = Arrays.copyOf(emptyLevelPrices, emptyLevelCount * 2);
+        }
+        emptyLevelSides[emptyLevelCount] = side;
+        emptyLevelPrices[emptyLevelCount++] = price;
+    }
+
+    /**
+     * Removes the price levels that were emptied by a batch and are still empty at the end of it.
+     */
+    private void removeEmptyLevels() {
+        for (int i = 0; i < emptyLevelCount; i++) {
+            final BookSide sideOrders = getOrdersBySide(emptyLevelSides[i]);
+            final QueuedOrdersAtPrice ordersAtPrice = sideOrders.get(emptyLevelPrices[i]);
+            if (ordersAtPrice != null && ordersAtPrice.isEmpty()) {
+                sideOrders.remove(emptyLevelPrices[i]);
+            }
+        }
+        emptyLevelCount = 0;
+    }
+
+    /**
+     * @return the latency histograms and counters of this order book, recording is off until it is switched on with
+     * {@link EngineStats#setEnabled(boolean)}
+     */
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the number of resting orders
+     */
+    public int getOrderCount() {
+        return ordersById.size();
+    }
+
+    /**
+     * @return the number of price levels on the side
+     */
+    public int getLevelCount(final Side side) {
+        return getOrdersBySide(side).size();
+    }
+
+    OrderPool getOrderPool() {
+        return orderPool;
+    }
+
+    private void recordDepth() {
+        stats.onDepth(buyOrdersAtPrice.size(), sellOrdersAtPrice.size(), ordersById.size());
+    }
+
+    private void removeFilled(final Order order) {
+        ordersById.remove(order.getId());
+        orderPool.release(order);
+    }
+
+    private void add(final long orderId, final Side side, final long price, final long qty) {
+        final BookSide ordersBySide = getOrdersBySide(side);
+
+        final Order remainingOrder = orderPool.acquire()
+            .set(orderId, side, price, qty);
+
+        final QueuedOrdersAtPrice ordersAtPrice = ordersBySide.getOrCreate(price);
+        checksum -= ordersAtPrice.getChecksum();
+        ordersAtPrice.addOrder(remainingOrder);
+        checksum += ordersAtPrice.getChecksum();
+        ordersById.put(orderId, remainingOrder);
+        indexQty(side, price, qty);
+        if (marketDataListener != null) {
+            levelChanged(side, price, ordersAtPrice, ordersAtPrice.getOrderCount() == 1);
+        }
+    }
+
+    private BookSide getOrdersBySide(final Side side) {
         if (Side.BUY.equals(side)) {
             return getBuyOrdersAtPrice();
         } else {
@@ -144,11 +883,37 @@ public class OrderBook {
         }
     }
 
-    private SortedMap<Long, QueuedOrdersAtPrice> getBuyOrdersAtPrice() {
+    /**
+     * Adds a quantity, which may be negative, to the quantity index of the side if it is maintained.
+     */
+    private void indexQty(final Side side, final long price, final long qty) {
+        if (qtyIndexed) {
+            getQtyIndex(side).add(price, qty);
+        }
+    }
+
+    /**
+     * Builds the quantity indexes from the levels of the book, they are maintained from then on.
+     */
+    private void indexQtys() {
+        for (final Side side : Side.values()) {
+            final BookSide ordersBySide = getOrdersBySide(side);
+            for (long price = ordersBySide.first(); price != BookSide.NO_PRICE; price = ordersBySide.next(price)) {
+                getQtyIndex(side).add(price, ordersBySide.get(price).getTotalQuantity());
+            }
+        }
+        qtyIndexed = true;
+    }
+
+    private LevelQtyIndex getQtyIndex(final Side side) {
+        return Side.BUY.equals(side) ? buyQtyIndex : sellQtyIndex;
+    }
+
+    private BookSide getBuyOrdersAtPrice() {
         return buyOrdersAtPrice;
     }
 
-    private SortedMap<Long, QueuedOrdersAtPrice> getSellOrdersAtPrice() {
+    private BookSide getSellOrdersAtPrice() {
         return sellOrdersAtPrice;
     }
 
@@ -0,0 +1,228 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The resting orders of an {@link OrderBook} at one point in time, with the sequence number of the last command that
+ * was applied to the order book (e.g. the last {@link Journal} record) and the sequence numbers of its last execution
+ * and market data update, so that a restored order book continues them without a gap.
+ *
+ * A snapshot is captured on the thread that owns the order book by copying the price levels and the queued orders
+ * into primitive arrays, see {@link OrderBook#snapshot(long)}, which is a consistent cut that only stops matching for
+ * the time of the copy. The snapshot is immutable, so it can be written to a file on another thread while the order
+ * book continues matching.
+ *
+ * The file format is little-endian:
+ *
+ * <pre>
+ *   magic:i32 version:i32 lastSequence:i64 nextOrderId:i64 executionSequence:i64 marketDataSequence:i64
+ *   for the buy side and then the sell side, best price first:
+ *     levelCount:i32 orderCount:i32
+ *     for each level: price:i64 orderCount:i32, then for each order in priority order: orderId:i64 qty:i64
+ * </pre>
+ *
+ * A snapshot of version 1, without the execution and market data sequence numbers, is read with both set to 0.
+ */
+public final class OrderBookSnapshot {
+
+    private static final int MAGIC = 0x4F42534E; // "OBSN"
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long lastSequence;
+    private final long nextOrderId;
+    private final long executionSequence;
+    private final long marketDataSequence;
+    private final Levels buyLevels;
+    private final Levels sellLevels;
+
+    /**
+     * The price levels of one side, best price first, and their orders in priority order.
+     */
+    static final class Levels {
+        final long[] prices;
+        final int[] orderCounts;
+        final long[] orderIds;
+        final long[] orderQtys;
+
+        Levels(final long[] prices, final int[] orderCounts, final long[] orderIds, final long[] orderQtys) {
+            this.prices = prices;
+            this.orderCounts = orderCounts;
+            this.orderIds = orderIds;
+            this.orderQtys = orderQtys;
+        }
+
+        static Levels capture(final BookSide side) {
+            int levelCount = 0;
+            int orderCount = 0;
+            for (long price = side.first(); price != BookSide.NO_PRICE; price = side.next(price)) {
+                levelCount++;
+                orderCount += side.get(price).getOrderCount();
+            }
+            final Levels levels = new Levels(new long[levelCount], new int[levelCount], new long[orderCount],
+                new long[orderCount]);
+            int level = 0;
+            int index = 0;
+            for (long price = side.first(); price != BookSide.NO_PRICE; price = side.next(price)) {
+                final QueuedOrdersAtPrice ordersAtPrice = side.get(price);
+                levels.prices[level] = price;
+                levels.orderCounts[level++] = ordersAtPrice.getOrderCount();
+                for (Order order = ordersAtPrice.getFirst(); order != null; order = order.next) {
+                    levels.orderIds[index] = order.getId();
+                    levels.orderQtys[index++] = order.getQty();
+                }
+            }
+            return levels;
+        }
+    }
+
+    OrderBookSnapshot(final long lastSequence, final long nextOrderId, final long executionSequence,
+                      final long marketDataSequence, final Levels buyLevels, final Levels sellLevels) {
+        this.lastSequence = lastSequence;
+        this.nextOrderId = nextOrderId;
+        this.executionSequence = executionSequence;
+        this.marketDataSequence = marketDataSequence;
+        this.buyLevels = buyLevels;
+        this.sellLevels = sellLevels;
+    }
+
+    /**
+     * @return the sequence number of the last command that was applied to the order book
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    long getNextOrderId() {
+        return nextOrderId;
+    }
+
+    long getExecutionSequence() {
+        return executionSequence;
+    }
+
+    long getMarketDataSequence() {
+        return marketDataSequence;
+    }
+
+    Levels getLevels(final Side side) {
+        return Side.BUY.equals(side) ? buyLevels : sellLevels;
+    }
+
+    public int getOrderCount() {
+        return buyLevels.orderIds.length + sellLevels.orderIds.length;
+    }
+
+    public int getLevelCount() {
+        return buyLevels.prices.length + sellLevels.prices.length;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file that is then renamed to the file, i.e. the file either holds a complete
+     * snapshot or is not changed.
+     */
+    public void writeTo(final Path file) throws IOException {
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(lastSequence).putLong(nextOrderId).putLong(executionSequence)
+                .putLong(marketDataSequence);
+            write(buffer, channel, buyLevels);
+            write(buffer, channel, sellLevels);
+            flush(buffer, channel);
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static OrderBookSnapshot readFrom(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 24 || buffer.getInt() != MAGIC) {
+                throw new IOException("not a snapshot: " + file);
+            }
+            final int version = buffer.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version + ": " + file);
+            }
+            final long lastSequence = buffer.getLong();
+            final long nextOrderId = buffer.getLong();
+            final long executionSequence = version == 1 ? 0 : buffer.getLong();
+            final long marketDataSequence = version == 1 ? 0 : buffer.getLong();
+            return new OrderBookSnapshot(lastSequence, nextOrderId, executionSequence, marketDataSequence,
+                read(buffer), read(buffer));
+        } catch (final RuntimeException e) {
+            // e.g. a truncated file
+            throw new IOException("corrupt snapshot: " + file, e);
+        }
+    }
+
+    private static void write(final ByteBuffer buffer, final FileChannel channel, final Levels levels)
+        throws IOException {
+        ensureRemaining(buffer, channel, 8);
+        buffer.putInt(levels.prices.length).putInt(levels.orderIds.length);
+        int index = 0;
+        for (int level = 0; level < levels.prices.length; level++) {
+            ensureRemaining(buffer, channel, 12);
+            buffer.putLong(levels.prices[level]).putInt(levels.orderCounts[level]);
+            for (int i = 0; i < levels.orderCounts[level]; i++, index++) {
+                ensureRemaining(buffer, channel, 16);
+                buffer.putLong(levels.orderIds[index]).putLong(levels.orderQtys[index]);
+            }
+        }
+    }
+
+    private static Levels read(final ByteBuffer buffer) throws IOException {
+        final int levelCount = buffer.getInt();
+        final int orderCount = buffer.getInt();
+        if (levelCount < 0 || orderCount < levelCount || orderCount > buffer.remaining() / 16) {
+            throw new IOException("illegal level count " + levelCount + " or order count " + orderCount);
+        }
+        final Levels levels = new Levels(new long[levelCount], new int[levelCount], new long[orderCount],
+            new long[orderCount]);
+        int index = 0;
+        for (int level = 0; level < levelCount; level++) {
+            levels.prices[level] = buffer.getLong();
+            levels.orderCounts[level] = buffer.getInt();
+            if (levels.orderCounts[level] <= 0 || index + levels.orderCounts[level] > orderCount) {
+                throw new IOException("illegal order count " + levels.orderCounts[level] + " at price "
+                    + levels.prices[level]);
+            }
+            for (int i = 0; i < levels.orderCounts[level]; i++, index++) {
+                levels.orderIds[index] = buffer.getLong();
+                levels.orderQtys[index] = buffer.getLong();
+            }
+        }
+        if (index != orderCount) {
+            throw new IOException("order count " + orderCount + " does not match the levels: " + index);
+        }
+        return levels;
+    }
+
+    private static void ensureRemaining(final ByteBuffer buffer, final FileChannel channel, final int length)
+        throws IOException {
+        if (buffer.remaining() < length) {
+            flush(buffer, channel);
+        }
+    }
+
+    private static void flush(final ByteBuffer buffer, final FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
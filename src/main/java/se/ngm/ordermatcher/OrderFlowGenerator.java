@@ -0,0 +1,432 @@
+package se.ngm.ordermatcher;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import se.ngm.ordermatcher.codec.AmendOrderEncoder;
+import se.ngm.ordermatcher.codec.CancelOrderEncoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+
+/**
+ * Generates synthetic order flow: new orders, cancels and amends, from a seed, i.e. the same configuration always
+ * generates the same flow.
+ *
+ * The mid price follows a random walk. Limit orders are placed on their own side of the mid price at an exponentially
+ * distributed distance, so most orders rest near the top of the book with a long tail, and a configurable share of
+ * them cross the mid price and trade. The quantities are log-normally distributed, i.e. mostly small with an
+ * occasional large order, and the order types are mixed by configurable ratios.
+ *
+ * Cancels and amends are of the limit orders that the generator has placed and not yet cancelled, some of which may
+ * have been filled, so a share of them is rejected by the order book as in real flow. There are at most
+ * {@link Builder#maxOpenOrders(int)} such orders, when there are that many a random one is cancelled before the next
+ * order, which keeps the order book from growing without bounds as the mid price drifts away from the orders.
+ *
+ * The generated orders have ids from 1, in the order they are generated, which are the ids that an empty order book
+ * assigns to orders placed without ids, so the text format, which has no order ids, can be fed to the console.
+ *
+ * The generator is a cursor: {@link #next()} generates a command which is then read from the getters, a new order is
+ * generated into one reused order. A generator is not thread safe.
+ */
+public class OrderFlowGenerator {
+
+    /**
+     * The kinds of generated commands.
+     */
+    public enum Command {
+        NEW_ORDER, CANCEL, AMEND
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Random random;
+    private final double driftProbability;
+    private final double meanDepthTicks;
+    private final double crossingRatio;
+    private final double meanCrossTicks;
+    private final long medianQty;
+    private final double qtySigma;
+    private final long maxQty;
+    private final double marketRatio;
+    private final double iocRatio;
+    private final double fokRatio;
+    private final double cancelRatio;
+    private final double amendRatio;
+
+    private final long[] openOrderIds;
+    private int openOrderCount;
+    private final Order order = new Order();
+    private long midPrice;
+    private long nextOrderId = 1;
+    private Command command;
+    private long orderId;
+    private long qty;
+
+    private OrderFlowGenerator(final Builder builder) {
+        this.random = new Random(builder.seed);
+        this.midPrice = builder.midPrice;
+        this.driftProbability = builder.driftProbability;
+        this.meanDepthTicks = builder.meanDepthTicks;
+        this.crossingRatio = builder.crossingRatio;
+        this.meanCrossTicks = builder.meanCrossTicks;
+        this.medianQty = builder.medianQty;
+        this.qtySigma = builder.qtySigma;
+        this.maxQty = builder.maxQty;
+        this.marketRatio = builder.marketRatio;
+        this.iocRatio = builder.iocRatio;
+        this.fokRatio = builder.fokRatio;
+        this.cancelRatio = builder.cancelRatio;
+        this.amendRatio = builder.amendRatio;
+        this.openOrderIds = new long[builder.maxOpenOrders];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Generates the next command.
+     */
+    public Command next() {
+        if (random.nextDouble() < driftProbability) {
+            midPrice = Math.max(1, midPrice + (random.nextBoolean() ? 1 : -1));
+        }
+        if (openOrderCount == openOrderIds.length) {
+            return cancel();
+        }
+        final double command = random.nextDouble();
+        if (openOrderCount > 0 && command < cancelRatio) {
+            return cancel();
+        }
+        if (openOrderCount > 0 && command < cancelRatio + amendRatio) {
+            return amend();
+        }
+        return newOrder();
+    }
+
+    /**
+     * @return the last generated command or null if no command has been generated
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the new order of the last command, a reused order that is overwritten by the next new order
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the order id of the last command
+     */
+    public long getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * @return the quantity of the last command, the new quantity of an amend
+     */
+    public long getQty() {
+        return qty;
+    }
+
+    public long getMidPrice() {
+        return midPrice;
+    }
+
+    /**
+     * Applies the last generated command to the order matcher.
+     *
+     * @return false if the order matcher rejected the command, e.g. a cancel of an order that has been filled
+     */
+    public boolean apply(final OrderMatcher matcher, final TradeListener listener) {
+        switch (command) {
+            case NEW_ORDER:
+                try {
+                    matcher.placeOrder(order, listener);
+                    return true;
+                } catch (final IllegalArgumentException e) {
+                    return false;
+                }
+            case CANCEL:
+                return matcher.cancelOrder(orderId);
+            case AMEND:
+                return matcher.amendOrder(orderId, qty);
+            default:
+                throw new IllegalStateException("no command has been generated");
+        }
+    }
+
+    /**
+     * Generates commands into a file in the text format of the console, see {@link OrderParserUtil}, one command per
+     * line.
+     */
+    public void writeText(final Path file, final long count) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            for (long i = 0; i < count; i++) {
+                switch (next()) {
+                    case NEW_ORDER:
+                        writer.write(order.getSide().name());
+                        writer.write(' ');
+                        writer.write(Long.toString(order.getQty()));
+                        if (OrderType.MARKET.equals(order.getType())) {
+                            writer.write(" MARKET");
+                        } else {
+                            writer.write('@');
+                            writer.write(Long.toString(order.getPrice()));
+                            if (!OrderType.LIMIT.equals(order.getType())) {
+                                writer.write(' ');
+                                writer.write(order.getType().name());
+                            }
+                        }
+                        break;
+                    case CANCEL:
+                        writer.write("CANCEL ");
+                        writer.write(Long.toString(orderId));
+                        break;
+                    case AMEND:
+                        writer.write("AMEND ");
+                        writer.write(Long.toString(orderId));
+                        writer.write(' ');
+                        writer.write(Long.toString(qty));
+                        break;
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Generates commands into a file of binary encoded messages, see {@link se.ngm.ordermatcher.codec}, that can be
+     * fed to a {@link BinaryOrderProcessor}.
+     */
+    public void writeBinary(final Path file, final long count) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+        final NewOrderEncoder newOrderEncoder = new NewOrderEncoder();
+        final CancelOrderEncoder cancelOrderEncoder = new CancelOrderEncoder();
+        final AmendOrderEncoder amendOrderEncoder = new AmendOrderEncoder();
+        final int maxLength = MessageHeaderEncoder.ENCODED_LENGTH + NewOrderEncoder.BLOCK_LENGTH;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long i = 0; i < count; i++) {
+                if (buffer.remaining() < maxLength) {
+                    write(channel, buffer);
+                }
+                final int offset = buffer.position();
+                switch (next()) {
+                    case NEW_ORDER:
+                        newOrderEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder)
+                            .orderId(order.getId())
+                            .side(order.getSide())
+                            .price(order.getPrice())
+                            .qty(order.getQty())
+                            .orderType(order.getType());
+                        buffer.position(offset + headerEncoder.encodedLength() + newOrderEncoder.encodedLength());
+                        break;
+                    case CANCEL:
+                        cancelOrderEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder).orderId(orderId);
+                        buffer.position(offset + headerEncoder.encodedLength() + cancelOrderEncoder.encodedLength());
+                        break;
+                    case AMEND:
+                        amendOrderEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder).orderId(orderId).qty(qty);
+                        buffer.position(offset + headerEncoder.encodedLength() + amendOrderEncoder.encodedLength());
+                        break;
+                }
+            }
+            write(channel, buffer);
+        }
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private Command newOrder() {
+        final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+        final double kind = random.nextDouble();
+        final OrderType type = kind < marketRatio ? OrderType.MARKET
+            : kind < marketRatio + iocRatio ? OrderType.IOC
+            : kind < marketRatio + iocRatio + fokRatio ? OrderType.FOK
+            : OrderType.LIMIT;
+        final long price;
+        if (OrderType.MARKET.equals(type)) {
+            price = 0;
+        } else {
+            // a positive offset is on the order's own side of the mid price, a negative one crosses it
+            final long offset = random.nextDouble() < crossingRatio
+                ? -1 - exponential(meanCrossTicks)
+                : 1 + exponential(meanDepthTicks);
+            price = Math.max(1, Side.BUY.equals(side) ? midPrice - offset : midPrice + offset);
+        }
+        orderId = nextOrderId++;
+        qty = Math.min(maxQty, Math.max(1, Math.round(medianQty * Math.exp(qtySigma * random.nextGaussian()))));
+        order.set(orderId, side, price, qty, type);
+        if (OrderType.LIMIT.equals(type)) {
+            openOrderIds[openOrderCount++] = orderId;
+        }
+        command = Command.NEW_ORDER;
+        return command;
+    }
+
+    private Command cancel() {
+        final int index = random.nextInt(openOrderCount);
+        orderId = openOrderIds[index];
+        openOrderIds[index] = openOrderIds[--openOrderCount];
+        qty = 0;
+        command = Command.CANCEL;
+        return command;
+    }
+
+    private Command amend() {
+        orderId = openOrderIds[random.nextInt(openOrderCount)];
+        qty = Math.min(maxQty, Math.max(1, Math.round(medianQty * Math.exp(qtySigma * random.nextGaussian()))));
+        command = Command.AMEND;
+        return command;
+    }
+
+    private long exponential(final double mean) {
+        return (long) (-mean * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * The configuration of a generator, the defaults give a book a few dozen ticks deep on each side with about a
+     * tenth of the orders trading.
+     */
+    public static class Builder {
+        private long seed = 1;
+        private long midPrice = 10_000;
+        private double driftProbability = 0.01;
+        private double meanDepthTicks = 10;
+        private double crossingRatio = 0.1;
+        private double meanCrossTicks = 2;
+        private long medianQty = 20;
+        private double qtySigma = 1;
+        private long maxQty = 10_000;
+        private double marketRatio = 0.02;
+        private double iocRatio = 0.05;
+        private double fokRatio = 0.01;
+        private double cancelRatio = 0.3;
+        private double amendRatio = 0.05;
+        private int maxOpenOrders = 10_000;
+
+        private Builder() {
+        }
+
+        public Builder seed(final long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param midPrice the mid price that the random walk starts from
+         */
+        public Builder midPrice(final long midPrice) {
+            this.midPrice = midPrice;
+            return this;
+        }
+
+        /**
+         * @param driftProbability the probability that the mid price moves one tick up or down before a command
+         */
+        public Builder driftProbability(final double driftProbability) {
+            this.driftProbability = driftProbability;
+            return this;
+        }
+
+        /**
+         * @param meanDepthTicks the mean distance in ticks from the best price on the order's side of the mid price
+         *                       that limit orders are placed at
+         */
+        public Builder meanDepthTicks(final double meanDepthTicks) {
+            this.meanDepthTicks = meanDepthTicks;
+            return this;
+        }
+
+        /**
+         * @param crossingRatio the share of the priced orders that are placed through the mid price
+         */
+        public Builder crossingRatio(final double crossingRatio) {
+            this.crossingRatio = crossingRatio;
+            return this;
+        }
+
+        /**
+         * @param meanCrossTicks the mean distance in ticks beyond the best price on the other side of the mid price
+         *                       that crossing orders are placed at
+         */
+        public Builder meanCrossTicks(final double meanCrossTicks) {
+            this.meanCrossTicks = meanCrossTicks;
+            return this;
+        }
+
+        /**
+         * @param medianQty the median of the log-normally distributed quantities
+         * @param qtySigma  the standard deviation of the logarithm of the quantities, 0 for a fixed quantity
+         * @param maxQty    the largest quantity
+         */
+        public Builder qty(final long medianQty, final double qtySigma, final long maxQty) {
+            this.medianQty = medianQty;
+            this.qtySigma = qtySigma;
+            this.maxQty = maxQty;
+            return this;
+        }
+
+        /**
+         * The shares of the new orders that are market, IOC and FOK orders, the rest are limit orders.
+         */
+        public Builder orderTypes(final double marketRatio, final double iocRatio, final double fokRatio) {
+            this.marketRatio = marketRatio;
+            this.iocRatio = iocRatio;
+            this.fokRatio = fokRatio;
+            return this;
+        }
+
+        /**
+         * The shares of the commands that are cancels and amends, the rest are new orders.
+         */
+        public Builder cancelsAndAmends(final double cancelRatio, final double amendRatio) {
+            this.cancelRatio = cancelRatio;
+            this.amendRatio = amendRatio;
+            return this;
+        }
+
+        /**
+         * @param maxOpenOrders the largest number of placed limit orders that are kept for cancels and amends
+         */
+        public Builder maxOpenOrders(final int maxOpenOrders) {
+            this.maxOpenOrders = maxOpenOrders;
+            return this;
+        }
+
+        public OrderFlowGenerator build() {
+            Require.that(midPrice > 0, "midPrice must be > 0");
+            Require.that(driftProbability >= 0 && driftProbability <= 1, "driftProbability must be in [0, 1]");
+            Require.that(meanDepthTicks >= 0, "meanDepthTicks must be >= 0");
+            Require.that(crossingRatio >= 0 && crossingRatio <= 1, "crossingRatio must be in [0, 1]");
+            Require.that(meanCrossTicks >= 0, "meanCrossTicks must be >= 0");
+            Require.that(medianQty > 0, "medianQty must be > 0");
+            Require.that(qtySigma >= 0, "qtySigma must be >= 0");
+            Require.that(maxQty >= medianQty, "maxQty must be >= medianQty");
+            Require.that(marketRatio >= 0 && iocRatio >= 0 && fokRatio >= 0
+                && marketRatio + iocRatio + fokRatio <= 1, "order type ratios must be >= 0 with a sum <= 1");
+            Require.that(cancelRatio >= 0 && amendRatio >= 0 && cancelRatio + amendRatio < 1,
+                "cancel and amend ratios must be >= 0 with a sum < 1");
+            Require.that(maxOpenOrders > 0, "maxOpenOrders must be > 0");
+            return new OrderFlowGenerator(this);
+        }
+    }
+}
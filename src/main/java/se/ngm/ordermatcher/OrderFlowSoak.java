@@ -0,0 +1,275 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A soak test: drives an order matcher with generated order flow, see {@link OrderFlowGenerator}, as fast as it can for
+ * a fixed duration, and samples the throughput, the latency percentiles, the depth of the order book and the heap
+ * usage at a fixed interval, so that a drift over time (e.g. a growing book, a leak or a slowdown after a while) shows.
+ *
+ * The latency of a command is the time to apply it to the order matcher, the generation is not included. The
+ * generator and the order matcher are used by the calling thread only.
+ */
+public class OrderFlowSoak {
+
+    /**
+     * The measurements of one sample interval.
+     */
+    public static class Sample {
+        private final long elapsedNanos;
+        private final long commandCount;
+        private final double commandsPerSecond;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+        private final int restingOrders;
+        private final int buyLevels;
+        private final int sellLevels;
+        private final long heapUsedBytes;
+
+        Sample(final long elapsedNanos, final long commandCount, final long intervalNanos, final Histogram latencies,
+               final OrderBook orderBook, final long heapUsedBytes) {
+            this.elapsedNanos = elapsedNanos;
+            this.commandCount = commandCount;
+            this.commandsPerSecond = commandCount / (intervalNanos / 1e9);
+            this.p50Nanos = latencies.getValueAtPercentile(50);
+            this.p99Nanos = latencies.getValueAtPercentile(99);
+            this.p999Nanos = latencies.getValueAtPercentile(99.9);
+            this.maxNanos = latencies.getMax();
+            this.restingOrders = orderBook.getOrderCount();
+            this.buyLevels = orderBook.getLevelCount(Side.BUY);
+            this.sellLevels = orderBook.getLevelCount(Side.SELL);
+            this.heapUsedBytes = heapUsedBytes;
+        }
+
+        /**
+         * @return the time from the start of the soak test to the end of the interval
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the number of commands applied in the interval
+         */
+        public long getCommandCount() {
+            return commandCount;
+        }
+
+        public double getCommandsPerSecond() {
+            return commandsPerSecond;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos() {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @return the number of resting orders at the end of the interval
+         */
+        public int getRestingOrders() {
+            return restingOrders;
+        }
+
+        public int getBuyLevels() {
+            return buyLevels;
+        }
+
+        public int getSellLevels() {
+            return sellLevels;
+        }
+
+        /**
+         * @return the used heap at the end of the interval, including garbage that has not been collected
+         */
+        public long getHeapUsedBytes() {
+            return heapUsedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("t=%.1fs commands/s=%.0f p50=%dns p99=%dns p99.9=%dns max=%dns orders=%d "
+                    + "levels=%d/%d heap=%dMB", elapsedNanos / 1e9, commandsPerSecond, p50Nanos, p99Nanos, p999Nanos,
+                maxNanos, restingOrders, buyLevels, sellLevels, heapUsedBytes >> 20);
+        }
+    }
+
+    /**
+     * The totals of a soak test.
+     */
+    public static class Summary {
+        private final long commandCount;
+        private final long tradeCount;
+        private final long rejectedCount;
+        private final long nanos;
+        private final Histogram latencies;
+        private final int peakRestingOrders;
+        private final int peakLevels;
+        private final long peakHeapUsedBytes;
+        private final List<Sample> samples;
+
+        Summary(final long commandCount, final long tradeCount, final long rejectedCount, final long nanos,
+                final Histogram latencies, final int peakRestingOrders, final int peakLevels,
+                final long peakHeapUsedBytes, final List<Sample> samples) {
+            this.commandCount = commandCount;
+            this.tradeCount = tradeCount;
+            this.rejectedCount = rejectedCount;
+            this.nanos = nanos;
+            this.latencies = latencies;
+            this.peakRestingOrders = peakRestingOrders;
+            this.peakLevels = peakLevels;
+            this.peakHeapUsedBytes = peakHeapUsedBytes;
+            this.samples = Collections.unmodifiableList(samples);
+        }
+
+        public long getCommandCount() {
+            return commandCount;
+        }
+
+        public long getTradeCount() {
+            return tradeCount;
+        }
+
+        /**
+         * @return the number of commands that the order matcher rejected, e.g. cancels of orders that have been filled
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the sustained throughput over the whole soak test
+         */
+        public double getCommandsPerSecond() {
+            return commandCount / (nanos / 1e9);
+        }
+
+        /**
+         * @return the latencies of all commands
+         */
+        public Histogram getLatencies() {
+            return latencies;
+        }
+
+        public int getPeakRestingOrders() {
+            return peakRestingOrders;
+        }
+
+        /**
+         * @return the largest number of price levels on both sides together
+         */
+        public int getPeakLevels() {
+            return peakLevels;
+        }
+
+        /**
+         * @return the largest used heap of the samples
+         */
+        public long getPeakHeapUsedBytes() {
+            return peakHeapUsedBytes;
+        }
+
+        public List<Sample> getSamples() {
+            return samples;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("commands=%d trades=%d rejected=%d time=%.1fs commands/s=%.0f p50=%dns p99=%dns "
+                    + "p99.9=%dns max=%dns peakOrders=%d peakLevels=%d peakHeap=%dMB", commandCount, tradeCount,
+                rejectedCount, nanos / 1e9, getCommandsPerSecond(), latencies.getValueAtPercentile(50),
+                latencies.getValueAtPercentile(99), latencies.getValueAtPercentile(99.9), latencies.getMax(),
+                peakRestingOrders, peakLevels, peakHeapUsedBytes >> 20);
+        }
+    }
+
+    private final OrderMatcher matcher;
+    private final OrderFlowGenerator generator;
+    private long tradeCount;
+    private final TradeListener tradeCounter = (price, qty) -> tradeCount++;
+
+    public OrderFlowSoak(final OrderMatcher matcher, final OrderFlowGenerator generator) {
+        this.matcher = Require.notNull(matcher, "matcher");
+        this.generator = Require.notNull(generator, "generator");
+    }
+
+    /**
+     * Runs the soak test.
+     *
+     * @param sampleListener receives each sample as it is taken, e.g. to print it, or null
+     */
+    public Summary run(final long durationNanos, final long sampleIntervalNanos,
+                       final Consumer<Sample> sampleListener) {
+        Require.that(durationNanos > 0, "durationNanos must be > 0");
+        Require.that(sampleIntervalNanos > 0, "sampleIntervalNanos must be > 0");
+        final OrderBook orderBook = matcher.getOrderBook();
+        final Runtime runtime = Runtime.getRuntime();
+        final Histogram latencies = new Histogram();
+        final Histogram intervalLatencies = new Histogram();
+        final List<Sample> samples = new ArrayList<>();
+        tradeCount = 0;
+        long commandCount = 0;
+        long rejectedCount = 0;
+        long intervalCommandCount = 0;
+        int peakRestingOrders = orderBook.getOrderCount();
+        int peakLevels = orderBook.getLevelCount(Side.BUY) + orderBook.getLevelCount(Side.SELL);
+        long peakHeapUsedBytes = 0;
+
+        final long start = System.nanoTime();
+        final long end = start + durationNanos;
+        long intervalStart = start;
+        long now = start;
+        while (now - end < 0) {
+            generator.next();
+            final long commandStart = System.nanoTime();
+            if (!generator.apply(matcher, tradeCounter)) {
+                rejectedCount++;
+            }
+            now = System.nanoTime();
+            latencies.record(now - commandStart);
+            intervalLatencies.record(now - commandStart);
+            commandCount++;
+            intervalCommandCount++;
+            peakRestingOrders = Math.max(peakRestingOrders, orderBook.getOrderCount());
+            peakLevels = Math.max(peakLevels, orderBook.getLevelCount(Side.BUY) + orderBook.getLevelCount(Side.SELL));
+
+            if (now - intervalStart >= sampleIntervalNanos || now - end >= 0) {
+                final long heapUsedBytes = runtime.totalMemory() - runtime.freeMemory();
+                peakHeapUsedBytes = Math.max(peakHeapUsedBytes, heapUsedBytes);
+                final Sample sample = new Sample(now - start, intervalCommandCount, now - intervalStart,
+                    intervalLatencies, orderBook, heapUsedBytes);
+                samples.add(sample);
+                if (sampleListener != null) {
+                    sampleListener.accept(sample);
+                }
+                intervalLatencies.reset();
+                intervalCommandCount = 0;
+                // the time spent on the sample is not part of the next interval
+                intervalStart = System.nanoTime();
+                now = intervalStart;
+            }
+        }
+        return new Summary(commandCount, tradeCount, rejectedCount, now - start, latencies, peakRestingOrders,
+            peakLevels, peakHeapUsedBytes, samples);
+    }
+}
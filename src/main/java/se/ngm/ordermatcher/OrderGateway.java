@@ -0,0 +1,666 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import se.ngm.ordermatcher.codec.AmendOrderDecoder;
+import se.ngm.ordermatcher.codec.CancelOrderDecoder;
+import se.ngm.ordermatcher.codec.ExecutionReportEncoder;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderDecoder;
+import se.ngm.ordermatcher.codec.OrderAckEncoder;
+
+/**
+ * A TCP gateway in front of an {@link OrderBook} for many concurrent client sessions, speaking the binary messages of
+ * {@link se.ngm.ordermatcher.codec}. Two threads, connected by {@link SpscRingBuffer}s:
+ *
+ *   sockets -> io -> [commands] -> match -> [events] -> io -> sockets
+ *
+ * The io thread owns all sockets: it accepts sessions, reads and frames the NewOrder, CancelOrder and AmendOrder
+ * messages of every session with one non-blocking selector and writes the ExecutionReport and OrderAck messages back.
+ * The match thread is the only thread that touches the order book. The messages are decoded into reused slots, no
+ * objects are created per message.
+ *
+ * Every command is answered with an OrderAck to its session, after the execution reports of the command. An execution
+ * is reported to the session of the taker order and to the session of the maker order. Only the session that placed
+ * an order can cancel or amend it. Orders are not cancelled when their session disconnects.
+ *
+ * Flow control: the io thread never waits for the match thread. When the command queue is full it stops reading from
+ * a session, the unframed bytes are kept in the session buffer and the socket buffers fill up, until the match thread
+ * has caught up. The match thread only waits for the io thread if the event queue is full, which the io thread drains
+ * on every turn of its loop. A session that does not read its reports, so that its write buffer overflows, is
+ * disconnected.
+ *
+ * If a thread fails, e.g. because the selector fails or the order book throws anything but an
+ * {@link IllegalArgumentException}, the failure is kept (see {@link #getFailure()}) and the other thread stops as
+ * well. The events that the match thread has queued are written first, as far as the sockets take them, then all
+ * sessions are closed and no new sessions are accepted. {@link #close()} throws the failure.
+ *
+ * The order book must not be used by other threads while the gateway is open.
+ */
+public class OrderGateway implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH = 256;
+    private static final int REPORT_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + ExecutionReportEncoder.BLOCK_LENGTH;
+    private static final int ACK_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + OrderAckEncoder.BLOCK_LENGTH;
+
+    private final OrderBook orderBook;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final SpscRingBuffer<CommandSlot> commands;
+    private final SpscRingBuffer<EventSlot> events;
+    private final Thread ioThread;
+    private final Thread matchThread;
+    private volatile boolean ioRunning = true;
+    private volatile boolean matchRunning = true;
+    private volatile Throwable ioFailure;
+    private volatile Throwable matchFailure;
+
+    private volatile int sessionCount;
+    private volatile long commandCount;
+    private volatile long slowConsumerCount;
+
+    /**
+     * Binds the gateway to the address, port 0 binds to an ephemeral port, see {@link #getPort()}.
+     *
+     * @param capacity the capacity of the command and the event queue, a power of two
+     */
+    public OrderGateway(final OrderBook orderBook, final InetSocketAddress address, final int capacity)
+        throws IOException {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+        this.commands = new SpscRingBuffer<>(capacity, CommandSlot::new);
+        this.events = new SpscRingBuffer<>(capacity, EventSlot::new);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(Require.notNull(address, "address"), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.ioThread = start("gateway-io", new IoLoop()::run);
+        this.matchThread = start("gateway-match", new MatchLoop()::run);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return the number of connected sessions
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * @return the number of commands handled by the match thread
+     */
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * @return the number of sessions disconnected because they did not read their reports
+     */
+    public long getSlowConsumerCount() {
+        return slowConsumerCount;
+    }
+
+    /**
+     * @return the error that stopped the io or the match thread, or null
+     */
+    public Throwable getFailure() {
+        final Throwable failure = ioFailure;
+        return failure != null ? failure : matchFailure;
+    }
+
+    /**
+     * Stops the threads and closes all sessions, commands that are queued but not yet matched are dropped. If the
+     * calling thread is interrupted while waiting for the threads to stop, the threads are still told to stop but
+     * the sessions are not closed, and the interrupt flag is restored.
+     *
+     * @throws IllegalStateException if a thread of the gateway has failed, after the sessions have been closed
+     */
+    @Override
+    public void close() throws IOException {
+        // the match thread first, it may be waiting for the io thread to drain the events
+        try {
+            matchRunning = false;
+            matchThread.join();
+            ioRunning = false;
+            ioThread.join();
+        } catch (final InterruptedException e) {
+            ioRunning = false;
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (selector.isOpen()) {
+            for (final SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+        serverChannel.close();
+        if (ioFailure != null) {
+            throw new IllegalStateException("gateway io thread failed", ioFailure);
+        }
+        if (matchFailure != null) {
+            throw new IllegalStateException("gateway match thread failed", matchFailure);
+        }
+    }
+
+    /**
+     * The selector of the io thread, closing it fails the io thread.
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    private static Thread start(final String name, final Runnable loop) {
+        final Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private enum Kind {
+        NEW_ORDER,
+        CANCEL,
+        AMEND,
+        REJECT,
+        EXECUTION,
+        ACK
+    }
+
+    /**
+     * A client connection, owned by the io thread. The match thread only passes sessions around.
+     */
+    private static final class Session {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // true while the command queue was full when the session had a complete message
+        private boolean blocked;
+        private boolean dirty;
+        private boolean closed;
+
+        private Session(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private static final class CommandSlot {
+        private Kind kind;
+        private Session session;
+        private long orderId;
+        private Side side;
+        private OrderType type;
+        private long price;
+        private long qty;
+    }
+
+    private static final class EventSlot {
+        private Kind kind;
+        private Session session;
+        private long orderId;
+        private long makerOrderId;
+        private Side side;
+        private long price;
+        private long qty;
+        private long sequence;
+        private long takerLeavesQty;
+        private long makerLeavesQty;
+        private int makerCount;
+        private OrderStatus status;
+    }
+
+    private final class IoLoop implements SpscRingBuffer.Handler<EventSlot> {
+        private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+        private final NewOrderDecoder newOrderDecoder = new NewOrderDecoder();
+        private final CancelOrderDecoder cancelOrderDecoder = new CancelOrderDecoder();
+        private final AmendOrderDecoder amendOrderDecoder = new AmendOrderDecoder();
+        private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+        private final ExecutionReportEncoder executionReportEncoder = new ExecutionReportEncoder();
+        private final OrderAckEncoder orderAckEncoder = new OrderAckEncoder();
+        private final List<Session> sessions = new ArrayList<>();
+        private final List<Session> blockedSessions = new ArrayList<>();
+        private final List<Session> dirtySessions = new ArrayList<>();
+
+        void run() {
+            try {
+                int attempt = 0;
+                while (ioRunning) {
+                    if (matchFailure != null) {
+                        // the reports and acks of the commands that the match thread has handled
+                        int drained;
+                        do {
+                            drained = events.drain(this, MAX_BATCH);
+                        } while (drained > 0);
+                        closeAll();
+                        return;
+                    }
+                    int work = 0;
+                    if (selector.selectNow() > 0) {
+                        work += handleSelected();
+                    }
+                    if (!blockedSessions.isEmpty()) {
+                        work += unblock();
+                    }
+                    work += events.drain(this, MAX_BATCH);
+                    if (work > 0) {
+                        attempt = 0;
+                    } else {
+                        SpscRingBuffer.idle(attempt++);
+                    }
+                }
+            } catch (final IOException | RuntimeException | Error e) {
+                ioFailure = e;
+                closeAll();
+            }
+        }
+
+        /**
+         * Stops accepting and closes all sessions, after a failure.
+         */
+        private void closeAll() {
+            while (!sessions.isEmpty()) {
+                closeSession(sessions.get(sessions.size() - 1));
+            }
+            try {
+                serverChannel.close();
+                // the channels are only closed for good when they are deregistered from the selector
+                selector.close();
+            } catch (final IOException e) {
+                // closed anyway
+            }
+        }
+
+        private int handleSelected() throws IOException {
+            int work = 0;
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                } else {
+                    final Session session = (Session) key.attachment();
+                    if (key.isWritable()) {
+                        write(session);
+                    }
+                    if (!session.closed && key.isReadable()) {
+                        read(session);
+                    }
+                }
+                work++;
+            }
+            return work;
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                final Session session = new Session(channel, key);
+                key.attach(session);
+                sessions.add(session);
+                sessionCount++;
+            }
+        }
+
+        private void read(final Session session) {
+            try {
+                if (session.channel.read(session.in) < 0) {
+                    closeSession(session);
+                    return;
+                }
+            } catch (final IOException e) {
+                closeSession(session);
+                return;
+            }
+            frame(session);
+        }
+
+        /**
+         * Queues the complete messages of the session buffer as commands, the rest is kept for the next read.
+         */
+        private void frame(final Session session) {
+            final ByteBuffer in = session.in;
+            in.flip();
+            int offset = in.position();
+            final int limit = in.limit();
+            while (limit - offset >= MessageHeaderDecoder.ENCODED_LENGTH) {
+                headerDecoder.wrap(in, offset);
+                final int messageLength = MessageHeaderDecoder.ENCODED_LENGTH + headerDecoder.blockLength();
+                if (messageLength > in.capacity()) {
+                    // can never be framed
+                    closeSession(session);
+                    return;
+                }
+                if (limit - offset < messageLength) {
+                    break;
+                }
+                final int templateId = headerDecoder.templateId();
+                if (templateId == NewOrderDecoder.TEMPLATE_ID || templateId == CancelOrderDecoder.TEMPLATE_ID
+                    || templateId == AmendOrderDecoder.TEMPLATE_ID) {
+                    final CommandSlot command = commands.tryClaim();
+                    if (command == null) {
+                        block(session);
+                        break;
+                    }
+                    decode(session, in, offset + MessageHeaderDecoder.ENCODED_LENGTH, templateId,
+                        headerDecoder.blockLength(), command);
+                    commands.publish();
+                }
+                // unknown messages are skipped by their block length
+                offset += messageLength;
+            }
+            in.position(offset);
+            in.compact();
+        }
+
+        private void decode(final Session session, final ByteBuffer in, final int offset, final int templateId,
+                            final int blockLength, final CommandSlot command) {
+            command.session = session;
+            try {
+                switch (templateId) {
+                    case NewOrderDecoder.TEMPLATE_ID:
+                        newOrderDecoder.wrap(in, offset, blockLength);
+                        command.orderId = newOrderDecoder.orderId();
+                        command.kind = Kind.NEW_ORDER;
+                        command.side = newOrderDecoder.side();
+                        command.type = newOrderDecoder.orderType();
+                        command.price = newOrderDecoder.price();
+                        command.qty = newOrderDecoder.qty();
+                        break;
+                    case CancelOrderDecoder.TEMPLATE_ID:
+                        cancelOrderDecoder.wrap(in, offset, blockLength);
+                        command.kind = Kind.CANCEL;
+                        command.orderId = cancelOrderDecoder.orderId();
+                        break;
+                    default:
+                        amendOrderDecoder.wrap(in, offset, blockLength);
+                        command.kind = Kind.AMEND;
+                        command.orderId = amendOrderDecoder.orderId();
+                        command.qty = amendOrderDecoder.qty();
+                        break;
+                }
+            } catch (final IllegalArgumentException e) {
+                // e.g. an illegal side, rejected by the match thread so that it is acked in order
+                command.kind = Kind.REJECT;
+            }
+        }
+
+        private void block(final Session session) {
+            if (!session.blocked) {
+                session.blocked = true;
+                session.key.interestOps(session.key.interestOps() & ~SelectionKey.OP_READ);
+                blockedSessions.add(session);
+            }
+        }
+
+        /**
+         * Frames the buffered messages of the blocked sessions again, in the order they were blocked.
+         */
+        private int unblock() {
+            int unblocked = 0;
+            while (unblocked < blockedSessions.size()) {
+                final Session session = blockedSessions.get(unblocked);
+                session.blocked = false;
+                if (!session.closed) {
+                    frame(session);
+                    if (session.blocked) {
+                        // still full, this session was added last again
+                        blockedSessions.remove(blockedSessions.size() - 1);
+                        break;
+                    }
+                    session.key.interestOps(session.key.interestOps() | SelectionKey.OP_READ);
+                }
+                unblocked++;
+            }
+            blockedSessions.subList(0, unblocked).clear();
+            return unblocked;
+        }
+
+        @Override
+        public void onEvent(final EventSlot event, final long sequence, final boolean endOfBatch) {
+            final Session session = event.session;
+            event.session = null;
+            if (!session.closed) {
+                encode(session, event);
+            }
+            if (endOfBatch) {
+                for (int i = 0; i < dirtySessions.size(); i++) {
+                    write(dirtySessions.get(i));
+                }
+                dirtySessions.clear();
+            }
+        }
+
+        private void encode(final Session session, final EventSlot event) {
+            final ByteBuffer out = session.out;
+            final int length = event.kind == Kind.EXECUTION ? REPORT_LENGTH : ACK_LENGTH;
+            if (out.remaining() < length) {
+                write(session);
+                if (session.closed || out.remaining() < length) {
+                    slowConsumerCount++;
+                    closeSession(session);
+                    return;
+                }
+            }
+            final int offset = out.position();
+            if (event.kind == Kind.EXECUTION) {
+                executionReportEncoder.wrapAndApplyHeader(out, offset, headerEncoder)
+                    .takerOrderId(event.orderId)
+                    .makerOrderId(event.makerOrderId)
+                    .price(event.price)
+                    .qty(event.qty)
+                    .takerSide(event.side)
+                    .sequence(event.sequence)
+                    .takerLeavesQty(event.takerLeavesQty)
+                    .makerLeavesQty(event.makerLeavesQty)
+                    .makerCount(event.makerCount);
+            } else {
+                orderAckEncoder.wrapAndApplyHeader(out, offset, headerEncoder)
+                    .orderId(event.orderId)
+                    .leavesQty(event.qty)
+                    .status(event.status);
+            }
+            out.position(offset + length);
+            if (!session.dirty) {
+                session.dirty = true;
+                dirtySessions.add(session);
+            }
+        }
+
+        /**
+         * Writes as much of the buffered output of the session as the socket takes, the rest is written when the
+         * socket is writable again.
+         */
+        private void write(final Session session) {
+            session.dirty = false;
+            if (session.closed) {
+                return;
+            }
+            final ByteBuffer out = session.out;
+            out.flip();
+            try {
+                session.channel.write(out);
+            } catch (final IOException e) {
+                out.clear();
+                closeSession(session);
+                return;
+            }
+            final int interestOps = session.key.interestOps();
+            if (out.hasRemaining()) {
+                session.key.interestOps(interestOps | SelectionKey.OP_WRITE);
+            } else if ((interestOps & SelectionKey.OP_WRITE) != 0) {
+                session.key.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+            }
+            out.compact();
+        }
+
+        private void closeSession(final Session session) {
+            if (session.closed) {
+                return;
+            }
+            session.closed = true;
+            session.key.cancel();
+            try {
+                session.channel.close();
+            } catch (final IOException e) {
+                // closed anyway
+            }
+            sessions.remove(session);
+            sessionCount--;
+        }
+    }
+
+    private final class MatchLoop implements SpscRingBuffer.Handler<CommandSlot>, ExecutionListener {
+        private final Order order = new Order();
+        // the session of each resting order, for the maker reports and to check who may cancel and amend
+        private final LongHashMap<Session> sessionsByOrderId = new LongHashMap<>();
+        private Session takerSession;
+        private long takerLeavesQty;
+
+        void run() {
+            try {
+                int attempt = 0;
+                while (matchRunning && ioFailure == null) {
+                    if (commands.drain(this, MAX_BATCH) > 0) {
+                        attempt = 0;
+                    } else {
+                        SpscRingBuffer.idle(attempt++);
+                    }
+                }
+            } catch (final RuntimeException | Error e) {
+                if (ioFailure == null) {
+                    matchFailure = e;
+                }
+            }
+        }
+
+        @Override
+        public void onEvent(final CommandSlot command, final long sequence, final boolean endOfBatch) {
+            final Session session = command.session;
+            command.session = null;
+            commandCount++;
+            switch (command.kind) {
+                case NEW_ORDER:
+                    placeOrder(session, command);
+                    break;
+                case CANCEL:
+                    if (sessionsByOrderId.get(command.orderId) == session && orderBook.cancelOrder(command.orderId)) {
+                        sessionsByOrderId.remove(command.orderId);
+                        ack(session, command.orderId, 0, OrderStatus.CANCELLED);
+                    } else {
+                        ack(session, command.orderId, 0, OrderStatus.REJECTED);
+                    }
+                    break;
+                case AMEND:
+                    if (command.qty > 0 && sessionsByOrderId.get(command.orderId) == session
+                        && orderBook.amendOrder(command.orderId, command.qty)) {
+                        ack(session, command.orderId, command.qty, OrderStatus.AMENDED);
+                    } else {
+                        ack(session, command.orderId, 0, OrderStatus.REJECTED);
+                    }
+                    break;
+                default:
+                    ack(session, command.orderId, 0, OrderStatus.REJECTED);
+                    break;
+            }
+        }
+
+        private void placeOrder(final Session session, final CommandSlot command) {
+            final long orderId;
+            try {
+                Order.validate(command.orderId, command.price, command.qty, command.type);
+                takerSession = session;
+                takerLeavesQty = command.qty;
+                orderId = orderBook.placeOrder(
+                    order.set(command.orderId, command.side, command.price, command.qty, command.type), this);
+            } catch (final IllegalArgumentException e) {
+                ack(session, command.orderId, 0, OrderStatus.REJECTED);
+                return;
+            }
+            final long restingQty = OrderType.LIMIT.equals(command.type) ? takerLeavesQty : 0;
+            if (restingQty > 0) {
+                sessionsByOrderId.put(orderId, session);
+            }
+            ack(session, orderId, restingQty, OrderStatus.ACCEPTED);
+        }
+
+        @Override
+        public void onExecution(final Execution execution) {
+            takerLeavesQty = execution.getTakerLeavesQty();
+            report(takerSession, execution);
+            final Session makerSession = execution.getMakerLeavesQty() == 0
+                ? sessionsByOrderId.remove(execution.getMakerOrderId())
+                : sessionsByOrderId.get(execution.getMakerOrderId());
+            if (makerSession != null && makerSession != takerSession) {
+                report(makerSession, execution);
+            }
+        }
+
+        private void report(final Session session, final Execution execution) {
+            final EventSlot event = claimEvent();
+            event.kind = Kind.EXECUTION;
+            event.session = session;
+            event.orderId = execution.getTakerOrderId();
+            event.makerOrderId = execution.getMakerOrderId();
+            event.side = execution.getTakerSide();
+            event.price = execution.getPrice();
+            event.qty = execution.getQty();
+            event.sequence = execution.getSequence();
+            event.takerLeavesQty = execution.getTakerLeavesQty();
+            event.makerLeavesQty = execution.getMakerLeavesQty();
+            event.makerCount = execution.getMakerCount();
+            events.publish();
+        }
+
+        private void ack(final Session session, final long orderId, final long leavesQty, final OrderStatus status) {
+            final EventSlot event = claimEvent();
+            event.kind = Kind.ACK;
+            event.session = session;
+            event.orderId = orderId;
+            event.qty = leavesQty;
+            event.status = status;
+            events.publish();
+        }
+
+        /**
+         * Waits while the event queue is full.
+         *
+         * @throws IllegalStateException if the io thread has failed, the event would never be consumed
+         */
+        private EventSlot claimEvent() {
+            int attempt = 0;
+            EventSlot event;
+            while ((event = events.tryClaim()) == null) {
+                if (ioFailure != null) {
+                    throw new IllegalStateException("gateway io thread failed", ioFailure);
+                }
+                SpscRingBuffer.idle(attempt++);
+            }
+            return event;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package se.ngm.ordermatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses orders in the text format of {@link OrderParserUtil#parseOrder(String)}, {@code <buy|sell> <qty>@<price>}
+ * optionally followed by IOC or FOK, or {@code <buy|sell> <qty> MARKET}, directly from bytes. The parsed values are
+ * written to one reused order, i.e. parsing a line does not create any objects unless the line is malformed.
+ *
+ * The words of a line are separated by one space, as by the {@code Scanner} of {@link OrderParserUtil}, and anything
+ * after the order that is not its type is ignored as there. Leading spaces are skipped, as the console trims a line.
+ *
+ * A buffer can hold many newline separated lines ({@code \n} or {@code \r\n}), all complete lines are parsed in one
+ * call and an incomplete line at the end of the buffer is left for the next call. Blank lines are skipped. Besides
+ * orders the lines can be the {@code CANCEL <order id>} and {@code AMEND <order id> <qty>} commands of the console.
+ * The error messages are the ones of {@link OrderParserUtil}.
+ *
+ * A parser is not thread safe, the order passed to the handler is only valid until the handler returns.
+ */
+public class OrderLineParser {
+
+    public interface Handler {
+        /**
+         * @param order the parsed order, reused for the next line
+         */
+        void onOrder(Order order);
+
+        /**
+         * Called for a {@code CANCEL} line, the default implementation calls {@link #onError} since the line is not
+         * an order.
+         */
+        default void onCancel(final long orderId) {
+            onError(new IllegalArgumentException("not an order: CANCEL " + orderId));
+        }
+
+        /**
+         * Called for an {@code AMEND} line, the default implementation calls {@link #onError} since the line is not
+         * an order.
+         */
+        default void onAmend(final long orderId, final long qty) {
+            onError(new IllegalArgumentException("not an order: AMEND " + orderId + " " + qty));
+        }
+
+        /**
+         * Called for a line that is not an order, the default implementation throws the error.
+         */
+        default void onError(final IllegalArgumentException error) {
+            throw error;
+        }
+    }
+
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte SPACE = ' ';
+    private static final byte AT = '@';
+    private static final byte PLUS = '+';
+    private static final byte MINUS = '-';
+    private static final String CANCEL = "cancel";
+    private static final String AMEND = "amend";
+    private static final String MARKET = "market";
+    private static final String IOC = "ioc";
+    private static final String FOK = "fok";
+
+    private final Order order = new Order();
+    private byte[] chunk;
+
+    // the end of the last parsed token, written by the parse methods so that they can return a long and an offset
+    private int position;
+    // the values of the last parsed cancel or amend line
+    private long orderId;
+    private long qty;
+
+    /**
+     * Parses one line, without line terminator.
+     *
+     * @return the parsed order, reused by the next call
+     * @throws IllegalArgumentException if the line is not an order
+     */
+    public Order parseOrder(final byte[] bytes, final int offset, final int length) {
+        final int end = offset + length;
+        final Side side = parseSide(bytes, offset, end);
+        if (side == null) {
+            throw illegalFormat(bytes, offset, length);
+        }
+        final int qtyStart = position + 1;
+        final long qty = parseLong(bytes, qtyStart, end);
+        if (position == qtyStart) {
+            throw illegalFormat(bytes, offset, length);
+        }
+        final long price;
+        final OrderType type;
+        if (position != end && bytes[position] == AT) {
+            final int priceStart = position + 1;
+            price = parseLong(bytes, priceStart, end);
+            if (position == priceStart) {
+                throw illegalFormat(bytes, offset, length);
+            }
+            if (position != end && bytes[position] == AT) {
+                // the parts after the price are ignored, as by String.split("@")
+                position = endOfWord(bytes, position, end);
+            }
+            if (position != end && bytes[position] != SPACE) {
+                throw illegalFormat(bytes, offset, length);
+            }
+            type = parseLimitType(bytes, position, end);
+        } else if (position != end && bytes[position] == SPACE
+            && equalsIgnoreCase(bytes, position + 1, endOfWord(bytes, position + 1, end), MARKET)) {
+            price = 0;
+            type = OrderType.MARKET;
+        } else {
+            throw illegalFormat(bytes, offset, length);
+        }
+        if (qty <= 0 || (price <= 0 && type != OrderType.MARKET)) {
+            throw illegalFormat(bytes, offset, length);
+        }
+        return order.set(0, side, price, qty, type);
+    }
+
+    /**
+     * @return IOC or FOK if the word after the price is one of them (ignoring case) and otherwise LIMIT
+     */
+    private static OrderType parseLimitType(final byte[] bytes, final int priceEnd, final int end) {
+        if (priceEnd == end) {
+            return OrderType.LIMIT;
+        }
+        final int wordEnd = endOfWord(bytes, priceEnd + 1, end);
+        if (equalsIgnoreCase(bytes, priceEnd + 1, wordEnd, IOC)) {
+            return OrderType.IOC;
+        } else if (equalsIgnoreCase(bytes, priceEnd + 1, wordEnd, FOK)) {
+            return OrderType.FOK;
+        } else {
+            return OrderType.LIMIT;
+        }
+    }
+
+    /**
+     * Parses all complete lines of the region.
+     *
+     * @return the number of bytes of complete lines, i.e. the offset of the incomplete last line relative to offset
+     */
+    public int parse(final byte[] bytes, final int offset, final int length, final Handler handler) {
+        final int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == NEWLINE) {
+                onLine(bytes, lineStart, i, handler);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart - offset;
+    }
+
+    /**
+     * Parses all complete lines between the position and the limit of the buffer, the position is moved to the start
+     * of the incomplete last line. A buffer that is not backed by an array, e.g. a mapped file, is copied in
+     * chunks to a reused array.
+     *
+     * @throws IllegalArgumentException if a line of a buffer that is not backed by an array is longer than a chunk
+     */
+    public void parse(final ByteBuffer buffer, final Handler handler) {
+        if (buffer.hasArray()) {
+            final int consumed = parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(),
+                handler);
+            buffer.position(buffer.position() + consumed);
+            return;
+        }
+        final byte[] chunk = chunk();
+        while (buffer.hasRemaining()) {
+            final int start = buffer.position();
+            final int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            final int consumed = parse(chunk, 0, length, handler);
+            buffer.position(start + consumed);
+            if (consumed == 0) {
+                if (length == chunk.length) {
+                    throw new IllegalArgumentException("line too long: more than " + chunk.length + " bytes");
+                }
+                return;
+            }
+        }
+    }
+
+    private byte[] chunk() {
+        if (chunk == null) {
+            chunk = new byte[64 * 1024];
+        }
+        return chunk;
+    }
+
+    private void onLine(final byte[] bytes, final int start, int end, final Handler handler) {
+        if (end > start && bytes[end - 1] == CARRIAGE_RETURN) {
+            end--;
+        }
+        final int first = skipSpaces(bytes, start, end);
+        if (first == end) {
+            return;
+        }
+        final boolean cancel = isCommand(bytes, first, end, CANCEL);
+        final boolean amend = !cancel && isCommand(bytes, first, end, AMEND);
+        final Order parsed;
+        try {
+            if (cancel) {
+                parseCancel(bytes, start, first, end);
+                parsed = null;
+            } else if (amend) {
+                parseAmend(bytes, start, first, end);
+                parsed = null;
+            } else {
+                parsed = parseOrder(bytes, start, end - start);
+            }
+        } catch (final IllegalArgumentException e) {
+            handler.onError(e);
+            return;
+        }
+        if (cancel) {
+            handler.onCancel(orderId);
+        } else if (amend) {
+            handler.onAmend(orderId, qty);
+        } else {
+            handler.onOrder(parsed);
+        }
+    }
+
+    /**
+     * Parses {@code CANCEL <order id>} as {@link OrderParserUtil#parseCancel(String)}, into orderId.
+     */
+    private void parseCancel(final byte[] bytes, final int start, final int first, final int end) {
+        final int idStart = first + CANCEL.length() + 1;
+        orderId = parseLong(bytes, idStart, end);
+        if (position == idStart || !isEndOfCommand(bytes, position, end)) {
+            throw new IllegalArgumentException(String.format(
+                "Illegal format. Expected: CANCEL <order id>, where <order id> is numeric ('%s')",
+                new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Parses {@code AMEND <order id> <qty>} as {@link OrderParserUtil#parseAmend(String)}, into orderId and qty.
+     */
+    private void parseAmend(final byte[] bytes, final int start, final int first, final int end) {
+        final int idStart = first + AMEND.length() + 1;
+        orderId = parseLong(bytes, idStart, end);
+        boolean valid = position != idStart && position != end && bytes[position] == SPACE;
+        if (valid) {
+            final int qtyStart = position + 1;
+            qty = parseLong(bytes, qtyStart, end);
+            valid = position != qtyStart && isEndOfCommand(bytes, position, end);
+        }
+        if (!valid) {
+            throw new IllegalArgumentException(String.format(
+                "Illegal format. Expected: AMEND <order id> <quantity>, where <order id>,<quantity> is numeric ('%s')",
+                new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * @return the side or null if there is no side word, position is set to the end of the side word
+     */
+    private Side parseSide(final byte[] bytes, final int offset, final int end) {
+        final int start = skipSpaces(bytes, offset, end);
+        int i = start;
+        while (i < end && bytes[i] != SPACE) {
+            i++;
+        }
+        position = i;
+        if (i == start || i == end) {
+            return null;
+        } else if (equalsIgnoreCase(bytes, start, i, "buy")) {
+            return Side.BUY;
+        } else if (equalsIgnoreCase(bytes, start, i, "sell")) {
+            return Side.SELL;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number at offset with an optional sign, as by {@link Long#parseLong(String)}, position is set to
+     * the end of the digits or to offset if there is no number or if it overflows
+     */
+    private long parseLong(final byte[] bytes, final int offset, final int end) {
+        final boolean negative = offset < end && bytes[offset] == MINUS;
+        final int digits = offset < end && (negative || bytes[offset] == PLUS) ? offset + 1 : offset;
+        // accumulated negatively, the range of negative numbers includes Long.MIN_VALUE
+        long value = 0;
+        int i = digits;
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+            final int digit = bytes[i] - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                position = offset;
+                return 0;
+            }
+            value = value * 10 - digit;
+            i++;
+        }
+        if (i == digits || (!negative && value == Long.MIN_VALUE)) {
+            position = offset;
+            return 0;
+        }
+        position = i;
+        return negative ? value : -value;
+    }
+
+    /**
+     * @return true at the end of the line of a command, which may end with one space as with the
+     * {@code Scanner} of {@link OrderParserUtil}
+     */
+    private static boolean isEndOfCommand(final byte[] bytes, final int offset, final int end) {
+        return offset == end || (offset == end - 1 && bytes[offset] == SPACE);
+    }
+
+    /**
+     * @return true if the line starts with the command word, as by {@link OrderParserUtil#isCommand(String, String)}
+     */
+    private static boolean isCommand(final byte[] bytes, final int start, final int end, final String command) {
+        final int wordEnd = start + command.length();
+        return wordEnd <= end && equalsIgnoreCase(bytes, start, wordEnd, command)
+            && (wordEnd == end || bytes[wordEnd] == SPACE);
+    }
+
+    private static int endOfWord(final byte[] bytes, int offset, final int end) {
+        while (offset < end && bytes[offset] != SPACE) {
+            offset++;
+        }
+        return offset;
+    }
+
+    private static int skipSpaces(final byte[] bytes, int offset, final int end) {
+        while (offset < end && bytes[offset] == SPACE) {
+            offset++;
+        }
+        return offset;
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] bytes, final int start, final int end, final String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            // ascii letters only, setting the lower case bit
+            if ((bytes[start + i] | 0x20) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IllegalArgumentException illegalFormat(final byte[] bytes, final int offset, final int length) {
+        return new IllegalArgumentException(
+            String.format(
+                "Illegal format. Expected: <buy|sell> <quantity>@<price>, where <quantity>,<price> is numeric ('%s')",
+                new String(bytes, offset, length, StandardCharsets.UTF_8)));
+    }
+}
@@ -1,25 +1,192 @@
 package se.ngm.ordermatcher;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
+import static se.ngm.ordermatcher.OrderParserUtil.isCommand;
+import static se.ngm.ordermatcher.OrderParserUtil.parseAmend;
+import static se.ngm.ordermatcher.OrderParserUtil.parseCancel;
 import static se.ngm.ordermatcher.OrderParserUtil.parseOrder;
 
 public class OrderMatcher {
 
-    private final OrderBook orderBook = new OrderBook();
+    private final OrderBook orderBook;
+
+    public OrderMatcher() {
+        this(new OrderBook());
+    }
+
+    public OrderMatcher(final OrderBook orderBook) {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+    }
 
     public List<Trade> placeOrder(final Order order) {
         return orderBook.placeOrder(order);
     }
 
+    public long placeOrder(final Order order, final TradeListener listener) {
+        return orderBook.placeOrder(order, listener);
+    }
+
+    /**
+     * @see OrderBook#placeOrders(List, ExecutionListener)
+     */
+    public long[] placeOrders(final List<Order> orders, final TradeListener listener) {
+        return orderBook.placeOrders(orders, listener);
+    }
+
+    /**
+     * @see OrderBook#startAuction()
+     */
+    public void startAuction() {
+        orderBook.startAuction();
+    }
+
+    /**
+     * @see OrderBook#uncross(long, ExecutionListener)
+     */
+    public long uncross(final long referencePrice, final TradeListener listener) {
+        return orderBook.uncross(referencePrice, listener);
+    }
+
+    public boolean cancelOrder(final long orderId) {
+        return orderBook.cancelOrder(orderId);
+    }
+
+    public boolean amendOrder(final long orderId, final long qty) {
+        return orderBook.amendOrder(orderId, qty);
+    }
+
     public List<Order> getOrders(final Side side) {
         return orderBook.getOrders(side);
     }
 
-    public static void main(final String[] args) {
-        final OrderMatcher matcher = new OrderMatcher();
+    public Order getOrder(final long orderId) {
+        return orderBook.getOrder(orderId);
+    }
+
+    public long getBestBid() {
+        return orderBook.getBestBid();
+    }
+
+    public long getBestAsk() {
+        return orderBook.getBestAsk();
+    }
+
+    public int getDepth(final Side side, final int levels, final DepthListener listener) {
+        return orderBook.getDepth(side, levels, listener);
+    }
+
+    public EngineStats getStats() {
+        return orderBook.getStats();
+    }
+
+    OrderBook getOrderBook() {
+        return orderBook;
+    }
+
+    /**
+     * Reads commands from standard input. With the argument --pipeline the commands are parsed, matched and printed on
+     * separate threads, see {@link OrderPipeline}, and the stats of the stages are printed at the end.
+     *
+     * With the arguments --replay &lt;file&gt; --out &lt;file&gt; the orders of the input file are matched and the
+     * trades are written to the output file, see {@link OrderReplay}, and a summary is printed at the end.
+     *
+     * With the arguments --journal &lt;directory&gt; the commands are journaled to the directory and the order book is
+     * rebuilt from the journal at startup, see {@link JournaledOrderBook}.
+     *
+     * With the arguments --gateway &lt;port&gt; binary encoded orders are accepted from TCP clients, see
+     * {@link OrderGateway}, until standard input is closed or QUIT is entered.
+     *
+     * With the arguments --generate &lt;count&gt; &lt;file&gt; [--binary] the count of commands of generated order
+     * flow are written to the file, in the text format of the console or binary encoded, see
+     * {@link OrderFlowGenerator}.
+     *
+     * With the arguments --soak &lt;seconds&gt; the order matcher is driven by generated order flow for the seconds,
+     * and a sample is printed every second and a summary at the end, see {@link OrderFlowSoak}.
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--pipeline")) {
+            runPipeline();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--replay")) {
+            if (args.length != 4 || !args[2].equals("--out")) {
+                System.err.println("Usage: OrderMatcher --replay <file> --out <file>");
+                return;
+            }
+            final OrderReplay.Summary summary = new OrderReplay(new OrderBook(TickArrayBookSide::new))
+                .replay(Paths.get(args[1]), Paths.get(args[3]));
+            System.out.println(summary);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--gateway")) {
+            if (args.length != 2) {
+                System.err.println("Usage: OrderMatcher --gateway <port>");
+                return;
+            }
+            runGateway(Integer.parseInt(args[1]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) {
+            if (args.length < 3 || args.length > 4 || args.length == 4 && !args[3].equals("--binary")) {
+                System.err.println("Usage: OrderMatcher --generate <count> <file> [--binary]");
+                return;
+            }
+            final OrderFlowGenerator generator = OrderFlowGenerator.builder().build();
+            if (args.length == 4) {
+                generator.writeBinary(Paths.get(args[2]), Long.parseLong(args[1]));
+            } else {
+                generator.writeText(Paths.get(args[2]), Long.parseLong(args[1]));
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--soak")) {
+            if (args.length != 2) {
+                System.err.println("Usage: OrderMatcher --soak <seconds>");
+                return;
+            }
+            final OrderFlowSoak soak = new OrderFlowSoak(new OrderMatcher(new OrderBook(TickArrayBookSide::new)),
+                OrderFlowGenerator.builder().seed(System.nanoTime()).build());
+            final OrderFlowSoak.Summary summary = soak.run(TimeUnit.SECONDS.toNanos(Long.parseLong(args[1])),
+                TimeUnit.SECONDS.toNanos(1), System.out::println);
+            System.out.println(summary);
+            return;
+        }
+        Journal journal = null;
+        if (args.length > 0 && args[0].equals("--journal")) {
+            if (args.length != 2) {
+                System.err.println("Usage: OrderMatcher --journal <directory>");
+                return;
+            }
+            journal = new Journal(Paths.get(args[1]));
+        }
+        try {
+            runConsole(journal == null ? new OrderMatcher() : new OrderMatcher(new JournaledOrderBook(journal)));
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    private static void runConsole(final OrderMatcher matcher) {
+        final EngineStats stats = matcher.getStats();
+        final StringBuilder output = new StringBuilder();
+        final TradeListener tradePrinter = (price, qty) ->
+            output.append("TRADE ").append(qty).append('@').append(price).append(System.lineSeparator());
         System.out.println("Order matcher. To quit hit 'Ctrl+d' or 'QUIT'");
+        System.out.println("Commands: <buy|sell> <quantity>@<price> [IOC|FOK], <buy|sell> <quantity> MARKET, "
+            + "CANCEL <order id>, AMEND <order id> <quantity>, PRINT, STATS [ON|OFF|RESET|JSON]");
         System.out.println();
         final Scanner scanner = new Scanner(System.in);
         String line;
@@ -34,14 +201,70 @@ public class OrderMatcher {
                         return;
                     case "PRINT":
                         System.out.println("--- BUY ---");
-                        print(matcher.getOrders(Side.BUY));
+                        printOrders(matcher.getOrders(Side.BUY));
                         System.out.println("--- SELL ---");
-                        print(matcher.getOrders(Side.SELL));
+                        printOrders(matcher.getOrders(Side.SELL));
+                        break;
+                    case "STATS":
+                        System.out.print(stats.format());
+                        break;
+                    case "STATS ON":
+                        stats.setEnabled(true);
+                        System.out.println("Recording stats");
+                        break;
+                    case "STATS OFF":
+                        stats.setEnabled(false);
+                        System.out.println("Not recording stats");
+                        break;
+                    case "STATS RESET":
+                        stats.reset();
+                        System.out.println("Stats reset");
+                        break;
+                    case "STATS JSON":
+                        System.out.println(stats.toJson());
                         break;
                     default:
-                        final Order order = parseOrder(line);
-                        final List<Trade> trades = matcher.placeOrder(order);
-                        print(trades);
+                        final boolean recording = stats.isEnabled();
+                        long start = recording ? System.nanoTime() : 0;
+                        if (isCommand(line, "CANCEL")) {
+                            final long orderId = parseCancel(line);
+                            if (recording) {
+                                stats.record(EngineStats.Probe.PARSE, System.nanoTime() - start);
+                            }
+                            if (matcher.cancelOrder(orderId)) {
+                                System.out.println("CANCELLED " + orderId);
+                            } else {
+                                System.err.println("Unknown order: " + orderId);
+                            }
+                        } else if (isCommand(line, "AMEND")) {
+                            final long[] orderIdAndQty = parseAmend(line);
+                            if (recording) {
+                                stats.record(EngineStats.Probe.PARSE, System.nanoTime() - start);
+                            }
+                            if (matcher.amendOrder(orderIdAndQty[0], orderIdAndQty[1])) {
+                                printOrders(List.of(matcher.getOrder(orderIdAndQty[0])));
+                            } else {
+                                System.err.println("Unknown order: " + orderIdAndQty[0]);
+                            }
+                        } else {
+                            final Order order = parseOrder(line);
+                            if (recording) {
+                                stats.record(EngineStats.Probe.PARSE, System.nanoTime() - start);
+                            }
+                            // the trades are collected and printed after the order has been placed, so that the
+                            // latency of placing the order does not include the output
+                            output.setLength(0);
+                            final long orderId = matcher.placeOrder(order, tradePrinter);
+                            start = recording ? System.nanoTime() : 0;
+                            System.out.print(output);
+                            final Order restingOrder = matcher.getOrder(orderId);
+                            if (restingOrder != null) {
+                                printOrders(List.of(restingOrder));
+                            }
+                            if (recording) {
+                                stats.record(EngineStats.Probe.OUTPUT, System.nanoTime() - start);
+                            }
+                        }
                         break;
                 }
             } catch (final IllegalArgumentException e) {
@@ -53,9 +276,38 @@ public class OrderMatcher {
         }
     }
 
-    private static void print(final List<?> orders) {
-        for (final Object order : orders) {
-            System.out.println(order);
+    private static void runPipeline() throws IOException {
+        final Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        final Writer err = new BufferedWriter(new OutputStreamWriter(System.err));
+        final OrderPipeline pipeline = new OrderPipeline(new OrderBook(), out, err, OrderPipeline.DEFAULT_CAPACITY);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = reader.readLine()) != null && !line.trim().equalsIgnoreCase("QUIT")) {
+            pipeline.submit(line);
+        }
+        pipeline.close();
+        for (final OrderPipeline.StageStats stats : pipeline.getStageStats()) {
+            System.err.println(stats);
+        }
+    }
+
+    private static void runGateway(final int port) throws IOException {
+        try (OrderGateway gateway = new OrderGateway(new OrderBook(TickArrayBookSide::new),
+            new InetSocketAddress(port), OrderGateway.DEFAULT_CAPACITY)) {
+            System.out.println("Order gateway listening on port " + gateway.getPort() + ". To quit hit 'Ctrl+d' or "
+                + "'QUIT'");
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = reader.readLine()) != null && !line.trim().equalsIgnoreCase("QUIT")) {
+                System.out.println("sessions=" + gateway.getSessionCount() + " commands=" + gateway.getCommandCount()
+                    + " slowConsumers=" + gateway.getSlowConsumerCount());
+            }
+        }
+    }
+
+    private static void printOrders(final List<Order> orders) {
+        for (final Order order : orders) {
+            System.out.println("ORDER " + order.getId() + " " + order);
         }
     }
 }
@@ -4,21 +4,33 @@ import java.util.Scanner;
 
 public class OrderParserUtil {
 
+    /**
+     * Parses an order, &lt;buy|sell&gt; &lt;quantity&gt;@&lt;price&gt; optionally followed by IOC or FOK, or a
+     * market order, &lt;buy|sell&gt; &lt;quantity&gt; MARKET.
+     */
     public static Order parseOrder(final String order) {
         try {
             final Scanner sc = new Scanner(order);
             sc.useDelimiter(" ");
 
             final Side sid = getSide(sc);
-            final long[] qtyAndPrice = getQtyAndPrice(sc);
-            long qty = qtyAndPrice[0];
-            long price = qtyAndPrice[1];
-
-            if (Side.SELL.equals(sid)) {
-                return Order.sellOrder().price(price).qty(qty).build();
+            final String qtyAndPriceToken = sc.next();
+            final long qty;
+            final long price;
+            final OrderType type;
+            if (qtyAndPriceToken.indexOf('@') < 0) {
+                qty = Long.parseLong(qtyAndPriceToken);
+                price = 0;
+                type = OrderType.valueOf(sc.next().toUpperCase());
+                Require.that(OrderType.MARKET.equals(type), "not a market order");
             } else {
-                return Order.buyOrder().price(price).qty(qty).build();
+                final long[] qtyAndPrice = getQtyAndPrice(qtyAndPriceToken);
+                qty = qtyAndPrice[0];
+                price = qtyAndPrice[1];
+                type = getType(sc);
             }
+
+            return Order.builder().side(sid).price(price).qty(qty).type(type).build();
         } catch (final Exception e) {
             throw new IllegalArgumentException(
                 String.format(
@@ -26,6 +38,58 @@ public class OrderParserUtil {
         }
     }
 
+    /**
+     * @return true if the line starts with the specified command word (ignoring case), e.g. "CANCEL 1" is a CANCEL
+     * command
+     */
+    public static boolean isCommand(final String line, final String command) {
+        return line.regionMatches(true, 0, command, 0, command.length())
+            && (line.length() == command.length() || line.charAt(command.length()) == ' ');
+    }
+
+    /**
+     * Parses a cancel command, CANCEL &lt;order id&gt;.
+     *
+     * @return the order id
+     */
+    public static long parseCancel(final String cancel) {
+        try {
+            final Scanner sc = new Scanner(cancel);
+            sc.useDelimiter(" ");
+            sc.next();
+            final long orderId = Long.parseLong(sc.next());
+            Require.that(!sc.hasNext(), "too many arguments");
+            return orderId;
+        } catch (final Exception e) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "Illegal format. Expected: CANCEL <order id>, where <order id> is numeric ('%s')", cancel));
+        }
+    }
+
+    /**
+     * Parses an amend command, AMEND &lt;order id&gt; &lt;quantity&gt;.
+     *
+     * @return the order id and the new quantity
+     */
+    public static long[] parseAmend(final String amend) {
+        try {
+            final Scanner sc = new Scanner(amend);
+            sc.useDelimiter(" ");
+            sc.next();
+            final long[] orderIdAndQty = new long[2];
+            orderIdAndQty[0] = Long.parseLong(sc.next());
+            orderIdAndQty[1] = Long.parseLong(sc.next());
+            Require.that(!sc.hasNext(), "too many arguments");
+            return orderIdAndQty;
+        } catch (final Exception e) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "Illegal format. Expected: AMEND <order id> <quantity>, where <order id>,<quantity> is numeric ('%s')",
+                    amend));
+        }
+    }
+
     private static Side getSide(final Scanner sc) {
         final String side = sc.next();
         if (side.equalsIgnoreCase("buy")) {
@@ -37,9 +101,24 @@ public class OrderParserUtil {
         }
     }
 
-    private static long[] getQtyAndPrice(final Scanner scanner) {
+    /**
+     * @return the type of a limit price order, IOC or FOK if the next word is one of them (ignoring case) and
+     * otherwise LIMIT, i.e. anything else after the order is ignored
+     */
+    private static OrderType getType(final Scanner sc) {
+        if (sc.hasNext()) {
+            final String type = sc.next();
+            if (type.equalsIgnoreCase(OrderType.IOC.name())) {
+                return OrderType.IOC;
+            } else if (type.equalsIgnoreCase(OrderType.FOK.name())) {
+                return OrderType.FOK;
+            }
+        }
+        return OrderType.LIMIT;
+    }
+
+    private static long[] getQtyAndPrice(final String qtyAndPrice) {
         final long[] priceAndQty = new long[2];
-        final String qtyAndPrice = scanner.next();
         final String[] split = qtyAndPrice.split("@");
         priceAndQty[0] = Long.parseLong(split[0]);
         priceAndQty[1] = Long.parseLong(split[1]);
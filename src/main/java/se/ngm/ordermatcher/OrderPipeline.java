@@ -0,0 +1,567 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import static se.ngm.ordermatcher.OrderParserUtil.isCommand;
+import static se.ngm.ordermatcher.OrderParserUtil.parseAmend;
+import static se.ngm.ordermatcher.OrderParserUtil.parseCancel;
+import static se.ngm.ordermatcher.OrderParserUtil.parseOrder;
+
+/**
+ * A staged pipeline in front of an {@link OrderBook} for the console commands of {@link OrderMatcher}. Every stage
+ * runs on its own thread and the stages are connected by {@link SpscRingBuffer}s:
+ *
+ *   submit(line) -> [lines] -> decode -> [commands] -> match -> [results] -> publish -> out/err
+ *
+ * decode parses the lines, match is the only thread that touches the order book and publish formats the trades and
+ * writes them. The slots of the ring buffers are reused, placing, cancelling and publishing orders does not allocate
+ * in the match and publish stages. A stage that falls behind drains everything that is queued in one batch, the
+ * publish stage flushes its output once per batch.
+ *
+ * Each stage records the queue depth of its input and the time each message waits in it, see
+ * {@link #getStageStats()}.
+ *
+ * A command that fails in the match stage, or a result that cannot be written, is published as an error instead. A
+ * stage that still dies makes the stages in front of it fail instead of waiting for it, and {@link #close()} reports
+ * it.
+ */
+public class OrderPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_BATCH = 256;
+
+    private final SpscRingBuffer<LineSlot> lines;
+    private final SpscRingBuffer<CommandSlot> commands;
+    private final SpscRingBuffer<ResultSlot> results;
+    private final StageStats decodeStats = new StageStats("decode");
+    private final StageStats matchStats = new StageStats("match");
+    private final StageStats publishStats = new StageStats("publish");
+
+    private final OrderBook orderBook;
+    private final Writer out;
+    private final Writer err;
+
+    private final Stage decoder = new DecodeStage();
+    private final Stage matcher = new MatchStage();
+    private final Stage publisher = new PublishStage();
+    private final Stage[] stages = {decoder, matcher, publisher};
+
+    /**
+     * @param out      the trades and orders are written here
+     * @param err      the errors are written here
+     * @param capacity the capacity of each ring buffer, a power of two
+     */
+    public OrderPipeline(final OrderBook orderBook, final Writer out, final Writer err, final int capacity) {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+        this.out = Require.notNull(out, "out");
+        this.err = Require.notNull(err, "err");
+        this.lines = new SpscRingBuffer<>(capacity, LineSlot::new);
+        this.commands = new SpscRingBuffer<>(capacity, CommandSlot::new);
+        this.results = new SpscRingBuffer<>(capacity, ResultSlot::new);
+        for (final Stage stage : stages) {
+            stage.start();
+        }
+    }
+
+    /**
+     * Submits a console line, e.g. "buy 10@100". Must be called from one thread only.
+     */
+    public void submit(final String line) {
+        final LineSlot slot = decoder.claimInput(lines);
+        slot.line = Require.notNull(line, "line");
+        slot.enqueuedNanos = System.nanoTime();
+        lines.publish();
+    }
+
+    /**
+     * @return the stats of the decode, match and publish stages
+     */
+    public List<StageStats> getStageStats() {
+        return List.of(decodeStats, matchStats, publishStats);
+    }
+
+    /**
+     * Processes everything submitted so far and stops the stages. If the calling thread is interrupted while waiting
+     * for the stages, it returns with the interrupt flag set and the stages stop on their own.
+     *
+     * @throws IllegalStateException if a stage has died, the other stages are stopped
+     */
+    @Override
+    public void close() {
+        try {
+            if (decoder.failure == null) {
+                final LineSlot slot = decoder.claimInput(lines);
+                slot.line = null;
+                slot.enqueuedNanos = System.nanoTime();
+                lines.publish();
+            }
+            for (final Stage stage : stages) {
+                stage.thread.join();
+                if (stage.failure != null) {
+                    // the stages after it never get the stop message
+                    for (final Stage other : stages) {
+                        other.stop();
+                    }
+                    for (final Stage other : stages) {
+                        other.thread.join();
+                    }
+                    throw failedStage();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the failure of the last stage that has died, the stages in front of it fail because of it
+     */
+    private IllegalStateException failedStage() {
+        for (int i = stages.length - 1; ; i--) {
+            if (stages[i].failure != null || i == 0) {
+                return new IllegalStateException(stages[i].name + " stage failed", stages[i].failure);
+            }
+        }
+    }
+
+    private enum Kind {
+        NONE,
+        ORDER,
+        CANCEL,
+        AMEND,
+        PRINT,
+        ERROR,
+        STOP
+    }
+
+    private static final class LineSlot {
+        private String line;
+        private long enqueuedNanos;
+    }
+
+    private static final class CommandSlot {
+        private Kind kind;
+        private Side side;
+        private OrderType type;
+        private long orderId;
+        private long price;
+        private long qty;
+        private String text;
+        private long enqueuedNanos;
+    }
+
+    private static final class ResultSlot {
+        private Kind kind;
+        private long orderId;
+        private Side side;
+        private long price;
+        private long qty;
+        private boolean found;
+        private String text;
+        private int tradeCount;
+        private long[] tradePrices = new long[16];
+        private long[] tradeQtys = new long[16];
+        private long enqueuedNanos;
+
+        private void addTrade(final long price, final long qty) {
+            if (tradeCount == tradePrices.length) {
+                tradePrices = Arrays.copyOf(tradePrices, tradeCount * 2);
+                tradeQtys = Arrays.copyOf(tradeQtys, tradeCount * 2);
+            }
+            tradePrices[tradeCount] = price;
+            tradeQtys[tradeCount] = qty;
+            tradeCount++;
+        }
+    }
+
+    /**
+     * The queue depth and wait time of the input of a stage. Written by the thread of the stage only.
+     */
+    public static final class StageStats {
+        private final String name;
+        private volatile long messages;
+        private volatile long batches;
+        private volatile long totalWaitNanos;
+        private volatile long maxWaitNanos;
+        private volatile int depth;
+        private volatile int maxDepth;
+
+        private StageStats(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return the average time from when a message was queued to the stage until the stage started on it
+         */
+        public long getAvgWaitNanos() {
+            final long count = messages;
+            return count == 0 ? 0 : totalWaitNanos / count;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        /**
+         * @return the queue depth at the start of the latest batch
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        private void onBatchStart(final int queued) {
+            batches++;
+            depth = queued;
+            if (queued > maxDepth) {
+                maxDepth = queued;
+            }
+        }
+
+        private void onMessage(final long enqueuedNanos) {
+            final long waitNanos = System.nanoTime() - enqueuedNanos;
+            messages++;
+            totalWaitNanos += waitNanos;
+            if (waitNanos > maxWaitNanos) {
+                maxWaitNanos = waitNanos;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: messages=%d batches=%d depth=%d maxDepth=%d avgWait=%dns maxWait=%dns",
+                name, messages, batches, depth, maxDepth, getAvgWaitNanos(), maxWaitNanos);
+        }
+    }
+
+    private abstract static class Stage {
+        private final String name;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile Throwable failure;
+
+        Stage(final String name) {
+            this.name = name;
+            this.thread = new Thread(this::run, "pipeline-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        abstract int drain();
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        void run() {
+            try {
+                int attempt = 0;
+                while (running) {
+                    if (drain() > 0) {
+                        attempt = 0;
+                    } else {
+                        SpscRingBuffer.idle(attempt++);
+                    }
+                }
+            } catch (final RuntimeException | Error e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Claims a slot in the input of this stage, waits while it is full.
+         *
+         * @throws IllegalStateException if this stage has died or stopped, the slot would never be consumed
+         */
+        <T> T claimInput(final SpscRingBuffer<T> input) {
+            int attempt = 0;
+            T slot;
+            while ((slot = input.tryClaim()) == null) {
+                if (!running || failure != null) {
+                    throw new IllegalStateException(name + " stage " + (failure != null ? "failed" : "stopped"),
+                        failure);
+                }
+                SpscRingBuffer.idle(attempt++);
+            }
+            return slot;
+        }
+    }
+
+    private final class DecodeStage extends Stage implements SpscRingBuffer.Handler<LineSlot> {
+
+        private DecodeStage() {
+            super("decode");
+        }
+
+        @Override
+        int drain() {
+            final int queued = lines.size();
+            if (queued > 0) {
+                decodeStats.onBatchStart(queued);
+            }
+            return lines.drain(this, MAX_BATCH);
+        }
+
+        @Override
+        public void onEvent(final LineSlot slot, final long sequence, final boolean endOfBatch) {
+            decodeStats.onMessage(slot.enqueuedNanos);
+            final CommandSlot command = matcher.claimInput(commands);
+            command.text = null;
+            decode(slot.line, command);
+            slot.line = null;
+            command.enqueuedNanos = System.nanoTime();
+            commands.publish();
+            if (command.kind == Kind.STOP) {
+                stop();
+            }
+        }
+
+        private void decode(final String untrimmed, final CommandSlot command) {
+            if (untrimmed == null) {
+                command.kind = Kind.STOP;
+                return;
+            }
+            final String line = untrimmed.trim();
+            try {
+                if (line.isEmpty()) {
+                    command.kind = Kind.NONE;
+                } else if (line.equalsIgnoreCase("PRINT")) {
+                    command.kind = Kind.PRINT;
+                } else if (isCommand(line, "CANCEL")) {
+                    command.kind = Kind.CANCEL;
+                    command.orderId = parseCancel(line);
+                } else if (isCommand(line, "AMEND")) {
+                    final long[] orderIdAndQty = parseAmend(line);
+                    command.kind = Kind.AMEND;
+                    command.orderId = orderIdAndQty[0];
+                    command.qty = orderIdAndQty[1];
+                } else {
+                    final Order order = parseOrder(line);
+                    command.kind = Kind.ORDER;
+                    command.side = order.getSide();
+                    command.type = order.getType();
+                    command.price = order.getPrice();
+                    command.qty = order.getQty();
+                }
+            } catch (final IllegalArgumentException e) {
+                command.kind = Kind.ERROR;
+                command.text = e.getMessage();
+            }
+        }
+    }
+
+    private final class MatchStage extends Stage implements SpscRingBuffer.Handler<CommandSlot>, ExecutionListener {
+        private final Order order = new Order();
+        private ResultSlot result;
+
+        private MatchStage() {
+            super("match");
+        }
+
+        @Override
+        int drain() {
+            final int queued = commands.size();
+            if (queued > 0) {
+                matchStats.onBatchStart(queued);
+            }
+            return commands.drain(this, MAX_BATCH);
+        }
+
+        @Override
+        public void onEvent(final CommandSlot command, final long sequence, final boolean endOfBatch) {
+            matchStats.onMessage(command.enqueuedNanos);
+            result = publisher.claimInput(results);
+            result.kind = command.kind;
+            result.text = command.text;
+            result.tradeCount = 0;
+            try {
+                match(command);
+            } catch (final IllegalArgumentException e) {
+                result.kind = Kind.ERROR;
+                result.text = e.getMessage();
+            } catch (final RuntimeException e) {
+                result.kind = Kind.ERROR;
+                result.text = "Error: " + e.getMessage();
+            }
+            command.text = null;
+            result.enqueuedNanos = System.nanoTime();
+            results.publish();
+            if (command.kind == Kind.STOP) {
+                stop();
+            }
+        }
+
+        @Override
+        public void onExecution(final Execution execution) {
+            result.addTrade(execution.getPrice(), execution.getQty());
+        }
+
+        private void match(final CommandSlot command) {
+            switch (command.kind) {
+                case ORDER:
+                    order.set(0, command.side, command.price, command.qty, command.type);
+                    result.orderId = orderBook.placeOrder(order, this);
+                    result.side = command.side;
+                    result.price = command.price;
+                    result.qty = command.qty;
+                    for (int i = 0; i < result.tradeCount; i++) {
+                        result.qty -= result.tradeQtys[i];
+                    }
+                    if (!OrderType.LIMIT.equals(command.type)) {
+                        // the rest of the order is cancelled, it is not placed in the order book
+                        result.qty = 0;
+                    }
+                    break;
+                case CANCEL:
+                    result.orderId = command.orderId;
+                    result.found = orderBook.cancelOrder(command.orderId);
+                    break;
+                case AMEND:
+                    result.orderId = command.orderId;
+                    result.found = orderBook.amendOrder(command.orderId, command.qty);
+                    if (result.found) {
+                        final Order amended = orderBook.getOrder(command.orderId);
+                        result.side = amended.getSide();
+                        result.price = amended.getPrice();
+                        result.qty = amended.getQty();
+                    }
+                    break;
+                case PRINT:
+                    final StringBuilder text = new StringBuilder();
+                    text.append("--- BUY ---\n");
+                    appendOrders(text, orderBook.getOrders(Side.BUY));
+                    text.append("--- SELL ---\n");
+                    appendOrders(text, orderBook.getOrders(Side.SELL));
+                    result.text = text.toString();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void appendOrders(final StringBuilder text, final List<Order> orders) {
+            for (final Order order : orders) {
+                text.append("ORDER ").append(order.getId()).append(' ').append(order).append('\n');
+            }
+        }
+    }
+
+    private final class PublishStage extends Stage implements SpscRingBuffer.Handler<ResultSlot> {
+        private final StringBuilder text = new StringBuilder();
+        private char[] chars = new char[256];
+
+        private PublishStage() {
+            super("publish");
+        }
+
+        @Override
+        int drain() {
+            final int queued = results.size();
+            if (queued > 0) {
+                publishStats.onBatchStart(queued);
+            }
+            return results.drain(this, MAX_BATCH);
+        }
+
+        @Override
+        public void onEvent(final ResultSlot result, final long sequence, final boolean endOfBatch) {
+            publishStats.onMessage(result.enqueuedNanos);
+            try {
+                publish(result);
+                if (endOfBatch || result.kind == Kind.STOP) {
+                    out.flush();
+                    err.flush();
+                }
+            } catch (final IOException | RuntimeException e) {
+                publishError(e);
+            }
+            result.text = null;
+            if (result.kind == Kind.STOP) {
+                stop();
+            }
+        }
+
+        private void publish(final ResultSlot result) throws IOException {
+            text.setLength(0);
+            switch (result.kind) {
+                case ORDER:
+                    for (int i = 0; i < result.tradeCount; i++) {
+                        text.append("TRADE ").append(result.tradeQtys[i]).append('@').append(result.tradePrices[i])
+                            .append('\n');
+                    }
+                    if (result.qty > 0) {
+                        appendOrder(result);
+                    }
+                    write(out);
+                    break;
+                case CANCEL:
+                case AMEND:
+                    if (!result.found) {
+                        text.append("Unknown order: ").append(result.orderId).append('\n');
+                        write(err);
+                    } else if (result.kind == Kind.CANCEL) {
+                        text.append("CANCELLED ").append(result.orderId).append('\n');
+                        write(out);
+                    } else {
+                        appendOrder(result);
+                        write(out);
+                    }
+                    break;
+                case PRINT:
+                    out.write(result.text);
+                    break;
+                case ERROR:
+                    text.append(result.text).append('\n');
+                    write(err);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void publishError(final Exception e) {
+            text.setLength(0);
+            text.append("Error: ").append(e.getMessage()).append('\n');
+            try {
+                write(err);
+                err.flush();
+            } catch (final IOException | RuntimeException ignored) {
+                // the error output fails as well, the result is dropped so that the stages in front do not wait
+            }
+        }
+
+        private void appendOrder(final ResultSlot result) {
+            text.append("ORDER ").append(result.orderId).append(' ').append(result.side).append(' ')
+                .append(result.qty).append('@').append(result.price).append('\n');
+        }
+
+        private void write(final Writer writer) throws IOException {
+            if (chars.length < text.length()) {
+                chars = new char[text.length() * 2];
+            }
+            text.getChars(0, text.length(), chars, 0);
+            writer.write(chars, 0, text.length());
+        }
+    }
+}
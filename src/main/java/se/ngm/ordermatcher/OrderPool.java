@@ -0,0 +1,55 @@
+package se.ngm.ordermatcher;
+
+/**
+ * A pool of recyclable {@link Order} objects. The order book takes an order from the pool when (part of) an order is
+ * added to the order book and gives it back when the order is filled or cancelled, so that a book in steady state
+ * does not allocate any orders.
+ *
+ * The free orders are kept in a stack linked through {@link Order#next}. Not thread safe, a pool belongs to one
+ * order book.
+ */
+public class OrderPool {
+
+    private Order free;
+    private long available;
+    private long allocated;
+
+    /**
+     * @return a free order from the pool, or a new order if the pool is empty
+     */
+    Order acquire() {
+        final Order order = free;
+        if (order == null) {
+            allocated++;
+            return new Order();
+        }
+        free = order.next;
+        order.next = null;
+        available--;
+        return order;
+    }
+
+    /**
+     * Returns an order to the pool, the order must not be used (or referenced) after it has been released.
+     */
+    void release(final Order order) {
+        order.prev = null;
+        order.next = free;
+        free = order;
+        available++;
+    }
+
+    /**
+     * @return the number of free orders in the pool
+     */
+    public long getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the number of orders allocated by the pool, free or in use
+     */
+    public long getAllocated() {
+        return allocated;
+    }
+}
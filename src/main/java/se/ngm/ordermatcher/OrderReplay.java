@@ -0,0 +1,249 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays a file of orders, one {@code <buy|sell> <quantity>@<price>} per line, into an order book and writes the
+ * trades, one {@code TRADE <quantity>@<price>} per line, to a file. The file can also cancel and amend orders with the
+ * {@code CANCEL <order id>} and {@code AMEND <order id> <quantity>} commands of the console.
+ *
+ * The input file is memory-mapped in windows and parsed by an {@link OrderLineParser}, and the trades are formatted
+ * into a direct buffer that is written to the output file when it is full, i.e. the replay does not create any objects
+ * per order and is not bound by console I/O. Lines that are not commands, and cancels and amends that the order book
+ * rejects, are counted and skipped.
+ */
+public class OrderReplay {
+
+    /**
+     * The counts and the time of a replay.
+     */
+    public static class Summary {
+        private final long orderCount;
+        private final long cancelCount;
+        private final long amendCount;
+        private final long tradeCount;
+        private final long rejectedCount;
+        private final long nanos;
+
+        Summary(final long orderCount, final long cancelCount, final long amendCount, final long tradeCount,
+                final long rejectedCount, final long nanos) {
+            this.orderCount = orderCount;
+            this.cancelCount = cancelCount;
+            this.amendCount = amendCount;
+            this.tradeCount = tradeCount;
+            this.rejectedCount = rejectedCount;
+            this.nanos = nanos;
+        }
+
+        public long getOrderCount() {
+            return orderCount;
+        }
+
+        /**
+         * @return the number of cancelled orders
+         */
+        public long getCancelCount() {
+            return cancelCount;
+        }
+
+        /**
+         * @return the number of amended orders
+         */
+        public long getAmendCount() {
+            return amendCount;
+        }
+
+        public long getTradeCount() {
+            return tradeCount;
+        }
+
+        /**
+         * @return the number of lines that are not commands and of cancels and amends of unknown orders
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getOrdersPerSecond() {
+            return orderCount / (nanos / 1e9);
+        }
+
+        public double getTradesPerSecond() {
+            return tradeCount / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "orders=%d cancels=%d amends=%d trades=%d rejected=%d time=%.3fs orders/s=%.0f trades/s=%.0f",
+                orderCount, cancelCount, amendCount, tradeCount, rejectedCount, nanos / 1e9, getOrdersPerSecond(),
+                getTradesPerSecond());
+        }
+    }
+
+    static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] TRADE = "TRADE ".getBytes(StandardCharsets.US_ASCII);
+
+    private final OrderBook orderBook;
+    private final int windowSize;
+    private final OrderLineParser parser = new OrderLineParser();
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private final ExecutionListener tradeWriter = this::writeTrade;
+    private final OrderLineParser.Handler handler = new OrderLineParser.Handler() {
+        @Override
+        public void onOrder(final Order order) {
+            orderCount++;
+            orderBook.placeOrder(order, tradeWriter);
+        }
+
+        @Override
+        public void onCancel(final long orderId) {
+            if (orderBook.cancelOrder(orderId)) {
+                cancelCount++;
+            } else {
+                rejectedCount++;
+            }
+        }
+
+        @Override
+        public void onAmend(final long orderId, final long qty) {
+            try {
+                if (orderBook.amendOrder(orderId, qty)) {
+                    amendCount++;
+                    return;
+                }
+            } catch (final IllegalArgumentException e) {
+                // e.g. a quantity that is not positive
+            }
+            rejectedCount++;
+        }
+
+        @Override
+        public void onError(final IllegalArgumentException error) {
+            rejectedCount++;
+        }
+    };
+
+    private FileChannel out;
+    private long orderCount;
+    private long cancelCount;
+    private long amendCount;
+    private long tradeCount;
+    private long rejectedCount;
+
+    public OrderReplay(final OrderBook orderBook) {
+        this(orderBook, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize the size of the part of the input file that is mapped at a time, the longest line that can be
+     *                   replayed
+     */
+    OrderReplay(final OrderBook orderBook, final int windowSize) {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+        Require.that(windowSize > 0, "windowSize must be > 0");
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Replays the orders of the input file, the output file is created or truncated.
+     *
+     * @return the counts and the time of this replay
+     */
+    public Summary replay(final Path input, final Path output) throws IOException {
+        final long start = System.nanoTime();
+        final long orderCountBefore = orderCount;
+        final long cancelCountBefore = cancelCount;
+        final long amendCountBefore = amendCount;
+        final long tradeCountBefore = tradeCount;
+        final long rejectedCountBefore = rejectedCount;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.out = out;
+            replay(in);
+            flush();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.out = null;
+            this.output.clear();
+        }
+        return new Summary(orderCount - orderCountBefore, cancelCount - cancelCountBefore,
+            amendCount - amendCountBefore, tradeCount - tradeCountBefore, rejectedCount - rejectedCountBefore,
+            System.nanoTime() - start);
+    }
+
+    private void replay(final FileChannel in) throws IOException {
+        final long size = in.size();
+        long position = 0;
+        while (position < size) {
+            final long length = Math.min(windowSize, size - position);
+            final MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            parser.parse(window, handler);
+            if (position + length == size) {
+                // the last line may not end with a newline
+                if (window.hasRemaining()) {
+                    final byte[] lastLine = new byte[window.remaining() + 1];
+                    window.get(lastLine, 0, lastLine.length - 1);
+                    lastLine[lastLine.length - 1] = '\n';
+                    parser.parse(lastLine, 0, lastLine.length, handler);
+                }
+                return;
+            }
+            if (window.position() == 0) {
+                throw new IOException("line longer than " + windowSize + " bytes at offset " + position);
+            }
+            position += window.position();
+        }
+    }
+
+    private void writeTrade(final Execution execution) {
+        tradeCount++;
+        if (output.remaining() < TRADE.length + 2 * digits.length + 2) {
+            try {
+                flush();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        output.put(TRADE);
+        putLong(execution.getQty());
+        output.put((byte) '@');
+        putLong(execution.getPrice());
+        output.put((byte) '\n');
+    }
+
+    /**
+     * Writes the decimal digits of a non-negative number.
+     */
+    private void putLong(long value) {
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        output.put(digits, i, digits.length - i);
+    }
+
+    private void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            out.write(output);
+        }
+        output.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package se.ngm.ordermatcher;
+
+/**
+ * The outcome of a command sent to an {@link OrderGateway}, acknowledged after the executions of the command.
+ */
+public enum OrderStatus {
+    /** the order has been placed, the quantity left is resting in the order book */
+    ACCEPTED,
+    /** the order has been cancelled */
+    CANCELLED,
+    /** the quantity of the order has been changed */
+    AMENDED,
+    /** the command is invalid, e.g. a duplicate order id or a cancel of an unknown order */
+    REJECTED
+}
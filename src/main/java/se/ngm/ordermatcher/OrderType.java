@@ -0,0 +1,15 @@
+package se.ngm.ordermatcher;
+
+/**
+ * How an order is matched and what happens to the quantity that is not matched when the order is placed.
+ */
+public enum OrderType {
+    /** matched up to its price, the rest is placed in the order book */
+    LIMIT,
+    /** matched at any price, an order without price, the rest is cancelled */
+    MARKET,
+    /** immediate or cancel, matched up to its price and the rest is cancelled */
+    IOC,
+    /** fill or kill, matched up to its price only if it can be filled completely, otherwise nothing is matched */
+    FOK
+}
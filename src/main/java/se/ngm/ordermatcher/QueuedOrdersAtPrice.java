@@ -3,21 +3,144 @@ package se.ngm.ordermatcher;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * The orders queued at a price level in time priority order. The total quantity and the number of orders at the price
+ * level are maintained as orders are added, filled and removed so that they can be read in O(1).
+ *
+ * The queue is an intrusive doubly-linked list, i.e. the links are kept in the orders themselves
+ * ({@link Order#prev}, {@link Order#next}). Adding an order last, filling or removing the first order and removing
+ * any order in the queue (cancel) are all O(1).
+ *
+ *   first                      last
+ *   +--------+    +--------+    +--------+
+ *   | 10@100 | <> | 50@100 | <> |  5@100 |
+ *   +--------+    +--------+    +--------+
+ *
+ * A checksum of the queue is maintained in the same way, the sum of a hash of every link in the queue, i.e. of each
+ * order together with the id of the order before it, so that the checksum depends on the queue order while an order
+ * is added, filled or removed in O(1).
+ */
 public class QueuedOrdersAtPrice {
-    private final List<Order> orders = new ArrayList<>();
+    private Order first;
+    private Order last;
+    private int orderCount;
+    private long totalQuantity;
+    private long checksum;
+    // the market data update of the order book that this level was last collected for, and its index in the update
+    long levelUpdateSequence;
+    int levelUpdateIndex;
 
     long getTotalQuantity() {
-        return orders.stream()
-            .mapToLong(Order::getQty)
-            .sum();
+        return totalQuantity;
     }
 
+    /**
+     * @return the checksum of the queued orders, their ids, sides, prices and quantities in queue order, 0 when the
+     * queue is empty
+     */
+    long getChecksum() {
+        return checksum;
+    }
+
+    int getOrderCount() {
+        return orderCount;
+    }
+
+    boolean isEmpty() {
+        return first == null;
+    }
+
+    /**
+     * @return a copy of the queued orders in queue order
+     */
     List<Order> getOrders() {
+        final List<Order> orders = new ArrayList<>(orderCount);
+        for (Order order = first; order != null; order = order.next) {
+            orders.add(order);
+        }
         return orders;
     }
 
     void addOrder(final Order order) {
-        orders.add(order);
+        checksum += link(last, order);
+        order.prev = last;
+        order.next = null;
+        if (last == null) {
+            first = order;
+        } else {
+            last.next = order;
+        }
+        last = order;
+        orderCount++;
+        totalQuantity += order.getQty();
+    }
+
+    /**
+     * @return the first order in the queue, i.e. the order with the highest time priority
+     */
+    Order getFirst() {
+        return first;
+    }
+
+    /**
+     * Partially fills the first order in the queue, the order stays first in the queue.
+     */
+    void fillFirst(final long qty) {
+        reduceQty(first, first.getQty() - qty);
+    }
+
+    /**
+     * Removes the first order in the queue, e.g. when it has been completely filled.
+     */
+    void removeFirst() {
+        removeOrder(first);
+    }
+
+    /**
+     * Reduces the quantity of a queued order, the order keeps its place in the queue.
+     */
+    void reduceQty(final Order order, final long qty) {
+        totalQuantity -= order.getQty() - qty;
+        checksum -= link(order.prev, order);
+        order.setQty(qty);
+        checksum += link(order.prev, order);
+    }
+
+    /**
+     * Removes a queued order from the queue, e.g. when it is cancelled.
+     */
+    void removeOrder(final Order order) {
+        checksum -= link(order.prev, order);
+        if (order.next != null) {
+            checksum += link(order.prev, order.next) - link(order, order.next);
+        }
+        if (order.prev == null) {
+            first = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            last = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        order.prev = null;
+        order.next = null;
+        orderCount--;
+        totalQuantity -= order.getQty();
+    }
+
+    private static long link(final Order prev, final Order order) {
+        long hash = mix(order.getSide().ordinal(), prev == null ? 0 : prev.getId());
+        hash = mix(hash, order.getId());
+        hash = mix(hash, order.getPrice());
+        return mix(hash, order.getQty());
+    }
+
+    private static long mix(final long hash, final long value) {
+        // multiply and fold, so that the same values in another order give another hash
+        final long mixed = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return mixed ^ (mixed >>> 29);
     }
 
 }
@@ -0,0 +1,633 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32C;
+import se.ngm.ordermatcher.codec.AmendOrderEncoder;
+import se.ngm.ordermatcher.codec.BookChecksumEncoder;
+import se.ngm.ordermatcher.codec.CancelOrderEncoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+import se.ngm.ordermatcher.codec.StartAuctionEncoder;
+import se.ngm.ordermatcher.codec.UncrossEncoder;
+
+/**
+ * The primary of a replicated order book. The commands of the order book are sequenced and streamed over TCP to hot
+ * replicas (see {@link ReplicationReplica}), which apply the same commands to their own order books in the same
+ * order. Matching is deterministic, so the order books stay identical and a replica can take over when the primary
+ * fails, see {@link ReplicationReplica#promote(InetSocketAddress)}.
+ *
+ * Every command is sent as a record in the layout of the {@link Journal}: length, CRC-32C, sequence and a NewOrder,
+ * CancelOrder, AmendOrder, StartAuction or Uncross message. Every checksumInterval commands a BookChecksum message follows with the sequence
+ * of the last command and the checksum of the order book after it (see {@link OrderBook#getChecksum()}). The replicas
+ * compare it with the checksum of their own order book and report a divergence.
+ *
+ * Replication is pipelined: the caller hands the record to a sender thread through a {@link SpscRingBuffer} and
+ * matches the command without waiting for the replicas. A replica acknowledges the records it has applied with
+ * 16-byte frames:
+ *
+ * <pre>
+ *   appliedSequence:i64 divergedSequence:i64 (0 if the order books have not diverged)
+ * </pre>
+ *
+ * The caller only waits when more than window commands are unacknowledged, at most ackTimeoutNanos. The replicas that
+ * are still behind after that are disconnected, so a slow or hung replica delays the primary by a bounded time only.
+ * A replica whose output buffer overflows is disconnected as well.
+ *
+ * If the sender thread fails, e.g. because a replica cannot be accepted, the failure is kept (see
+ * {@link #getFailure()}) and the replicas are disconnected so that one of them can take over. The following commands
+ * fail with an {@link IllegalStateException} before they are applied to the order book.
+ *
+ * The first frame of a replica is its handshake: the sequence of the last command it has applied. A replica is only
+ * accepted if that is the sequence of the last record sent to the replicas, i.e. it must connect before the commands
+ * it should apply, there is no catch up from a snapshot.
+ *
+ * The commands must be given on one thread, which owns the order book.
+ */
+public class ReplicationPrimary implements AutoCloseable {
+
+    public static final int DEFAULT_WINDOW = 1024;
+    public static final long DEFAULT_ACK_TIMEOUT_NANOS = 100_000_000L;
+    public static final int DEFAULT_CHECKSUM_INTERVAL = 1024;
+    static final int ACK_LENGTH = 16;
+    private static final int MAX_RECORD_LENGTH = Journal.RECORD_HEADER_LENGTH + MessageHeaderEncoder.ENCODED_LENGTH
+        + NewOrderEncoder.BLOCK_LENGTH;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_BATCH = 256;
+
+    private final OrderBook orderBook;
+    private final int window;
+    private final long ackTimeoutNanos;
+    private final int checksumInterval;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final SpscRingBuffer<RecordSlot> records;
+    private final Thread senderThread;
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    // caller only
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final NewOrderEncoder newOrderEncoder = new NewOrderEncoder();
+    private final CancelOrderEncoder cancelOrderEncoder = new CancelOrderEncoder();
+    private final AmendOrderEncoder amendOrderEncoder = new AmendOrderEncoder();
+    private final StartAuctionEncoder startAuctionEncoder = new StartAuctionEncoder();
+    private final UncrossEncoder uncrossEncoder = new UncrossEncoder();
+    private final BookChecksumEncoder bookChecksumEncoder = new BookChecksumEncoder();
+    private long sequence;
+    private long ackTimeoutCount;
+
+    // written by the sender, the lowest sequence acknowledged by all replicas
+    private volatile long ackedSequence;
+    // written by the caller, the replicas that have acknowledged less than this are disconnected
+    private volatile long dropBelowSequence;
+    private volatile int replicaCount;
+    private volatile long droppedReplicaCount;
+    private volatile long rejectedReplicaCount;
+    private volatile long divergenceCount;
+
+    public ReplicationPrimary(final OrderBook orderBook, final InetSocketAddress address) throws IOException {
+        this(orderBook, address, 0, DEFAULT_WINDOW, DEFAULT_ACK_TIMEOUT_NANOS, DEFAULT_CHECKSUM_INTERVAL);
+    }
+
+    /**
+     * Binds the primary to the address, port 0 binds to an ephemeral port, see {@link #getPort()}.
+     *
+     * @param lastSequence     the sequence of the last command that has been applied to the order book, e.g. by a
+     *                         replica that is promoted, 0 for a new order book
+     * @param window           the number of unacknowledged commands before the caller waits for the replicas
+     * @param ackTimeoutNanos  the time the caller waits before the replicas that are behind are disconnected
+     * @param checksumInterval the number of commands between the checksums of the order book, 0 for no checksums
+     */
+    public ReplicationPrimary(final OrderBook orderBook, final InetSocketAddress address, final long lastSequence,
+                              final int window, final long ackTimeoutNanos, final int checksumInterval)
+        throws IOException {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+        Require.that(lastSequence >= 0, "lastSequence must be >= 0");
+        Require.that(window > 0, "window must be > 0");
+        Require.that(ackTimeoutNanos >= 0, "ackTimeoutNanos must be >= 0");
+        Require.that(checksumInterval >= 0, "checksumInterval must be >= 0");
+        this.window = window;
+        this.ackTimeoutNanos = ackTimeoutNanos;
+        this.checksumInterval = checksumInterval;
+        this.sequence = lastSequence;
+        this.ackedSequence = lastSequence;
+        // room for the window and its checksums
+        this.records = new SpscRingBuffer<>(Integer.highestOneBit(window) * 4, RecordSlot::new);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(Require.notNull(address, "address"));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        final Sender sender = new Sender(lastSequence);
+        this.senderThread = new Thread(sender::run, "replication-primary");
+        senderThread.setDaemon(true);
+        senderThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public OrderBook getOrderBook() {
+        return orderBook;
+    }
+
+    /**
+     * The selector of the sender thread, closing it fails the sender thread.
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * @return the sequence of the last command
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the lowest sequence that all connected replicas have applied, the sequence of the last sent record if
+     * there are no replicas
+     */
+    public long getAckedSequence() {
+        return ackedSequence;
+    }
+
+    /**
+     * @return the number of connected replicas that have completed the handshake
+     */
+    public int getReplicaCount() {
+        return replicaCount;
+    }
+
+    /**
+     * @return the number of replicas disconnected because they were too far behind
+     */
+    public long getDroppedReplicaCount() {
+        return droppedReplicaCount;
+    }
+
+    /**
+     * @return the number of replicas disconnected at the handshake because they were at another sequence
+     */
+    public long getRejectedReplicaCount() {
+        return rejectedReplicaCount;
+    }
+
+    /**
+     * @return the number of replicas that have reported that their order book has diverged from this one
+     */
+    public long getDivergenceCount() {
+        return divergenceCount;
+    }
+
+    /**
+     * @return the error that stopped the sender thread, or null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return the number of times the caller stopped waiting for the replicas because of the ack timeout
+     */
+    public long getAckTimeoutCount() {
+        return ackTimeoutCount;
+    }
+
+    /**
+     * Replicates and places the order, see {@link OrderBook#placeOrder(Order, ExecutionListener)}. A rejected order is
+     * replicated as well, it is rejected by the replicas in the same way.
+     */
+    public long placeOrder(final Order order, final ExecutionListener listener) {
+        final RecordSlot slot = claim();
+        newOrderEncoder.wrapAndApplyHeader(slot.record, Journal.RECORD_HEADER_LENGTH, headerEncoder)
+            .orderId(order.getId())
+            .side(order.getSide())
+            .orderType(order.getType())
+            .price(order.getPrice())
+            .qty(order.getQty());
+        publish(slot, NewOrderEncoder.BLOCK_LENGTH, ++sequence);
+        try {
+            return orderBook.placeOrder(order, listener);
+        } finally {
+            afterCommand();
+        }
+    }
+
+    /**
+     * @see OrderBook#cancelOrder(long)
+     */
+    public boolean cancelOrder(final long orderId) {
+        final RecordSlot slot = claim();
+        cancelOrderEncoder.wrapAndApplyHeader(slot.record, Journal.RECORD_HEADER_LENGTH, headerEncoder)
+            .orderId(orderId);
+        publish(slot, CancelOrderEncoder.BLOCK_LENGTH, ++sequence);
+        try {
+            return orderBook.cancelOrder(orderId);
+        } finally {
+            afterCommand();
+        }
+    }
+
+    /**
+     * @see OrderBook#amendOrder(long, long)
+     */
+    public boolean amendOrder(final long orderId, final long qty) {
+        final RecordSlot slot = claim();
+        amendOrderEncoder.wrapAndApplyHeader(slot.record, Journal.RECORD_HEADER_LENGTH, headerEncoder)
+            .orderId(orderId)
+            .qty(qty);
+        publish(slot, AmendOrderEncoder.BLOCK_LENGTH, ++sequence);
+        try {
+            return orderBook.amendOrder(orderId, qty);
+        } finally {
+            afterCommand();
+        }
+    }
+
+    /**
+     * @see OrderBook#startAuction()
+     */
+    public void startAuction() {
+        final RecordSlot slot = claim();
+        startAuctionEncoder.wrapAndApplyHeader(slot.record, Journal.RECORD_HEADER_LENGTH, headerEncoder);
+        publish(slot, StartAuctionEncoder.BLOCK_LENGTH, ++sequence);
+        try {
+            orderBook.startAuction();
+        } finally {
+            afterCommand();
+        }
+    }
+
+    /**
+     * Replicates and uncrosses the order book, see {@link OrderBook#uncross(long, ExecutionListener)}. The replicas
+     * uncross their order books at the same price.
+     */
+    public long uncross(final long referencePrice, final ExecutionListener listener) {
+        final RecordSlot slot = claim();
+        uncrossEncoder.wrapAndApplyHeader(slot.record, Journal.RECORD_HEADER_LENGTH, headerEncoder)
+            .referencePrice(referencePrice);
+        publish(slot, UncrossEncoder.BLOCK_LENGTH, ++sequence);
+        try {
+            return orderBook.uncross(referencePrice, listener);
+        } finally {
+            afterCommand();
+        }
+    }
+
+    /**
+     * Waits until the connected replicas have applied all commands, e.g. before a planned switch over.
+     *
+     * @return false if they had not when the timeout expired
+     * @throws IllegalStateException if the sender thread has failed
+     */
+    public boolean awaitAcks(final long timeoutNanos) {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        int attempt = 0;
+        while (ackedSequence < sequence) {
+            if (failure != null) {
+                throw senderFailed();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            SpscRingBuffer.idle(attempt++);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the sender thread and disconnects the replicas, records that are not yet sent are dropped. If the calling
+     * thread is interrupted while waiting for the sender thread, the interrupt flag is restored and the replicas are
+     * left to the sender thread, which still stops.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            senderThread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (selector.isOpen()) {
+            for (final SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+        serverChannel.close();
+    }
+
+    /**
+     * Claims a slot for a record, fails instead of waiting for a sender thread that has failed.
+     */
+    private RecordSlot claim() {
+        final RecordSlot slot = claimUnlessFailed();
+        if (slot == null) {
+            throw senderFailed();
+        }
+        return slot;
+    }
+
+    /**
+     * @return the claimed slot, or null if the sender thread has failed
+     */
+    private RecordSlot claimUnlessFailed() {
+        int attempt = 0;
+        RecordSlot slot;
+        while (failure == null) {
+            if ((slot = records.tryClaim()) != null) {
+                return slot;
+            }
+            SpscRingBuffer.idle(attempt++);
+        }
+        return null;
+    }
+
+    private IllegalStateException senderFailed() {
+        return new IllegalStateException("replication sender failed", failure);
+    }
+
+    private void publish(final RecordSlot slot, final int blockLength, final long recordSequence) {
+        slot.record.putLong(8, recordSequence);
+        slot.sequence = recordSequence;
+        slot.length = (Journal.RECORD_HEADER_LENGTH + MessageHeaderEncoder.ENCODED_LENGTH + blockLength + 7) & ~7;
+        records.publish();
+    }
+
+    private void afterCommand() {
+        // the command has been applied, if the sender has failed the checksum is dropped and the next command fails
+        final RecordSlot slot = checksumInterval > 0 && sequence % checksumInterval == 0 ? claimUnlessFailed() : null;
+        if (slot != null) {
+            bookChecksumEncoder.wrapAndApplyHeader(slot.record, Journal.RECORD_HEADER_LENGTH, headerEncoder)
+                .checksum(orderBook.getChecksum())
+                .orderCount(orderBook.getOrderCount());
+            publish(slot, BookChecksumEncoder.BLOCK_LENGTH, sequence);
+        }
+        if (sequence - ackedSequence > window) {
+            awaitWindow();
+        }
+    }
+
+    /**
+     * Waits until at most window commands are unacknowledged, or the ack timeout expires, and then has the replicas
+     * that are behind disconnected.
+     */
+    private void awaitWindow() {
+        final long deadline = System.nanoTime() + ackTimeoutNanos;
+        int attempt = 0;
+        // the replicas are disconnected if the sender has failed, the next command fails
+        while (sequence - ackedSequence > window && failure == null) {
+            if (System.nanoTime() - deadline >= 0) {
+                ackTimeoutCount++;
+                dropBelowSequence = sequence - window;
+                return;
+            }
+            SpscRingBuffer.idle(attempt++);
+        }
+    }
+
+    private static final class RecordSlot {
+        private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        private long sequence;
+        private int length;
+    }
+
+    private static final class Replica {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(ACK_LENGTH * 64).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean accepted;
+        private boolean closed;
+        private long ackedSequence;
+        private long divergedSequence;
+
+        private Replica(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Owns the sockets: accepts the replicas, sends them the records and reads their acknowledgements.
+     */
+    private final class Sender implements SpscRingBuffer.Handler<RecordSlot> {
+        private final CRC32C checksum = new CRC32C();
+        private final List<Replica> replicas = new ArrayList<>();
+        // the sequence of the last record sent to the replicas
+        private long sentSequence;
+
+        private Sender(final long lastSequence) {
+            this.sentSequence = lastSequence;
+        }
+
+        void run() {
+            try {
+                int attempt = 0;
+                while (running) {
+                    int work = 0;
+                    if (selector.selectNow() > 0) {
+                        work += handleSelected();
+                    }
+                    work += records.drain(this, MAX_BATCH);
+                    dropLagging();
+                    updateAckedSequence();
+                    if (work > 0) {
+                        attempt = 0;
+                    } else {
+                        SpscRingBuffer.idle(attempt++);
+                    }
+                }
+            } catch (final IOException | RuntimeException | Error e) {
+                failure = e;
+                for (int i = 0; i < replicas.size(); i++) {
+                    closeReplica(replicas.get(i));
+                }
+                replicas.clear();
+            }
+        }
+
+        @Override
+        public void onEvent(final RecordSlot slot, final long ringSequence, final boolean endOfBatch) {
+            final ByteBuffer record = slot.record;
+            checksum.reset();
+            record.limit(slot.length).position(8);
+            checksum.update(record);
+            record.clear();
+            record.putInt(4, (int) checksum.getValue());
+            record.putInt(0, slot.length);
+            sentSequence = slot.sequence;
+
+            for (int i = 0; i < replicas.size(); i++) {
+                final Replica replica = replicas.get(i);
+                if (replica.out.remaining() < slot.length) {
+                    write(replica);
+                    if (replica.closed || replica.out.remaining() < slot.length) {
+                        droppedReplicaCount++;
+                        closeReplica(replica);
+                        continue;
+                    }
+                }
+                record.limit(slot.length);
+                replica.out.put(record);
+                record.clear();
+            }
+            if (endOfBatch) {
+                for (int i = 0; i < replicas.size(); i++) {
+                    write(replicas.get(i));
+                }
+                replicas.removeIf(replica -> replica.closed);
+            }
+        }
+
+        private int handleSelected() throws IOException {
+            int work = 0;
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                } else {
+                    final Replica replica = (Replica) key.attachment();
+                    if (key.isWritable()) {
+                        write(replica);
+                    }
+                    if (!replica.closed && key.isReadable()) {
+                        read(replica);
+                    }
+                }
+                work++;
+            }
+            replicas.removeIf(replica -> replica.closed);
+            return work;
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Replica(channel, key));
+            }
+        }
+
+        private void read(final Replica replica) {
+            final ByteBuffer in = replica.in;
+            try {
+                if (replica.channel.read(in) < 0) {
+                    closeReplica(replica);
+                    return;
+                }
+            } catch (final IOException e) {
+                closeReplica(replica);
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= ACK_LENGTH) {
+                final long appliedSequence = in.getLong();
+                final long divergedSequence = in.getLong();
+                if (replica.accepted) {
+                    replica.ackedSequence = Math.max(replica.ackedSequence, appliedSequence);
+                    if (divergedSequence != 0 && replica.divergedSequence == 0) {
+                        replica.divergedSequence = divergedSequence;
+                        divergenceCount++;
+                    }
+                } else if (appliedSequence == sentSequence) {
+                    replica.accepted = true;
+                    replica.ackedSequence = appliedSequence;
+                    replicas.add(replica);
+                    replicaCount++;
+                } else {
+                    rejectedReplicaCount++;
+                    closeReplica(replica);
+                    return;
+                }
+            }
+            in.compact();
+        }
+
+        /**
+         * Writes as much of the buffered records as the socket takes, the rest when the socket is writable again.
+         */
+        private void write(final Replica replica) {
+            if (replica.closed) {
+                return;
+            }
+            final ByteBuffer out = replica.out;
+            out.flip();
+            try {
+                replica.channel.write(out);
+            } catch (final IOException e) {
+                out.clear();
+                closeReplica(replica);
+                return;
+            }
+            final int interestOps = replica.key.interestOps();
+            if (out.hasRemaining()) {
+                replica.key.interestOps(interestOps | SelectionKey.OP_WRITE);
+            } else if ((interestOps & SelectionKey.OP_WRITE) != 0) {
+                replica.key.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+            }
+            out.compact();
+        }
+
+        private void dropLagging() {
+            final long dropBelow = dropBelowSequence;
+            for (int i = 0; i < replicas.size(); i++) {
+                final Replica replica = replicas.get(i);
+                if (replica.ackedSequence < dropBelow) {
+                    droppedReplicaCount++;
+                    closeReplica(replica);
+                }
+            }
+            replicas.removeIf(replica -> replica.closed);
+        }
+
+        private void updateAckedSequence() {
+            long acked = sentSequence;
+            for (int i = 0; i < replicas.size(); i++) {
+                acked = Math.min(acked, replicas.get(i).ackedSequence);
+            }
+            if (acked != ackedSequence) {
+                ackedSequence = acked;
+            }
+        }
+
+        private void closeReplica(final Replica replica) {
+            if (replica.closed) {
+                return;
+            }
+            replica.closed = true;
+            replica.key.cancel();
+            try {
+                replica.channel.close();
+            } catch (final IOException e) {
+                // closed anyway
+            }
+            if (replica.accepted) {
+                replicaCount--;
+            }
+        }
+    }
+}
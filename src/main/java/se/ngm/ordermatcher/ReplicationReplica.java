@@ -0,0 +1,254 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.zip.CRC32C;
+import se.ngm.ordermatcher.codec.AmendOrderDecoder;
+import se.ngm.ordermatcher.codec.BookChecksumDecoder;
+import se.ngm.ordermatcher.codec.CancelOrderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.NewOrderDecoder;
+import se.ngm.ordermatcher.codec.StartAuctionDecoder;
+import se.ngm.ordermatcher.codec.UncrossDecoder;
+
+/**
+ * A hot replica of an order book: receives the commands of a {@link ReplicationPrimary} over TCP and applies them to
+ * its own order book on a replica thread, in sequence order. The records of each read are acknowledged with the
+ * sequence of the last applied command.
+ *
+ * The checksums of the primary's order book are compared with the checksum of this order book after the same command.
+ * A mismatch means that the order books have diverged, e.g. because this order book did not start from the same
+ * state, the sequence of the first mismatch is reported to the primary and kept, see {@link #getDivergedSequence()}.
+ * Replication goes on, it is up to the operator to decide.
+ *
+ * When the primary fails the replica is disconnected, see {@link #isConnected()}, and can take over as the new primary
+ * with {@link #promote(InetSocketAddress)}. The other replicas then connect to the new primary with the sequence they
+ * have applied.
+ *
+ * The order book must not be used by other threads until the replica is closed or promoted.
+ */
+public class ReplicationReplica implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final ExecutionListener IGNORE_EXECUTIONS = execution -> { };
+
+    private final OrderBook orderBook;
+    private final SocketChannel channel;
+    private final Thread thread;
+    private volatile long appliedSequence;
+    private volatile long divergedSequence;
+    private volatile boolean connected = true;
+    private volatile boolean closing;
+    private volatile IOException failure;
+
+    public ReplicationReplica(final OrderBook orderBook, final InetSocketAddress primaryAddress) throws IOException {
+        this(orderBook, primaryAddress, 0);
+    }
+
+    /**
+     * Connects to the primary, the commands after the applied sequence are applied to the order book.
+     *
+     * @param appliedSequence the sequence of the last command that has been applied to the order book, 0 for a new
+     *                        order book
+     */
+    public ReplicationReplica(final OrderBook orderBook, final InetSocketAddress primaryAddress,
+                              final long appliedSequence) throws IOException {
+        this.orderBook = Require.notNull(orderBook, "orderBook");
+        Require.that(appliedSequence >= 0, "appliedSequence must be >= 0");
+        this.appliedSequence = appliedSequence;
+        this.channel = SocketChannel.open(Require.notNull(primaryAddress, "primaryAddress"));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.thread = new Thread(new Applier()::run, "replication-replica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public OrderBook getOrderBook() {
+        return orderBook;
+    }
+
+    /**
+     * @return the sequence of the last command applied to the order book
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return the sequence of the first command after which the checksum of this order book differed from the
+     * primary's, or 0 if they have not diverged
+     */
+    public long getDivergedSequence() {
+        return divergedSequence;
+    }
+
+    /**
+     * @return false when the connection to the primary has been lost, e.g. because the primary failed
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return the error that disconnected the replica, e.g. a corrupt record or a gap in the sequence, or null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Disconnects from the primary and makes this replica the new primary, with the order book and the sequence of the
+     * commands it has applied.
+     */
+    public ReplicationPrimary promote(final InetSocketAddress address) throws IOException, InterruptedException {
+        disconnect();
+        // the last command must have been applied before the order book is handed over
+        thread.join();
+        return new ReplicationPrimary(orderBook, address, appliedSequence, ReplicationPrimary.DEFAULT_WINDOW,
+            ReplicationPrimary.DEFAULT_ACK_TIMEOUT_NANOS, ReplicationPrimary.DEFAULT_CHECKSUM_INTERVAL);
+    }
+
+    /**
+     * Disconnects from the primary and waits for the replica thread. If the calling thread is interrupted while
+     * waiting, the interrupt flag is restored and the replica thread stops on its own.
+     */
+    @Override
+    public void close() throws IOException {
+        disconnect();
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void disconnect() throws IOException {
+        closing = true;
+        channel.close();
+    }
+
+    private final class Applier {
+        private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer ack = ByteBuffer.allocateDirect(ReplicationPrimary.ACK_LENGTH)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C checksum = new CRC32C();
+        private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+        private final NewOrderDecoder newOrderDecoder = new NewOrderDecoder();
+        private final CancelOrderDecoder cancelOrderDecoder = new CancelOrderDecoder();
+        private final AmendOrderDecoder amendOrderDecoder = new AmendOrderDecoder();
+        private final UncrossDecoder uncrossDecoder = new UncrossDecoder();
+        private final BookChecksumDecoder bookChecksumDecoder = new BookChecksumDecoder();
+        private final Order order = new Order();
+
+        void run() {
+            try {
+                // the handshake, the sequence to continue after
+                acknowledge();
+                while (channel.read(in) >= 0) {
+                    in.flip();
+                    int offset = 0;
+                    final int limit = in.limit();
+                    while (limit - offset >= Journal.RECORD_HEADER_LENGTH) {
+                        final int length = in.getInt(offset);
+                        if (length < Journal.RECORD_HEADER_LENGTH + MessageHeaderDecoder.ENCODED_LENGTH
+                            || length > BUFFER_SIZE) {
+                            throw new IOException("bad record length " + length + " after sequence "
+                                + appliedSequence);
+                        }
+                        if (limit - offset < length) {
+                            break;
+                        }
+                        apply(offset, length);
+                        offset += length;
+                    }
+                    in.position(offset);
+                    in.compact();
+                    acknowledge();
+                }
+            } catch (final IOException e) {
+                if (!closing) {
+                    failure = e;
+                }
+            } finally {
+                connected = false;
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    // closed anyway
+                }
+            }
+        }
+
+        private void apply(final int offset, final int length) throws IOException {
+            final int limit = in.limit();
+            checksum.reset();
+            in.limit(offset + length).position(offset + 8);
+            checksum.update(in);
+            in.limit(limit).position(0);
+            final long sequence = in.getLong(offset + 8);
+            if ((int) checksum.getValue() != in.getInt(offset + 4)) {
+                throw new IOException("bad checksum of record " + sequence);
+            }
+
+            final int messageOffset = offset + Journal.RECORD_HEADER_LENGTH;
+            headerDecoder.wrap(in, messageOffset);
+            if (headerDecoder.templateId() == BookChecksumDecoder.TEMPLATE_ID) {
+                if (sequence != appliedSequence) {
+                    throw new IOException("checksum of sequence " + sequence + " after sequence " + appliedSequence);
+                }
+                bookChecksumDecoder.wrapAndApplyHeader(in, messageOffset, headerDecoder);
+                if (divergedSequence == 0 && (bookChecksumDecoder.checksum() != orderBook.getChecksum()
+                    || bookChecksumDecoder.orderCount() != orderBook.getOrderCount())) {
+                    divergedSequence = sequence;
+                }
+                return;
+            }
+            if (sequence != appliedSequence + 1) {
+                throw new IOException("expected sequence " + (appliedSequence + 1) + " but got " + sequence);
+            }
+            try {
+                switch (headerDecoder.templateId()) {
+                    case NewOrderDecoder.TEMPLATE_ID:
+                        newOrderDecoder.wrapAndApplyHeader(in, messageOffset, headerDecoder);
+                        orderBook.placeOrder(order.set(newOrderDecoder.orderId(), newOrderDecoder.side(),
+                            newOrderDecoder.price(), newOrderDecoder.qty(), newOrderDecoder.orderType()),
+                            IGNORE_EXECUTIONS);
+                        break;
+                    case CancelOrderDecoder.TEMPLATE_ID:
+                        cancelOrderDecoder.wrapAndApplyHeader(in, messageOffset, headerDecoder);
+                        orderBook.cancelOrder(cancelOrderDecoder.orderId());
+                        break;
+                    case AmendOrderDecoder.TEMPLATE_ID:
+                        amendOrderDecoder.wrapAndApplyHeader(in, messageOffset, headerDecoder);
+                        orderBook.amendOrder(amendOrderDecoder.orderId(), amendOrderDecoder.qty());
+                        break;
+                    case StartAuctionDecoder.TEMPLATE_ID:
+                        orderBook.startAuction();
+                        break;
+                    case UncrossDecoder.TEMPLATE_ID:
+                        uncrossDecoder.wrapAndApplyHeader(in, messageOffset, headerDecoder);
+                        orderBook.uncross(uncrossDecoder.referencePrice(), IGNORE_EXECUTIONS);
+                        break;
+                    default:
+                        throw new IOException("unknown template id " + headerDecoder.templateId() + " at sequence "
+                            + sequence);
+                }
+            } catch (final IllegalArgumentException e) {
+                // rejected by the primary as well
+            }
+            appliedSequence = sequence;
+        }
+
+        private void acknowledge() throws IOException {
+            ack.clear();
+            ack.putLong(0, appliedSequence).putLong(8, divergedSequence);
+            while (ack.hasRemaining()) {
+                channel.write(ack);
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Matches orders for many instruments. Every instrument (symbol) has its own {@link OrderBook} and the order books
+ * are sharded over a fixed number of matching threads, an instrument always belongs to the same shard.
+ *
+ *                         +--------+     +------------------------+
+ *   placeOrder(symbol) -> | ring 0 | --> | thread 0: AAA, CCC ... |
+ *                         +--------+     +------------------------+
+ *                         | ring 1 | --> | thread 1: BBB, DDD ... |
+ *                         +--------+     +------------------------+
+ *
+ * Each shard is single-writer: its order books are only touched by its matching thread, so no locks are needed in
+ * the order books. Orders for instruments in different shards are matched in parallel, orders for the same
+ * instrument are matched in the order they were submitted (from one submitting thread).
+ *
+ * The commands are passed to a shard through a {@link SpscRingBuffer} of preallocated command slots. The submitting
+ * threads of a shard are serialized by a lock that is only held while a slot is claimed and written, i.e. it is
+ * uncontended with one submitting thread per shard.
+ *
+ * {@link #placeOrder(String, Order, InstrumentExecutionListener)} is the fire-and-forget path of the order flow and
+ * does not create any objects, an order that the order book rejects is counted, see {@link #getRejectedCount()}. The
+ * other methods are asynchronous, the result completes on the matching thread once the command has been processed.
+ */
+public class ShardedOrderMatcher implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+
+    private static final int MAX_BATCH = 256;
+
+    private final Shard[] shards;
+
+    public ShardedOrderMatcher(final int shardCount) {
+        this(shardCount, TreeMapBookSide::new, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity the number of command slots per shard, must be a power of two
+     */
+    public ShardedOrderMatcher(final int shardCount, final BookSide.Factory bookSideFactory,
+                               final int queueCapacity) {
+        Require.that(shardCount > 0, "shardCount must be > 0");
+        Require.that(queueCapacity > 0 && Integer.bitCount(queueCapacity) == 1,
+            "queueCapacity must be a power of two");
+        Require.notNull(bookSideFactory, "bookSideFactory");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, bookSideFactory, queueCapacity);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return the shard that the instrument belongs to
+     */
+    public int shardOf(final String symbol) {
+        return Math.floorMod(Require.notNull(symbol, "symbol").hashCode(), shards.length);
+    }
+
+    /**
+     * Places an order in the order book of the instrument, the executions are delivered to the listener on the
+     * matching thread of the instrument. The order must not be changed after it has been submitted, and it should
+     * have an id if it is to be cancelled or amended.
+     */
+    public void placeOrder(final String symbol, final Order order, final InstrumentExecutionListener listener) {
+        Require.notNull(order, "order");
+        Require.notNull(listener, "listener");
+        submit(Kind.PLACE_ORDER, symbol, order, listener, 0, 0, null, null);
+    }
+
+    /**
+     * @return the trades in the instrument generated by the order
+     */
+    public CompletableFuture<List<Trade>> placeOrder(final String symbol, final Order order) {
+        Require.notNull(order, "order");
+        final CompletableFuture<List<Trade>> result = new CompletableFuture<>();
+        submit(Kind.PLACE_ORDER_TRADES, symbol, order, null, 0, 0, null, result);
+        return result;
+    }
+
+    public CompletableFuture<Boolean> cancelOrder(final String symbol, final long orderId) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        submit(Kind.CANCEL, symbol, null, null, orderId, 0, null, result);
+        return result;
+    }
+
+    public CompletableFuture<Boolean> amendOrder(final String symbol, final long orderId, final long qty) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        submit(Kind.AMEND, symbol, null, null, orderId, qty, null, result);
+        return result;
+    }
+
+    public CompletableFuture<List<Order>> getOrders(final String symbol, final Side side) {
+        final CompletableFuture<List<Order>> result = new CompletableFuture<>();
+        submit(Kind.GET_ORDERS, symbol, null, null, 0, 0, side, result);
+        return result;
+    }
+
+    /**
+     * @return the number of orders placed with {@link #placeOrder(String, Order, InstrumentExecutionListener)} that
+     * were rejected by the order book, e.g. because of a duplicate order id
+     */
+    public long getRejectedCount() {
+        long rejectedCount = 0;
+        for (final Shard shard : shards) {
+            rejectedCount += shard.rejectedCount;
+        }
+        return rejectedCount;
+    }
+
+    /**
+     * @return a future that completes when all commands submitted before this call have been processed
+     */
+    public CompletableFuture<Void> flush() {
+        final List<CompletableFuture<Void>> flushed = new ArrayList<>(shards.length);
+        for (final Shard shard : shards) {
+            final CompletableFuture<Void> result = new CompletableFuture<>();
+            shard.submit(Kind.FLUSH, null, null, null, 0, 0, null, result);
+            flushed.add(result);
+        }
+        return CompletableFuture.allOf(flushed.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Stops the matching threads after the commands already submitted have been processed. If the calling thread is
+     * interrupted while waiting for them, it returns with the interrupt flag set and the threads stop on their own.
+     */
+    @Override
+    public void close() {
+        for (final Shard shard : shards) {
+            shard.submit(Kind.STOP, null, null, null, 0, 0, null, null);
+        }
+        try {
+            for (final Shard shard : shards) {
+                shard.thread.join();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(final Kind kind, final String symbol, final Order order,
+                        final InstrumentExecutionListener listener, final long orderId, final long qty,
+                        final Side side, final CompletableFuture<?> result) {
+        shards[shardOf(symbol)].submit(kind, symbol, order, listener, orderId, qty, side, result);
+    }
+
+    private enum Kind {
+        PLACE_ORDER,
+        PLACE_ORDER_TRADES,
+        CANCEL,
+        AMEND,
+        GET_ORDERS,
+        FLUSH,
+        STOP
+    }
+
+    private static final class CommandSlot {
+        private Kind kind;
+        private String symbol;
+        private Order order;
+        private InstrumentExecutionListener listener;
+        private long orderId;
+        private long qty;
+        private Side side;
+        private CompletableFuture<?> result;
+    }
+
+    private static final class Shard implements SpscRingBuffer.Handler<CommandSlot>, ExecutionListener {
+        private final SpscRingBuffer<CommandSlot> commands;
+        private final BookSide.Factory bookSideFactory;
+        private final Thread thread;
+        private volatile long rejectedCount;
+        // only touched by the matching thread of the shard
+        private final Map<String, OrderBook> orderBooks = new HashMap<>();
+        private boolean running = true;
+        // the instrument and the listener of the order that is being placed
+        private String symbol;
+        private InstrumentExecutionListener listener;
+
+        private Shard(final int index, final BookSide.Factory bookSideFactory, final int queueCapacity) {
+            this.commands = new SpscRingBuffer<>(queueCapacity, CommandSlot::new);
+            this.bookSideFactory = bookSideFactory;
+            this.thread = new Thread(this::run, "matcher-shard-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        /**
+         * Writes a command to the next slot, waits while the ring buffer is full.
+         */
+        private synchronized void submit(final Kind kind, final String symbol, final Order order,
+                                         final InstrumentExecutionListener listener, final long orderId,
+                                         final long qty, final Side side, final CompletableFuture<?> result) {
+            final CommandSlot command = commands.claim();
+            command.kind = kind;
+            command.symbol = symbol;
+            command.order = order;
+            command.listener = listener;
+            command.orderId = orderId;
+            command.qty = qty;
+            command.side = side;
+            command.result = result;
+            commands.publish();
+        }
+
+        private void run() {
+            int attempt = 0;
+            while (running) {
+                if (commands.drain(this, MAX_BATCH) > 0) {
+                    attempt = 0;
+                } else {
+                    SpscRingBuffer.idle(attempt++);
+                }
+            }
+        }
+
+        @Override
+        public void onEvent(final CommandSlot command, final long sequence, final boolean endOfBatch) {
+            final CompletableFuture<?> result = command.result;
+            final Order order = command.order;
+            symbol = command.symbol;
+            listener = command.listener;
+            // the slot does not keep the objects of the command alive
+            command.symbol = null;
+            command.order = null;
+            command.listener = null;
+            command.result = null;
+            try {
+                switch (command.kind) {
+                    case PLACE_ORDER:
+                        getOrderBook(symbol).placeOrder(order, this);
+                        break;
+                    case PLACE_ORDER_TRADES:
+                        complete(result, getOrderBook(symbol).placeOrder(order));
+                        break;
+                    case CANCEL:
+                        complete(result, getOrderBook(symbol).cancelOrder(command.orderId));
+                        break;
+                    case AMEND:
+                        complete(result, getOrderBook(symbol).amendOrder(command.orderId, command.qty));
+                        break;
+                    case GET_ORDERS:
+                        complete(result, getOrderBook(symbol).getOrders(command.side));
+                        break;
+                    case FLUSH:
+                        complete(result, null);
+                        break;
+                    case STOP:
+                        running = false;
+                        break;
+                }
+            } catch (final RuntimeException e) {
+                if (result != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    rejectedCount++;
+                }
+            } finally {
+                symbol = null;
+                listener = null;
+            }
+        }
+
+        @Override
+        public void onExecution(final Execution execution) {
+            listener.onExecution(symbol, execution);
+        }
+
+        private OrderBook getOrderBook(final String symbol) {
+            OrderBook orderBook = orderBooks.get(symbol);
+            if (orderBook == null) {
+                orderBook = new OrderBook(bookSideFactory);
+                orderBooks.put(symbol, orderBook);
+            }
+            return orderBook;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> void complete(final CompletableFuture<?> result, final T value) {
+            ((CompletableFuture<T>) result).complete(value);
+        }
+    }
+}
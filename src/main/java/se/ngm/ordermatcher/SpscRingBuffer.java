@@ -0,0 +1,154 @@
+package se.ngm.ordermatcher;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A bounded single-producer/single-consumer ring buffer of preallocated, reusable slots. Lock free, the producer and
+ * the consumer only share two sequence counters.
+ *
+ * The producer claims the next free slot, writes to it and publishes it:
+ *
+ * <pre>
+ *   final Slot slot = ringBuffer.claim(); // waits while the ring buffer is full
+ *   slot.value = ...;
+ *   ringBuffer.publish();
+ * </pre>
+ *
+ * The consumer drains all published slots (up to a max batch size) in one call, the slots are given back to the
+ * producer when the whole batch has been handled. A consumer that falls behind thereby handles larger batches, and
+ * pays for the hand-over of the slots once per batch instead of once per slot.
+ *
+ * A slot must not be used by the producer after it has been published, or by the consumer after the handler
+ * returns.
+ */
+public class SpscRingBuffer<T> {
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        /**
+         * @param endOfBatch true for the last slot of the batch, e.g. to flush output
+         */
+        void onEvent(T slot, long sequence, boolean endOfBatch);
+    }
+
+    private final Object[] slots;
+    private final int mask;
+
+    // the number of published slots, written by the producer
+    private final AtomicLong published = new AtomicLong();
+    // the number of consumed slots, written by the consumer
+    private final AtomicLong consumed = new AtomicLong();
+
+    // producer only
+    private long claimed;
+    private long cachedConsumed;
+
+    // consumer only
+    private long cachedPublished;
+
+    /**
+     * @param capacity    the number of slots, must be a power of two
+     * @param slotFactory creates the slots, called once per slot
+     */
+    public SpscRingBuffer(final int capacity, final Supplier<T> slotFactory) {
+        Require.that(capacity > 0 && Integer.bitCount(capacity) == 1, "capacity must be a power of two");
+        Require.notNull(slotFactory, "slotFactory");
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = Require.notNull(slotFactory.get(), "slot");
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return the number of published slots that are not yet consumed
+     */
+    public int size() {
+        return (int) (published.get() - consumed.get());
+    }
+
+    /**
+     * Claims the next slot, waits while the ring buffer is full. Producer only, the slot must be published before the
+     * next slot is claimed.
+     */
+    public T claim() {
+        final long wrapPoint = claimed - slots.length;
+        if (cachedConsumed <= wrapPoint) {
+            int attempt = 0;
+            while ((cachedConsumed = consumed.get()) <= wrapPoint) {
+                idle(attempt++);
+            }
+        }
+        return slot(claimed);
+    }
+
+    /**
+     * Claims the next slot if the ring buffer is not full, for a producer that must not wait, e.g. because it is also
+     * the consumer of another ring buffer. Producer only.
+     *
+     * @return the slot or null if the ring buffer is full
+     */
+    public T tryClaim() {
+        final long wrapPoint = claimed - slots.length;
+        if (cachedConsumed <= wrapPoint && (cachedConsumed = consumed.get()) <= wrapPoint) {
+            return null;
+        }
+        return slot(claimed);
+    }
+
+    /**
+     * Makes the claimed slot visible to the consumer. Producer only.
+     */
+    public void publish() {
+        published.lazySet(++claimed);
+    }
+
+    /**
+     * Handles the published slots, at most maxBatch of them. Consumer only.
+     *
+     * @return the number of handled slots, 0 if there was none
+     */
+    public int drain(final Handler<? super T> handler, final int maxBatch) {
+        final long next = consumed.get();
+        long available = cachedPublished - next;
+        if (available <= 0) {
+            cachedPublished = published.get();
+            available = cachedPublished - next;
+            if (available <= 0) {
+                return 0;
+            }
+        }
+
+        final int batch = (int) Math.min(available, maxBatch);
+        for (int i = 0; i < batch; i++) {
+            handler.onEvent(slot(next + i), next + i, i == batch - 1);
+        }
+        consumed.lazySet(next + batch);
+        return batch;
+    }
+
+    /**
+     * Backs off while waiting for the other side, spins first then yields and finally parks, so that a waiting thread
+     * does not starve the other side when there are fewer cores than threads.
+     */
+    static void idle(final int attempt) {
+        if (attempt < 100) {
+            Thread.onSpinWait();
+        } else if (attempt < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T slot(final long sequence) {
+        return (T) slots[(int) sequence & mask];
+    }
+}
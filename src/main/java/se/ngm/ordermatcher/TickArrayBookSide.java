@@ -0,0 +1,185 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayDeque;
+
+/**
+ * A {@link BookSide} where the price levels are kept in an array with one slot per price tick, i.e. the price level
+ * at price {@code p} is stored at index {@code p - basePrice}.
+ *
+ * The window of prices covered by the array is placed around the first price added to an empty side (the reference
+ * price). When a price outside the window is added the array is recentered around the occupied prices, and grown if
+ * the occupied prices does not fit in half of the array.
+ *
+ * The indexes of the lowest and highest occupied slots are cached, the best price is one of them depending on the
+ * side. Adding, looking up and removing a price level is O(1) and finding the next price level is a scan over the
+ * empty slots between the price levels, which makes this side a good fit for instruments where the prices are dense.
+ * Removed price levels are kept (up to {@value #MAX_SPARE_LEVELS}) and reused for new price levels.
+ *
+ *   SELL SIDE (basePrice = 6)
+ *
+ *   index  0   1    2    3    4   ...
+ *        +---+----+----+-----+---+
+ *   slot |   | 30 | 50 | 100 |   |
+ *        +---+----+----+-----+---+
+ *   price  6   7    8    9    10
+ *              ^best     ^worst
+ */
+public class TickArrayBookSide implements BookSide {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MAX_SPARE_LEVELS = 1024;
+
+    private final boolean buySide;
+    private QueuedOrdersAtPrice[] levels;
+    private long basePrice;
+    private int lowIndex = -1;
+    private int highIndex = -1;
+    private int levelCount;
+    private final ArrayDeque<QueuedOrdersAtPrice> spareLevels = new ArrayDeque<>();
+
+    public TickArrayBookSide(final Side side) {
+        this(side, DEFAULT_CAPACITY);
+    }
+
+    public TickArrayBookSide(final Side side, final int capacity) {
+        Require.that(capacity > 0 && capacity <= MAX_CAPACITY, "capacity must be > 0 and <= " + MAX_CAPACITY);
+        this.buySide = Side.BUY.equals(Require.notNull(side, "side"));
+        this.levels = new QueuedOrdersAtPrice[capacity];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return levelCount == 0;
+    }
+
+    @Override
+    public int size() {
+        return levelCount;
+    }
+
+    @Override
+    public long first() {
+        if (levelCount == 0) {
+            return NO_PRICE;
+        }
+        return priceAt(buySide ? highIndex : lowIndex);
+    }
+
+    @Override
+    public long next(final long price) {
+        final long offset = price - basePrice;
+        if (levelCount == 0 || offset < lowIndex || offset > highIndex) {
+            return NO_PRICE;
+        }
+        if (buySide) {
+            for (int index = (int) offset - 1; index >= lowIndex; index--) {
+                if (levels[index] != null) {
+                    return priceAt(index);
+                }
+            }
+        } else {
+            for (int index = (int) offset + 1; index <= highIndex; index++) {
+                if (levels[index] != null) {
+                    return priceAt(index);
+                }
+            }
+        }
+        return NO_PRICE;
+    }
+
+    @Override
+    public QueuedOrdersAtPrice get(final long price) {
+        final long offset = price - basePrice;
+        if (offset < 0 || offset >= levels.length) {
+            return null;
+        }
+        return levels[(int) offset];
+    }
+
+    @Override
+    public QueuedOrdersAtPrice getOrCreate(final long price) {
+        if (levelCount == 0) {
+            basePrice = price - levels.length / 2;
+        } else if (price - basePrice < 0 || price - basePrice >= levels.length) {
+            recenter(price);
+        }
+
+        final int index = (int) (price - basePrice);
+        QueuedOrdersAtPrice ordersAtPrice = levels[index];
+        if (ordersAtPrice == null) {
+            ordersAtPrice = spareLevels.isEmpty() ? new QueuedOrdersAtPrice() : spareLevels.pop();
+            levels[index] = ordersAtPrice;
+            if (levelCount == 0) {
+                lowIndex = index;
+                highIndex = index;
+            } else {
+                lowIndex = Math.min(lowIndex, index);
+                highIndex = Math.max(highIndex, index);
+            }
+            levelCount++;
+        }
+        return ordersAtPrice;
+    }
+
+    @Override
+    public void remove(final long price) {
+        final long offset = price - basePrice;
+        if (offset < 0 || offset >= levels.length || levels[(int) offset] == null) {
+            return;
+        }
+        final int index = (int) offset;
+        if (spareLevels.size() < MAX_SPARE_LEVELS && levels[index].isEmpty()) {
+            spareLevels.push(levels[index]);
+        }
+        levels[index] = null;
+        levelCount--;
+
+        if (levelCount == 0) {
+            lowIndex = -1;
+            highIndex = -1;
+            return;
+        }
+        if (index == lowIndex) {
+            do {
+                lowIndex++;
+            } while (levels[lowIndex] == null);
+        }
+        if (index == highIndex) {
+            do {
+                highIndex--;
+            } while (levels[highIndex] == null);
+        }
+    }
+
+    private long priceAt(final int index) {
+        return basePrice + index;
+    }
+
+    /**
+     * Moves the occupied slots so that they, together with the specified price, are centered in the array. The array
+     * is doubled until the occupied prices fit in half of it, leaving room on both sides for the prices to move.
+     */
+    private void recenter(final long price) {
+        final long lowPrice = Math.min(price, priceAt(lowIndex));
+        final long highPrice = Math.max(price, priceAt(highIndex));
+        final long span = highPrice - lowPrice + 1;
+        Require.that(span <= MAX_CAPACITY / 2, "price range too wide for a tick array: " + lowPrice + "-" + highPrice);
+
+        int capacity = levels.length;
+        while (capacity < span * 2) {
+            capacity <<= 1;
+        }
+
+        final long newBasePrice = lowPrice - (capacity - span) / 2;
+        final QueuedOrdersAtPrice[] newLevels = new QueuedOrdersAtPrice[capacity];
+        final int shift = (int) (basePrice - newBasePrice);
+        System.arraycopy(levels, lowIndex, newLevels, lowIndex + shift, highIndex - lowIndex + 1);
+
+        levels = newLevels;
+        basePrice = newBasePrice;
+        lowIndex += shift;
+        highIndex += shift;
+    }
+}
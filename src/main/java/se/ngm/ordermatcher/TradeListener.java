@@ -0,0 +1,17 @@
+package se.ngm.ordermatcher;
+
+/**
+ * Receives the trades generated when an active order is matched against the passive orders in an
+ * {@link OrderBook}. Trades are delivered in the order they occur, with primitive arguments, so that matching does not
+ * need to allocate any objects.
+ */
+@FunctionalInterface
+public interface TradeListener extends ExecutionListener {
+
+    void onTrade(long price, long qty);
+
+    @Override
+    default void onExecution(final Execution execution) {
+        onTrade(execution.getPrice(), execution.getQty());
+    }
+}
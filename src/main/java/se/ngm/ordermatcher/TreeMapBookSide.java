@@ -0,0 +1,63 @@
+package se.ngm.ordermatcher;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.reverseOrder;
+
+/**
+ * A {@link BookSide} where the price levels are kept in a {@link TreeMap}. The buy side is sorted in reverse natural
+ * order by its price and the sell side is sorted in natural order by its price.
+ *
+ * Suitable for any price range, see {@link TickArrayBookSide} for instruments where the prices are dense and
+ * {@link BTreeBookSide} for a sorted map of any price range without boxed prices.
+ */
+public class TreeMapBookSide implements BookSide {
+
+    private final NavigableMap<Long, QueuedOrdersAtPrice> ordersAtPrice;
+
+    public TreeMapBookSide(final Side side) {
+        if (Side.BUY.equals(Require.notNull(side, "side"))) {
+            this.ordersAtPrice = new TreeMap<>(reverseOrder());
+        } else {
+            this.ordersAtPrice = new TreeMap<>(naturalOrder());
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ordersAtPrice.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return ordersAtPrice.size();
+    }
+
+    @Override
+    public long first() {
+        return ordersAtPrice.isEmpty() ? NO_PRICE : ordersAtPrice.firstKey();
+    }
+
+    @Override
+    public long next(final long price) {
+        final Long next = ordersAtPrice.higherKey(price);
+        return next == null ? NO_PRICE : next;
+    }
+
+    @Override
+    public QueuedOrdersAtPrice get(final long price) {
+        return ordersAtPrice.get(price);
+    }
+
+    @Override
+    public QueuedOrdersAtPrice getOrCreate(final long price) {
+        return ordersAtPrice.computeIfAbsent(price, key -> new QueuedOrdersAtPrice());
+    }
+
+    @Override
+    public void remove(final long price) {
+        ordersAtPrice.remove(price);
+    }
+}
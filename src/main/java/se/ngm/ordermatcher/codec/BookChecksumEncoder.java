@@ -0,0 +1,56 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes a BookChecksum message: the checksum of the resting orders of an order book after the command with
+ * the sequence of the record that holds the message, see {@code OrderBook#getChecksum()}.
+ */
+public final class BookChecksumEncoder {
+
+    public static final int TEMPLATE_ID = 6;
+    public static final int BLOCK_LENGTH = 16;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     */
+    public BookChecksumEncoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Writes the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public BookChecksumEncoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderEncoder header) {
+        header.wrap(buffer, offset)
+            .blockLength(BLOCK_LENGTH)
+            .templateId(TEMPLATE_ID)
+            .schemaId(MessageHeaderEncoder.SCHEMA_ID)
+            .version(MessageHeaderEncoder.SCHEMA_VERSION);
+        return wrap(buffer, offset + header.encodedLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public BookChecksumEncoder checksum(final long checksum) {
+        buffer.putLong(offset + 0, checksum);
+        return this;
+    }
+
+    public BookChecksumEncoder orderCount(final int orderCount) {
+        buffer.putInt(offset + 8, orderCount);
+        return this;
+    }
+}
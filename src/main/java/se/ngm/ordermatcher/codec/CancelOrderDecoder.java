@@ -0,0 +1,56 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads a CancelOrder message: cancels an order in the order book.
+ */
+public final class CancelOrderDecoder {
+
+    public static final int TEMPLATE_ID = CancelOrderEncoder.TEMPLATE_ID;
+    public static final int BLOCK_LENGTH = CancelOrderEncoder.BLOCK_LENGTH;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int actingBlockLength;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     *
+     * @param actingBlockLength the block length from the message header, may be longer than {@link #BLOCK_LENGTH}
+     *                          if the message was encoded by a later version of the schema
+     */
+    public CancelOrderDecoder wrap(final ByteBuffer buffer, final int offset, final int actingBlockLength) {
+        if (actingBlockLength < BLOCK_LENGTH) {
+            throw new IllegalArgumentException("block length too short for CancelOrder: " + actingBlockLength);
+        }
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        this.actingBlockLength = actingBlockLength;
+        return this;
+    }
+
+    /**
+     * Reads the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public CancelOrderDecoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderDecoder header) {
+        header.wrap(buffer, offset);
+        if (header.templateId() != TEMPLATE_ID) {
+            throw new IllegalArgumentException("not a CancelOrder, template id: " + header.templateId());
+        }
+        return wrap(buffer, offset + header.encodedLength(), header.blockLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return actingBlockLength;
+    }
+
+    public long orderId() {
+        return buffer.getLong(offset + 0);
+    }
+}
@@ -0,0 +1,50 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes a CancelOrder message: cancels an order in the order book.
+ */
+public final class CancelOrderEncoder {
+
+    public static final int TEMPLATE_ID = 2;
+    public static final int BLOCK_LENGTH = 8;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     */
+    public CancelOrderEncoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Writes the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public CancelOrderEncoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderEncoder header) {
+        header.wrap(buffer, offset)
+            .blockLength(BLOCK_LENGTH)
+            .templateId(TEMPLATE_ID)
+            .schemaId(MessageHeaderEncoder.SCHEMA_ID)
+            .version(MessageHeaderEncoder.SCHEMA_VERSION);
+        return wrap(buffer, offset + header.encodedLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public CancelOrderEncoder orderId(final long orderId) {
+        buffer.putLong(offset + 0, orderId);
+        return this;
+    }
+}
@@ -0,0 +1,118 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import se.ngm.ordermatcher.Side;
+
+/**
+ * Reads a ExecutionReport message: a fill between the active (taker) order and a passive (maker) order.
+ */
+public final class ExecutionReportDecoder {
+
+    public static final int TEMPLATE_ID = ExecutionReportEncoder.TEMPLATE_ID;
+    public static final int BLOCK_LENGTH = ExecutionReportEncoder.BLOCK_LENGTH;
+    public static final int V1_BLOCK_LENGTH = ExecutionReportEncoder.V1_BLOCK_LENGTH;
+    /**
+     * The value of the i64 fields that are not in a version 1 message.
+     */
+    public static final long NULL_VALUE = Long.MIN_VALUE;
+    /**
+     * The value of makerCount in a version 1 message.
+     */
+    public static final int MAKER_COUNT_NULL_VALUE = Integer.MIN_VALUE;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int actingBlockLength;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     *
+     * @param actingBlockLength the block length from the message header, may be longer than {@link #BLOCK_LENGTH}
+     *                          if the message was encoded by a later version of the schema, or
+     *                          {@link #V1_BLOCK_LENGTH} if it was encoded by version 1
+     */
+    public ExecutionReportDecoder wrap(final ByteBuffer buffer, final int offset, final int actingBlockLength) {
+        if (actingBlockLength < V1_BLOCK_LENGTH) {
+            throw new IllegalArgumentException("block length too short for ExecutionReport: " + actingBlockLength);
+        }
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        this.actingBlockLength = actingBlockLength;
+        return this;
+    }
+
+    /**
+     * Reads the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public ExecutionReportDecoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderDecoder header) {
+        header.wrap(buffer, offset);
+        if (header.templateId() != TEMPLATE_ID) {
+            throw new IllegalArgumentException("not a ExecutionReport, template id: " + header.templateId());
+        }
+        return wrap(buffer, offset + header.encodedLength(), header.blockLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return actingBlockLength;
+    }
+
+    public long takerOrderId() {
+        return buffer.getLong(offset + 0);
+    }
+
+    public long makerOrderId() {
+        return buffer.getLong(offset + 8);
+    }
+
+    public long price() {
+        return buffer.getLong(offset + 16);
+    }
+
+    public long qty() {
+        return buffer.getLong(offset + 24);
+    }
+
+    public Side takerSide() {
+        return SideCodec.decode(buffer.get(offset + 32));
+    }
+
+    /**
+     * @return true if the message has the fields added in version 2, from sequence to makerCount
+     */
+    public boolean hasV2Fields() {
+        return actingBlockLength >= BLOCK_LENGTH;
+    }
+
+    /**
+     * @return the sequence, or {@link #NULL_VALUE} in a version 1 message
+     */
+    public long sequence() {
+        return hasV2Fields() ? buffer.getLong(offset + 40) : NULL_VALUE;
+    }
+
+    /**
+     * @return the taker leaves quantity, or {@link #NULL_VALUE} in a version 1 message
+     */
+    public long takerLeavesQty() {
+        return hasV2Fields() ? buffer.getLong(offset + 48) : NULL_VALUE;
+    }
+
+    /**
+     * @return the maker leaves quantity, or {@link #NULL_VALUE} in a version 1 message
+     */
+    public long makerLeavesQty() {
+        return hasV2Fields() ? buffer.getLong(offset + 56) : NULL_VALUE;
+    }
+
+    /**
+     * @return the maker count, or {@link #MAKER_COUNT_NULL_VALUE} in a version 1 message
+     */
+    public int makerCount() {
+        return hasV2Fields() ? buffer.getInt(offset + 64) : MAKER_COUNT_NULL_VALUE;
+    }
+}
@@ -0,0 +1,95 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import se.ngm.ordermatcher.Side;
+
+/**
+ * Writes a ExecutionReport message: a fill between the active (taker) order and a passive (maker) order.
+ */
+public final class ExecutionReportEncoder {
+
+    public static final int TEMPLATE_ID = 4;
+    public static final int BLOCK_LENGTH = 72;
+    /**
+     * The block length of version 1 of the schema, before the fields from sequence to makerCount were added.
+     */
+    public static final int V1_BLOCK_LENGTH = 40;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     */
+    public ExecutionReportEncoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Writes the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public ExecutionReportEncoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderEncoder header) {
+        header.wrap(buffer, offset)
+            .blockLength(BLOCK_LENGTH)
+            .templateId(TEMPLATE_ID)
+            .schemaId(MessageHeaderEncoder.SCHEMA_ID)
+            .version(MessageHeaderEncoder.SCHEMA_VERSION);
+        return wrap(buffer, offset + header.encodedLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public ExecutionReportEncoder takerOrderId(final long takerOrderId) {
+        buffer.putLong(offset + 0, takerOrderId);
+        return this;
+    }
+
+    public ExecutionReportEncoder makerOrderId(final long makerOrderId) {
+        buffer.putLong(offset + 8, makerOrderId);
+        return this;
+    }
+
+    public ExecutionReportEncoder price(final long price) {
+        buffer.putLong(offset + 16, price);
+        return this;
+    }
+
+    public ExecutionReportEncoder qty(final long qty) {
+        buffer.putLong(offset + 24, qty);
+        return this;
+    }
+
+    public ExecutionReportEncoder takerSide(final Side takerSide) {
+        buffer.put(offset + 32, SideCodec.encode(takerSide));
+        return this;
+    }
+
+    public ExecutionReportEncoder sequence(final long sequence) {
+        buffer.putLong(offset + 40, sequence);
+        return this;
+    }
+
+    public ExecutionReportEncoder takerLeavesQty(final long takerLeavesQty) {
+        buffer.putLong(offset + 48, takerLeavesQty);
+        return this;
+    }
+
+    public ExecutionReportEncoder makerLeavesQty(final long makerLeavesQty) {
+        buffer.putLong(offset + 56, makerLeavesQty);
+        return this;
+    }
+
+    public ExecutionReportEncoder makerCount(final int makerCount) {
+        buffer.putInt(offset + 64, makerCount);
+        return this;
+    }
+}
@@ -0,0 +1,44 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the header that precedes every message, see the package documentation for the layout.
+ */
+public final class MessageHeaderDecoder {
+
+    public static final int ENCODED_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset, the byte order of the buffer is set to little-endian.
+     */
+    public MessageHeaderDecoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    public int encodedLength() {
+        return ENCODED_LENGTH;
+    }
+
+    public int blockLength() {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    public int templateId() {
+        return buffer.getShort(offset + 2) & 0xFFFF;
+    }
+
+    public int schemaId() {
+        return buffer.getShort(offset + 4) & 0xFFFF;
+    }
+
+    public int version() {
+        return buffer.getShort(offset + 6) & 0xFFFF;
+    }
+}
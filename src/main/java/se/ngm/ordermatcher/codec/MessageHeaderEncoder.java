@@ -0,0 +1,54 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes the header that precedes every message, see the package documentation for the layout.
+ */
+public final class MessageHeaderEncoder {
+
+    public static final int ENCODED_LENGTH = 8;
+    public static final int SCHEMA_ID = 1;
+    /**
+     * The version of the schema, version 2 extended the ExecutionReport block with the fields from sequence to
+     * makerCount.
+     */
+    public static final int SCHEMA_VERSION = 2;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset, the byte order of the buffer is set to little-endian.
+     */
+    public MessageHeaderEncoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    public int encodedLength() {
+        return ENCODED_LENGTH;
+    }
+
+    public MessageHeaderEncoder blockLength(final int blockLength) {
+        buffer.putShort(offset, (short) blockLength);
+        return this;
+    }
+
+    public MessageHeaderEncoder templateId(final int templateId) {
+        buffer.putShort(offset + 2, (short) templateId);
+        return this;
+    }
+
+    public MessageHeaderEncoder schemaId(final int schemaId) {
+        buffer.putShort(offset + 4, (short) schemaId);
+        return this;
+    }
+
+    public MessageHeaderEncoder version(final int version) {
+        buffer.putShort(offset + 6, (short) version);
+        return this;
+    }
+}
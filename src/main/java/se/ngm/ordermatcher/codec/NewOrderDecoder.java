@@ -0,0 +1,74 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import se.ngm.ordermatcher.OrderType;
+import se.ngm.ordermatcher.Side;
+
+/**
+ * Reads a NewOrder message: a new order, an order id of 0 lets the order book assign the id.
+ */
+public final class NewOrderDecoder {
+
+    public static final int TEMPLATE_ID = NewOrderEncoder.TEMPLATE_ID;
+    public static final int BLOCK_LENGTH = NewOrderEncoder.BLOCK_LENGTH;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int actingBlockLength;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     *
+     * @param actingBlockLength the block length from the message header, may be longer than {@link #BLOCK_LENGTH}
+     *                          if the message was encoded by a later version of the schema
+     */
+    public NewOrderDecoder wrap(final ByteBuffer buffer, final int offset, final int actingBlockLength) {
+        if (actingBlockLength < BLOCK_LENGTH) {
+            throw new IllegalArgumentException("block length too short for NewOrder: " + actingBlockLength);
+        }
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        this.actingBlockLength = actingBlockLength;
+        return this;
+    }
+
+    /**
+     * Reads the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public NewOrderDecoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderDecoder header) {
+        header.wrap(buffer, offset);
+        if (header.templateId() != TEMPLATE_ID) {
+            throw new IllegalArgumentException("not a NewOrder, template id: " + header.templateId());
+        }
+        return wrap(buffer, offset + header.encodedLength(), header.blockLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return actingBlockLength;
+    }
+
+    public long orderId() {
+        return buffer.getLong(offset + 0);
+    }
+
+    public long price() {
+        return buffer.getLong(offset + 8);
+    }
+
+    public long qty() {
+        return buffer.getLong(offset + 16);
+    }
+
+    public Side side() {
+        return SideCodec.decode(buffer.get(offset + 24));
+    }
+
+    public OrderType orderType() {
+        return OrderTypeCodec.decode(buffer.get(offset + 25));
+    }
+}
@@ -0,0 +1,75 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import se.ngm.ordermatcher.OrderType;
+import se.ngm.ordermatcher.Side;
+
+/**
+ * Writes a NewOrder message: a new order, an order id of 0 lets the order book assign the id.
+ */
+public final class NewOrderEncoder {
+
+    public static final int TEMPLATE_ID = 1;
+    public static final int BLOCK_LENGTH = 32;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     */
+    public NewOrderEncoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Writes the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public NewOrderEncoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderEncoder header) {
+        header.wrap(buffer, offset)
+            .blockLength(BLOCK_LENGTH)
+            .templateId(TEMPLATE_ID)
+            .schemaId(MessageHeaderEncoder.SCHEMA_ID)
+            .version(MessageHeaderEncoder.SCHEMA_VERSION);
+        return wrap(buffer, offset + header.encodedLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public NewOrderEncoder orderId(final long orderId) {
+        buffer.putLong(offset + 0, orderId);
+        return this;
+    }
+
+    public NewOrderEncoder price(final long price) {
+        buffer.putLong(offset + 8, price);
+        return this;
+    }
+
+    public NewOrderEncoder qty(final long qty) {
+        buffer.putLong(offset + 16, qty);
+        return this;
+    }
+
+    public NewOrderEncoder side(final Side side) {
+        buffer.put(offset + 24, SideCodec.encode(side));
+        return this;
+    }
+
+    /**
+     * @param type the order type, a message without an order type is a limit order
+     */
+    public NewOrderEncoder orderType(final OrderType type) {
+        buffer.put(offset + 25, OrderTypeCodec.encode(type));
+        return this;
+    }
+}
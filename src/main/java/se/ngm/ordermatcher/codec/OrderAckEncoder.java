@@ -0,0 +1,61 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import se.ngm.ordermatcher.OrderStatus;
+
+/**
+ * Writes a OrderAck message: the outcome of a new order, cancel or amend, sent after its executions.
+ */
+public final class OrderAckEncoder {
+
+    public static final int TEMPLATE_ID = 5;
+    public static final int BLOCK_LENGTH = 24;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Wraps the buffer at the offset of the message block, the byte order of the buffer is set to little-endian.
+     */
+    public OrderAckEncoder wrap(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Writes the message header at the offset and wraps the buffer at the message block following the header.
+     */
+    public OrderAckEncoder wrapAndApplyHeader(final ByteBuffer buffer, final int offset,
+                                    final MessageHeaderEncoder header) {
+        header.wrap(buffer, offset)
+            .blockLength(BLOCK_LENGTH)
+            .templateId(TEMPLATE_ID)
+            .schemaId(MessageHeaderEncoder.SCHEMA_ID)
+            .version(MessageHeaderEncoder.SCHEMA_VERSION);
+        return wrap(buffer, offset + header.encodedLength());
+    }
+
+    /**
+     * @return the length of the message block, excluding the header
+     */
+    public int encodedLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public OrderAckEncoder orderId(final long orderId) {
+        buffer.putLong(offset + 0, orderId);
+        return this;
+    }
+
+    public OrderAckEncoder leavesQty(final long leavesQty) {
+        buffer.putLong(offset + 8, leavesQty);
+        return this;
+    }
+
+    public OrderAckEncoder status(final OrderStatus status) {
+        buffer.put(offset + 16, OrderStatusCodec.encode(status));
+        return this;
+    }
+}
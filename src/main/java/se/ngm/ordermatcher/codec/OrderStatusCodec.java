@@ -0,0 +1,40 @@
+package se.ngm.ordermatcher.codec;
+
+import se.ngm.ordermatcher.OrderStatus;
+
+/**
+ * Encodes an {@link OrderStatus} as one byte: 0 is accepted, 1 is cancelled, 2 is amended and 3 is rejected.
+ */
+final class OrderStatusCodec {
+
+    private OrderStatusCodec() {
+    }
+
+    static byte encode(final OrderStatus status) {
+        switch (status) {
+            case CANCELLED:
+                return 1;
+            case AMENDED:
+                return 2;
+            case REJECTED:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    static OrderStatus decode(final byte status) {
+        switch (status) {
+            case 0:
+                return OrderStatus.ACCEPTED;
+            case 1:
+                return OrderStatus.CANCELLED;
+            case 2:
+                return OrderStatus.AMENDED;
+            case 3:
+                return OrderStatus.REJECTED;
+            default:
+                throw new IllegalArgumentException("illegal order status: " + status);
+        }
+    }
+}
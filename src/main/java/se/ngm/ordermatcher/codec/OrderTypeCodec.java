@@ -0,0 +1,41 @@
+package se.ngm.ordermatcher.codec;
+
+import se.ngm.ordermatcher.OrderType;
+
+/**
+ * Encodes an {@link OrderType} as one byte: 0 is limit, 1 is market, 2 is immediate-or-cancel and 3 is fill-or-kill.
+ * A limit order is 0 so that messages encoded before the order type was added are limit orders.
+ */
+final class OrderTypeCodec {
+
+    private OrderTypeCodec() {
+    }
+
+    static byte encode(final OrderType type) {
+        switch (type) {
+            case MARKET:
+                return 1;
+            case IOC:
+                return 2;
+            case FOK:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    static OrderType decode(final byte type) {
+        switch (type) {
+            case 0:
+                return OrderType.LIMIT;
+            case 1:
+                return OrderType.MARKET;
+            case 2:
+                return OrderType.IOC;
+            case 3:
+                return OrderType.FOK;
+            default:
+                throw new IllegalArgumentException("illegal order type: " + type);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.ngm.ordermatcher.codec;
+
+import se.ngm.ordermatcher.Side;
+
+/**
+ * Encodes a {@link Side} as one byte: 0 is buy and 1 is sell.
+ */
+final class SideCodec {
+
+    private SideCodec() {
+    }
+
+    static byte encode(final Side side) {
+        return Side.BUY.equals(side) ? (byte) 0 : (byte) 1;
+    }
+
+    static Side decode(final byte side) {
+        switch (side) {
+            case 0:
+                return Side.BUY;
+            case 1:
+                return Side.SELL;
+            default:
+                throw new IllegalArgumentException("illegal side: " + side);
+        }
+    }
+}
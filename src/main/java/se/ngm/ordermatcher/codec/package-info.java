@@ -0,0 +1,31 @@
+/**
+ * Fixed-layout binary messages for the order matcher, in the style of SBE (Simple Binary Encoding).
+ *
+ * Every message is a {@link se.ngm.ordermatcher.codec.MessageHeaderEncoder message header} followed by a fixed size
+ * block of little-endian fields:
+ *
+ * <pre>
+ *   header             blockLength:u16 templateId:u16 schemaId:u16 version:u16            8 bytes
+ *   NewOrder (1)       orderId:i64 price:i64 qty:i64 side:u8 orderType:u8                32 bytes
+ *                      (6 bytes padding)
+ *   CancelOrder (2)    orderId:i64                                                        8 bytes
+ *   AmendOrder (3)     orderId:i64 qty:i64                                               16 bytes
+ *   ExecutionReport(4) takerOrderId:i64 makerOrderId:i64 price:i64 qty:i64 takerSide:u8  72 bytes
+ *                      (7 bytes padding) sequence:i64 takerLeavesQty:i64
+ *                      makerLeavesQty:i64 makerCount:i32 (4 bytes padding)
+ *   OrderAck (5)       orderId:i64 leavesQty:i64 status:u8 (7 bytes padding)             24 bytes
+ *   BookChecksum (6)   checksum:i64 orderCount:i32 (4 bytes padding)                     16 bytes
+ *   StartAuction (7)   (no fields)                                                        0 bytes
+ *   Uncross (8)        referencePrice:i64                                                 8 bytes
+ * </pre>
+ *
+ * The encoders and decoders are flyweights: they are wrapped around a {@link java.nio.ByteBuffer} at an offset and
+ * read and write the fields directly in the buffer, no objects are created. Decoders use the block length of the
+ * header to step to the next message, so a message can be extended with new fields at the end of its block without
+ * breaking older decoders. Such an extension bumps the schema version of the header, and the decoder of the message
+ * still reads the block of the earlier version: version 2 extended ExecutionReport from the 40 bytes of version 1,
+ * up to takerSide, and the fields that a version 1 message does not have are read as null values. A reader only
+ * treats a message that is larger than its buffer as a framing error, as it can never be framed, and skips the
+ * messages it does not know by their block length.
+ */
+package se.ngm.ordermatcher.codec;
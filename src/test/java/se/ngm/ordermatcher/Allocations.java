@@ -0,0 +1,31 @@
+package se.ngm.ordermatcher;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocated by the current thread, for the tests of code that must not allocate.
+ */
+final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    /**
+     * Runs the warm up and then the body.
+     *
+     * @return the number of bytes allocated by the current thread while running the body
+     */
+    static long measure(final Runnable warmup, final Runnable body) {
+        final long threadId = Thread.currentThread().getId();
+        warmup.run();
+        // let the allocation counter itself settle
+        THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+
+        final long before = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        body.run();
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - before;
+    }
+}
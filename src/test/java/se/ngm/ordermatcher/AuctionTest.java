@@ -0,0 +1,224 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class AuctionTest {
+
+    @Test
+    void test_orders_are_collected_without_matching() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.startAuction();
+
+        assertThat(orderBook.placeOrder(Order.sellOrder().id(1).qty(10).price(10).build())).isEmpty();
+        assertThat(orderBook.placeOrder(Order.buyOrder().id(2).qty(10).price(12).build())).isEmpty();
+        final Throwable throwable = catchThrowable(
+            () -> orderBook.placeOrder(Order.buyOrder().id(3).qty(10).type(OrderType.MARKET).build()));
+
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("only limit orders can be placed in an auction");
+        assertThat(orderBook.isAuction()).isTrue();
+        assertThat(orderBook.getBestBid()).isEqualTo(12);
+        assertThat(orderBook.getBestAsk()).isEqualTo(10);
+        assertThat(orderBook.getIndicativeVolume(11)).isEqualTo(10);
+    }
+
+    @Test
+    void test_book_is_uncrossed_at_the_price_with_the_most_volume() {
+        final OrderBook orderBook = new OrderBook();
+        final List<String> updates = new ArrayList<>();
+        orderBook.setMarketDataListener(new MarketDataListener() {
+            @Override
+            public void onLevelUpdate(final long sequence, final Action action, final Side side, final long price,
+                                      final long qty, final int orderCount) {
+                updates.add(String.format("%d %s %s %d@%d (%d)", sequence, action, side, qty, price, orderCount));
+            }
+
+            @Override
+            public void onUpdateEnd(final long sequence) {
+                updates.add("END " + sequence);
+            }
+        });
+        orderBook.startAuction();
+        orderBook.placeOrder(Order.buyOrder().id(1).qty(30).price(12).build());
+        orderBook.placeOrder(Order.sellOrder().id(2).qty(25).price(9).build());
+        orderBook.placeOrder(Order.buyOrder().id(3).qty(20).price(11).build());
+        orderBook.placeOrder(Order.sellOrder().id(4).qty(35).price(10).build());
+        orderBook.placeOrder(Order.buyOrder().id(5).qty(40).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().id(6).qty(30).price(11).build());
+        updates.clear();
+
+        // 60 at 10, against 25 at 9, 50 at 11 and 30 at 12
+        final List<String> executions = new ArrayList<>();
+        final long price = orderBook.uncross(100, execution -> executions.add(execution.getTakerOrderId() + " "
+            + execution.getMakerOrderId() + " " + execution.getQty() + "@" + execution.getPrice()));
+
+        assertThat(price).isEqualTo(10);
+        assertThat(executions).containsExactly("1 2 25@10", "1 4 5@10", "3 4 20@10", "5 4 10@10");
+        assertThat(orderBook.isAuction()).isFalse();
+        assertThat(orderBook.getOrders(Side.BUY)).containsExactly(Order.buyOrder().id(5).qty(30).price(10).build());
+        assertThat(orderBook.getOrders(Side.SELL)).containsExactly(Order.sellOrder().id(6).qty(30).price(11).build());
+        assertThat(orderBook.getQtyAtOrBetter(Side.BUY, 10)).isEqualTo(30);
+        assertThat(orderBook.getQtyAtOrBetter(Side.SELL, 11)).isEqualTo(30);
+        assertThat(updates).containsExactly(
+            "7 DELETE SELL 0@9 (0)", "7 DELETE SELL 0@10 (0)", "7 DELETE BUY 0@12 (0)", "7 DELETE BUY 0@11 (0)",
+            "7 CHANGE BUY 30@10 (1)", "END 7");
+
+        // continuous trading resumes
+        assertThat(orderBook.placeOrder(Order.buyOrder().id(7).qty(5).price(11).build()))
+            .containsExactly(Trade.builder().price(11).qty(5).build());
+    }
+
+    @Test
+    void test_ties_are_broken_by_surplus_and_reference_price() {
+        // the same volume and no surplus at 10 and 11, the closest to the reference price
+        assertThat(uncrossPrice(5, 10, 11, 10, 10)).isEqualTo(10);
+        assertThat(uncrossPrice(20, 10, 11, 10, 10)).isEqualTo(11);
+        // a buy surplus at both prices, the highest
+        assertThat(uncrossPrice(5, 20, 11, 10, 10)).isEqualTo(11);
+        // a sell surplus at both prices, the lowest
+        assertThat(uncrossPrice(20, 10, 11, 20, 10)).isEqualTo(10);
+        // not crossed
+        assertThat(uncrossPrice(20, 10, 10, 10, 11)).isZero();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_equilibrium_price_is_the_one_found_by_trying_every_price(final String name,
+                                                                       final BookSide.Factory bookSideFactory) {
+        final Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            final OrderBook orderBook = new OrderBook(bookSideFactory);
+            orderBook.startAuction();
+            final int orderCount = 1 + random.nextInt(200);
+            for (int j = 0; j < orderCount; j++) {
+                orderBook.placeOrder(Order.builder()
+                    .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                    .qty(1 + random.nextInt(random.nextBoolean() ? 10 : 100))
+                    .price(90 + random.nextInt(20))
+                    .build(), execution -> { });
+            }
+            final long referencePrice = 90 + random.nextInt(20);
+            final List<Order> buyOrders = orderBook.getOrders(Side.BUY);
+            final List<Order> sellOrders = orderBook.getOrders(Side.SELL);
+            final long expectedPrice = equilibriumPrice(buyOrders, sellOrders, referencePrice);
+            final long expectedVolume = expectedPrice == 0 ? 0
+                : Math.min(qty(buyOrders, expectedPrice, 1), qty(sellOrders, expectedPrice, -1));
+            assertThat(orderBook.getIndicativePrice(referencePrice)).isEqualTo(expectedPrice);
+
+            final long[] executed = new long[1];
+            final long price = orderBook.uncross(referencePrice, execution -> {
+                assertThat(execution.getPrice()).isEqualTo(expectedPrice);
+                executed[0] += execution.getQty();
+            });
+
+            assertThat(price).isEqualTo(expectedPrice);
+            assertThat(executed[0]).isEqualTo(expectedVolume);
+            final long bestBid = orderBook.getBestBid();
+            final long bestAsk = orderBook.getBestAsk();
+            assertThat(bestBid == BookSide.NO_PRICE || bestAsk == BookSide.NO_PRICE || bestBid < bestAsk).isTrue();
+            assertThat(orderBook.getOrders(Side.BUY).stream().mapToLong(Order::getQty).sum()
+                + orderBook.getOrders(Side.SELL).stream().mapToLong(Order::getQty).sum())
+                .isEqualTo(buyOrders.stream().mapToLong(Order::getQty).sum()
+                    + sellOrders.stream().mapToLong(Order::getQty).sum() - 2 * expectedVolume);
+        }
+    }
+
+    @Test
+    void test_uncross_of_a_large_book() {
+        final int orderCount = 300_000;
+        final Random random = new Random(2);
+        final List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            // the buy and sell prices overlap around 10 000
+            final long price = 10_000 + (Side.BUY.equals(side) ? -1 : 1) * (random.nextInt(1_000) - 50);
+            orders.add(Order.builder().side(side).qty(1 + random.nextInt(100)).price(price).build());
+        }
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        orderBook.startAuction();
+        orderBook.placeOrders(orders, execution -> { });
+        final long[] fills = new long[1];
+        final long price = orderBook.uncross(10_000, execution -> fills[0]++);
+
+        assertThat(price).isBetween(9_950L, 10_050L);
+        assertThat(fills[0]).isGreaterThan(1_000);
+        assertThat(orderBook.getBestBid()).isLessThan(orderBook.getBestAsk());
+    }
+
+    private static long uncrossPrice(final long referencePrice, final long buyQty, final long buyPrice,
+                                     final long sellQty, final long sellPrice) {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.startAuction();
+        orderBook.placeOrder(Order.buyOrder().qty(buyQty).price(buyPrice).build());
+        orderBook.placeOrder(Order.sellOrder().qty(sellQty).price(sellPrice).build());
+        return orderBook.uncross(referencePrice, execution -> { });
+    }
+
+    /**
+     * The equilibrium price found by computing the executable volume and surplus at every limit price from all
+     * orders.
+     */
+    private static long equilibriumPrice(final List<Order> buyOrders, final List<Order> sellOrders,
+                                         final long referencePrice) {
+        final long[] prices = Stream.concat(buyOrders.stream(), sellOrders.stream())
+            .mapToLong(Order::getPrice).distinct().sorted().toArray();
+        long bestVolume = 0;
+        long bestSurplus = Long.MAX_VALUE;
+        for (final long price : prices) {
+            final long volume = Math.min(qty(buyOrders, price, 1), qty(sellOrders, price, -1));
+            final long surplus = Math.abs(qty(buyOrders, price, 1) - qty(sellOrders, price, -1));
+            if (volume > bestVolume || volume == bestVolume && surplus < bestSurplus) {
+                bestVolume = volume;
+                bestSurplus = surplus;
+            }
+        }
+        if (bestVolume == 0) {
+            return 0;
+        }
+        final List<Long> candidates = new ArrayList<>();
+        for (final long price : prices) {
+            if (Math.min(qty(buyOrders, price, 1), qty(sellOrders, price, -1)) == bestVolume
+                && Math.abs(qty(buyOrders, price, 1) - qty(sellOrders, price, -1)) == bestSurplus) {
+                candidates.add(price);
+            }
+        }
+        if (candidates.stream().allMatch(price -> qty(buyOrders, price, 1) > qty(sellOrders, price, -1))) {
+            return candidates.get(candidates.size() - 1);
+        }
+        if (candidates.stream().allMatch(price -> qty(buyOrders, price, 1) < qty(sellOrders, price, -1))) {
+            return candidates.get(0);
+        }
+        return candidates.stream()
+            .min(Comparator.<Long>comparingLong(price -> Math.abs(price - referencePrice))
+                .thenComparing(Comparator.reverseOrder()))
+            .orElseThrow();
+    }
+
+    /**
+     * @param direction 1 for the quantity at or above the price (buy orders), -1 at or below it (sell orders)
+     */
+    private static long qty(final List<Order> orders, final long price, final int direction) {
+        return orders.stream()
+            .filter(order -> direction * Long.compare(order.getPrice(), price) >= 0)
+            .mapToLong(Order::getQty)
+            .sum();
+    }
+
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new));
+    }
+}
@@ -0,0 +1,117 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BTreeBookSideTest {
+
+    @Test
+    void test_buy_side_best_price_first() {
+        final BookSide side = new BTreeBookSide(Side.BUY);
+        side.getOrCreate(30);
+        side.getOrCreate(100_000_000_000L);
+        side.getOrCreate(50);
+
+        assertThat(prices(side)).containsExactly(100_000_000_000L, 50L, 30L);
+        assertThat(side.next(40)).isEqualTo(30L);
+        assertThat(side.next(30)).isEqualTo(BookSide.NO_PRICE);
+    }
+
+    @Test
+    void test_sell_side_best_price_first() {
+        final BookSide side = new BTreeBookSide(Side.SELL);
+        side.getOrCreate(9);
+        side.getOrCreate(1_000_000_000_000L);
+        side.getOrCreate(8);
+
+        assertThat(prices(side)).containsExactly(8L, 9L, 1_000_000_000_000L);
+        assertThat(side.next(1)).isEqualTo(8L);
+        assertThat(side.next(10)).isEqualTo(1_000_000_000_000L);
+    }
+
+    @Test
+    void test_remove_moves_best_price() {
+        final BookSide side = new BTreeBookSide(Side.BUY);
+        final QueuedOrdersAtPrice ordersAt12 = side.getOrCreate(12);
+        side.getOrCreate(10);
+        side.getOrCreate(15);
+
+        side.remove(15);
+        assertThat(side.first()).isEqualTo(12L);
+        assertThat(side.get(12)).isSameAs(ordersAt12);
+        side.remove(10);
+        side.remove(11);
+        assertThat(prices(side)).containsExactly(12L);
+        side.remove(12);
+        assertThat(side.isEmpty()).isTrue();
+        assertThat(side.first()).isEqualTo(BookSide.NO_PRICE);
+        assertThat(side.get(12)).isNull();
+    }
+
+    @Test
+    void test_same_prices_as_tree_map_side() {
+        final Random random = new Random(1);
+        for (final Side s : Side.values()) {
+            final BookSide side = new BTreeBookSide(s);
+            final BookSide expected = new TreeMapBookSide(s);
+            final Map<Long, QueuedOrdersAtPrice> levels = new HashMap<>();
+            int peakSize = 0;
+            for (int i = 0; i < 300_000; i++) {
+                // sparse prices over many orders of magnitude and a dense range, the size of the sides goes up and
+                // down so that nodes are split, merged and rebalanced
+                final long price = random.nextBoolean()
+                    ? 1 + (long) Math.pow(10, random.nextDouble() * 12)
+                    : 1_000 + random.nextInt(5_000);
+                final int operation = random.nextInt(i / 50_000 % 2 == 0 ? 16 : 9);
+                if (operation < 4) {
+                    side.remove(price);
+                    expected.remove(price);
+                    levels.remove(price);
+                } else if (operation < 5) {
+                    assertThat(side.next(price)).isEqualTo(expected.next(price));
+                    assertThat(side.get(price)).isSameAs(levels.get(price));
+                } else if (operation < 6) {
+                    // matching: the best price, its level and the next price, then the best price is removed
+                    for (int level = 0; level < 3 && !expected.isEmpty(); level++) {
+                        final long best = expected.first();
+                        assertThat(side.first()).isEqualTo(best);
+                        assertThat(side.get(best)).isSameAs(levels.get(best));
+                        assertThat(side.next(best)).isEqualTo(expected.next(best));
+                        side.remove(best);
+                        expected.remove(best);
+                        levels.remove(best);
+                    }
+                } else {
+                    final QueuedOrdersAtPrice ordersAtPrice = side.getOrCreate(price);
+                    assertThat(levels.computeIfAbsent(price, key -> ordersAtPrice)).isSameAs(ordersAtPrice);
+                    expected.getOrCreate(price);
+                }
+                assertThat(side.size()).isEqualTo(expected.size());
+                peakSize = Math.max(peakSize, side.size());
+            }
+            // more than the keys of 64 leaves, i.e. the tree has had inner nodes below the root
+            assertThat(peakSize).isGreaterThan(5_000);
+            assertThat(prices(side)).isEqualTo(prices(expected));
+            while (!expected.isEmpty()) {
+                side.remove(expected.first());
+                expected.remove(expected.first());
+            }
+            assertThat(side.isEmpty()).isTrue();
+            assertThat(side.first()).isEqualTo(BookSide.NO_PRICE);
+        }
+    }
+
+    private static List<Long> prices(final BookSide side) {
+        final List<Long> prices = new ArrayList<>();
+        for (long price = side.first(); price != BookSide.NO_PRICE; price = side.next(price)) {
+            prices.add(price);
+        }
+        return prices;
+    }
+}
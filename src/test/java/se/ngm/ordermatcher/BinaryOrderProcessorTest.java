@@ -0,0 +1,251 @@
+package se.ngm.ordermatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import se.ngm.ordermatcher.codec.AmendOrderEncoder;
+import se.ngm.ordermatcher.codec.CancelOrderEncoder;
+import se.ngm.ordermatcher.codec.ExecutionReportDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class BinaryOrderProcessorTest {
+
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final NewOrderEncoder newOrderEncoder = new NewOrderEncoder();
+
+    @Test
+    void test_orders_cancel_amend_and_execution_reports() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        newOrder(buffer, 1, Side.SELL, 100, 10);
+        newOrder(buffer, 2, Side.SELL, 50, 11);
+        newOrder(buffer, 1, Side.SELL, 10, 12); // duplicate id
+        amend(buffer, 2, 20);
+        cancel(buffer, 99); // unknown order
+        newOrder(buffer, 3, Side.BUY, 110, 11);
+        buffer.flip();
+
+        final OrderBook orderBook = new OrderBook();
+        final ByteArrayOutputStream reports = new ByteArrayOutputStream();
+        final BinaryOrderProcessor processor = new BinaryOrderProcessor(orderBook, Channels.newChannel(reports));
+        assertThat(processor.process(buffer)).isEqualTo(6);
+        processor.flush();
+
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThat(processor.getRejectedCount()).isEqualTo(2);
+        assertThat(processor.getExecutionCount()).isEqualTo(2);
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("id", "qty", "price")
+            .containsExactly(tuple(2L, 10L, 11L));
+        assertThat(decodeReports(reports.toByteArray())).containsExactly(
+            "3 BUY 1 100@10", "3 BUY 2 10@11");
+    }
+
+    @Test
+    void test_aggregated_prints() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < 500; i++) {
+            newOrder(buffer, 0, Side.SELL, 1, 10 + i / 100);
+        }
+        newOrder(buffer, 0, Side.BUY, 450, 14);
+        buffer.flip();
+
+        final ByteArrayOutputStream reports = new ByteArrayOutputStream();
+        final BinaryOrderProcessor processor = new BinaryOrderProcessor(new OrderBook(),
+            Channels.newChannel(reports), true);
+        processor.process(buffer);
+        processor.flush();
+
+        final ByteBuffer bytes = ByteBuffer.wrap(reports.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        final MessageHeaderDecoder header = new MessageHeaderDecoder();
+        final ExecutionReportDecoder decoder = new ExecutionReportDecoder();
+        final List<String> prints = new ArrayList<>();
+        for (int offset = 0; offset < bytes.limit(); offset += header.encodedLength() + decoder.encodedLength()) {
+            decoder.wrapAndApplyHeader(bytes, offset, header);
+            prints.add(decoder.sequence() + ": " + decoder.takerOrderId() + " " + decoder.makerOrderId() + " "
+                + decoder.qty() + "@" + decoder.price() + " makers " + decoder.makerCount() + " leaves "
+                + decoder.takerLeavesQty() + "/" + decoder.makerLeavesQty());
+        }
+        assertThat(processor.getExecutionCount()).isEqualTo(5);
+        assertThat(prints).containsExactly(
+            "1: 501 0 100@10 makers 100 leaves 350/0",
+            "2: 501 0 100@11 makers 100 leaves 250/0",
+            "3: 501 0 100@12 makers 100 leaves 150/0",
+            "4: 501 0 100@13 makers 100 leaves 50/0",
+            "5: 501 0 50@14 makers 50 leaves 0/0");
+    }
+
+    @Test
+    void test_partial_message_is_left_in_buffer() throws Exception {
+        final ByteBuffer messages = ByteBuffer.allocate(1024);
+        newOrder(messages, 0, Side.BUY, 100, 10);
+        newOrder(messages, 0, Side.SELL, 40, 10);
+        messages.flip();
+
+        final OrderBook orderBook = new OrderBook();
+        final BinaryOrderProcessor processor = new BinaryOrderProcessor(orderBook, null);
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put(messages.array(), 0, 50).flip();
+        assertThat(processor.process(buffer)).isEqualTo(1);
+        assertThat(buffer.position()).isEqualTo(40);
+
+        buffer.compact().put(messages.array(), 50, messages.limit() - 50).flip();
+        assertThat(processor.process(buffer)).isEqualTo(1);
+        assertThat(orderBook.getOrders(Side.BUY)).extracting("qty", "price").containsExactly(tuple(60L, 10L));
+    }
+
+    @Test
+    void test_unknown_template_is_skipped() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        headerEncoder.wrap(buffer, 0).blockLength(12).templateId(999).schemaId(1).version(2);
+        buffer.position(MessageHeaderEncoder.ENCODED_LENGTH + 12);
+        newOrder(buffer, 0, Side.BUY, 100, 10);
+        buffer.flip();
+
+        final OrderBook orderBook = new OrderBook();
+        final BinaryOrderProcessor processor = new BinaryOrderProcessor(orderBook, null);
+        assertThat(processor.process(buffer)).isEqualTo(2);
+        assertThat(orderBook.getOrders(Side.BUY)).hasSize(1);
+    }
+
+    @Test
+    void test_extended_message_is_read_by_its_known_fields() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        // a NewOrder of a later version of the schema, with 200 bytes of fields this version does not know
+        newOrderEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder).side(Side.BUY).qty(100).price(10);
+        headerEncoder.wrap(buffer, 0).blockLength(NewOrderEncoder.BLOCK_LENGTH + 200).version(3);
+        buffer.position(MessageHeaderEncoder.ENCODED_LENGTH + NewOrderEncoder.BLOCK_LENGTH + 200);
+        newOrder(buffer, 0, Side.BUY, 50, 11);
+        buffer.flip();
+
+        final OrderBook orderBook = new OrderBook();
+        final BinaryOrderProcessor processor = new BinaryOrderProcessor(orderBook, null);
+        assertThat(processor.process(buffer)).isEqualTo(2);
+        assertThat(orderBook.getOrders(Side.BUY)).extracting("qty", "price")
+            .containsExactly(tuple(50L, 11L), tuple(100L, 10L));
+    }
+
+    @Test
+    void test_oversized_block_length_is_framing_error() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        newOrder(buffer, 0, Side.BUY, 100, 10);
+        // e.g. a corrupt header, the message is larger than the buffer of processAll and would never be framed
+        headerEncoder.wrap(buffer, buffer.position()).blockLength(65_535).templateId(1).schemaId(1).version(1);
+        buffer.position(buffer.position() + MessageHeaderEncoder.ENCODED_LENGTH);
+        newOrder(buffer, 0, Side.SELL, 100, 10);
+        buffer.flip();
+
+        final OrderBook orderBook = new OrderBook();
+        final BinaryOrderProcessor processor = new BinaryOrderProcessor(orderBook, null);
+        final Throwable throwable = catchThrowable(() -> processor.processAll(Channels.newChannel(
+            new ByteArrayInputStream(buffer.array(), 0, buffer.limit()))));
+
+        assertThat(throwable).isInstanceOf(IOException.class)
+            .hasMessage("framing error: block length 65535 of template 1 at message 2");
+        assertThat(processor.getMessageCount()).isEqualTo(1);
+        assertThat(orderBook.getOrders(Side.BUY)).hasSize(1);
+    }
+
+    @Test
+    void test_same_trades_as_text_orders_from_file() throws Exception {
+        final Path input = Files.createTempFile("orders", ".bin");
+        final Path output = Files.createTempFile("executions", ".bin");
+        try {
+            final int orderCount = 1_000_000;
+            final Random random = new Random(1);
+            final OrderMatcher expectedMatcher = new OrderMatcher();
+            final List<String> expectedTrades = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                for (int i = 0; i < orderCount; i++) {
+                    final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                    final long qty = 1 + random.nextInt(100);
+                    final long price = 95 + random.nextInt(10);
+                    for (final Trade trade : expectedMatcher.placeOrder(
+                        Order.builder().side(side).qty(qty).price(price).build())) {
+                        expectedTrades.add(trade.toString());
+                    }
+                    if (buffer.remaining() < 64) {
+                        write(channel, buffer);
+                    }
+                    newOrder(buffer, 0, side, qty, price);
+                }
+                write(channel, buffer);
+            }
+
+            final BinaryOrderProcessor processor;
+            try (FileChannel in = FileChannel.open(input); FileChannel out = FileChannel.open(output,
+                StandardOpenOption.WRITE)) {
+                processor = new BinaryOrderProcessor(new OrderBook(), out);
+                assertThat(processor.processAll(in)).isEqualTo(orderCount);
+            }
+
+            final List<String> trades = new ArrayList<>();
+            for (final String report : decodeReports(Files.readAllBytes(output))) {
+                trades.add("TRADE " + report.substring(report.lastIndexOf(' ') + 1));
+            }
+            assertThat(trades).isEqualTo(expectedTrades);
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    private void newOrder(final ByteBuffer buffer, final long orderId, final Side side, final long qty,
+                          final long price) {
+        newOrderEncoder.wrapAndApplyHeader(buffer, buffer.position(), headerEncoder)
+            .orderId(orderId).side(side).qty(qty).price(price);
+        buffer.position(buffer.position() + headerEncoder.encodedLength() + newOrderEncoder.encodedLength());
+    }
+
+    private void cancel(final ByteBuffer buffer, final long orderId) {
+        final CancelOrderEncoder encoder = new CancelOrderEncoder()
+            .wrapAndApplyHeader(buffer, buffer.position(), headerEncoder).orderId(orderId);
+        buffer.position(buffer.position() + headerEncoder.encodedLength() + encoder.encodedLength());
+    }
+
+    private void amend(final ByteBuffer buffer, final long orderId, final long qty) {
+        final AmendOrderEncoder encoder = new AmendOrderEncoder()
+            .wrapAndApplyHeader(buffer, buffer.position(), headerEncoder).orderId(orderId).qty(qty);
+        buffer.position(buffer.position() + headerEncoder.encodedLength() + encoder.encodedLength());
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer) throws Exception {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the reports as "takerId takerSide makerId qty@price"
+     */
+    private static List<String> decodeReports(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final MessageHeaderDecoder header = new MessageHeaderDecoder();
+        final ExecutionReportDecoder decoder = new ExecutionReportDecoder();
+        final List<String> reports = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += header.encodedLength() + decoder.encodedLength()) {
+            decoder.wrapAndApplyHeader(buffer, offset, header);
+            reports.add(decoder.takerOrderId() + " " + decoder.takerSide() + " " + decoder.makerOrderId() + " "
+                + decoder.qty() + "@" + decoder.price());
+        }
+        return reports;
+    }
+}
@@ -0,0 +1,93 @@
+package se.ngm.ordermatcher;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EngineStatsTest {
+
+    @Test
+    void test_nothing_is_recorded_when_disabled() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(10).build());
+
+        final EngineStats stats = orderBook.getStats();
+        assertThat(stats.isEnabled()).isFalse();
+        assertThat(stats.getOrderCount()).isEqualTo(0);
+        assertThat(stats.getLatencies(EngineStats.Probe.PLACE_ORDER).getTotalCount()).isEqualTo(0);
+    }
+
+    @Test
+    void test_counters_and_depth() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final EngineStats stats = orderBook.getStats();
+        stats.setEnabled(true);
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(11).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(12).build());
+        orderBook.placeOrder(Order.buyOrder().qty(25).price(11).build());
+        final long orderId = orderBook.placeOrder(Order.buyOrder().qty(5).price(5).build(), execution -> { });
+
+        assertThat(stats.getOrderCount()).isEqualTo(6);
+        assertThat(stats.getTradeCount()).isEqualTo(3);
+        assertThat(stats.getLevelsSwept()).isEqualTo(2);
+        assertThat(stats.getLevelsSweptPerOrder().getMax()).isEqualTo(2);
+        assertThat(stats.getLatencies(EngineStats.Probe.PLACE_ORDER).getTotalCount()).isEqualTo(6);
+        assertThat(stats.getLatencies(EngineStats.Probe.MATCH_AT_PRICE).getTotalCount()).isEqualTo(2);
+        assertThat(stats.getBuyLevels()).isEqualTo(1);
+        assertThat(stats.getSellLevels()).isEqualTo(2);
+        assertThat(stats.getRestingOrders()).isEqualTo(3);
+
+        orderBook.cancelOrder(orderId);
+        assertThat(stats.getBuyLevels()).isEqualTo(0);
+        assertThat(stats.getRestingOrders()).isEqualTo(2);
+
+        stats.reset();
+        assertThat(stats.getOrderCount()).isEqualTo(0);
+        assertThat(stats.getLatencies(EngineStats.Probe.PLACE_ORDER).getTotalCount()).isEqualTo(0);
+        assertThat(stats.getSellLevels()).isEqualTo(2);
+    }
+
+    @Test
+    void test_format_and_json() {
+        final OrderBook orderBook = new OrderBook();
+        final EngineStats stats = orderBook.getStats();
+        stats.setEnabled(true);
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(10).build());
+        stats.record(EngineStats.Probe.PARSE, 100);
+
+        assertThat(stats.format())
+            .contains("recording=on orders=2 trades=1 levelsSwept=1")
+            .contains("placeOrder (ns)")
+            .contains("matchAtPrice (ns)");
+        assertThat(stats.toJson())
+            .startsWith("{\"enabled\":true,\"orders\":2,\"trades\":1,\"levelsSwept\":1,"
+                + "\"depth\":{\"buyLevels\":0,\"sellLevels\":0,\"restingOrders\":0},\"latencies\":{\"parse\":"
+                + "{\"count\":1,\"min\":100,\"mean\":100.0,\"max\":100,\"p50\":100,\"p90\":100,\"p99\":100,"
+                + "\"p999\":100},\"placeOrder\":{\"count\":2,")
+            .contains("\"levelsSweptPerOrder\":{\"count\":2,\"min\":0,")
+            .endsWith("}}");
+    }
+
+    @Test
+    void test_recording_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        orderBook.getStats().setEnabled(true);
+        final Order sellOrder = Order.sellOrder().qty(10).price(1000).build();
+        final Order buyOrder = Order.buyOrder().qty(10).price(1000).build();
+        final ExecutionListener listener = execution -> { };
+        final Runnable placeOrders = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                orderBook.placeOrder(i % 2 == 0 ? sellOrder : buyOrder, listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeOrders, placeOrders);
+
+        assertThat(orderBook.getStats().getTradeCount()).isEqualTo(100_000);
+        assertThat(allocated).isLessThan(1024L);
+    }
+}
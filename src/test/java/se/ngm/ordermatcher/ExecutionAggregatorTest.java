@@ -0,0 +1,98 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExecutionAggregatorTest {
+
+    @Test
+    void test_executions_have_taker_and_maker_and_leaves_qtys() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.sellOrder().id(1).qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().id(2).qty(20).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().id(3).qty(30).price(11).build());
+
+        final List<String> executions = new ArrayList<>();
+        final ExecutionListener listener = execution -> executions.add(format(execution));
+        orderBook.placeOrder(Order.buyOrder().id(4).qty(35).price(11).build(), listener);
+        orderBook.placeOrder(Order.buyOrder().id(5).qty(50).price(11).build(), listener);
+
+        assertThat(executions).containsExactly(
+            "1: BUY 4 1 10@10 makers 1 leaves 25/0",
+            "2: BUY 4 2 20@10 makers 1 leaves 5/0",
+            "3: BUY 4 3 5@11 makers 1 leaves 0/25",
+            "4: BUY 5 3 25@11 makers 1 leaves 25/0");
+    }
+
+    @Test
+    void test_fills_are_merged_per_price_level_and_taker_order() {
+        final OrderBook orderBook = new OrderBook();
+        for (int i = 1; i <= 6; i++) {
+            orderBook.placeOrder(Order.sellOrder().id(i).qty(10).price(i <= 3 ? 10 : 11).build());
+        }
+
+        final List<String> prints = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+        final ExecutionAggregator aggregator = new ExecutionAggregator(new ExecutionListener() {
+            @Override
+            public void onExecution(final Execution execution) {
+                prints.add(format(execution));
+            }
+
+            @Override
+            public void onExecutionsEnd(final long takerOrderId) {
+                ends.add(takerOrderId);
+            }
+        });
+        orderBook.placeOrder(Order.buyOrder().id(7).qty(45).price(11).build(), aggregator);
+        orderBook.placeOrder(Order.buyOrder().id(8).qty(5).price(11).build(), aggregator);
+        orderBook.placeOrder(Order.buyOrder().id(9).qty(5).price(9).build(), aggregator);
+        orderBook.placeOrder(Order.buyOrder().id(10).qty(5).price(11).build(), aggregator);
+
+        assertThat(prints).containsExactly(
+            "1: BUY 7 0 30@10 makers 3 leaves 15/0",
+            "2: BUY 7 0 15@11 makers 2 leaves 0/5",
+            "3: BUY 8 5 5@11 makers 1 leaves 0/0",
+            "4: BUY 10 6 5@11 makers 1 leaves 0/5");
+        assertThat(ends).containsExactly(7L, 8L, 10L);
+        assertThat(aggregator.getSequence()).isEqualTo(4);
+    }
+
+    @Test
+    void test_aggregating_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final Order[] sellOrders = new Order[10];
+        for (int i = 0; i < sellOrders.length; i++) {
+            sellOrders[i] = Order.sellOrder().qty(1).price(1000 + i / 5).build();
+        }
+        final Order buyOrder = Order.buyOrder().qty(sellOrders.length).price(1001).build();
+        final long[] printedQty = new long[1];
+        final ExecutionAggregator aggregator = new ExecutionAggregator(
+            execution -> printedQty[0] += execution.getQty());
+
+        final Runnable placeOrders = () -> {
+            for (int i = 0; i < 20_000; i++) {
+                for (final Order sellOrder : sellOrders) {
+                    orderBook.placeOrder(sellOrder, aggregator);
+                }
+                orderBook.placeOrder(buyOrder, aggregator);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeOrders, placeOrders);
+
+        assertThat(printedQty[0]).isEqualTo(400_000L);
+        assertThat(aggregator.getSequence()).isEqualTo(80_000L);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    private static String format(final Execution execution) {
+        return execution.getSequence() + ": " + execution.getTakerSide() + " " + execution.getTakerOrderId() + " "
+            + execution.getMakerOrderId() + " " + execution.getQty() + "@" + execution.getPrice() + " makers "
+            + execution.getMakerCount() + " leaves " + execution.getTakerLeavesQty() + "/"
+            + execution.getMakerLeavesQty();
+    }
+}
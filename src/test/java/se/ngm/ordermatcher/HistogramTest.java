@@ -0,0 +1,71 @@
+package se.ngm.ordermatcher;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HistogramTest {
+
+    @Test
+    void test_small_values_are_exact() {
+        final Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertThat(histogram.getTotalCount()).isEqualTo(100);
+        assertThat(histogram.getMin()).isEqualTo(1);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(50);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(99);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100);
+    }
+
+    @Test
+    void test_percentiles_within_precision() {
+        final Random random = new Random(1);
+        final long[] values = new long[100_000];
+        final Histogram histogram = new Histogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (final double percentile : new double[] {1, 50, 90, 99, 99.9}) {
+            final long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            assertThat((double) histogram.getValueAtPercentile(percentile))
+                .isCloseTo(expected, within(expected / 64.0 + 1));
+        }
+        assertThat(histogram.getMax()).isEqualTo(values[values.length - 1]);
+    }
+
+    @Test
+    void test_bucket_bounds() {
+        for (final long value : new long[] {0, 127, 128, 129, 1000, 123_456_789, Long.MAX_VALUE}) {
+            final int index = Histogram.index(value);
+            assertThat(Histogram.highestValue(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(Histogram.highestValue(index - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    void test_reset() {
+        final Histogram histogram = new Histogram();
+        histogram.record(5);
+        histogram.record(-1);
+        assertThat(histogram.getMin()).isEqualTo(0);
+
+        histogram.reset();
+        assertThat(histogram.getTotalCount()).isEqualTo(0);
+        assertThat(histogram.getMin()).isEqualTo(0);
+        assertThat(histogram.getMax()).isEqualTo(0);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+    }
+}
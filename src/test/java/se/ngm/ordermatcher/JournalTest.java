@@ -0,0 +1,273 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class JournalTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void test_append_and_replay() throws Exception {
+        try (Journal journal = new Journal(directory)) {
+            assertThat(journal.appendNewOrder(0, Side.BUY, 10, 100)).isEqualTo(1);
+            assertThat(journal.appendAmend(1, 50)).isEqualTo(2);
+            assertThat(journal.appendCancel(1)).isEqualTo(3);
+            assertThat(journal.appendStartAuction()).isEqualTo(4);
+            assertThat(journal.appendUncross(11)).isEqualTo(5);
+        }
+
+        try (Journal journal = new Journal(directory)) {
+            assertThat(journal.getLastSequence()).isEqualTo(5);
+            assertThat(records(journal)).containsExactly("1 NEW 0 BUY 100@10", "2 AMEND 1 50", "3 CANCEL 1",
+                "4 START AUCTION", "5 UNCROSS 11");
+            assertThat(journal.appendCancel(2)).isEqualTo(6);
+        }
+    }
+
+    @Test
+    void test_segments_roll_over() throws Exception {
+        try (Journal journal = new Journal(directory, 256, 0)) {
+            for (int i = 1; i <= 20; i++) {
+                journal.appendNewOrder(i, Side.SELL, 10, i);
+            }
+            // 56 byte records, 4 per segment
+            assertThat(journal.getSegments()).hasSize(5);
+            assertThat(journal.getSegments().get(1).getFileName().toString())
+                .isEqualTo("journal-00000000000000000005.log");
+        }
+
+        try (Journal journal = new Journal(directory, 256, 0)) {
+            assertThat(journal.getLastSequence()).isEqualTo(20);
+            final List<String> records = records(journal);
+            assertThat(records).hasSize(20);
+            assertThat(records.get(19)).isEqualTo("20 NEW 20 SELL 20@10");
+        }
+    }
+
+    @Test
+    void test_torn_record_is_cut_off() throws Exception {
+        try (Journal journal = new Journal(directory, 1024, 0)) {
+            journal.appendNewOrder(1, Side.BUY, 10, 100);
+            journal.appendNewOrder(2, Side.BUY, 10, 200);
+            journal.appendNewOrder(3, Side.BUY, 10, 300);
+        }
+        // a partly written second record, e.g. a power loss before the page was written
+        try (FileChannel channel = FileChannel.open(directory.resolve("journal-00000000000000000001.log"),
+            StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 56 + 30);
+        }
+
+        try (Journal journal = new Journal(directory, 1024, 0)) {
+            assertThat(journal.getLastSequence()).isEqualTo(1);
+            assertThat(records(journal)).containsExactly("1 NEW 1 BUY 100@10");
+            assertThat(journal.appendCancel(1)).isEqualTo(2);
+        }
+        try (Journal journal = new Journal(directory, 1024, 0)) {
+            assertThat(records(journal)).containsExactly("1 NEW 1 BUY 100@10", "2 CANCEL 1");
+        }
+    }
+
+    @Test
+    void test_sync_every() throws Exception {
+        try (Journal journal = new Journal(directory, 4096, 10)) {
+            for (int i = 0; i < 25; i++) {
+                journal.appendCancel(i);
+            }
+            assertThat(journal.getSyncCount()).isEqualTo(2);
+            journal.sync();
+            assertThat(journal.getSyncCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void test_journaled_order_book_is_restored() throws Exception {
+        final List<Order> buyOrders;
+        final List<Order> sellOrders;
+        final Random random = new Random(1);
+        try (Journal journal = new Journal(directory, 64 * 1024, 0)) {
+            final OrderBook orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal);
+            for (int i = 0; i < 20_000; i++) {
+                final int command = random.nextInt(10);
+                if (command == 0) {
+                    orderBook.cancelOrder(1 + random.nextInt(i + 1));
+                } else if (command == 1) {
+                    orderBook.amendOrder(1 + random.nextInt(i + 1), 1 + random.nextInt(100));
+                } else {
+                    orderBook.placeOrder(Order.builder()
+                        .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                        .qty(1 + random.nextInt(100))
+                        .price(95 + random.nextInt(10))
+                        .build());
+                }
+            }
+            buyOrders = orderBook.getOrders(Side.BUY);
+            sellOrders = orderBook.getOrders(Side.SELL);
+            assertThat(journal.getSegments().size()).isGreaterThan(1);
+        }
+
+        try (Journal journal = new Journal(directory, 64 * 1024, 0)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(journal);
+            assertThat(orderBook.getReplayedCount()).isEqualTo(20_000);
+            assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(buyOrders);
+            assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(sellOrders);
+
+            // order ids continue after the restored orders
+            final long orderId = orderBook.placeOrder(Order.buyOrder().qty(1).price(1).build(), execution -> { });
+            assertThat(orderId).isGreaterThan(buyOrders.stream().mapToLong(Order::getId).max().orElse(0));
+        }
+    }
+
+    @Test
+    void test_journaled_order_book_is_restored_during_an_auction() throws Exception {
+        final Path snapshotDirectory = directory.resolve("snapshots");
+        final List<Order> buyOrders;
+        final List<Order> sellOrders;
+        try (Journal journal = new Journal(directory.resolve("journal"))) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TreeMapBookSide::new, journal,
+                snapshotDirectory);
+            orderBook.startAuction();
+            orderBook.placeOrder(Order.buyOrder().qty(30).price(12).build());
+            orderBook.placeOrder(Order.sellOrder().qty(25).price(9).build());
+            orderBook.cancelOrder(1);
+            orderBook.placeOrder(Order.buyOrder().qty(20).price(11).build());
+            buyOrders = orderBook.getOrders(Side.BUY);
+            sellOrders = orderBook.getOrders(Side.SELL);
+
+            final Throwable throwable = catchThrowable(() -> orderBook.writeSnapshot(Runnable::run));
+            assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("no snapshot can be written during an auction");
+        }
+
+        final List<String> trades = new ArrayList<>();
+        try (Journal journal = new Journal(directory.resolve("journal"))) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TreeMapBookSide::new, journal,
+                snapshotDirectory);
+            assertThat(orderBook.getReplayedCount()).isEqualTo(5);
+            assertThat(orderBook.isAuction()).isTrue();
+            // the crossed orders were not matched when they were replayed
+            assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(buyOrders);
+            assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(sellOrders);
+
+            assertThat(orderBook.uncross(10, execution -> trades.add(execution.getQty() + "@" + execution.getPrice())))
+                .isEqualTo(9);
+            assertThat(trades).containsExactly("20@9");
+        }
+
+        try (Journal journal = new Journal(directory.resolve("journal"))) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(journal);
+            assertThat(orderBook.getReplayedCount()).isEqualTo(6);
+            assertThat(orderBook.isAuction()).isFalse();
+            assertThat(orderBook.getOrders(Side.BUY)).isEmpty();
+            assertThat(orderBook.getOrders(Side.SELL)).extracting("qty", "price").containsExactly(tuple(5L, 9L));
+        }
+    }
+
+    @Test
+    void test_journaled_order_book_trades_like_a_plain_order_book() throws Exception {
+        final int orderCount = 20_000;
+        final Order[] orders = randomOrders(orderCount);
+        final OrderBook plain = new OrderBook(TickArrayBookSide::new);
+        final List<String> expectedTrades = new ArrayList<>();
+        final ExecutionListener expectedListener =
+            execution -> expectedTrades.add(execution.getQty() + "@" + execution.getPrice());
+        for (final Order order : orders) {
+            plain.placeOrder(order, expectedListener);
+        }
+
+        for (final int syncEvery : new int[] {0, 100, 10_000}) {
+            try (Journal journal = new Journal(directory.resolve("sync-" + syncEvery), 16 * 1024 * 1024,
+                syncEvery)) {
+                final JournaledOrderBook orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal);
+                final List<String> trades = new ArrayList<>();
+                final ExecutionListener listener =
+                    execution -> trades.add(execution.getQty() + "@" + execution.getPrice());
+                for (final Order order : orders) {
+                    orderBook.placeOrder(order, listener);
+                }
+
+                assertThat(trades).isEqualTo(expectedTrades);
+                assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(plain.getOrders(Side.BUY));
+                assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(plain.getOrders(Side.SELL));
+                assertThat(journal.getLastSequence()).isEqualTo(orderCount);
+                assertThat(journal.getSyncCount()).isEqualTo(syncEvery == 0 ? 0 : orderCount / syncEvery);
+            }
+        }
+    }
+
+    private static Order[] randomOrders(final int count) {
+        final Random random = new Random(1);
+        final Order[] orders = new Order[count];
+        for (int i = 0; i < count; i++) {
+            orders[i] = Order.builder()
+                .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                .qty(1 + random.nextInt(100))
+                .price(95 + random.nextInt(10))
+                .build();
+        }
+        return orders;
+    }
+
+    private static List<String> records(final Journal journal) throws IOException {
+        final List<String> records = new ArrayList<>();
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void onNewOrder(final long sequence, final long orderId, final Side side, final long price,
+                                   final long qty, final OrderType type) {
+                records.add(sequence + " NEW " + orderId + " " + side + " " + qty + "@" + price
+                    + (OrderType.LIMIT.equals(type) ? "" : " " + type));
+            }
+
+            @Override
+            public void onCancel(final long sequence, final long orderId) {
+                records.add(sequence + " CANCEL " + orderId);
+            }
+
+            @Override
+            public void onAmend(final long sequence, final long orderId, final long qty) {
+                records.add(sequence + " AMEND " + orderId + " " + qty);
+            }
+
+            @Override
+            public void onStartAuction(final long sequence) {
+                records.add(sequence + " START AUCTION");
+            }
+
+            @Override
+            public void onUncross(final long sequence, final long referencePrice) {
+                records.add(sequence + " UNCROSS " + referencePrice);
+            }
+        });
+        return records;
+    }
+}
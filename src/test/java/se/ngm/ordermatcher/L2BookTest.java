@@ -0,0 +1,227 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class L2BookTest {
+
+    @Test
+    void test_updates_are_coalesced_per_order() {
+        final OrderBook orderBook = new OrderBook();
+        final List<String> updates = new ArrayList<>();
+        orderBook.setMarketDataListener(recorder(updates));
+
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(11).build());
+        assertThat(updates).containsExactly(
+            "1 ADD SELL 10@10 (1)", "END 1",
+            "2 CHANGE SELL 20@10 (2)", "END 2",
+            "3 CHANGE SELL 30@10 (3)", "END 3",
+            "4 ADD SELL 10@11 (1)", "END 4");
+
+        // three fills at 10 and one at 11 are one update per level, the rest is added to the buy side
+        updates.clear();
+        final List<Trade> trades = orderBook.placeOrder(Order.buyOrder().qty(45).price(11).build());
+        assertThat(trades).hasSize(4);
+        assertThat(updates).containsExactly(
+            "5 DELETE SELL 0@10 (0)", "5 DELETE SELL 0@11 (0)", "5 ADD BUY 5@11 (1)", "END 5");
+        assertThat(orderBook.getMarketDataSequence()).isEqualTo(5);
+    }
+
+    @Test
+    void test_cancel_and_amend_publish_the_level() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final long first = orderBook.placeOrder(Order.buyOrder().qty(10).price(10).build(), execution -> { });
+        final long second = orderBook.placeOrder(Order.buyOrder().qty(5).price(10).build(), execution -> { });
+        final List<String> updates = new ArrayList<>();
+        orderBook.setMarketDataListener(recorder(updates));
+
+        orderBook.amendOrder(first, 20);
+        orderBook.cancelOrder(second);
+        orderBook.cancelOrder(second);
+        orderBook.cancelOrder(first);
+
+        assertThat(updates).containsExactly(
+            "1 CHANGE BUY 25@10 (2)", "END 1",
+            "2 CHANGE BUY 20@10 (1)", "END 2",
+            "3 DELETE BUY 0@10 (0)", "END 3");
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_depth_is_rebuilt_from_updates(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        final L2Book l2Book = new L2Book();
+        orderBook.setMarketDataListener(l2Book);
+        final Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            applyRandomCommand(orderBook, random, i);
+            if (i % 1_000 == 0) {
+                assertSameDepth(l2Book, orderBook);
+            }
+        }
+        assertSameDepth(l2Book, orderBook);
+        assertThat(l2Book.getSequence()).isEqualTo(orderBook.getMarketDataSequence());
+    }
+
+    @Test
+    void test_depth_is_rebuilt_from_snapshot_and_queued_updates() {
+        final OrderBook orderBook = new OrderBook();
+        final List<Runnable> queue = new ArrayList<>();
+        final L2Book l2Book = new L2Book();
+        // a consumer on another thread that receives the updates through a queue
+        orderBook.setMarketDataListener(new MarketDataListener() {
+            @Override
+            public void onLevelUpdate(final long sequence, final Action action, final Side side, final long price,
+                                      final long qty, final int orderCount) {
+                queue.add(() -> l2Book.onLevelUpdate(sequence, action, side, price, qty, orderCount));
+            }
+
+            @Override
+            public void onUpdateEnd(final long sequence) {
+                queue.add(() -> l2Book.onUpdateEnd(sequence));
+            }
+        });
+        final Random random = new Random(2);
+        for (int i = 0; i < 5_000; i++) {
+            applyRandomCommand(orderBook, random, i);
+        }
+
+        // the updates queued before the snapshot are already in the snapshot
+        final long snapshotSequence = orderBook.publishLevels(l2Book);
+        for (int i = 5_000; i < 10_000; i++) {
+            applyRandomCommand(orderBook, random, i);
+        }
+        queue.forEach(Runnable::run);
+
+        assertThat(snapshotSequence).isGreaterThan(0);
+        assertSameDepth(l2Book, orderBook);
+    }
+
+    @Test
+    void test_restore_publishes_the_restored_levels() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.setMarketDataListener(new L2Book());
+        applyRandomCommands(orderBook, new Random(3), 1_000);
+        final OrderBook restored = new OrderBook();
+        final L2Book l2Book = new L2Book();
+        restored.setMarketDataListener(l2Book);
+
+        restored.restore(orderBook.snapshot(0));
+
+        assertThat(restored.getMarketDataSequence()).isEqualTo(orderBook.getMarketDataSequence()).isPositive();
+        assertSameDepth(l2Book, orderBook);
+    }
+
+    @Test
+    void test_missing_update_is_detected() {
+        final L2Book l2Book = new L2Book();
+        l2Book.onLevelUpdate(1, MarketDataListener.Action.ADD, Side.BUY, 10, 10, 1);
+        l2Book.onUpdateEnd(1);
+
+        final Throwable throwable = catchThrowable(
+            () -> l2Book.onLevelUpdate(3, MarketDataListener.Action.ADD, Side.BUY, 11, 10, 1));
+
+        assertThat(throwable).isInstanceOf(IllegalStateException.class)
+            .hasMessage("missing market data update, expected sequence 2 but got 3");
+        l2Book.clear();
+        assertThat(l2Book.getLevels(Side.BUY)).isEmpty();
+        assertThat(l2Book.getSequence()).isEqualTo(-1);
+    }
+
+    @Test
+    void test_publishing_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final long[] totalQty = new long[1];
+        orderBook.setMarketDataListener((sequence, action, side, price, qty, orderCount) -> totalQty[0] += qty);
+        final Order sellOrder = Order.sellOrder().qty(10).price(100).build();
+        final Order buyOrder = Order.buyOrder().qty(30).price(100).build();
+        final ExecutionListener listener = execution -> { };
+        final Runnable placeOrders = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                orderBook.placeOrder(i % 4 == 3 ? buyOrder : sellOrder, listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeOrders, placeOrders);
+
+        assertThat(orderBook.getMarketDataSequence()).isEqualTo(200_000);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    private static void assertSameDepth(final L2Book l2Book, final OrderBook orderBook) {
+        for (final Side side : Side.values()) {
+            assertThat(l2Book.getLevels(side)).as(side.toString()).isEqualTo(aggregate(orderBook.getOrders(side)));
+        }
+    }
+
+    /**
+     * @return the levels of the orders of one side, best price first, by scanning all orders
+     */
+    private static List<L2Book.Level> aggregate(final List<Order> orders) {
+        // the orders are in priority order, i.e. the prices are in the order of the side
+        final Map<Long, List<Order>> ordersByPrice = orders.stream()
+            .collect(Collectors.groupingBy(Order::getPrice, LinkedHashMap::new, Collectors.toList()));
+        return ordersByPrice.entrySet().stream()
+            .map(entry -> new L2Book.Level(entry.getKey(),
+                entry.getValue().stream().mapToLong(Order::getQty).sum(), entry.getValue().size()))
+            .collect(Collectors.toList());
+    }
+
+    private static MarketDataListener recorder(final List<String> updates) {
+        return new MarketDataListener() {
+            @Override
+            public void onLevelUpdate(final long sequence, final Action action, final Side side, final long price,
+                                      final long qty, final int orderCount) {
+                updates.add(String.format("%d %s %s %d@%d (%d)", sequence, action, side, qty, price, orderCount));
+            }
+
+            @Override
+            public void onUpdateEnd(final long sequence) {
+                updates.add("END " + sequence);
+            }
+        };
+    }
+
+    private static void applyRandomCommands(final OrderBook orderBook, final Random random, final int count) {
+        for (int i = 0; i < count; i++) {
+            applyRandomCommand(orderBook, random, i);
+        }
+    }
+
+    private static void applyRandomCommand(final OrderBook orderBook, final Random random, final int i) {
+        final int command = random.nextInt(10);
+        if (command == 0) {
+            orderBook.cancelOrder(1 + random.nextInt(i + 1));
+        } else if (command == 1) {
+            orderBook.amendOrder(1 + random.nextInt(i + 1), 1 + random.nextInt(100));
+        } else {
+            orderBook.placeOrder(Order.builder()
+                .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                .qty(1 + random.nextInt(100))
+                .price(90 + random.nextInt(20))
+                .build(), execution -> { });
+        }
+    }
+
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new));
+    }
+}
@@ -0,0 +1,63 @@
+package se.ngm.ordermatcher;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LevelQtyIndexTest {
+
+    @Test
+    void test_prefix_sums() {
+        final LevelQtyIndex index = new LevelQtyIndex();
+        index.add(10, 5);
+        index.add(12, 7);
+        index.add(11, 3);
+        index.add(12, 1);
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getTotalQty()).isEqualTo(16);
+        assertThat(index.getQty(12)).isEqualTo(8);
+        assertThat(index.getQtyAtOrBelow(9)).isEqualTo(0);
+        assertThat(index.getQtyAtOrBelow(11)).isEqualTo(8);
+        assertThat(index.getQtyAtOrAbove(11)).isEqualTo(11);
+        assertThat(index.getQtyAtOrAbove(Long.MIN_VALUE)).isEqualTo(16);
+
+        index.add(11, -3);
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.getQty(11)).isEqualTo(0);
+        assertThat(index.getQtyAtOrBelow(11)).isEqualTo(5);
+    }
+
+    @Test
+    void test_random_updates_match_a_sorted_map() {
+        final LevelQtyIndex index = new LevelQtyIndex();
+        final TreeMap<Long, Long> expected = new TreeMap<>();
+        final Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            final long price = random.nextInt(2_000);
+            final long current = expected.getOrDefault(price, 0L);
+            // mostly adds, and removes the whole quantity of a price now and then
+            final long qty = current > 0 && random.nextInt(3) == 0 ? -current : 1 + random.nextInt(100);
+            index.add(price, qty);
+            expected.merge(price, qty, Long::sum);
+            expected.remove(price, 0L);
+
+            if (i % 1_000 == 0) {
+                final long limit = random.nextInt(2_100) - 50;
+                assertThat(index.size()).isEqualTo(expected.size());
+                assertThat(index.getQtyAtOrBelow(limit))
+                    .isEqualTo(sum(expected.headMap(limit, true)));
+                assertThat(index.getQtyAtOrAbove(limit))
+                    .isEqualTo(sum(expected.tailMap(limit, true)));
+            }
+        }
+        assertThat(index.getTotalQty()).isEqualTo(sum(expected));
+    }
+
+    private static long sum(final Map<Long, Long> qtys) {
+        return qtys.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
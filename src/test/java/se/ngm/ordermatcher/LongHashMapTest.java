@@ -0,0 +1,45 @@
+package se.ngm.ordermatcher;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongHashMapTest {
+
+    @Test
+    void test_put_get_remove() {
+        final LongHashMap<String> map = new LongHashMap<>();
+        assertThat(map.put(1, "a")).isNull();
+        assertThat(map.put(1, "b")).isEqualTo("a");
+        assertThat(map.get(1)).isEqualTo("b");
+        assertThat(map.get(2)).isNull();
+        assertThat(map.remove(1)).isEqualTo("b");
+        assertThat(map.remove(1)).isNull();
+        assertThat(map.isEmpty()).isTrue();
+    }
+
+    @Test
+    void test_same_as_hash_map() {
+        final LongHashMap<Long> map = new LongHashMap<>(4);
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // small key range so that keys are both added and removed, and probe sequences collide
+            final long key = random.nextInt(5_000) * 64L;
+            if (random.nextBoolean()) {
+                assertThat(map.put(key, (long) i)).isEqualTo(expected.put(key, (long) i));
+            } else {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (long key = 0; key < 5_000 * 64L; key += 64) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class OffHeapOrderBookTest {
+
+    @Test
+    void test_match_cancel_and_amend() {
+        final OffHeapOrderBook orderBook = new OffHeapOrderBook();
+        orderBook.placeOrder(Order.sellOrder().id(1).qty(50).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().id(2).qty(100).price(11).build());
+        orderBook.placeOrder(Order.sellOrder().id(3).qty(100).price(11).build());
+        orderBook.placeOrder(Order.buyOrder().id(4).qty(10).price(9).build());
+
+        assertThat(orderBook.placeOrder(Order.buyOrder().qty(120).price(11).build()))
+            .extracting("qty", "price").containsExactly(tuple(50L, 10L), tuple(70L, 11L));
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("id", "qty", "price")
+            .containsExactly(tuple(2L, 30L, 11L), tuple(3L, 100L, 11L));
+
+        // increasing the quantity loses the time priority, reducing it does not
+        assertThat(orderBook.amendOrder(2, 40)).isTrue();
+        assertThat(orderBook.amendOrder(3, 90)).isTrue();
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("id", "qty")
+            .containsExactly(tuple(3L, 90L), tuple(2L, 40L));
+
+        assertThat(orderBook.cancelOrder(3)).isTrue();
+        assertThat(orderBook.cancelOrder(3)).isFalse();
+        assertThat(orderBook.amendOrder(3, 10)).isFalse();
+        assertThat(orderBook.getOrder(2)).isEqualTo(Order.sellOrder().id(2).qty(40).price(11).build());
+        assertThat(orderBook.getOrder(3)).isNull();
+        assertThat(orderBook.getOrderCount()).isEqualTo(2);
+        assertThat(orderBook.getBestBid()).isEqualTo(9);
+        assertThat(orderBook.getBestAsk()).isEqualTo(11);
+    }
+
+    @Test
+    void test_duplicate_order_id() {
+        final OffHeapOrderBook orderBook = new OffHeapOrderBook();
+        orderBook.placeOrder(Order.sellOrder().id(7).qty(50).price(10).build());
+
+        final Throwable throwable = catchThrowable(
+            () -> orderBook.placeOrder(Order.sellOrder().id(7).qty(50).price(11).build()));
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("duplicate order id: 7");
+        assertThat(orderBook.placeOrder(Order.sellOrder().qty(50).price(11).build(), execution -> { }))
+            .isEqualTo(8);
+    }
+
+    @Test
+    void test_matches_like_the_on_heap_order_book() {
+        final OrderBook orderBook = new OrderBook();
+        // a small store, to grow the buffers and reuse slots
+        final OffHeapOrderBook offHeapOrderBook = new OffHeapOrderBook(16);
+        final Random random = new Random(1);
+        int maxOrderCount = 0;
+        for (int i = 0; i < 50_000; i++) {
+            final int command = random.nextInt(10);
+            if (command == 0) {
+                final long orderId = 1 + random.nextInt(i + 1);
+                assertThat(offHeapOrderBook.cancelOrder(orderId)).isEqualTo(orderBook.cancelOrder(orderId));
+            } else if (command == 1) {
+                final long orderId = 1 + random.nextInt(i + 1);
+                final long qty = 1 + random.nextInt(100);
+                assertThat(offHeapOrderBook.amendOrder(orderId, qty)).isEqualTo(orderBook.amendOrder(orderId, qty));
+            } else {
+                final OrderType type = OrderType.values()[random.nextInt(OrderType.values().length)];
+                final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                // overlapping price ranges, so that the book both matches and grows deep
+                final Order order = Order.builder()
+                    .side(side)
+                    .qty(1 + random.nextInt(100))
+                    .price(OrderType.MARKET.equals(type) ? 0 : (Side.BUY.equals(side) ? 70 : 95) + random.nextInt(35))
+                    .type(type)
+                    .build();
+                final List<String> executions = new ArrayList<>();
+                final List<String> offHeapExecutions = new ArrayList<>();
+                orderBook.placeOrder(order, execution -> executions.add(execution.toString()));
+                offHeapOrderBook.placeOrder(order, execution -> offHeapExecutions.add(execution.toString()));
+                assertThat(offHeapExecutions).isEqualTo(executions);
+            }
+            maxOrderCount = Math.max(maxOrderCount, offHeapOrderBook.getOrderCount());
+            if (i % 500 == 0) {
+                assertSameBook(offHeapOrderBook, orderBook);
+            }
+        }
+        assertSameBook(offHeapOrderBook, orderBook);
+        assertThat(maxOrderCount).isGreaterThan(16);
+    }
+
+    @Test
+    void test_resting_orders_are_not_on_the_heap() {
+        final int count = 500_000;
+        final long[] used = new long[2];
+        for (int book = 0; book < 2; book++) {
+            final long before = usedHeap();
+            final Object orderBook;
+            if (book == 0) {
+                final OrderBook onHeap = new OrderBook(TickArrayBookSide::new);
+                for (int i = 0; i < count; i++) {
+                    onHeap.placeOrder(Order.buyOrder().qty(10).price(1 + i % 1000).build(), execution -> { });
+                }
+                orderBook = onHeap;
+            } else {
+                final OffHeapOrderBook offHeap = new OffHeapOrderBook();
+                for (int i = 0; i < count; i++) {
+                    offHeap.placeOrder(Order.buyOrder().qty(10).price(1 + i % 1000).build(), execution -> { });
+                }
+                orderBook = offHeap;
+            }
+            used[book] = usedHeap() - before;
+            assertThat(orderBook).isNotNull();
+        }
+
+        // the on-heap book holds an order object and a map entry per order, the off-heap book a few arrays per level
+        assertThat(used[1]).isLessThan(used[0] / 10);
+    }
+
+    @Test
+    void test_matching_does_not_allocate() {
+        final OffHeapOrderBook orderBook = new OffHeapOrderBook();
+        final Order[] orders = new Order[4];
+        for (int i = 0; i < orders.length; i += 2) {
+            orders[i] = Order.sellOrder().qty(10).price(1000 + i).build();
+            orders[i + 1] = Order.buyOrder().qty(10).price(1000 + i).build();
+        }
+        final long[] tradedQty = new long[1];
+        final ExecutionListener listener = execution -> tradedQty[0] += execution.getQty();
+        final Runnable placeOrders = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                orderBook.placeOrder(orders[i % orders.length], listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeOrders, placeOrders);
+
+        assertThat(tradedQty[0]).isEqualTo(1_000_000L);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    private static void assertSameBook(final OffHeapOrderBook offHeapOrderBook, final OrderBook orderBook) {
+        for (final Side side : Side.values()) {
+            assertThat(offHeapOrderBook.getOrders(side)).isEqualTo(orderBook.getOrders(side));
+            final List<String> levels = new ArrayList<>();
+            final List<String> offHeapLevels = new ArrayList<>();
+            orderBook.getDepth(side, 5, (level, price, qty, orderCount) -> levels.add(qty + "@" + price));
+            offHeapOrderBook.getDepth(side, 5, (level, price, qty, orderCount) -> offHeapLevels.add(qty + "@" + price));
+            assertThat(offHeapLevels).isEqualTo(levels);
+            assertThat(offHeapOrderBook.getQtyAtOrBetter(side, 100)).isEqualTo(orderBook.getQtyAtOrBetter(side, 100));
+        }
+        assertThat(offHeapOrderBook.getOrderCount()).isEqualTo(orderBook.getOrderCount());
+        assertThat(offHeapOrderBook.getBestBid()).isEqualTo(orderBook.getBestBid());
+        assertThat(offHeapOrderBook.getBestAsk()).isEqualTo(orderBook.getBestAsk());
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
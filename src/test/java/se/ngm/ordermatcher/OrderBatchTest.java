@@ -0,0 +1,212 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class OrderBatchTest {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_batches_match_like_sequential_orders(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook sequential = new OrderBook(bookSideFactory);
+        final OrderBook batched = new OrderBook(bookSideFactory);
+        final L2Book sequentialL2Book = new L2Book();
+        final L2Book batchedL2Book = new L2Book();
+        sequential.setMarketDataListener(sequentialL2Book);
+        batched.setMarketDataListener(batchedL2Book);
+        final List<String> sequentialExecutions = new ArrayList<>();
+        final List<String> batchedExecutions = new ArrayList<>();
+        final ExecutionListener sequentialListener = execution -> sequentialExecutions.add(format(execution));
+        final ExecutionListener batchedListener = execution -> batchedExecutions.add(format(execution));
+
+        final Random random = new Random(1);
+        final long[] orderIds = new long[64];
+        int batchCount = 0;
+        for (int i = 0; i < 1_000; i++) {
+            final Order[] batch = randomOrders(random, 1 + random.nextInt(orderIds.length));
+            for (final Order order : batch) {
+                sequential.placeOrder(order, sequentialListener);
+            }
+            final long sequence = batched.getMarketDataSequence();
+            batched.placeOrders(batch, 0, batch.length, orderIds, batchedListener);
+            batchCount += batched.getMarketDataSequence() - sequence;
+            assertThat(batched.getMarketDataSequence() - sequence).isBetween(0L, 1L);
+        }
+
+        assertThat(batchedExecutions).isEqualTo(sequentialExecutions);
+        assertThat(batched.getOrders(Side.BUY)).isEqualTo(sequential.getOrders(Side.BUY));
+        assertThat(batched.getOrders(Side.SELL)).isEqualTo(sequential.getOrders(Side.SELL));
+        for (final Side side : Side.values()) {
+            assertThat(depth(batched, side)).isEqualTo(depth(sequential, side));
+            assertThat(batchedL2Book.getLevels(side)).isEqualTo(sequentialL2Book.getLevels(side));
+        }
+        assertThat(batchedL2Book.getSequence()).isEqualTo(batchCount);
+        assertThat(batchCount).isGreaterThan(900);
+    }
+
+    @Test
+    void test_level_updates_are_coalesced_per_batch() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        orderBook.placeOrder(Order.sellOrder().id(1).qty(10).price(10).build());
+        final List<String> updates = new ArrayList<>();
+        orderBook.setMarketDataListener(recorder(updates));
+
+        // the level at 10 is emptied and filled again, the level at 11 is added and emptied again
+        final long[] orderIds = orderBook.placeOrders(List.of(
+            Order.buyOrder().id(2).qty(10).price(10).build(),
+            Order.sellOrder().id(3).qty(5).price(10).build(),
+            Order.sellOrder().id(4).qty(5).price(11).build(),
+            Order.buyOrder().id(5).qty(10).price(11).build(),
+            Order.sellOrder().id(6).qty(7).price(12).build(),
+            Order.sellOrder().id(7).qty(1).price(12).build()), execution -> { });
+
+        assertThat(orderIds).containsExactly(2, 3, 4, 5, 6, 7);
+        assertThat(updates).containsExactly("1 DELETE SELL 0@10 (0)", "1 ADD SELL 8@12 (2)", "END 1");
+        assertThat(depth(orderBook, Side.SELL)).containsExactly("8@12 (2)");
+        assertThat(orderBook.getBestAsk()).isEqualTo(12);
+    }
+
+    @Test
+    void test_rejected_order_stops_the_batch() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.sellOrder().id(1).qty(10).price(10).build());
+        final List<String> updates = new ArrayList<>();
+        orderBook.setMarketDataListener(recorder(updates));
+        final Order[] orders = {
+            Order.buyOrder().id(2).qty(10).price(10).build(),
+            Order.buyOrder().id(3).qty(5).price(9).build(),
+            Order.buyOrder().id(3).qty(5).price(8).build(),
+            Order.buyOrder().id(4).qty(5).price(7).build()
+        };
+        final long[] orderIds = new long[orders.length];
+
+        final Throwable throwable = catchThrowable(
+            () -> orderBook.placeOrders(orders, 0, orders.length, orderIds, execution -> { }));
+
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class).hasMessage("duplicate order id: 3");
+        assertThat(orderIds).containsExactly(2, 3, 0, 0);
+        assertThat(orderBook.getOrders(Side.BUY)).containsExactly(Order.buyOrder().id(3).qty(5).price(9).build());
+        assertThat(orderBook.getOrders(Side.SELL)).isEmpty();
+        assertThat(updates).containsExactly("1 DELETE SELL 0@10 (0)", "1 ADD BUY 5@9 (1)", "END 1");
+    }
+
+    @Test
+    void test_journaled_batch_is_replayed() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try {
+            final Order[] orders = randomOrders(new Random(2), 5_000);
+            final List<Order> buyOrders;
+            final List<Order> sellOrders;
+            try (Journal journal = new Journal(directory)) {
+                final OrderBook orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal);
+                for (int offset = 0; offset < orders.length; offset += 100) {
+                    orderBook.placeOrders(orders, offset, 100, null, execution -> { });
+                }
+                buyOrders = orderBook.getOrders(Side.BUY);
+                sellOrders = orderBook.getOrders(Side.SELL);
+            }
+
+            try (Journal journal = new Journal(directory)) {
+                final JournaledOrderBook orderBook = new JournaledOrderBook(journal);
+                assertThat(orderBook.getReplayedCount()).isEqualTo(orders.length);
+                assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(buyOrders);
+                assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(sellOrders);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_placing_batches_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final long[] totalQty = new long[1];
+        orderBook.setMarketDataListener((sequence, action, side, price, qty, orderCount) -> totalQty[0] += qty);
+        final Order[] batch = new Order[32];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = i % 4 == 3
+                ? Order.buyOrder().qty(30).price(101).build()
+                : Order.sellOrder().qty(10).price(100 + i % 2).build();
+        }
+        final long[] orderIds = new long[batch.length];
+        final ExecutionListener listener = execution -> { };
+        final Runnable placeBatches = () -> {
+            for (int i = 0; i < 10_000; i++) {
+                orderBook.placeOrders(batch, 0, batch.length, orderIds, listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeBatches, placeBatches);
+
+        assertThat(orderBook.getOrderCount()).isZero();
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    private static Order[] randomOrders(final Random random, final int count) {
+        final OrderType[] types = OrderType.values();
+        final Order[] orders = new Order[count];
+        for (int i = 0; i < count; i++) {
+            // mostly limit orders, so that the book has depth
+            final OrderType type = random.nextInt(4) == 0 ? types[random.nextInt(types.length)] : OrderType.LIMIT;
+            orders[i] = Order.builder()
+                .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                .qty(1 + random.nextInt(100))
+                .price(OrderType.MARKET.equals(type) ? 0 : 95 + random.nextInt(10))
+                .type(type)
+                .build();
+        }
+        return orders;
+    }
+
+    private static List<String> depth(final OrderBook orderBook, final Side side) {
+        final List<String> levels = new ArrayList<>();
+        orderBook.getDepth(side, Integer.MAX_VALUE,
+            (level, price, qty, orderCount) -> levels.add(qty + "@" + price + " (" + orderCount + ")"));
+        return levels;
+    }
+
+    private static String format(final Execution execution) {
+        return execution.getSequence() + ": " + execution.getTakerSide() + " " + execution.getTakerOrderId() + " "
+            + execution.getMakerOrderId() + " " + execution.getQty() + "@" + execution.getPrice() + " leaves "
+            + execution.getTakerLeavesQty() + "/" + execution.getMakerLeavesQty();
+    }
+
+    private static MarketDataListener recorder(final List<String> updates) {
+        return new MarketDataListener() {
+            @Override
+            public void onLevelUpdate(final long sequence, final Action action, final Side side, final long price,
+                                      final long qty, final int orderCount) {
+                updates.add(String.format("%d %s %s %d@%d (%d)", sequence, action, side, qty, price, orderCount));
+            }
+
+            @Override
+            public void onUpdateEnd(final long sequence) {
+                updates.add("END " + sequence);
+            }
+        };
+    }
+
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new));
+    }
+}
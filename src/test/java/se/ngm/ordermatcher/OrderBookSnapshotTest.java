@@ -0,0 +1,282 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class OrderBookSnapshotTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_restored_book_is_identical(final String name, final BookSide.Factory bookSideFactory)
+        throws Exception {
+        final Random random = new Random(1);
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        applyRandomCommands(orderBook, random, 20_000);
+
+        final Path file = directory.resolve("book.bin");
+        orderBook.snapshot(42).writeTo(file);
+        final OrderBookSnapshot snapshot = OrderBookSnapshot.readFrom(file);
+        final OrderBook restored = new OrderBook(bookSideFactory);
+        restored.restore(snapshot);
+
+        assertThat(snapshot.getLastSequence()).isEqualTo(42);
+        assertThat(snapshot.getOrderCount())
+            .isEqualTo(orderBook.getOrders(Side.BUY).size() + orderBook.getOrders(Side.SELL).size());
+        assertThat(restored.getOrders(Side.BUY)).isEqualTo(orderBook.getOrders(Side.BUY));
+        assertThat(restored.getOrders(Side.SELL)).isEqualTo(orderBook.getOrders(Side.SELL));
+
+        // the same commands give the same trades and ids from here on
+        final List<String> expected = new ArrayList<>();
+        final List<String> actual = new ArrayList<>();
+        final Random expectedRandom = new Random(2);
+        final Random actualRandom = new Random(2);
+        for (int i = 0; i < 1_000; i++) {
+            expected.add(placeRandomOrder(orderBook, expectedRandom));
+            actual.add(placeRandomOrder(restored, actualRandom));
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void test_restore_requires_empty_book() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.buyOrder().qty(1).price(1).build());
+
+        final Throwable throwable = catchThrowable(() -> orderBook.restore(new OrderBook().snapshot(0)));
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class).hasMessage("order book must be empty");
+    }
+
+    @Test
+    void test_corrupt_snapshot() throws Exception {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.buyOrder().qty(1).price(1).build());
+        final Path file = directory.resolve("book.bin");
+        orderBook.snapshot(1).writeTo(file);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+
+        assertThat(catchThrowable(() -> OrderBookSnapshot.readFrom(file))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void test_version_1_snapshot_has_no_sequences() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(0x4F42534E).putInt(1).putLong(5).putLong(3)
+            .putInt(1).putInt(1).putLong(10).putInt(1).putLong(2).putLong(7)
+            .putInt(0).putInt(0);
+        final Path file = directory.resolve("book.bin");
+        Files.write(file, Arrays.copyOf(buffer.array(), buffer.position()));
+
+        final OrderBook orderBook = new OrderBook();
+        orderBook.restore(OrderBookSnapshot.readFrom(file));
+        final List<Long> sequences = new ArrayList<>();
+        orderBook.placeOrder(Order.sellOrder().qty(3).price(10).build(),
+            execution -> sequences.add(execution.getSequence()));
+
+        assertThat(orderBook.getMarketDataSequence()).isZero();
+        assertThat(sequences).containsExactly(1L);
+        assertThat(orderBook.getOrders(Side.BUY)).extracting("id", "qty").containsExactly(tuple(2L, 4L));
+    }
+
+    @Test
+    void test_journaled_order_book_restores_snapshot_and_replays_the_rest() throws Exception {
+        final Path journalDirectory = directory.resolve("journal");
+        final Path snapshotDirectory = directory.resolve("snapshots");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<Order> buyOrders;
+        final List<Order> sellOrders;
+        try (Journal journal = new Journal(journalDirectory, 64 * 1024, 0)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal,
+                snapshotDirectory);
+            final Random random = new Random(1);
+            applyRandomCommands(orderBook, random, 10_000);
+            final Path snapshot = orderBook.writeSnapshot(executor).get(10, TimeUnit.SECONDS);
+            assertThat(snapshot.getFileName().toString()).isEqualTo("snapshot-00000000000000010000.bin");
+            applyRandomCommands(orderBook, random, 500);
+            buyOrders = orderBook.getOrders(Side.BUY);
+            sellOrders = orderBook.getOrders(Side.SELL);
+        } finally {
+            executor.shutdown();
+        }
+
+        try (Journal journal = new Journal(journalDirectory, 64 * 1024, 0)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal,
+                snapshotDirectory);
+            assertThat(orderBook.getReplayedCount()).isEqualTo(500);
+            assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(buyOrders);
+            assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(sellOrders);
+        }
+    }
+
+    @Test
+    void test_restored_book_continues_the_sequences_of_the_replayed_book() throws Exception {
+        final Path journalDirectory = directory.resolve("journal");
+        final Path snapshotDirectory = directory.resolve("snapshots");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final long marketDataSequence;
+        try (Journal journal = new Journal(journalDirectory, 64 * 1024, 0)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TickArrayBookSide::new, journal,
+                snapshotDirectory);
+            orderBook.setMarketDataListener(new L2Book());
+            final Random random = new Random(1);
+            applyRandomCommands(orderBook, random, 10_000);
+            orderBook.writeSnapshot(executor).get(10, TimeUnit.SECONDS);
+            marketDataSequence = orderBook.getMarketDataSequence();
+        } finally {
+            executor.shutdown();
+        }
+        // the same journal for the order book that replays all of it
+        final Path replayJournalDirectory = Files.createDirectory(directory.resolve("replay-journal"));
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, replayJournalDirectory.resolve(file.getFileName()));
+            }
+        }
+
+        try (Journal journal = new Journal(journalDirectory, 64 * 1024, 0);
+             Journal replayJournal = new Journal(replayJournalDirectory, 64 * 1024, 0)) {
+            final JournaledOrderBook restored = new JournaledOrderBook(TickArrayBookSide::new, journal,
+                snapshotDirectory);
+            final L2Book restoredL2Book = new L2Book();
+            restored.setMarketDataListener(restoredL2Book);
+            final JournaledOrderBook replayed = new JournaledOrderBook(TickArrayBookSide::new, replayJournal);
+            final L2Book replayedL2Book = new L2Book();
+            replayed.setMarketDataListener(replayedL2Book);
+            replayed.publishLevels(replayedL2Book);
+            assertThat(restored.getReplayedCount()).isZero();
+            assertThat(replayed.getReplayedCount()).isEqualTo(10_000);
+            // the replay did not publish market data, the restored book continues the updates of the order book
+            assertThat(restored.getMarketDataSequence()).isEqualTo(marketDataSequence).isPositive();
+            assertThat(replayed.getMarketDataSequence()).isZero();
+
+            final List<String> restoredExecutions = new ArrayList<>();
+            final List<String> replayedExecutions = new ArrayList<>();
+            final Random restoredRandom = new Random(2);
+            final Random replayedRandom = new Random(2);
+            for (int i = 0; i < 1_000; i++) {
+                restored.placeOrder(randomOrder(restoredRandom),
+                    execution -> restoredExecutions.add(execution.getSequence() + " " + execution));
+                replayed.placeOrder(randomOrder(replayedRandom),
+                    execution -> replayedExecutions.add(execution.getSequence() + " " + execution));
+            }
+
+            assertThat(restoredExecutions).isNotEmpty().isEqualTo(replayedExecutions);
+            // the sequence continues after the executions before the snapshot
+            assertThat(restoredExecutions.get(0)).doesNotStartWith("1 ");
+            assertThat(restored.getMarketDataSequence() - marketDataSequence)
+                .isEqualTo(replayed.getMarketDataSequence());
+            assertThat(restoredL2Book.getLevels(Side.BUY)).isEqualTo(replayedL2Book.getLevels(Side.BUY));
+            assertThat(restoredL2Book.getLevels(Side.SELL)).isEqualTo(replayedL2Book.getLevels(Side.SELL));
+        }
+    }
+
+    @Test
+    void test_restored_deep_book_is_identical_to_the_replayed_book() throws Exception {
+        // a deep book of resting orders and a day of orders that trade at the same price as they arrive
+        final int restingCount = 20_000;
+        final int tradingCount = 80_000;
+        final Path journalDirectory = directory.resolve("journal");
+        final Path snapshotFile = directory.resolve("book.bin");
+        try (Journal journal = new Journal(journalDirectory, 16 * 1024 * 1024, 0)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(TreeMapBookSide::new, journal);
+            for (int i = 0; i < restingCount; i++) {
+                orderBook.placeOrder(Order.builder()
+                    .side(i % 2 == 0 ? Side.BUY : Side.SELL)
+                    .qty(1 + i % 100)
+                    .price(i % 2 == 0 ? 1 + i % 50_000 : 100_000 + i % 50_000)
+                    .build());
+            }
+            for (int i = 0; i < tradingCount; i++) {
+                orderBook.placeOrder(Order.builder()
+                    .side(i % 2 == 0 ? Side.BUY : Side.SELL)
+                    .qty(10)
+                    .price(75_000)
+                    .build());
+            }
+            orderBook.snapshot(journal.getLastSequence()).writeTo(snapshotFile);
+        }
+
+        try (Journal journal = new Journal(journalDirectory, 16 * 1024 * 1024, 0)) {
+            final OrderBook replayed = new JournaledOrderBook(TreeMapBookSide::new, journal);
+            final OrderBook restored = new OrderBook();
+            restored.restore(OrderBookSnapshot.readFrom(snapshotFile));
+
+            assertThat(restored.getOrderCount()).isEqualTo(restingCount);
+            assertThat(restored.getOrders(Side.BUY)).isEqualTo(replayed.getOrders(Side.BUY));
+            assertThat(restored.getOrders(Side.SELL)).isEqualTo(replayed.getOrders(Side.SELL));
+        }
+    }
+
+    private static void applyRandomCommands(final OrderBook orderBook, final Random random, final int count) {
+        for (int i = 0; i < count; i++) {
+            final int command = random.nextInt(10);
+            if (command == 0) {
+                orderBook.cancelOrder(1 + random.nextInt(i + 1));
+            } else if (command == 1) {
+                orderBook.amendOrder(1 + random.nextInt(i + 1), 1 + random.nextInt(100));
+            } else {
+                placeRandomOrder(orderBook, random);
+            }
+        }
+    }
+
+    private static String placeRandomOrder(final OrderBook orderBook, final Random random) {
+        final StringBuilder result = new StringBuilder();
+        final long orderId = orderBook.placeOrder(randomOrder(random), execution -> result.append(execution).append(' ').append(execution.getMakerOrderId())
+            .append(", "));
+        return result.append(orderId).toString();
+    }
+
+    private static Order randomOrder(final Random random) {
+        return Order.builder()
+            .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+            .qty(1 + random.nextInt(100))
+            .price(90 + random.nextInt(20))
+            .build();
+    }
+
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new));
+    }
+}
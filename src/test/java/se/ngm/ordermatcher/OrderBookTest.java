@@ -0,0 +1,288 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class OrderBookTest {
+
+    @Test
+    void test_trade_listener_receives_trades_in_order() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.sellOrder().qty(50).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(100).price(11).build());
+
+        final List<String> trades = new ArrayList<>();
+        orderBook.placeOrder(Order.buyOrder().qty(120).price(11).build(),
+            (price, qty) -> trades.add(qty + "@" + price));
+
+        assertThat(trades).containsExactly("50@10", "70@11");
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("qty", "price")
+            .containsExactly(tuple(30L, 11L));
+    }
+
+    @Test
+    void test_orders_are_assigned_ids() {
+        final OrderBook orderBook = new OrderBook();
+        final long first = orderBook.placeOrder(Order.sellOrder().qty(50).price(10).build(), (price, qty) -> { });
+        final long second = orderBook.placeOrder(Order.sellOrder().qty(50).price(10).build(), (price, qty) -> { });
+        final long explicit = orderBook.placeOrder(Order.sellOrder().id(100).qty(50).price(10).build(),
+            (price, qty) -> { });
+        final long next = orderBook.placeOrder(Order.sellOrder().qty(50).price(10).build(), (price, qty) -> { });
+
+        assertThat(List.of(first, second, explicit, next)).containsExactly(1L, 2L, 100L, 101L);
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("id")
+            .containsExactly(1L, 2L, 100L, 101L);
+    }
+
+    @Test
+    void test_duplicate_order_id() {
+        final OrderBook orderBook = new OrderBook();
+        orderBook.placeOrder(Order.sellOrder().id(7).qty(50).price(10).build());
+
+        final Throwable throwable = catchThrowable(
+            () -> orderBook.placeOrder(Order.sellOrder().id(7).qty(50).price(11).build()));
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("duplicate order id: 7");
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_cancel(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        orderBook.placeOrder(Order.buyOrder().id(1).qty(10).price(10).build());
+        orderBook.placeOrder(Order.buyOrder().id(2).qty(20).price(10).build());
+        orderBook.placeOrder(Order.buyOrder().id(3).qty(30).price(10).build());
+        orderBook.placeOrder(Order.buyOrder().id(4).qty(40).price(9).build());
+
+        assertThat(orderBook.cancelOrder(2)).isTrue();
+        assertThat(orderBook.cancelOrder(2)).isFalse();
+        assertThat(orderBook.getOrder(2)).isNull();
+        assertThat(orderBook.getOrders(Side.BUY)).extracting("id")
+            .containsExactly(1L, 3L, 4L);
+
+        assertThat(orderBook.cancelOrder(1)).isTrue();
+        assertThat(orderBook.cancelOrder(3)).isTrue();
+        final List<Trade> trades = orderBook.placeOrder(Order.sellOrder().qty(100).price(9).build());
+        assertThat(trades).extracting("qty", "price")
+            .containsExactly(tuple(40L, 9L));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_amend(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        orderBook.placeOrder(Order.sellOrder().id(1).qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().id(2).qty(20).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().id(3).qty(30).price(10).build());
+
+        // reduced quantity keeps the time priority
+        assertThat(orderBook.amendOrder(1, 5)).isTrue();
+        // increased quantity is queued last
+        assertThat(orderBook.amendOrder(2, 25)).isTrue();
+        assertThat(orderBook.amendOrder(4, 25)).isFalse();
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("id", "qty")
+            .containsExactly(tuple(1L, 5L), tuple(3L, 30L), tuple(2L, 25L));
+
+        final List<Trade> trades = orderBook.placeOrder(Order.buyOrder().qty(40).price(10).build());
+        assertThat(trades).extracting("qty", "price")
+            .containsExactly(tuple(5L, 10L), tuple(30L, 10L), tuple(5L, 10L));
+        assertThat(orderBook.getOrder(1)).isNull();
+        assertThat(orderBook.getOrder(3)).isNull();
+        assertThat(orderBook.getOrder(2).getQty()).isEqualTo(20L);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_resting_orders_are_not_leaked_or_aliased(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        final Order sellOrder = Order.sellOrder().qty(100).price(10).build();
+
+        // the placed order is copied, filling the resting order does not change the placed order
+        orderBook.placeOrder(sellOrder);
+        orderBook.placeOrder(sellOrder);
+        final List<Order> restingOrders = orderBook.getOrders(Side.SELL);
+        orderBook.placeOrder(Order.buyOrder().qty(150).price(10).build());
+        assertThat(sellOrder.getQty()).isEqualTo(100L);
+        assertThat(sellOrder.getId()).isZero();
+
+        // the returned orders are copies, recycling the filled order does not change them
+        orderBook.placeOrder(Order.sellOrder().qty(70).price(11).build());
+        assertThat(restingOrders).extracting("id", "qty", "price")
+            .containsExactly(tuple(1L, 100L, 10L), tuple(2L, 100L, 10L));
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("id", "qty", "price")
+            .containsExactly(tuple(2L, 50L, 10L), tuple(4L, 70L, 11L));
+
+        // all orders are given back to the pool when filled or cancelled, and reused
+        orderBook.cancelOrder(4);
+        orderBook.placeOrder(Order.buyOrder().qty(50).price(10).build());
+        final OrderPool orderPool = orderBook.getOrderPool();
+        assertThat(orderPool.getAvailable()).isEqualTo(orderPool.getAllocated());
+        final long allocated = orderPool.getAllocated();
+        for (int i = 0; i < 1000; i++) {
+            orderBook.placeOrder(Order.buyOrder().qty(10).price(5).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(5).build());
+        }
+        assertThat(orderPool.getAllocated()).isEqualTo(allocated);
+        assertThat(orderBook.getOrders(Side.BUY)).isEmpty();
+        assertThat(orderBook.getOrders(Side.SELL)).isEmpty();
+    }
+
+    @Test
+    void test_resting_and_filling_orders_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final Order[] orders = new Order[4];
+        for (int i = 0; i < orders.length; i += 2) {
+            orders[i] = Order.sellOrder().qty(10).price(1000 + i).build();
+            orders[i + 1] = Order.buyOrder().qty(10).price(1000 + i).build();
+        }
+        final long[] tradedQty = new long[1];
+        final ExecutionListener listener = execution -> tradedQty[0] += execution.getQty();
+        final Runnable placeOrders = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                orderBook.placeOrder(orders[i % orders.length], listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeOrders, placeOrders);
+
+        assertThat(tradedQty[0]).isEqualTo(1_000_000L);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    @Test
+    void test_matching_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        orderBook.placeOrder(Order.sellOrder().qty(Long.MAX_VALUE).price(1000).build());
+        final Order buyOrder = Order.buyOrder().qty(10).price(1000).build();
+        final long[] tradedQty = new long[1];
+        final TradeListener listener = (price, qty) -> tradedQty[0] += qty;
+        final Runnable placeOrders = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                orderBook.placeOrder(buyOrder, listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(placeOrders, placeOrders);
+
+        assertThat(tradedQty[0]).isEqualTo(2_000_000L);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_best_bid_ask_and_depth(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        assertThat(orderBook.getBestBid()).isEqualTo(BookSide.NO_PRICE);
+        assertThat(orderBook.getBestAsk()).isEqualTo(BookSide.NO_PRICE);
+
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(98).build());
+        orderBook.placeOrder(Order.buyOrder().qty(20).price(99).build());
+        orderBook.placeOrder(Order.buyOrder().qty(5).price(99).build());
+        orderBook.placeOrder(Order.buyOrder().qty(7).price(97).build());
+        orderBook.placeOrder(Order.sellOrder().qty(15).price(101).build());
+        orderBook.placeOrder(Order.sellOrder().qty(1).price(102).build());
+
+        assertThat(orderBook.getBestBid()).isEqualTo(99);
+        assertThat(orderBook.getBestAsk()).isEqualTo(101);
+
+        final List<String> levels = new ArrayList<>();
+        final DepthListener listener = (level, price, qty, orderCount) ->
+            levels.add(level + ": " + qty + "@" + price + " (" + orderCount + ")");
+        assertThat(orderBook.getDepth(Side.BUY, 2, listener)).isEqualTo(2);
+        assertThat(levels).containsExactly("0: 25@99 (2)", "1: 10@98 (1)");
+
+        levels.clear();
+        assertThat(orderBook.getDepth(Side.SELL, 10, listener)).isEqualTo(2);
+        assertThat(levels).containsExactly("0: 15@101 (1)", "1: 1@102 (1)");
+
+        levels.clear();
+        assertThat(orderBook.getDepth(Side.SELL, 0, listener)).isEqualTo(0);
+        assertThat(levels).isEmpty();
+
+        // the best ask is swept and the rest of the buy order is the new best bid
+        orderBook.placeOrder(Order.buyOrder().qty(20).price(101).build());
+        assertThat(orderBook.getBestBid()).isEqualTo(101);
+        assertThat(orderBook.getBestAsk()).isEqualTo(102);
+    }
+
+    @Test
+    void test_reading_depth_does_not_allocate() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        for (int i = 0; i < 100; i++) {
+            orderBook.placeOrder(Order.buyOrder().qty(10).price(1000 - i).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(1001 + i).build());
+        }
+        final long[] totalQty = new long[1];
+        final long[] spread = new long[1];
+        final DepthListener listener = (level, price, qty, orderCount) -> totalQty[0] += qty;
+        final Runnable readDepth = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                spread[0] += orderBook.getBestAsk() - orderBook.getBestBid();
+                orderBook.getDepth(i % 2 == 0 ? Side.BUY : Side.SELL, 10, listener);
+            }
+        };
+
+        final long allocated = Allocations.measure(readDepth, readDepth);
+
+        assertThat(spread[0]).isEqualTo(200_000L);
+        assertThat(totalQty[0]).isEqualTo(20_000_000L);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_time_per_order_does_not_grow_with_depth(final String name, final BookSide.Factory bookSideFactory) {
+        final double nanosPerOrderAt1k = nanosPerOrder(bookSideFactory, 1_000);
+        final double nanosPerOrderAt100k = nanosPerOrder(bookSideFactory, 100_000);
+
+        // a full book sweep per order would make the deep book ~100 times slower
+        assertThat(nanosPerOrderAt100k).isLessThan(nanosPerOrderAt1k * 10);
+    }
+
+    /**
+     * Builds a sell side with one order per price level and then measures orders that either trade at the best
+     * price or join an existing price level, i.e. the depth of the book stays the same.
+     */
+    private static double nanosPerOrder(final BookSide.Factory bookSideFactory, final int levels) {
+        final long bestPrice = 1_000_000;
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        orderBook.placeOrder(Order.sellOrder().qty(Long.MAX_VALUE / 2).price(bestPrice).build());
+        for (int i = 1; i < levels; i++) {
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(bestPrice + i).build());
+        }
+
+        final Order[] orders = new Order[2 * 1024];
+        for (int i = 0; i < orders.length; i += 2) {
+            orders[i] = Order.buyOrder().qty(1).price(bestPrice).build();
+            orders[i + 1] = Order.sellOrder().qty(1).price(bestPrice + (i * 7919L) % levels).build();
+        }
+        final TradeListener listener = (price, qty) -> { };
+
+        final int count = 200_000;
+        long start = 0;
+        for (int i = 0; i < 2 * count; i++) {
+            if (i == count) {
+                // the first half is warm up
+                start = System.nanoTime();
+            }
+            orderBook.placeOrder(orders[i % orders.length], listener);
+        }
+        return (double) (System.nanoTime() - start) / count;
+    }
+}
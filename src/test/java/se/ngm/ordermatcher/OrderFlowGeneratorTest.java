@@ -0,0 +1,198 @@
+package se.ngm.ordermatcher;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.within;
+
+public class OrderFlowGeneratorTest {
+
+    @Test
+    void test_same_seed_generates_same_flow() {
+        assertThat(commands(OrderFlowGenerator.builder().seed(7).build(), 10_000))
+            .isEqualTo(commands(OrderFlowGenerator.builder().seed(7).build(), 10_000))
+            .isNotEqualTo(commands(OrderFlowGenerator.builder().seed(8).build(), 10_000));
+    }
+
+    @Test
+    void test_flow_has_the_configured_mix() {
+        final int count = 200_000;
+        final OrderFlowGenerator generator = OrderFlowGenerator.builder()
+            .crossingRatio(0.2)
+            .qty(50, 1, 100_000)
+            .orderTypes(0.1, 0.1, 0.05)
+            .cancelsAndAmends(0.2, 0.1)
+            .maxOpenOrders(count)
+            .build();
+        final int[] commands = new int[OrderFlowGenerator.Command.values().length];
+        final int[] types = new int[OrderType.values().length];
+        final long[] qtys = new long[count];
+        int newOrders = 0;
+        int pricedOrders = 0;
+        int crossingOrders = 0;
+        for (int i = 0; i < count; i++) {
+            commands[generator.next().ordinal()]++;
+            if (generator.getCommand() == OrderFlowGenerator.Command.NEW_ORDER) {
+                final Order order = generator.getOrder();
+                types[order.getType().ordinal()]++;
+                qtys[newOrders++] = order.getQty();
+                if (!OrderType.MARKET.equals(order.getType())) {
+                    pricedOrders++;
+                    if (Side.BUY.equals(order.getSide()) ? order.getPrice() > generator.getMidPrice()
+                        : order.getPrice() < generator.getMidPrice()) {
+                        crossingOrders++;
+                    }
+                }
+            }
+        }
+
+        assertThat(commands[OrderFlowGenerator.Command.CANCEL.ordinal()] / (double) count).isCloseTo(0.2, within(0.01));
+        assertThat(commands[OrderFlowGenerator.Command.AMEND.ordinal()] / (double) count).isCloseTo(0.1, within(0.01));
+        assertThat(types[OrderType.MARKET.ordinal()] / (double) newOrders).isCloseTo(0.1, within(0.01));
+        assertThat(types[OrderType.IOC.ordinal()] / (double) newOrders).isCloseTo(0.1, within(0.01));
+        assertThat(types[OrderType.FOK.ordinal()] / (double) newOrders).isCloseTo(0.05, within(0.01));
+        assertThat(crossingOrders / (double) pricedOrders).isCloseTo(0.2, within(0.02));
+        final long[] sortedQtys = Arrays.copyOf(qtys, newOrders);
+        Arrays.sort(sortedQtys);
+        assertThat(sortedQtys[0]).isGreaterThanOrEqualTo(1);
+        assertThat(sortedQtys[newOrders / 2]).isBetween(45L, 55L);
+        assertThat(sortedQtys[newOrders - 1]).isGreaterThan(1_000);
+    }
+
+    @Test
+    void test_text_binary_and_direct_flows_build_the_same_book() throws Exception {
+        final Path text = Files.createTempFile("orders", ".txt");
+        final Path binary = Files.createTempFile("orders", ".bin");
+        try {
+            final int count = 50_000;
+            OrderFlowGenerator.builder().seed(3).build().writeText(text, count);
+            OrderFlowGenerator.builder().seed(3).build().writeBinary(binary, count);
+
+            final OrderMatcher direct = new OrderMatcher();
+            final OrderFlowGenerator generator = OrderFlowGenerator.builder().seed(3).build();
+            for (int i = 0; i < count; i++) {
+                generator.next();
+                generator.apply(direct, (price, qty) -> { });
+            }
+
+            final OrderMatcher console = new OrderMatcher();
+            final List<String> lines = Files.readAllLines(text);
+            assertThat(lines).hasSize(count);
+            for (final String line : lines) {
+                if (OrderParserUtil.isCommand(line, "CANCEL")) {
+                    console.cancelOrder(OrderParserUtil.parseCancel(line));
+                } else if (OrderParserUtil.isCommand(line, "AMEND")) {
+                    final long[] orderIdAndQty = OrderParserUtil.parseAmend(line);
+                    console.amendOrder(orderIdAndQty[0], orderIdAndQty[1]);
+                } else {
+                    console.placeOrder(OrderParserUtil.parseOrder(line), (price, qty) -> { });
+                }
+            }
+
+            final OrderBook binaryBook = new OrderBook(TickArrayBookSide::new);
+            final BinaryOrderProcessor processor = new BinaryOrderProcessor(binaryBook, null);
+            try (FileChannel channel = FileChannel.open(binary)) {
+                assertThat(processor.processAll(channel)).isEqualTo(count);
+            }
+
+            assertThat(direct.getOrderBook().getOrderCount()).isGreaterThan(100);
+            for (final OrderBook orderBook : new OrderBook[] {console.getOrderBook(), binaryBook}) {
+                assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(direct.getOrders(Side.BUY));
+                assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(direct.getOrders(Side.SELL));
+                assertThat(orderBook.getChecksum()).isEqualTo(direct.getOrderBook().getChecksum());
+            }
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+
+    @Test
+    void test_text_flow_round_trips_through_replay() throws Exception {
+        final Path text = Files.createTempFile("orders", ".txt");
+        final Path trades = Files.createTempFile("trades", ".txt");
+        try {
+            final int count = 50_000;
+            final OrderFlowGenerator.Builder builder = OrderFlowGenerator.builder()
+                .seed(5)
+                .orderTypes(0.1, 0.1, 0.05)
+                .cancelsAndAmends(0.1, 0.1);
+            builder.build().writeText(text, count);
+
+            final OrderMatcher direct = new OrderMatcher(new OrderBook(TickArrayBookSide::new));
+            final OrderFlowGenerator generator = builder.build();
+            final List<String> expectedTrades = new ArrayList<>();
+            final long[] accepted = new long[OrderFlowGenerator.Command.values().length];
+            for (int i = 0; i < count; i++) {
+                final OrderFlowGenerator.Command command = generator.next();
+                if (generator.apply(direct, (price, qty) -> expectedTrades.add("TRADE " + qty + "@" + price))) {
+                    accepted[command.ordinal()]++;
+                }
+            }
+
+            OrderMatcher.main(new String[] {"--replay", text.toString(), "--out", trades.toString()});
+            assertThat(Files.readAllLines(trades)).isEqualTo(expectedTrades);
+
+            final OrderBook replayed = new OrderBook(TickArrayBookSide::new);
+            final OrderReplay.Summary summary = new OrderReplay(replayed).replay(text, trades);
+            assertThat(summary.getOrderCount()).isEqualTo(accepted[OrderFlowGenerator.Command.NEW_ORDER.ordinal()]);
+            assertThat(summary.getCancelCount()).isEqualTo(accepted[OrderFlowGenerator.Command.CANCEL.ordinal()])
+                .isPositive();
+            assertThat(summary.getAmendCount()).isEqualTo(accepted[OrderFlowGenerator.Command.AMEND.ordinal()])
+                .isPositive();
+            assertThat(summary.getTradeCount()).isEqualTo(expectedTrades.size());
+            assertThat(summary.getOrderCount() + summary.getCancelCount() + summary.getAmendCount()
+                + summary.getRejectedCount()).isEqualTo(count);
+            assertThat(replayed.getOrderCount()).isGreaterThan(100);
+            assertThat(replayed.getOrders(Side.BUY)).isEqualTo(direct.getOrders(Side.BUY));
+            assertThat(replayed.getOrders(Side.SELL)).isEqualTo(direct.getOrders(Side.SELL));
+            assertThat(replayed.getChecksum()).isEqualTo(direct.getOrderBook().getChecksum());
+        } finally {
+            Files.delete(text);
+            Files.delete(trades);
+        }
+    }
+
+    @Test
+    void test_open_orders_are_bounded() {
+        final OrderFlowGenerator generator = OrderFlowGenerator.builder()
+            .driftProbability(0.1)
+            .cancelsAndAmends(0, 0)
+            .maxOpenOrders(100)
+            .build();
+        final OrderMatcher matcher = new OrderMatcher();
+        int peakOrderCount = 0;
+        for (int i = 0; i < 50_000; i++) {
+            generator.next();
+            generator.apply(matcher, (price, qty) -> { });
+            peakOrderCount = Math.max(peakOrderCount, matcher.getOrderBook().getOrderCount());
+        }
+
+        assertThat(peakOrderCount).isBetween(50, 100);
+    }
+
+    @Test
+    void test_invalid_configuration_is_rejected() {
+        final Throwable throwable = catchThrowable(
+            () -> OrderFlowGenerator.builder().orderTypes(0.5, 0.5, 0.1).build());
+
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("order type ratios must be >= 0 with a sum <= 1");
+    }
+
+    private static List<String> commands(final OrderFlowGenerator generator, final int count) {
+        final List<String> commands = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            commands.add(generator.next() + " " + generator.getOrderId() + " " + generator.getQty() + " "
+                + generator.getOrder());
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,39 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrderFlowSoakTest {
+
+    @Test
+    void test_soak_samples_the_run_at_the_interval() {
+        final OrderMatcher matcher = new OrderMatcher(new OrderBook(TickArrayBookSide::new));
+        final List<OrderFlowSoak.Sample> samples = new ArrayList<>();
+        final OrderFlowSoak.Summary summary = new OrderFlowSoak(matcher, OrderFlowGenerator.builder().build())
+            .run(TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(100), samples::add);
+
+        assertThat(summary.getNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(summary.getSamples()).isEqualTo(samples);
+        assertThat(summary.getSamples().size()).isBetween(4, 6);
+        assertThat(summary.getSamples().stream().mapToLong(OrderFlowSoak.Sample::getCommandCount).sum())
+            .isEqualTo(summary.getCommandCount());
+        assertThat(summary.getLatencies().getTotalCount()).isEqualTo(summary.getCommandCount());
+        assertThat(summary.getCommandCount()).isGreaterThan(10_000);
+        assertThat(summary.getTradeCount()).isPositive();
+        assertThat(summary.getRejectedCount()).isPositive().isLessThan(summary.getCommandCount());
+
+        final OrderFlowSoak.Sample last = summary.getSamples().get(summary.getSamples().size() - 1);
+        assertThat(last.getRestingOrders()).isEqualTo(matcher.getOrderBook().getOrderCount())
+            .isLessThanOrEqualTo(summary.getPeakRestingOrders());
+        assertThat(last.getBuyLevels() + last.getSellLevels()).isPositive()
+            .isLessThanOrEqualTo(summary.getPeakLevels());
+        assertThat(last.getP50Nanos()).isLessThanOrEqualTo(last.getP99Nanos());
+        assertThat(last.getP99Nanos()).isLessThanOrEqualTo(last.getP999Nanos());
+        assertThat(last.getP999Nanos()).isLessThanOrEqualTo(last.getMaxNanos());
+        assertThat(summary.getPeakHeapUsedBytes()).isPositive();
+    }
+}
@@ -0,0 +1,340 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.ngm.ordermatcher.codec.AmendOrderEncoder;
+import se.ngm.ordermatcher.codec.CancelOrderEncoder;
+import se.ngm.ordermatcher.codec.ExecutionReportDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderDecoder;
+import se.ngm.ordermatcher.codec.MessageHeaderEncoder;
+import se.ngm.ordermatcher.codec.NewOrderEncoder;
+import se.ngm.ordermatcher.codec.OrderAckDecoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class OrderGatewayTest {
+
+    private final OrderBook orderBook = new OrderBook();
+    private final List<Client> clients = new ArrayList<>();
+    private OrderGateway gateway;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final Client client : clients) {
+            client.channel.close();
+        }
+        if (gateway != null) {
+            gateway.close();
+        }
+    }
+
+    @Test
+    void test_orders_are_matched_and_reported_to_taker_and_maker() throws Exception {
+        gateway = new OrderGateway(orderBook, loopback(), OrderGateway.DEFAULT_CAPACITY);
+        final Client maker = connect();
+        final Client taker = connect();
+
+        maker.newOrder(1, Side.SELL, 10, 100).flush();
+        assertThat(maker.readUntilAck()).containsExactly("ACK 1 ACCEPTED 10");
+        maker.newOrder(2, Side.SELL, 10, 101).flush();
+        assertThat(maker.readUntilAck()).containsExactly("ACK 2 ACCEPTED 10");
+
+        taker.newOrder(3, Side.BUY, 15, 101).flush();
+        assertThat(taker.readUntilAck()).containsExactly(
+            "EXEC 1: 3 BUY 1 10@100 leaves 5/0",
+            "EXEC 2: 3 BUY 2 5@101 leaves 0/5",
+            "ACK 3 ACCEPTED 0");
+        assertThat(maker.read(2)).containsExactly(
+            "EXEC 1: 3 BUY 1 10@100 leaves 5/0",
+            "EXEC 2: 3 BUY 2 5@101 leaves 0/5");
+
+        // only the session of an order can cancel or amend it
+        taker.cancel(2).amend(2, 20).flush();
+        assertThat(taker.read(2)).containsExactly("ACK 2 REJECTED 0", "ACK 2 REJECTED 0");
+        maker.amend(2, 20).cancel(2).cancel(2).flush();
+        assertThat(maker.read(3)).containsExactly("ACK 2 AMENDED 20", "ACK 2 CANCELLED 0", "ACK 2 REJECTED 0");
+
+        // a duplicate id and an invalid order
+        maker.newOrder(7, Side.SELL, 10, 100).newOrder(7, Side.SELL, 10, 100).newOrder(8, Side.SELL, 0, 100).flush();
+        assertThat(maker.read(3)).containsExactly("ACK 7 ACCEPTED 10", "ACK 7 REJECTED 0", "ACK 8 REJECTED 0");
+        assertThat(gateway.getCommandCount()).isEqualTo(11);
+    }
+
+    @Test
+    void test_messages_split_across_writes_are_framed() throws Exception {
+        gateway = new OrderGateway(orderBook, loopback(), OrderGateway.DEFAULT_CAPACITY);
+        final Client client = connect();
+        client.newOrder(0, Side.BUY, 10, 100).newOrder(0, Side.BUY, 20, 99).cancel(1);
+        final ByteBuffer out = client.out;
+        out.flip();
+        // one byte at a time
+        while (out.hasRemaining()) {
+            final ByteBuffer oneByte = out.duplicate();
+            oneByte.limit(out.position() + 1);
+            client.channel.write(oneByte);
+            out.position(out.position() + 1);
+            Thread.sleep(1);
+        }
+        out.clear();
+
+        assertThat(client.read(3)).containsExactly("ACK 1 ACCEPTED 10", "ACK 2 ACCEPTED 20", "ACK 1 CANCELLED 0");
+    }
+
+    @Test
+    void test_backlog_larger_than_the_queues() throws Exception {
+        // the commands of one write do not fit in the queues, the gateway stops reading until the matcher catches up
+        gateway = new OrderGateway(orderBook, loopback(), 16);
+        final Client client = connect();
+        final int count = 1_000;
+        for (int i = 1; i <= count; i++) {
+            client.newOrder(i, i % 2 == 0 ? Side.BUY : Side.SELL, 10, 100);
+            if (client.out.remaining() < 64) {
+                client.flush();
+            }
+        }
+        client.flush();
+
+        final List<String> messages = client.read(count + count / 2);
+        assertThat(messages.stream().filter(message -> message.startsWith("ACK"))).hasSize(count);
+        assertThat(messages.get(messages.size() - 1)).isEqualTo("ACK " + count + " ACCEPTED 0");
+        assertThat(orderBook.getOrderCount()).isZero();
+    }
+
+    @Test
+    void test_many_sessions_with_an_order_in_flight() throws Exception {
+        gateway = new OrderGateway(orderBook, loopback(), OrderGateway.DEFAULT_CAPACITY);
+        final int sessions = 200;
+        final int ordersPerSession = 100;
+        final Selector selector = Selector.open();
+        final int[] acked = new int[sessions];
+        final Random random = new Random(1);
+        for (int i = 0; i < sessions; i++) {
+            final Client client = connect();
+            client.channel.configureBlocking(false);
+            client.channel.register(selector, SelectionKey.OP_READ, i);
+        }
+        while (gateway.getSessionCount() < sessions) {
+            Thread.sleep(1);
+        }
+
+        // every session has one order in flight, the next order is sent when the previous one is acked
+        long ackCount = 0;
+        for (int i = 0; i < sessions; i++) {
+            clients.get(i).newOrder(0, random.nextBoolean() ? Side.BUY : Side.SELL, 10, 95 + random.nextInt(10))
+                .flush();
+        }
+        int done = 0;
+        while (done < sessions) {
+            selector.select();
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                final int session = (Integer) key.attachment();
+                final Client client = clients.get(session);
+                client.channel.read(client.in);
+                final int acks = client.drainAcks();
+                for (int a = 0; a < acks; a++) {
+                    ackCount++;
+                    if (++acked[session] < ordersPerSession) {
+                        client.newOrder(0, random.nextBoolean() ? Side.BUY : Side.SELL, 10,
+                            95 + random.nextInt(10)).flush();
+                    } else {
+                        done++;
+                    }
+                }
+            }
+        }
+        selector.close();
+
+        assertThat(ackCount).isEqualTo((long) sessions * ordersPerSession);
+        assertThat(gateway.getCommandCount()).isEqualTo(ackCount);
+        assertThat(gateway.getSlowConsumerCount()).isZero();
+    }
+
+    @Test
+    void test_failed_match_thread_closes_the_sessions() throws Exception {
+        final OrderBook failingOrderBook = new OrderBook() {
+            @Override
+            public long placeOrder(final Order order, final ExecutionListener listener) {
+                if (order.getPrice() == 13) {
+                    throw new IllegalStateException("order book failed");
+                }
+                return super.placeOrder(order, listener);
+            }
+        };
+        gateway = new OrderGateway(failingOrderBook, loopback(), OrderGateway.DEFAULT_CAPACITY);
+        final Client client = connect();
+
+        client.newOrder(1, Side.SELL, 10, 100).newOrder(2, Side.BUY, 10, 13).newOrder(3, Side.BUY, 10, 100).flush();
+
+        // the command before the failure is acked, then the session is closed and no new sessions are accepted
+        assertThat(client.read(1)).containsExactly("ACK 1 ACCEPTED 10");
+        assertThat(catchThrowable(() -> client.read(1))).isInstanceOf(IOException.class);
+        assertThat(catchThrowable(this::connect)).isInstanceOf(IOException.class);
+        final Throwable failure = gateway.getFailure();
+        assertThat(failure).isInstanceOf(IllegalStateException.class).hasMessage("order book failed");
+        final Throwable throwable = catchThrowable(gateway::close);
+        gateway = null;
+        assertThat(throwable).isInstanceOf(IllegalStateException.class).hasMessage("gateway match thread failed")
+            .hasCause(failure);
+        assertThat(failingOrderBook.getOrderCount()).isEqualTo(1);
+    }
+
+    @Test
+    void test_failed_io_thread_closes_the_sessions() throws Exception {
+        gateway = new OrderGateway(orderBook, loopback(), OrderGateway.DEFAULT_CAPACITY);
+        final Client client = connect();
+        client.newOrder(1, Side.SELL, 10, 100).flush();
+        assertThat(client.read(1)).containsExactly("ACK 1 ACCEPTED 10");
+
+        gateway.getSelector().close();
+
+        assertThat(catchThrowable(() -> client.read(1))).isInstanceOf(IOException.class);
+        final Throwable failure = gateway.getFailure();
+        assertThat(failure).isInstanceOf(ClosedSelectorException.class);
+        // the match thread stops as well, close does not wait for it forever
+        final Throwable throwable = catchThrowable(gateway::close);
+        gateway = null;
+        assertThat(throwable).isInstanceOf(IllegalStateException.class).hasMessage("gateway io thread failed")
+            .hasCause(failure);
+    }
+
+    private Client connect() throws IOException {
+        final Client client = new Client(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+            gateway.getPort())));
+        clients.add(client);
+        return client;
+    }
+
+    private static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private static final class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer in = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+        private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+        private final ExecutionReportDecoder reportDecoder = new ExecutionReportDecoder();
+        private final OrderAckDecoder ackDecoder = new OrderAckDecoder();
+
+        private Client(final SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+
+        private Client newOrder(final long orderId, final Side side, final long qty, final long price) {
+            final NewOrderEncoder encoder = new NewOrderEncoder()
+                .wrapAndApplyHeader(out, out.position(), headerEncoder).orderId(orderId).side(side).qty(qty)
+                .price(price);
+            out.position(out.position() + headerEncoder.encodedLength() + encoder.encodedLength());
+            return this;
+        }
+
+        private Client cancel(final long orderId) {
+            final CancelOrderEncoder encoder = new CancelOrderEncoder()
+                .wrapAndApplyHeader(out, out.position(), headerEncoder).orderId(orderId);
+            out.position(out.position() + headerEncoder.encodedLength() + encoder.encodedLength());
+            return this;
+        }
+
+        private Client amend(final long orderId, final long qty) {
+            final AmendOrderEncoder encoder = new AmendOrderEncoder()
+                .wrapAndApplyHeader(out, out.position(), headerEncoder).orderId(orderId).qty(qty);
+            out.position(out.position() + headerEncoder.encodedLength() + encoder.encodedLength());
+            return this;
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        private List<String> readUntilAck() throws IOException {
+            final List<String> messages = new ArrayList<>();
+            do {
+                messages.addAll(read(1));
+            } while (!messages.get(messages.size() - 1).startsWith("ACK"));
+            return messages;
+        }
+
+        /**
+         * @return the next count messages as text, reads from the (blocking) channel until they have arrived
+         */
+        private List<String> read(final int count) throws IOException {
+            final List<String> messages = new ArrayList<>();
+            while (true) {
+                in.flip();
+                while (messages.size() < count && in.remaining() >= MessageHeaderDecoder.ENCODED_LENGTH) {
+                    headerDecoder.wrap(in, in.position());
+                    final int length = MessageHeaderDecoder.ENCODED_LENGTH + headerDecoder.blockLength();
+                    if (in.remaining() < length) {
+                        break;
+                    }
+                    messages.add(format(in.position()));
+                    in.position(in.position() + length);
+                }
+                in.compact();
+                if (messages.size() == count) {
+                    return messages;
+                }
+                if (channel.read(in) < 0) {
+                    throw new IOException("closed by the gateway");
+                }
+            }
+        }
+
+        /**
+         * @return the number of complete acks in the buffer, the execution reports are skipped
+         */
+        private int drainAcks() {
+            int acks = 0;
+            in.flip();
+            while (in.remaining() >= MessageHeaderDecoder.ENCODED_LENGTH) {
+                headerDecoder.wrap(in, in.position());
+                final int length = MessageHeaderDecoder.ENCODED_LENGTH + headerDecoder.blockLength();
+                if (in.remaining() < length) {
+                    break;
+                }
+                if (headerDecoder.templateId() == OrderAckDecoder.TEMPLATE_ID) {
+                    acks++;
+                }
+                in.position(in.position() + length);
+            }
+            in.compact();
+            return acks;
+        }
+
+        private String format(final int offset) {
+            if (headerDecoder.templateId() == OrderAckDecoder.TEMPLATE_ID) {
+                ackDecoder.wrapAndApplyHeader(in, offset, headerDecoder);
+                return "ACK " + ackDecoder.orderId() + " " + ackDecoder.status() + " " + ackDecoder.leavesQty();
+            }
+            reportDecoder.wrapAndApplyHeader(in, offset, headerDecoder);
+            return "EXEC " + reportDecoder.sequence() + ": " + reportDecoder.takerOrderId() + " "
+                + reportDecoder.takerSide() + " " + reportDecoder.makerOrderId() + " " + reportDecoder.qty() + "@"
+                + reportDecoder.price() + " leaves " + reportDecoder.takerLeavesQty() + "/"
+                + reportDecoder.makerLeavesQty();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package se.ngm.ordermatcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class OrderLineParserTest {
+
+    private static Stream<Arguments> lines() {
+        return Stream.of(
+            Arguments.of("BUY 100@5"),
+            Arguments.of("bUy 100@5"),
+            Arguments.of("SeLl 100@5"),
+            Arguments.of("sell 9223372036854775807@1"),
+            Arguments.of("sell 100@5 trailing"),
+            Arguments.of("sell"),
+            Arguments.of("sell "),
+            Arguments.of("sel 100@5"),
+            Arguments.of("buy 100"),
+            Arguments.of("buy 100@"),
+            Arguments.of("buy @5"),
+            Arguments.of("buy 0@5"),
+            Arguments.of("buy 100@0"),
+            Arguments.of("buy 100@5x"),
+            Arguments.of("buy -100@5"),
+            Arguments.of("buy 9223372036854775808@5"),
+            Arguments.of("buy +100@+5"),
+            Arguments.of("buy 100@-5"),
+            Arguments.of("buy  100@5"),
+            Arguments.of("buy 100@5@6"),
+            Arguments.of("buy 100@5@"),
+            Arguments.of("buy 100@@5"),
+            Arguments.of("buy 100@5 IOC"),
+            Arguments.of("buy 100@5 ioc trailing"),
+            Arguments.of("sell 100@5 FoK"),
+            Arguments.of("sell 100@5  FOK"),
+            Arguments.of("sell 100@5 FOKX"),
+            Arguments.of("sell 100@5 MARKET"),
+            Arguments.of("sell 100@5 "),
+            Arguments.of("buy 100 MARKET"),
+            Arguments.of("buy 100 market trailing"),
+            Arguments.of("buy 100 MARKETX"),
+            Arguments.of("buy 100  MARKET"),
+            Arguments.of("buy 100 IOC"),
+            Arguments.of("buy 100 LIMIT"),
+            Arguments.of("buy 100 "),
+            Arguments.of("buy 0 MARKET"),
+            Arguments.of("buy 100x MARKET"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("lines")
+    void test_same_orders_and_errors_as_order_parser_util(final String line) {
+        final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        final Object expected = parseWithOrderParserUtil(line);
+        Object actual;
+        try {
+            actual = new OrderLineParser().parseOrder(bytes, 0, bytes.length).copy();
+        } catch (final IllegalArgumentException e) {
+            actual = e.getMessage();
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> commands() {
+        return Stream.of(
+            Arguments.of("CANCEL 1"),
+            Arguments.of("cancel 1 "),
+            Arguments.of("Cancel +1"),
+            Arguments.of("CANCEL -1"),
+            Arguments.of("CANCEL 9223372036854775807"),
+            Arguments.of("CANCEL -9223372036854775808"),
+            Arguments.of("CANCEL 9223372036854775808"),
+            Arguments.of("CANCEL"),
+            Arguments.of("CANCEL "),
+            Arguments.of("CANCEL  1"),
+            Arguments.of("CANCEL 1  "),
+            Arguments.of("CANCEL 1x"),
+            Arguments.of("CANCEL 1 2"),
+            Arguments.of("CANCEL -"),
+            Arguments.of("AMEND 1 5"),
+            Arguments.of("amend 1 5 "),
+            Arguments.of("AMEND 1 -5"),
+            Arguments.of("AMEND 1"),
+            Arguments.of("AMEND 1 "),
+            Arguments.of("AMEND 1  5"),
+            Arguments.of("AMEND 1 5 x"),
+            Arguments.of("AMEND x 5"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("commands")
+    void test_same_cancels_amends_and_errors_as_order_parser_util(final String line) {
+        final String expected;
+        if (OrderParserUtil.isCommand(line, "CANCEL")) {
+            expected = parseWith(() -> "CANCEL " + OrderParserUtil.parseCancel(line));
+        } else {
+            expected = parseWith(() -> {
+                final long[] orderIdAndQty = OrderParserUtil.parseAmend(line);
+                return "AMEND " + orderIdAndQty[0] + " " + orderIdAndQty[1];
+            });
+        }
+        final List<String> parsed = new ArrayList<>();
+        final byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        new OrderLineParser().parse(bytes, 0, bytes.length, collector(parsed));
+
+        assertThat(parsed).containsExactly(expected);
+    }
+
+    @Test
+    void test_parse_lines_of_buffer() {
+        final ByteBuffer buffer = ByteBuffer.wrap(
+            "buy 10@5\r\n\nfoo\nsell 20@6\r\n  cancel 1\nAMEND 2 7\r\nbuy 3".getBytes(StandardCharsets.UTF_8));
+        final List<String> parsed = new ArrayList<>();
+        new OrderLineParser().parse(buffer, collector(parsed));
+
+        assertThat(parsed).containsExactly(
+            "BUY 10@5",
+            "Illegal format. Expected: <buy|sell> <quantity>@<price>, where <quantity>,<price> is numeric ('foo')",
+            "SELL 20@6",
+            "CANCEL 1",
+            "AMEND 2 7");
+        assertThat(buffer.remaining()).isEqualTo("buy 3".length());
+    }
+
+    @Test
+    void test_parse_direct_buffer() {
+        final byte[] bytes = "buy 10@5\nsell 20@6\nbuy".getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        final List<String> parsed = new ArrayList<>();
+        new OrderLineParser().parse(buffer, collector(parsed));
+
+        assertThat(parsed).containsExactly("BUY 10@5", "SELL 20@6");
+        assertThat(buffer.position()).isEqualTo(bytes.length - "buy".length());
+    }
+
+    @Test
+    void test_default_error_handler_throws() {
+        final byte[] bytes = "buy 10@5\nbuy x\n".getBytes(StandardCharsets.UTF_8);
+        final Throwable throwable = catchThrowable(
+            () -> new OrderLineParser().parse(bytes, 0, bytes.length, order -> { }));
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+            .hasMessageEndingWith("('buy x')");
+    }
+
+    @Test
+    void test_parse_does_not_allocate() {
+        final byte[] bytes = "buy 100@5\nSELL 12345@678\n".getBytes(StandardCharsets.UTF_8);
+        final OrderLineParser parser = new OrderLineParser();
+        final long[] qty = new long[1];
+        final OrderLineParser.Handler handler = order -> qty[0] += order.getQty();
+        final Runnable parse = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                parser.parse(bytes, 0, bytes.length, handler);
+            }
+        };
+
+        final long allocated = Allocations.measure(parse, parse);
+
+        assertThat(qty[0]).isEqualTo(200_000L * 12445);
+        assertThat(allocated).isLessThan(1024L);
+    }
+
+    @Test
+    void test_same_orders_as_order_parser_util_from_file() throws Exception {
+        final int lineCount = 200_000;
+        final Path file = Files.createTempFile("orders", ".txt");
+        try {
+            final Random random = new Random(1);
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                for (int i = 0; i < lineCount; i++) {
+                    writer.write((random.nextBoolean() ? "BUY " : "SELL ") + (1 + random.nextInt(1000)) + "@"
+                        + (1 + random.nextInt(100_000)));
+                    writer.newLine();
+                }
+            }
+
+            long expectedChecksum = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    expectedChecksum += checksum(OrderParserUtil.parseOrder(line));
+                }
+            }
+
+            final long[] checksum = new long[1];
+            final OrderLineParser parser = new OrderLineParser();
+            final OrderLineParser.Handler handler = order -> checksum[0] += checksum(order);
+            try (FileChannel channel = FileChannel.open(file)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    parser.parse(buffer, handler);
+                    buffer.compact();
+                }
+            }
+
+            assertThat(checksum[0]).isEqualTo(expectedChecksum);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static long checksum(final Order order) {
+        return (order.getSide() == Side.BUY ? 1 : -1) * (31 * order.getQty() + order.getPrice());
+    }
+
+    private static Object parseWithOrderParserUtil(final String line) {
+        try {
+            return OrderParserUtil.parseOrder(line);
+        } catch (final IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String parseWith(final Supplier<String> parser) {
+        try {
+            return parser.get();
+        } catch (final IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static OrderLineParser.Handler collector(final List<String> parsed) {
+        return new OrderLineParser.Handler() {
+            @Override
+            public void onOrder(final Order order) {
+                parsed.add(order.toString());
+            }
+
+            @Override
+            public void onCancel(final long orderId) {
+                parsed.add("CANCEL " + orderId);
+            }
+
+            @Override
+            public void onAmend(final long orderId, final long qty) {
+                parsed.add("AMEND " + orderId + " " + qty);
+            }
+
+            @Override
+            public void onError(final IllegalArgumentException error) {
+                parsed.add(error.getMessage());
+            }
+        };
+    }
+}
@@ -1,9 +1,12 @@
 package se.ngm.ordermatcher;
 
 import java.util.List;
+import java.util.stream.Stream;
 import org.assertj.core.groups.Tuple;
 import org.junit.jupiter.api.DisplayName;
-import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
@@ -28,10 +31,19 @@ public class OrderMatcherTest2 {
     private static final Order SELL_50_at_10_ID_1 = Order.sellOrder().qty(50).price(10).build();
     private static final Order SELL_100_at_10_ID_2 = Order.sellOrder().qty(100).price(10).build();
 
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new),
+            Arguments.of("TickArrayBookSide(capacity=2)", (BookSide.Factory) side -> new TickArrayBookSide(side, 2)));
+    }
+
     @DisplayName("Match 1 queued order 3 times and check removal from order book")
-    @Test
-    public void test_match_all_qty() {
-        final OrderMatcher orderMatcher = new OrderMatcher();
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    public void test_match_all_qty(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderMatcher orderMatcher = new OrderMatcher(new OrderBook(bookSideFactory));
         orderMatcher.placeOrder(BUY_100_at_5_ID_1);
 
         List<Trade> trades = orderMatcher.placeOrder(SELL_50_at_5_ID_2);
@@ -56,9 +68,10 @@ public class OrderMatcherTest2 {
     }
 
     @DisplayName("Match 2 orders with different price and has remaining qty (placed in order book)")
-    @Test
-    public void test_match_2_orders() {
-        OrderMatcher orderMatcher = new OrderMatcher();
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    public void test_match_2_orders(final String name, final BookSide.Factory bookSideFactory) {
+        OrderMatcher orderMatcher = new OrderMatcher(new OrderBook(bookSideFactory));
         orderMatcher.placeOrder(BUY_100_at_5_ID_1);
         orderMatcher.placeOrder(BUY_100_at_4_ID_2);
         List<Order> orders = orderMatcher.getOrders(Side.BUY);
@@ -77,9 +90,10 @@ public class OrderMatcherTest2 {
     }
 
     @DisplayName("2 queued orders match partial with better price")
-    @Test
-    public void test_match_partial() {
-        OrderMatcher orderMatcher = new OrderMatcher();
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    public void test_match_partial(final String name, final BookSide.Factory bookSideFactory) {
+        OrderMatcher orderMatcher = new OrderMatcher(new OrderBook(bookSideFactory));
 
         orderMatcher.placeOrder(SELL_100_at_5_ID_1);
         orderMatcher.placeOrder(SELL_100_at_4_ID_2);
@@ -97,9 +111,10 @@ public class OrderMatcherTest2 {
     }
 
     @DisplayName("2 queued orders match all with remaining (placed in order book)")
-    @Test
-    public void test_match_orders_with_remaining() {
-        OrderMatcher orderMatcher = new OrderMatcher();
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    public void test_match_orders_with_remaining(final String name, final BookSide.Factory bookSideFactory) {
+        OrderMatcher orderMatcher = new OrderMatcher(new OrderBook(bookSideFactory));
         orderMatcher.placeOrder(SELL_100_at_5_ID_1);
         orderMatcher.placeOrder(SELL_100_at_4_ID_2);
         List<Order> orders = orderMatcher.getOrders(Side.SELL);
@@ -116,9 +131,10 @@ public class OrderMatcherTest2 {
     }
 
     @DisplayName("2 queued orders match all none remaining")
-    @Test
-    public void test_match_all() {
-        OrderMatcher orderMatcher = new OrderMatcher();
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    public void test_match_all(final String name, final BookSide.Factory bookSideFactory) {
+        OrderMatcher orderMatcher = new OrderMatcher(new OrderBook(bookSideFactory));
         orderMatcher.placeOrder(SELL_50_at_10_ID_1);
         orderMatcher.placeOrder(SELL_100_at_10_ID_2);
 
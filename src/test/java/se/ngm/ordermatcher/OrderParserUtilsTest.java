@@ -1,11 +1,13 @@
 package se.ngm.ordermatcher;
 
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
 public class OrderParserUtilsTest {
 
@@ -28,4 +30,22 @@ public class OrderParserUtilsTest {
         assertThat(OrderParserUtil.parseOrder(candidate)).isEqualTo(expected);
     }
 
+    @Test
+    public void testParseCancel() {
+        assertThat(OrderParserUtil.isCommand("cancel 12", "CANCEL")).isTrue();
+        assertThat(OrderParserUtil.isCommand("CANCELLED 12", "CANCEL")).isFalse();
+        assertThat(OrderParserUtil.parseCancel("CANCEL 12")).isEqualTo(12L);
+        assertThat(catchThrowable(() -> OrderParserUtil.parseCancel("CANCEL x")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Illegal format. Expected: CANCEL <order id>");
+    }
+
+    @Test
+    public void testParseAmend() {
+        assertThat(OrderParserUtil.parseAmend("amend 12 50")).containsExactly(12L, 50L);
+        assertThat(catchThrowable(() -> OrderParserUtil.parseAmend("AMEND 12")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Illegal format. Expected: AMEND <order id> <quantity>");
+    }
+
 }
@@ -0,0 +1,105 @@
+package se.ngm.ordermatcher;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class OrderPipelineTest {
+
+    @Test
+    void test_same_output_as_console() {
+        final StringWriter out = new StringWriter();
+        final StringWriter err = new StringWriter();
+        final OrderPipeline pipeline = new OrderPipeline(new OrderBook(), out, err, 4);
+        for (final String line : List.of("buy 10@100", "BUY 5@100", "", "sell 3@101", "AMEND 1 4", "cancel 2",
+            "cancel 2", "sell 10@99", "sell 10", "PRINT")) {
+            pipeline.submit(line);
+        }
+        pipeline.close();
+
+        assertThat(out.toString().split("\n")).containsExactly(
+            "ORDER 1 BUY 10@100",
+            "ORDER 2 BUY 5@100",
+            "ORDER 3 SELL 3@101",
+            "ORDER 1 BUY 4@100",
+            "CANCELLED 2",
+            "TRADE 4@100",
+            "ORDER 4 SELL 6@99",
+            "--- BUY ---",
+            "--- SELL ---",
+            "ORDER 4 SELL 6@99",
+            "ORDER 3 SELL 3@101");
+        assertThat(err.toString().split("\n")).containsExactly(
+            "Unknown order: 2",
+            "Illegal format. Expected: <buy|sell> <quantity>@<price>, where <quantity>,<price> is numeric ('sell 10')");
+    }
+
+    @Test
+    void test_stage_stats() {
+        final StringWriter out = new StringWriter();
+        final OrderPipeline pipeline = new OrderPipeline(new OrderBook(), out, new StringWriter(), 64);
+        for (int i = 0; i < 10_000; i++) {
+            pipeline.submit(i % 2 == 0 ? "buy 10@100" : "sell 10@100");
+        }
+        pipeline.close();
+
+        assertThat(out.toString().split("\n")).hasSize(10_000);
+        for (final OrderPipeline.StageStats stats : pipeline.getStageStats()) {
+            // the stop message is counted as well
+            assertThat(stats.getMessages()).isEqualTo(10_001L);
+            assertThat(stats.getBatches()).isBetween(1L, 10_001L);
+            assertThat(stats.getMaxDepth()).isBetween(1, 64);
+            assertThat(stats.getMaxWaitNanos()).isGreaterThanOrEqualTo(stats.getAvgWaitNanos());
+        }
+    }
+
+    @Test
+    void test_failed_write_is_published_as_error() {
+        final StringWriter out = new StringWriter() {
+            @Override
+            public void write(final char[] chars, final int offset, final int length) {
+                if (new String(chars, offset, length).contains("@101")) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                super.write(chars, offset, length);
+            }
+        };
+        final StringWriter err = new StringWriter();
+        final OrderPipeline pipeline = new OrderPipeline(new OrderBook(), out, err, 4);
+        for (final String line : List.of("buy 10@100", "buy 5@101", "sell 3@102")) {
+            pipeline.submit(line);
+        }
+        pipeline.close();
+
+        assertThat(out.toString().split("\n")).containsExactly("ORDER 1 BUY 10@100", "ORDER 3 SELL 3@102");
+        assertThat(err.toString()).isEqualTo("Error: java.io.IOException: disk full\n");
+    }
+
+    @Test
+    void test_close_reports_dead_stage() {
+        final Writer out = new StringWriter() {
+            @Override
+            public void write(final char[] chars, final int offset, final int length) {
+                throw new Error("writer failed");
+            }
+        };
+        final OrderPipeline pipeline = new OrderPipeline(new OrderBook(), out, new StringWriter(), 4);
+        // the stages in front of the dead publish stage fail instead of waiting for it
+        final Throwable submitFailure = catchThrowable(() -> {
+            for (int i = 0; i < 1_000; i++) {
+                pipeline.submit("buy 10@100");
+            }
+        });
+        final Throwable closeFailure = catchThrowable(pipeline::close);
+
+        assertThat(submitFailure).isInstanceOf(IllegalStateException.class).hasMessage("decode stage failed");
+        assertThat(closeFailure).isInstanceOf(IllegalStateException.class).hasMessage("publish stage failed")
+            .hasCauseInstanceOf(Error.class);
+    }
+}
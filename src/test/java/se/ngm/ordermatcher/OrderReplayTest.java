@@ -0,0 +1,163 @@
+package se.ngm.ordermatcher;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class OrderReplayTest {
+
+    @Test
+    void test_replay_writes_trades() throws Exception {
+        final Path input = Files.createTempFile("orders", ".txt");
+        final Path output = Files.createTempFile("trades", ".txt");
+        try {
+            Files.writeString(input, "SELL 100@10\r\nSELL 50@11\n\nfoo\nBUY 120@11");
+            final OrderBook orderBook = new OrderBook();
+            final OrderReplay.Summary summary = new OrderReplay(orderBook).replay(input, output);
+
+            assertThat(Files.readAllLines(output)).containsExactly("TRADE 100@10", "TRADE 20@11");
+            assertThat(summary.getOrderCount()).isEqualTo(3);
+            assertThat(summary.getTradeCount()).isEqualTo(2);
+            assertThat(summary.getRejectedCount()).isEqualTo(1);
+            assertThat(orderBook.getOrders(Side.SELL)).extracting("qty").containsExactly(30L);
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test
+    void test_replay_cancels_and_amends() throws Exception {
+        final Path input = Files.createTempFile("orders", ".txt");
+        final Path output = Files.createTempFile("trades", ".txt");
+        try {
+            Files.writeString(input, "SELL 100@10\nSELL 50@11\nSELL 70@12\nAMEND 1 30\nCANCEL 2\nCANCEL 2\n"
+                + "AMEND 9 5\nAMEND 3 0\nCANCEL x\nBUY 120@12\n");
+            final OrderBook orderBook = new OrderBook();
+            final OrderReplay.Summary summary = new OrderReplay(orderBook).replay(input, output);
+
+            assertThat(Files.readAllLines(output)).containsExactly("TRADE 30@10", "TRADE 70@12");
+            assertThat(summary.getOrderCount()).isEqualTo(4);
+            assertThat(summary.getCancelCount()).isEqualTo(1);
+            assertThat(summary.getAmendCount()).isEqualTo(1);
+            assertThat(summary.getRejectedCount()).isEqualTo(4);
+            assertThat(orderBook.getOrders(Side.BUY)).extracting("qty", "price").containsExactly(tuple(20L, 12L));
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test
+    void test_same_book_as_console_commands() throws Exception {
+        final Path input = Files.createTempFile("orders", ".txt");
+        final Path output = Files.createTempFile("trades", ".txt");
+        try {
+            final Random random = new Random(2);
+            final OrderMatcher matcher = new OrderMatcher();
+            final List<String> expectedTrades = new ArrayList<>();
+            try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+                for (int i = 1; i <= 20_000; i++) {
+                    final int command = random.nextInt(10);
+                    final String line;
+                    if (command < 2) {
+                        line = "CANCEL " + (1 + random.nextInt(i));
+                    } else if (command < 3) {
+                        line = "AMEND " + (1 + random.nextInt(i)) + " " + (1 + random.nextInt(100));
+                    } else {
+                        line = (random.nextBoolean() ? "BUY " : "SELL ") + (1 + random.nextInt(100)) + "@"
+                            + (95 + random.nextInt(10));
+                    }
+                    writer.write(line);
+                    writer.newLine();
+                    // dispatched as by the console
+                    if (OrderParserUtil.isCommand(line, "CANCEL")) {
+                        matcher.cancelOrder(OrderParserUtil.parseCancel(line));
+                    } else if (OrderParserUtil.isCommand(line, "AMEND")) {
+                        final long[] orderIdAndQty = OrderParserUtil.parseAmend(line);
+                        matcher.amendOrder(orderIdAndQty[0], orderIdAndQty[1]);
+                    } else {
+                        for (final Trade trade : matcher.placeOrder(OrderParserUtil.parseOrder(line))) {
+                            expectedTrades.add(trade.toString());
+                        }
+                    }
+                }
+            }
+            final OrderBook orderBook = new OrderBook();
+            final OrderReplay.Summary summary = new OrderReplay(orderBook).replay(input, output);
+
+            assertThat(summary.getCancelCount()).isPositive();
+            assertThat(summary.getAmendCount()).isPositive();
+            assertThat(Files.readAllLines(output)).isEqualTo(expectedTrades);
+            assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(matcher.getOrders(Side.BUY));
+            assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(matcher.getOrders(Side.SELL));
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test
+    void test_same_trades_as_order_matcher_with_small_windows() throws Exception {
+        final Path input = Files.createTempFile("orders", ".txt");
+        final Path output = Files.createTempFile("trades", ".txt");
+        try {
+            final List<String> expectedTrades = writeOrders(input, 10_000);
+            final OrderReplay.Summary summary = new OrderReplay(new OrderBook(), 100).replay(input, output);
+
+            assertThat(summary.getOrderCount()).isEqualTo(10_000);
+            assertThat(Files.readAllLines(output)).isEqualTo(expectedTrades);
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test
+    void test_main_replay() throws Exception {
+        final Path input = Files.createTempFile("orders", ".txt");
+        final Path output = Files.createTempFile("trades", ".txt");
+        try {
+            final int orderCount = 2_000_000;
+            final List<String> expectedTrades = writeOrders(input, orderCount);
+
+            OrderMatcher.main(new String[] {"--replay", input.toString(), "--out", output.toString()});
+
+            assertThat(Files.readAllLines(output)).isEqualTo(expectedTrades);
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    /**
+     * @return the trades of the orders
+     */
+    private static List<String> writeOrders(final Path file, final int orderCount) throws Exception {
+        final Random random = new Random(1);
+        final OrderMatcher matcher = new OrderMatcher();
+        final List<String> trades = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < orderCount; i++) {
+                final Order order = Order.builder()
+                    .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                    .qty(1 + random.nextInt(100))
+                    .price(95 + random.nextInt(10))
+                    .build();
+                writer.write(order.getSide() + " " + order.getQty() + "@" + order.getPrice());
+                writer.newLine();
+                for (final Trade trade : matcher.placeOrder(order)) {
+                    trades.add(trade.toString());
+                }
+            }
+        }
+        return trades;
+    }
+}
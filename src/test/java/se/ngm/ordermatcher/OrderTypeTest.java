@@ -0,0 +1,243 @@
+package se.ngm.ordermatcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class OrderTypeTest {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_market_order_matches_at_any_price_and_cancels_the_rest(final String name,
+                                                                      final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(1_000).build());
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(5).build());
+
+        final List<Trade> trades = orderBook.placeOrder(
+            Order.buyOrder().qty(25).type(OrderType.MARKET).build());
+
+        assertThat(trades).containsExactly(trade(10, 10), trade(1_000, 10));
+        assertThat(orderBook.getOrders(Side.SELL)).isEmpty();
+        assertThat(orderBook.getOrders(Side.BUY)).extracting("qty", "price").containsExactly(tuple(10L, 5L));
+
+        assertThat(orderBook.placeOrder(Order.sellOrder().qty(15).type(OrderType.MARKET).build()))
+            .containsExactly(trade(5, 10));
+        assertThat(orderBook.getOrders(Side.BUY)).isEmpty();
+        assertThat(orderBook.getOrders(Side.SELL)).isEmpty();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_ioc_order_matches_up_to_its_price_and_cancels_the_rest(final String name,
+                                                                     final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+        orderBook.placeOrder(Order.sellOrder().qty(10).price(11).build());
+
+        final List<Trade> trades = orderBook.placeOrder(
+            Order.buyOrder().qty(15).price(10).type(OrderType.IOC).build());
+
+        assertThat(trades).containsExactly(trade(10, 10));
+        assertThat(orderBook.getOrders(Side.BUY)).isEmpty();
+        assertThat(orderBook.getOrders(Side.SELL)).extracting("qty", "price").containsExactly(tuple(10L, 11L));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_fok_order_is_filled_completely_or_not_at_all(final String name,
+                                                          final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(12).build());
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(11).build());
+        orderBook.placeOrder(Order.buyOrder().qty(10).price(10).build());
+        final List<Order> buyOrders = orderBook.getOrders(Side.BUY);
+
+        // 20 at 11 or better is not enough
+        assertThat(orderBook.placeOrder(Order.sellOrder().qty(21).price(11).type(OrderType.FOK).build())).isEmpty();
+        assertThat(orderBook.getOrders(Side.BUY)).isEqualTo(buyOrders);
+        assertThat(orderBook.getOrders(Side.SELL)).isEmpty();
+
+        assertThat(orderBook.placeOrder(Order.sellOrder().qty(20).price(11).type(OrderType.FOK).build()))
+            .containsExactly(trade(12, 10), trade(11, 10));
+        assertThat(orderBook.getOrders(Side.BUY)).extracting("qty", "price").containsExactly(tuple(10L, 10L));
+        assertThat(orderBook.getQtyAtOrBetter(Side.BUY, 10)).isEqualTo(10);
+    }
+
+    @Test
+    void test_market_order_has_no_price() {
+        final Throwable throwable = catchThrowable(
+            () -> Order.buyOrder().qty(10).price(10).type(OrderType.MARKET).build());
+
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("market order must not have a price");
+        assertThat(catchThrowable(() -> Order.buyOrder().qty(10).type(OrderType.IOC).build()))
+            .isInstanceOf(IllegalArgumentException.class).hasMessage("price must be >0");
+    }
+
+    @Test
+    void test_parse_order_types() {
+        assertThat(OrderParserUtil.parseOrder("BUY 10@100"))
+            .isEqualTo(Order.buyOrder().qty(10).price(100).build());
+        assertThat(OrderParserUtil.parseOrder("buy 10@100 ioc"))
+            .isEqualTo(Order.buyOrder().qty(10).price(100).type(OrderType.IOC).build());
+        assertThat(OrderParserUtil.parseOrder("SELL 10@100 FOK"))
+            .isEqualTo(Order.sellOrder().qty(10).price(100).type(OrderType.FOK).build());
+        assertThat(OrderParserUtil.parseOrder("SELL 10 MARKET"))
+            .isEqualTo(Order.sellOrder().qty(10).type(OrderType.MARKET).build());
+        assertThat(OrderParserUtil.parseOrder("SELL 10 MARKET").toString()).isEqualTo("SELL 10 MARKET");
+        assertThat(OrderParserUtil.parseOrder("SELL 10@100 FOK").toString()).isEqualTo("SELL 10@100 FOK");
+        assertThat(catchThrowable(() -> OrderParserUtil.parseOrder("SELL 10 IOC")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void test_order_types_are_journaled() throws Exception {
+        final Path directory = Files.createTempDirectory("journal");
+        final List<Order> sellOrders;
+        try (Journal journal = new Journal(directory)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(journal);
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(10).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(11).build());
+            orderBook.placeOrder(Order.buyOrder().qty(30).price(11).type(OrderType.FOK).build());
+            orderBook.placeOrder(Order.buyOrder().qty(5).price(10).type(OrderType.IOC).build());
+            orderBook.placeOrder(Order.buyOrder().qty(30).type(OrderType.MARKET).build());
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(12).build());
+            sellOrders = orderBook.getOrders(Side.SELL);
+            assertThat(orderBook.getOrders(Side.BUY)).isEmpty();
+        }
+        try (Journal journal = new Journal(directory)) {
+            final JournaledOrderBook orderBook = new JournaledOrderBook(journal);
+            assertThat(orderBook.getReplayedCount()).isEqualTo(6);
+            assertThat(orderBook.getOrders(Side.SELL)).isEqualTo(sellOrders);
+            assertThat(orderBook.getOrders(Side.BUY)).isEmpty();
+        } finally {
+            for (final Path file : journalFiles(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_qty_index_matches_the_levels(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        final Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            final int command = random.nextInt(10);
+            if (command == 0) {
+                orderBook.cancelOrder(1 + random.nextInt(i + 1));
+            } else if (command == 1) {
+                orderBook.amendOrder(1 + random.nextInt(i + 1), 1 + random.nextInt(100));
+            } else {
+                final OrderType type = OrderType.values()[random.nextInt(OrderType.values().length)];
+                orderBook.placeOrder(Order.builder()
+                    .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                    .qty(1 + random.nextInt(100))
+                    .price(OrderType.MARKET.equals(type) ? 0 : 90 + random.nextInt(20))
+                    .type(type)
+                    .build(), execution -> { });
+            }
+            if (i % 100 == 0) {
+                final long price = 85 + random.nextInt(30);
+                assertThat(orderBook.getQtyAtOrBetter(Side.BUY, price)).isEqualTo(
+                    orderBook.getOrders(Side.BUY).stream().filter(order -> order.getPrice() >= price)
+                        .mapToLong(Order::getQty).sum());
+                assertThat(orderBook.getQtyAtOrBetter(Side.SELL, price)).isEqualTo(
+                    orderBook.getOrders(Side.SELL).stream().filter(order -> order.getPrice() <= price)
+                        .mapToLong(Order::getQty).sum());
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("bookSides")
+    void test_qty_index_is_built_on_first_fok_order(final String name, final BookSide.Factory bookSideFactory) {
+        final OrderBook orderBook = new OrderBook(bookSideFactory);
+        final Random random = new Random(2);
+        // no fill-or-kill orders, the index is not maintained
+        for (int i = 0; i < 5_000; i++) {
+            final int command = random.nextInt(10);
+            if (command == 0) {
+                orderBook.cancelOrder(1 + random.nextInt(i + 1));
+            } else if (command == 1) {
+                orderBook.amendOrder(1 + random.nextInt(i + 1), 1 + random.nextInt(100));
+            } else {
+                orderBook.placeOrder(Order.builder()
+                    .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                    .qty(1 + random.nextInt(100))
+                    .price(90 + random.nextInt(20))
+                    .build(), execution -> { });
+            }
+        }
+        final long bestBid = orderBook.getBestBid();
+        final long qty = orderBook.getOrders(Side.BUY).stream().filter(order -> order.getPrice() >= bestBid - 2)
+            .mapToLong(Order::getQty).sum();
+
+        assertThat(orderBook.placeOrder(Order.sellOrder().qty(qty + 1).price(bestBid - 2).type(OrderType.FOK).build()))
+            .isEmpty();
+        assertThat(orderBook.placeOrder(Order.sellOrder().qty(qty).price(bestBid - 2).type(OrderType.FOK).build())
+            .stream().mapToLong(Trade::getQty).sum()).isEqualTo(qty);
+        assertThat(orderBook.getQtyAtOrBetter(Side.BUY, bestBid - 2)).isZero();
+    }
+
+    @Test
+    void test_unfillable_fok_is_rejected_without_visiting_the_levels() {
+        final OrderBook orderBook = new OrderBook();
+        final int levels = 1_000;
+        for (int i = 0; i < levels; i++) {
+            orderBook.placeOrder(Order.sellOrder().qty(10).price(1_000 + i).build());
+        }
+        final EngineStats stats = orderBook.getStats();
+        stats.setEnabled(true);
+        final TradeListener listener = (price, qty) -> {
+            throw new AssertionError("an unfillable fok order must not trade");
+        };
+
+        orderBook.placeOrder(Order.buyOrder().qty(10L * levels + 1).price(1_000 + levels).type(OrderType.FOK).build(),
+            listener);
+
+        assertThat(stats.getOrderCount()).isEqualTo(1);
+        assertThat(stats.getLevelsSwept()).isZero();
+        assertThat(stats.getLatencies(EngineStats.Probe.MATCH_AT_PRICE).getTotalCount()).isZero();
+        assertThat(orderBook.getOrderCount()).isEqualTo(levels);
+
+        // a fillable fok order does visit the levels it sweeps
+        orderBook.placeOrder(Order.buyOrder().qty(10L * levels).price(1_000 + levels).type(OrderType.FOK).build(),
+            (price, qty) -> { });
+
+        assertThat(stats.getLevelsSwept()).isEqualTo(levels);
+        assertThat(stats.getLatencies(EngineStats.Probe.MATCH_AT_PRICE).getTotalCount()).isEqualTo(levels);
+        assertThat(orderBook.getOrderCount()).isZero();
+    }
+
+    private static List<Path> journalFiles(final Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static Trade trade(final long price, final long qty) {
+        return Trade.builder().price(price).qty(qty).build();
+    }
+
+    private static Stream<Arguments> bookSides() {
+        return Stream.of(
+            Arguments.of("TreeMapBookSide", (BookSide.Factory) TreeMapBookSide::new),
+            Arguments.of("TickArrayBookSide", (BookSide.Factory) TickArrayBookSide::new),
+            Arguments.of("BTreeBookSide", (BookSide.Factory) BTreeBookSide::new));
+    }
+}
@@ -0,0 +1,29 @@
+package se.ngm.ordermatcher;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueuedOrdersAtPriceTest {
+
+    @Test
+    void test_totals_on_add_fill_and_remove() {
+        final QueuedOrdersAtPrice ordersAtPrice = new QueuedOrdersAtPrice();
+        ordersAtPrice.addOrder(OrderTestBuilder.buyOrder().qty(50).build());
+        ordersAtPrice.addOrder(OrderTestBuilder.buyOrder().qty(30).build());
+        assertThat(ordersAtPrice.getTotalQuantity()).isEqualTo(80L);
+        assertThat(ordersAtPrice.getOrderCount()).isEqualTo(2);
+
+        ordersAtPrice.fillFirst(20);
+        assertThat(ordersAtPrice.getTotalQuantity()).isEqualTo(60L);
+        assertThat(ordersAtPrice.getOrderCount()).isEqualTo(2);
+
+        ordersAtPrice.removeFirst();
+        assertThat(ordersAtPrice.getTotalQuantity()).isEqualTo(30L);
+        assertThat(ordersAtPrice.getOrderCount()).isEqualTo(1);
+
+        ordersAtPrice.removeFirst();
+        assertThat(ordersAtPrice.getTotalQuantity()).isZero();
+        assertThat(ordersAtPrice.isEmpty()).isTrue();
+    }
+}
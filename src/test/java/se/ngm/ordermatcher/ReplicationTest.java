@@ -0,0 +1,302 @@
+package se.ngm.ordermatcher;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class ReplicationTest {
+
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+    private static final ExecutionListener IGNORE = execution -> { };
+
+    @Test
+    void test_replicas_follow_the_primary_and_take_over_when_it_fails() throws Exception {
+        final OrderBook expected = new OrderBook();
+        final Random random = new Random(1);
+
+        final ReplicationPrimary primary = new ReplicationPrimary(new OrderBook(), loopback(0), 0, 64,
+            TIMEOUT_NANOS, 100);
+        final ReplicationReplica first = new ReplicationReplica(new OrderBook(), loopback(primary.getPort()));
+        final ReplicationReplica second = new ReplicationReplica(new OrderBook(TickArrayBookSide::new),
+            loopback(primary.getPort()));
+        await(() -> primary.getReplicaCount() == 2);
+
+        for (int i = 0; i < 20_000; i++) {
+            applyRandomCommand(primary, expected, random, i);
+        }
+        assertThat(primary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+        assertThat(primary.getSequence()).isEqualTo(20_000);
+        assertThat(first.getAppliedSequence()).isEqualTo(20_000);
+        assertSameBook(first.getOrderBook(), expected);
+        assertSameBook(second.getOrderBook(), expected);
+        assertThat(primary.getDivergenceCount()).isZero();
+        assertThat(first.getDivergedSequence()).isZero();
+
+        // the primary fails, the first replica takes over and the second follows it
+        primary.close();
+        await(() -> !first.isConnected() && !second.isConnected());
+        assertThat(first.getFailure()).isNull();
+        final ReplicationPrimary newPrimary = first.promote(loopback(0));
+        final ReplicationReplica follower = new ReplicationReplica(second.getOrderBook(),
+            loopback(newPrimary.getPort()), second.getAppliedSequence());
+        await(() -> newPrimary.getReplicaCount() == 1);
+
+        for (int i = 20_000; i < 25_000; i++) {
+            applyRandomCommand(newPrimary, expected, random, i);
+        }
+        assertThat(newPrimary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+        assertThat(newPrimary.getSequence()).isEqualTo(25_000);
+        assertThat(follower.getAppliedSequence()).isEqualTo(25_000);
+        assertSameBook(newPrimary.getOrderBook(), expected);
+        assertSameBook(follower.getOrderBook(), expected);
+        assertThat(follower.getDivergedSequence()).isZero();
+        assertThat(newPrimary.getDivergenceCount()).isZero();
+
+        follower.close();
+        newPrimary.close();
+    }
+
+    @Test
+    void test_auction_is_replicated_and_uncrossed_by_the_new_primary() throws Exception {
+        final OrderBook expected = new OrderBook();
+        final Random random = new Random(3);
+
+        final ReplicationPrimary primary = new ReplicationPrimary(new OrderBook(), loopback(0), 0, 64,
+            TIMEOUT_NANOS, 10);
+        final ReplicationReplica first = new ReplicationReplica(new OrderBook(), loopback(primary.getPort()));
+        final ReplicationReplica second = new ReplicationReplica(new OrderBook(), loopback(primary.getPort()));
+        await(() -> primary.getReplicaCount() == 2);
+
+        for (int i = 0; i < 100; i++) {
+            applyRandomCommand(primary, expected, random, i);
+        }
+        primary.startAuction();
+        expected.startAuction();
+        for (int i = 100; i < 200; i++) {
+            applyRandomCommand(primary, expected, random, i);
+        }
+        assertThat(primary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+        assertThat(first.getOrderBook().isAuction()).isTrue();
+        assertThat(first.getOrderBook().getBestBid()).isGreaterThanOrEqualTo(first.getOrderBook().getBestAsk());
+        assertSameBook(first.getOrderBook(), expected);
+
+        // the primary fails during the auction, the new primary uncrosses the order book
+        primary.close();
+        await(() -> !first.isConnected() && !second.isConnected());
+        final ReplicationPrimary newPrimary = first.promote(loopback(0));
+        final ReplicationReplica follower = new ReplicationReplica(second.getOrderBook(),
+            loopback(newPrimary.getPort()), second.getAppliedSequence());
+        await(() -> newPrimary.getReplicaCount() == 1);
+
+        assertThat(newPrimary.uncross(100, IGNORE)).isEqualTo(expected.uncross(100, IGNORE)).isPositive();
+        for (int i = 200; i < 300; i++) {
+            applyRandomCommand(newPrimary, expected, random, i);
+        }
+        assertThat(newPrimary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+        assertThat(follower.getAppliedSequence()).isEqualTo(302);
+        assertThat(follower.getOrderBook().isAuction()).isFalse();
+        assertSameBook(newPrimary.getOrderBook(), expected);
+        assertSameBook(follower.getOrderBook(), expected);
+        assertThat(follower.getDivergedSequence()).isZero();
+        assertThat(newPrimary.getDivergenceCount()).isZero();
+
+        follower.close();
+        newPrimary.close();
+    }
+
+    @Test
+    void test_divergence_is_detected_by_the_checksums() throws Exception {
+        try (ReplicationPrimary primary = new ReplicationPrimary(new OrderBook(), loopback(0), 0, 64,
+            TIMEOUT_NANOS, 100)) {
+            // the replica does not start from the same state
+            final OrderBook diverged = new OrderBook();
+            diverged.placeOrder(Order.buyOrder().id(1_000_000).qty(10).price(1).build());
+            final ReplicationReplica replica = new ReplicationReplica(diverged, loopback(primary.getPort()));
+            await(() -> primary.getReplicaCount() == 1);
+
+            final OrderBook expected = new OrderBook();
+            final Random random = new Random(2);
+            for (int i = 0; i < 250; i++) {
+                applyRandomCommand(primary, expected, random, i);
+            }
+            assertThat(primary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+            await(() -> primary.getDivergenceCount() == 1);
+
+            assertThat(replica.getDivergedSequence()).isEqualTo(100);
+            assertThat(replica.isConnected()).isTrue();
+            replica.close();
+        }
+    }
+
+    @Test
+    void test_a_hung_replica_delays_the_primary_by_the_ack_timeout_only() throws Exception {
+        final long ackTimeoutNanos = 50_000_000L;
+        try (ReplicationPrimary primary = new ReplicationPrimary(new OrderBook(), loopback(0), 0, 16,
+            ackTimeoutNanos, 0);
+             SocketChannel hung = SocketChannel.open(loopback(primary.getPort()))) {
+            final ReplicationReplica replica = new ReplicationReplica(new OrderBook(), loopback(primary.getPort()));
+            // the handshake and then never an ack
+            final ByteBuffer handshake = ByteBuffer.allocate(ReplicationPrimary.ACK_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            hung.write(handshake);
+            await(() -> primary.getReplicaCount() == 2);
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < 1_000; i++) {
+                primary.placeOrder(Order.builder().side(i % 2 == 0 ? Side.BUY : Side.SELL).qty(10)
+                    .price(i % 2 == 0 ? 10 : 11).build(), IGNORE);
+            }
+            final long nanos = System.nanoTime() - start;
+
+            assertThat(primary.getAckTimeoutCount()).isEqualTo(1);
+            await(() -> primary.getDroppedReplicaCount() == 1 && primary.getReplicaCount() == 1);
+            assertThat(primary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+            assertSameBook(replica.getOrderBook(), primary.getOrderBook());
+            // lenient, the sandbox may be slow
+            assertThat(nanos).isLessThan(ackTimeoutNanos + 2_000_000_000L);
+            replica.close();
+        }
+    }
+
+    @Test
+    void test_failed_sender_fails_the_commands_and_disconnects_the_replicas() throws Exception {
+        try (ReplicationPrimary primary = new ReplicationPrimary(new OrderBook(), loopback(0))) {
+            final ReplicationReplica replica = new ReplicationReplica(new OrderBook(), loopback(primary.getPort()));
+            await(() -> primary.getReplicaCount() == 1);
+            final OrderBook expected = new OrderBook();
+            final Random random = new Random(4);
+            for (int i = 0; i < 100; i++) {
+                applyRandomCommand(primary, expected, random, i);
+            }
+            assertThat(primary.awaitAcks(TIMEOUT_NANOS)).isTrue();
+
+            primary.getSelector().close();
+            await(() -> primary.getFailure() != null && !replica.isConnected());
+            final Throwable throwable = catchThrowable(
+                () -> primary.placeOrder(Order.buyOrder().qty(10).price(10).build(), IGNORE));
+
+            assertThat(primary.getFailure()).isInstanceOf(ClosedSelectorException.class);
+            assertThat(throwable).isInstanceOf(IllegalStateException.class).hasMessage("replication sender failed")
+                .hasCause(primary.getFailure());
+            assertThat(primary.getSequence()).isEqualTo(100);
+            // the command was not applied, the replica can take over with the same order book
+            assertSameBook(primary.getOrderBook(), expected);
+            assertSameBook(replica.getOrderBook(), expected);
+            assertThat(replica.getFailure()).isNull();
+            replica.close();
+        }
+    }
+
+    @Test
+    void test_replica_at_another_sequence_is_rejected() throws Exception {
+        try (ReplicationPrimary primary = new ReplicationPrimary(new OrderBook(), loopback(0))) {
+            final ReplicationReplica replica = new ReplicationReplica(new OrderBook(), loopback(primary.getPort()), 5);
+            await(() -> !replica.isConnected());
+
+            assertThat(primary.getRejectedReplicaCount()).isEqualTo(1);
+            assertThat(primary.getReplicaCount()).isZero();
+            replica.close();
+        }
+    }
+
+    @Test
+    void test_checksum_depends_on_the_orders_and_their_priority() {
+        final OrderBook orderBook = new OrderBook();
+        final OrderBook same = new OrderBook(TickArrayBookSide::new);
+        final OrderBook otherPriority = new OrderBook();
+        for (final OrderBook book : new OrderBook[] {orderBook, same}) {
+            book.placeOrder(Order.buyOrder().id(1).qty(10).price(10).build());
+            book.placeOrder(Order.buyOrder().id(2).qty(10).price(10).build());
+        }
+        otherPriority.placeOrder(Order.buyOrder().id(2).qty(10).price(10).build());
+        otherPriority.placeOrder(Order.buyOrder().id(1).qty(10).price(10).build());
+
+        assertThat(orderBook.getChecksum()).isEqualTo(same.getChecksum());
+        assertThat(orderBook.getChecksum()).isNotEqualTo(otherPriority.getChecksum());
+        assertThat(orderBook.getChecksum()).isNotEqualTo(new OrderBook().getChecksum());
+    }
+
+    @Test
+    void test_checksum_is_maintained_by_every_command() {
+        final OrderBook orderBook = new OrderBook(TickArrayBookSide::new);
+        final Random random = new Random(3);
+        for (int i = 0; i < 5_000; i++) {
+            final int command = random.nextInt(10);
+            final long orderId = 1 + random.nextInt(i + 1);
+            if (command == 0) {
+                orderBook.cancelOrder(orderId);
+            } else if (command == 1) {
+                orderBook.amendOrder(orderId, 1 + random.nextInt(100));
+            } else if (command == 2 && i % 500 == 2) {
+                orderBook.startAuction();
+            } else if (command == 2 && orderBook.isAuction()) {
+                orderBook.uncross(100, IGNORE);
+            } else {
+                orderBook.placeOrder(Order.builder()
+                    .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                    .qty(1 + random.nextInt(100))
+                    .price(90 + random.nextInt(20))
+                    .build(), IGNORE);
+            }
+            if (i % 100 == 0) {
+                // a restored book has the same orders added in priority order
+                final OrderBook restored = new OrderBook();
+                restored.restore(orderBook.snapshot(i));
+                assertThat(orderBook.getChecksum()).isEqualTo(restored.getChecksum());
+            }
+        }
+        for (final Side side : Side.values()) {
+            for (final Order order : orderBook.getOrders(side)) {
+                orderBook.cancelOrder(order.getId());
+            }
+        }
+        assertThat(orderBook.getChecksum()).isEqualTo(new OrderBook().getChecksum());
+    }
+
+    private static void applyRandomCommand(final ReplicationPrimary primary, final OrderBook expected,
+                                           final Random random, final int i) {
+        final int command = random.nextInt(10);
+        if (command == 0) {
+            final long orderId = 1 + random.nextInt(i + 1);
+            assertThat(primary.cancelOrder(orderId)).isEqualTo(expected.cancelOrder(orderId));
+        } else if (command == 1) {
+            final long orderId = 1 + random.nextInt(i + 1);
+            final long qty = 1 + random.nextInt(100);
+            assertThat(primary.amendOrder(orderId, qty)).isEqualTo(expected.amendOrder(orderId, qty));
+        } else {
+            final Order order = Order.builder()
+                .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                .qty(1 + random.nextInt(100))
+                .price(95 + random.nextInt(10))
+                .build();
+            assertThat(primary.placeOrder(order, IGNORE)).isEqualTo(expected.placeOrder(order, IGNORE));
+        }
+    }
+
+    private static void assertSameBook(final OrderBook actual, final OrderBook expected) {
+        assertThat(actual.getOrders(Side.BUY)).isEqualTo(expected.getOrders(Side.BUY));
+        assertThat(actual.getOrders(Side.SELL)).isEqualTo(expected.getOrders(Side.SELL));
+        assertThat(actual.getChecksum()).isEqualTo(expected.getChecksum());
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+            Thread.sleep(1);
+        }
+    }
+
+    private static InetSocketAddress loopback(final int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+}
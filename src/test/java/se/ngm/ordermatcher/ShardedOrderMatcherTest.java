@@ -0,0 +1,93 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class ShardedOrderMatcherTest {
+
+    @Test
+    void test_books_per_instrument() throws Exception {
+        try (ShardedOrderMatcher matcher = new ShardedOrderMatcher(2)) {
+            matcher.placeOrder("AAA", Order.sellOrder().qty(100).price(10).build());
+            matcher.placeOrder("BBB", Order.sellOrder().qty(100).price(20).build());
+
+            final List<Trade> tradesA = matcher.placeOrder("AAA", Order.buyOrder().qty(30).price(20).build()).get();
+            final List<Trade> tradesC = matcher.placeOrder("CCC", Order.buyOrder().qty(30).price(20).build()).get();
+
+            assertThat(tradesA).extracting("qty", "price").containsExactly(tuple(30L, 10L));
+            assertThat(tradesC).isEmpty();
+            assertThat(matcher.getOrders("BBB", Side.SELL).get()).extracting("qty", "price")
+                .containsExactly(tuple(100L, 20L));
+            assertThat(matcher.getOrders("CCC", Side.BUY).get()).extracting("qty", "price")
+                .containsExactly(tuple(30L, 20L));
+        }
+    }
+
+    @Test
+    void test_cancel_amend_and_errors() throws Exception {
+        try (ShardedOrderMatcher matcher = new ShardedOrderMatcher(3)) {
+            final long orderId = 1;
+            matcher.placeOrder("AAA", Order.buyOrder().id(orderId).qty(100).price(10).build(),
+                (symbol, execution) -> { });
+
+            assertThat(matcher.amendOrder("AAA", orderId, 50).get()).isTrue();
+            assertThat(matcher.cancelOrder("BBB", orderId).get()).isFalse();
+            assertThat(matcher.getOrders("AAA", Side.BUY).get()).extracting("qty").containsExactly(50L);
+            assertThat(matcher.cancelOrder("AAA", orderId).get()).isTrue();
+
+            final Throwable throwable = catchThrowable(() -> matcher.amendOrder("AAA", orderId, 0).get());
+            assertThat(throwable).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+
+            // a duplicate order id
+            matcher.placeOrder("BBB", Order.sellOrder().id(2).qty(10).price(10).build(), (symbol, execution) -> { });
+            matcher.placeOrder("BBB", Order.sellOrder().id(2).qty(10).price(10).build(), (symbol, execution) -> { });
+            matcher.flush().get(10, TimeUnit.SECONDS);
+            assertThat(matcher.getRejectedCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void test_same_trades_as_one_book_per_instrument() throws Exception {
+        final String[] symbols = {"AAA", "BBB", "CCC", "DDD", "EEE"};
+        final Map<String, OrderMatcher> expectedMatchers = new HashMap<>();
+        final Map<String, List<String>> expectedTrades = new HashMap<>();
+        final Map<String, List<String>> trades = new HashMap<>();
+        for (final String symbol : symbols) {
+            expectedMatchers.put(symbol, new OrderMatcher());
+            expectedTrades.put(symbol, new ArrayList<>());
+            trades.put(symbol, new ArrayList<>());
+        }
+
+        final Random random = new Random(1);
+        try (ShardedOrderMatcher matcher = new ShardedOrderMatcher(3)) {
+            for (int i = 0; i < 10_000; i++) {
+                final String symbol = symbols[random.nextInt(symbols.length)];
+                final Order order = Order.builder()
+                    .side(random.nextBoolean() ? Side.BUY : Side.SELL)
+                    .qty(1 + random.nextInt(100))
+                    .price(95 + random.nextInt(10))
+                    .build();
+                for (final Trade trade : expectedMatchers.get(symbol).placeOrder(order)) {
+                    expectedTrades.get(symbol).add(trade.toString());
+                }
+                // the listener is called on the matching thread of the instrument, the lists are per instrument
+                matcher.placeOrder(symbol, order,
+                    (tradeSymbol, execution) -> trades.get(tradeSymbol).add(execution.toString()));
+            }
+            matcher.flush().get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(trades).isEqualTo(expectedTrades);
+    }
+}
@@ -0,0 +1,68 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpscRingBufferTest {
+
+    private static final class Slot {
+        private long value;
+    }
+
+    @Test
+    void test_slots_are_reused_and_drained_in_batches() {
+        final SpscRingBuffer<Slot> ringBuffer = new SpscRingBuffer<>(4, Slot::new);
+        final List<Slot> slots = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Slot slot = ringBuffer.claim();
+            slot.value = i;
+            slots.add(slot);
+            ringBuffer.publish();
+        }
+        assertThat(ringBuffer.size()).isEqualTo(3);
+
+        final List<String> events = new ArrayList<>();
+        final int drained = ringBuffer.drain(
+            (slot, sequence, endOfBatch) -> events.add(slot.value + ":" + sequence + ":" + endOfBatch), 2);
+        assertThat(drained).isEqualTo(2);
+        assertThat(events).containsExactly("0:0:false", "1:1:true");
+        assertThat(ringBuffer.size()).isEqualTo(1);
+
+        // wraps around to the first slot
+        ringBuffer.claim();
+        ringBuffer.publish();
+        assertThat(ringBuffer.claim()).isSameAs(slots.get(0));
+    }
+
+    @Test
+    void test_producer_and_consumer_threads() throws InterruptedException {
+        final SpscRingBuffer<Slot> ringBuffer = new SpscRingBuffer<>(64, Slot::new);
+        final int count = 200_000;
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                ringBuffer.claim().value = i;
+                ringBuffer.publish();
+            }
+        });
+        producer.start();
+
+        final long[] expected = new long[1];
+        final boolean[] inOrder = {true};
+        int attempt = 0;
+        while (expected[0] < count) {
+            final int drained = ringBuffer.drain((slot, sequence, endOfBatch) -> {
+                inOrder[0] &= slot.value == expected[0] && sequence == expected[0];
+                expected[0]++;
+            }, 16);
+            attempt = drained > 0 ? 0 : attempt + 1;
+            SpscRingBuffer.idle(attempt);
+        }
+        producer.join();
+
+        assertThat(inOrder[0]).isTrue();
+        assertThat(ringBuffer.size()).isZero();
+    }
+}
@@ -0,0 +1,77 @@
+package se.ngm.ordermatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TickArrayBookSideTest {
+
+    @Test
+    void test_buy_side_best_price_first() {
+        final BookSide side = new TickArrayBookSide(Side.BUY);
+        side.getOrCreate(30);
+        side.getOrCreate(100);
+        side.getOrCreate(50);
+
+        assertThat(prices(side)).containsExactly(100L, 50L, 30L);
+    }
+
+    @Test
+    void test_sell_side_best_price_first() {
+        final BookSide side = new TickArrayBookSide(Side.SELL);
+        side.getOrCreate(9);
+        side.getOrCreate(10);
+        side.getOrCreate(8);
+
+        assertThat(prices(side)).containsExactly(8L, 9L, 10L);
+    }
+
+    @Test
+    void test_recenter_outside_window() {
+        final BookSide side = new TickArrayBookSide(Side.SELL, 4);
+        final QueuedOrdersAtPrice ordersAt100 = side.getOrCreate(100);
+        side.getOrCreate(1000);
+        side.getOrCreate(1);
+
+        assertThat(prices(side)).containsExactly(1L, 100L, 1000L);
+        assertThat(side.get(100)).isSameAs(ordersAt100);
+        assertThat(side.get(2)).isNull();
+        assertThat(side.get(5000)).isNull();
+    }
+
+    @Test
+    void test_remove_moves_best_price() {
+        final BookSide side = new TickArrayBookSide(Side.BUY);
+        side.getOrCreate(10);
+        side.getOrCreate(12);
+        side.getOrCreate(15);
+
+        side.remove(15);
+        assertThat(side.first()).isEqualTo(12L);
+        side.remove(10);
+        assertThat(prices(side)).containsExactly(12L);
+        side.remove(12);
+        assertThat(side.isEmpty()).isTrue();
+        assertThat(side.first()).isEqualTo(BookSide.NO_PRICE);
+    }
+
+    @Test
+    void test_recenter_on_empty_side() {
+        final BookSide side = new TickArrayBookSide(Side.SELL, 8);
+        side.getOrCreate(10);
+        side.remove(10);
+        side.getOrCreate(1_000_000);
+
+        assertThat(prices(side)).containsExactly(1_000_000L);
+    }
+
+    private static List<Long> prices(final BookSide side) {
+        final List<Long> prices = new ArrayList<>();
+        for (long price = side.first(); price != BookSide.NO_PRICE; price = side.next(price)) {
+            prices.add(price);
+        }
+        return prices;
+    }
+}
@@ -0,0 +1,149 @@
+package se.ngm.ordermatcher.codec;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+import se.ngm.ordermatcher.OrderType;
+import se.ngm.ordermatcher.Side;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CodecTest {
+
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+
+    @Test
+    void test_new_order_round_trip() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        final NewOrderEncoder encoder = new NewOrderEncoder()
+            .wrapAndApplyHeader(buffer, 4, headerEncoder)
+            .orderId(7)
+            .price(100)
+            .qty(30)
+            .side(Side.SELL);
+        assertThat(encoder.encodedLength()).isEqualTo(32);
+
+        final NewOrderDecoder decoder = new NewOrderDecoder().wrapAndApplyHeader(buffer, 4, headerDecoder);
+        assertThat(headerDecoder.blockLength()).isEqualTo(NewOrderDecoder.BLOCK_LENGTH);
+        assertThat(headerDecoder.templateId()).isEqualTo(NewOrderDecoder.TEMPLATE_ID);
+        assertThat(headerDecoder.schemaId()).isEqualTo(MessageHeaderEncoder.SCHEMA_ID);
+        assertThat(headerDecoder.version()).isEqualTo(MessageHeaderEncoder.SCHEMA_VERSION);
+        assertThat(decoder.orderId()).isEqualTo(7);
+        assertThat(decoder.price()).isEqualTo(100);
+        assertThat(decoder.qty()).isEqualTo(30);
+        assertThat(decoder.side()).isEqualTo(Side.SELL);
+        // a message without an order type is a limit order
+        assertThat(decoder.orderType()).isEqualTo(OrderType.LIMIT);
+
+        encoder.orderType(OrderType.FOK);
+        assertThat(decoder.orderType()).isEqualTo(OrderType.FOK);
+        assertThat(decoder.side()).isEqualTo(Side.SELL);
+    }
+
+    @Test
+    void test_cancel_amend_and_execution_report_round_trip() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(128);
+        new CancelOrderEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder).orderId(1);
+        new AmendOrderEncoder().wrapAndApplyHeader(buffer, 16, headerEncoder).orderId(2).qty(50);
+        new ExecutionReportEncoder().wrapAndApplyHeader(buffer, 40, headerEncoder)
+            .takerOrderId(3).makerOrderId(4).price(10).qty(20).takerSide(Side.BUY)
+            .sequence(5).takerLeavesQty(6).makerLeavesQty(7).makerCount(8);
+
+        assertThat(new CancelOrderDecoder().wrapAndApplyHeader(buffer, 0, headerDecoder).orderId()).isEqualTo(1);
+        final AmendOrderDecoder amend = new AmendOrderDecoder().wrapAndApplyHeader(buffer, 16, headerDecoder);
+        assertThat(amend.orderId()).isEqualTo(2);
+        assertThat(amend.qty()).isEqualTo(50);
+        final ExecutionReportDecoder report = new ExecutionReportDecoder()
+            .wrapAndApplyHeader(buffer, 40, headerDecoder);
+        assertThat(report.takerOrderId()).isEqualTo(3);
+        assertThat(report.makerOrderId()).isEqualTo(4);
+        assertThat(report.price()).isEqualTo(10);
+        assertThat(report.qty()).isEqualTo(20);
+        assertThat(report.takerSide()).isEqualTo(Side.BUY);
+        assertThat(report.sequence()).isEqualTo(5);
+        assertThat(report.takerLeavesQty()).isEqualTo(6);
+        assertThat(report.makerLeavesQty()).isEqualTo(7);
+        assertThat(report.makerCount()).isEqualTo(8);
+        assertThat(report.hasV2Fields()).isTrue();
+    }
+
+    @Test
+    void test_version_1_execution_report() {
+        final ByteBuffer buffer = ByteBuffer.allocate(128);
+        new ExecutionReportEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder)
+            .takerOrderId(3).makerOrderId(4).price(10).qty(20).takerSide(Side.SELL).sequence(5);
+        // the header and the 40 byte block of version 1, followed by another message
+        headerEncoder.wrap(buffer, 0).blockLength(ExecutionReportEncoder.V1_BLOCK_LENGTH).version(1);
+        new CancelOrderEncoder().wrapAndApplyHeader(buffer, 48, headerEncoder).orderId(1);
+
+        final ExecutionReportDecoder report = new ExecutionReportDecoder()
+            .wrapAndApplyHeader(buffer, 0, headerDecoder);
+        assertThat(headerDecoder.version()).isEqualTo(1);
+        assertThat(report.encodedLength()).isEqualTo(40);
+        assertThat(report.takerOrderId()).isEqualTo(3);
+        assertThat(report.makerOrderId()).isEqualTo(4);
+        assertThat(report.price()).isEqualTo(10);
+        assertThat(report.qty()).isEqualTo(20);
+        assertThat(report.takerSide()).isEqualTo(Side.SELL);
+        assertThat(report.hasV2Fields()).isFalse();
+        assertThat(report.sequence()).isEqualTo(ExecutionReportDecoder.NULL_VALUE);
+        assertThat(report.takerLeavesQty()).isEqualTo(ExecutionReportDecoder.NULL_VALUE);
+        assertThat(report.makerLeavesQty()).isEqualTo(ExecutionReportDecoder.NULL_VALUE);
+        assertThat(report.makerCount()).isEqualTo(ExecutionReportDecoder.MAKER_COUNT_NULL_VALUE);
+        assertThat(new CancelOrderDecoder().wrapAndApplyHeader(buffer, 48, headerDecoder).orderId()).isEqualTo(1);
+
+        final Throwable tooShort = catchThrowable(() -> report.wrap(buffer, 8, 32));
+        assertThat(tooShort).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("block length too short for ExecutionReport: 32");
+    }
+
+    @Test
+    void test_book_checksum_round_trip() {
+        final ByteBuffer buffer = ByteBuffer.allocate(24);
+        new BookChecksumEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder).checksum(-42).orderCount(7);
+
+        final BookChecksumDecoder decoder = new BookChecksumDecoder().wrapAndApplyHeader(buffer, 0, headerDecoder);
+        assertThat(decoder.checksum()).isEqualTo(-42);
+        assertThat(decoder.orderCount()).isEqualTo(7);
+    }
+
+    @Test
+    void test_auction_round_trip() {
+        final ByteBuffer buffer = ByteBuffer.allocate(32);
+        new StartAuctionEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        new UncrossEncoder().wrapAndApplyHeader(buffer, 8, headerEncoder).referencePrice(101);
+
+        assertThat(new StartAuctionDecoder().wrapAndApplyHeader(buffer, 0, headerDecoder).encodedLength()).isZero();
+        assertThat(headerDecoder.templateId()).isEqualTo(StartAuctionDecoder.TEMPLATE_ID);
+        assertThat(new UncrossDecoder().wrapAndApplyHeader(buffer, 8, headerDecoder).referencePrice()).isEqualTo(101);
+    }
+
+    @Test
+    void test_little_endian_layout() {
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        new CancelOrderEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder).orderId(0x0102);
+
+        assertThat(buffer.get(0)).isEqualTo((byte) CancelOrderEncoder.BLOCK_LENGTH);
+        assertThat(buffer.get(2)).isEqualTo((byte) CancelOrderEncoder.TEMPLATE_ID);
+        assertThat(buffer.get(8)).isEqualTo((byte) 0x02);
+        assertThat(buffer.get(9)).isEqualTo((byte) 0x01);
+    }
+
+    @Test
+    void test_wrong_template_and_illegal_side() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        new CancelOrderEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder).orderId(1);
+
+        final Throwable wrongTemplate = catchThrowable(
+            () -> new NewOrderDecoder().wrapAndApplyHeader(buffer, 0, headerDecoder));
+        assertThat(wrongTemplate).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("not a NewOrder, template id: 2");
+
+        new NewOrderEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder).side(Side.BUY);
+        buffer.put(MessageHeaderEncoder.ENCODED_LENGTH + 24, (byte) 5);
+        final Throwable illegalSide = catchThrowable(
+            () -> new NewOrderDecoder().wrapAndApplyHeader(buffer, 0, headerDecoder).side());
+        assertThat(illegalSide).isInstanceOf(IllegalArgumentException.class).hasMessage("illegal side: 5");
+    }
+}